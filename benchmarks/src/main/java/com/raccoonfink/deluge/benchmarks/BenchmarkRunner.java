@@ -0,0 +1,21 @@
+package com.raccoonfink.deluge.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks like the stock JMH main, but always with the GC
+ * profiler, so every result comes with its allocation per operation
+ * (<code>gc.alloc.rate.norm</code>).
+ */
+public final class BenchmarkRunner {
+	private BenchmarkRunner() {
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final CommandLineOptions commandLine = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build()).run();
+	}
+}
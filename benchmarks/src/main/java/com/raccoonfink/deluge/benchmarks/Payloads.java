@@ -0,0 +1,110 @@
+package com.raccoonfink.deluge.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Builds <code>web.update_ui</code> responses shaped like ones recorded
+ * from a Deluge 1.3 web UI: every torrent field, realistic names, paths
+ * and tracker hosts.  The same size always gives the same bytes.
+ */
+final class Payloads {
+	private static final String[] STATES = { "Seeding", "Downloading", "Paused", "Queued", "Checking", "Error" };
+	private static final String[] TRACKERS = { "tracker.example.org", "announce.example.net", "open.example.com", "" };
+	private static final String[] WORDS = { "ubuntu", "debian", "fedora", "live", "desktop", "server", "amd64", "i386", "iso", "1080p", "flac", "archive" };
+
+	private Payloads() {
+	}
+
+	public static String updateUI(final int torrents) {
+		final Random random = new Random(torrents);
+		final StringBuilder sb = new StringBuilder(torrents * 700 + 1024);
+		sb.append("{\"id\": 1, \"result\": {\"connected\": true, \"torrents\": {");
+		for (int i = 0; i < torrents; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append('"').append(hash(random)).append("\": ");
+			torrent(sb, random, i);
+		}
+		sb.append("}, \"stats\": ");
+		stats(sb);
+		sb.append(", \"filters\": {\"state\": [[\"All\", ").append(torrents).append("]], \"tracker_host\": [[\"All\", ").append(torrents).append("]]}");
+		sb.append("}, \"error\": null}");
+		return sb.toString();
+	}
+
+	public static String torrent() {
+		final StringBuilder sb = new StringBuilder(1024);
+		torrent(sb, new Random(0), 0);
+		return sb.toString();
+	}
+
+	public static String stats() {
+		final StringBuilder sb = new StringBuilder(512);
+		stats(sb);
+		return sb.toString();
+	}
+
+	public static byte[] gzip(final byte[] bytes) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+		final GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(bytes);
+		gzip.close();
+		return out.toByteArray();
+	}
+
+	private static void torrent(final StringBuilder sb, final Random random, final int queue) {
+		final String name = name(random);
+		final long size = 1000000L + (long) (random.nextDouble() * 8000000000L);
+		final double progress = random.nextInt(4) == 0 ? random.nextDouble() * 100 : 100.0;
+		sb.append("{\"distributed_copies\": ").append(random.nextDouble() * 20)
+			.append(", \"download_payload_rate\": ").append(random.nextInt(100000))
+			.append(", \"eta\": ").append(random.nextInt(86400))
+			.append(", \"is_auto_managed\": ").append(random.nextBoolean())
+			.append(", \"max_download_speed\": -1")
+			.append(", \"max_upload_speed\": -1")
+			.append(", \"name\": \"").append(name).append('"')
+			.append(", \"num_peers\": ").append(random.nextInt(50))
+			.append(", \"num_seeds\": ").append(random.nextInt(50))
+			.append(", \"progress\": ").append(progress)
+			.append(", \"queue\": ").append(queue)
+			.append(", \"ratio\": ").append(random.nextDouble() * 5)
+			.append(", \"save_path\": \"/srv/downloads/").append(WORDS[random.nextInt(WORDS.length)]).append('"')
+			.append(", \"seeds_peers_ratio\": ").append(random.nextDouble() * 10)
+			.append(", \"state\": \"").append(STATES[random.nextInt(STATES.length)]).append('"')
+			.append(", \"time_added\": ").append(1400000000 + random.nextInt(100000000)).append('.').append(random.nextInt(1000))
+			.append(", \"total_done\": ").append((long) (size * progress / 100))
+			.append(", \"total_peers\": ").append(random.nextInt(500))
+			.append(", \"total_seeds\": ").append(random.nextInt(5000))
+			.append(", \"total_size\": ").append(size)
+			.append(", \"total_uploaded\": ").append((long) (size * random.nextDouble() * 5))
+			.append(", \"tracker_host\": \"").append(TRACKERS[random.nextInt(TRACKERS.length)]).append('"')
+			.append(", \"upload_payload_rate\": ").append(random.nextInt(100000))
+			.append('}');
+	}
+
+	private static void stats(final StringBuilder sb) {
+		sb.append("{\"dht_nodes\": 312, \"download_protocol_rate\": 10233, \"download_rate\": 482113, \"free_space\": 1837210095616")
+			.append(", \"has_incoming_connections\": true, \"max_download\": -1.0, \"max_num_connections\": 200, \"max_upload\": -1.0")
+			.append(", \"num_connections\": 187, \"upload_protocol_rate\": 9021, \"upload_rate\": 77123}");
+	}
+
+	private static String name(final Random random) {
+		final StringBuilder sb = new StringBuilder();
+		final int words = 2 + random.nextInt(5);
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				sb.append(random.nextBoolean() ? '.' : '-');
+			}
+			sb.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return sb.append('-').append(random.nextInt(10000)).toString();
+	}
+
+	private static String hash(final Random random) {
+		return String.format("%016x%016x%08x", random.nextLong(), random.nextLong(), random.nextInt());
+	}
+}
@@ -0,0 +1,73 @@
+package com.raccoonfink.deluge.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoonfink.deluge.DelugeRequest;
+import com.raccoonfink.deluge.Torrent;
+import com.raccoonfink.deluge.TorrentFilter;
+
+/**
+ * Encoding requests, which happens on every call.  The <code>PostData</code>
+ * benchmarks build and print the JSON every time, as the client used to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+	private DelugeRequest m_updateUI;
+	private DelugeRequest m_simple;
+	private int m_id = 0;
+
+	@Setup
+	public void setUp() throws JSONException {
+		final JSONArray keys = new JSONArray();
+		for (final Torrent.Field field : Torrent.Field.values()) {
+			keys.put(field.getKey());
+		}
+		final TorrentFilter filter = new TorrentFilter();
+		filter.setStates(Torrent.State.Downloading, Torrent.State.Seeding);
+		filter.setLabels("linux");
+		m_updateUI = new DelugeRequest("web.update_ui", keys, filter.toJSON());
+		m_simple = new DelugeRequest("web.get_host_status", "0123456789abcdef0123456789abcdef01234567");
+	}
+
+	@Benchmark
+	public String updateUIPostData() throws JSONException {
+		return m_updateUI.toPostData(m_id++ & Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	public String simplePostData() throws JSONException {
+		return m_simple.toPostData(m_id++ & Integer.MAX_VALUE);
+	}
+
+	/**
+	 * What is actually sent now: the serialized template with the id
+	 * patched in.
+	 */
+	@Benchmark
+	public byte[] updateUIPostBody() throws JSONException {
+		return m_updateUI.toPostBody(m_id++ & Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	public byte[] simplePostBody() throws JSONException {
+		return m_simple.toPostBody(m_id++ & Integer.MAX_VALUE);
+	}
+}
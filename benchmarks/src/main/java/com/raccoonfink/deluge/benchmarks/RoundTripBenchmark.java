@@ -0,0 +1,63 @@
+package com.raccoonfink.deluge.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.fake.FakeDelugeServer;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+/**
+ * A whole <code>web.update_ui</code> poll over loopback HTTP against the
+ * in-process fake server, so transport, decompression and decoding are
+ * measured together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+	@Param({ "100", "1000", "10000" })
+	public int torrents;
+
+	@Param({ "false", "true" })
+	public boolean gzip;
+
+	private FakeDelugeServer m_fake;
+	private DelugeServer m_server;
+
+	@Setup
+	public void setUp() throws Exception {
+		m_fake = new FakeDelugeServer("deluge").start();
+		m_fake.populate(torrents);
+		m_fake.setGzip(gzip);
+		m_server = new DelugeServer(m_fake.getURL(), "deluge");
+		m_server.login();
+		m_server.connect(FakeDelugeServer.HOST_ID);
+	}
+
+	@TearDown
+	public void tearDown() {
+		m_server.close();
+		m_fake.close();
+	}
+
+	@Benchmark
+	public UIResponse updateUI() throws Exception {
+		return m_server.updateUI();
+	}
+}
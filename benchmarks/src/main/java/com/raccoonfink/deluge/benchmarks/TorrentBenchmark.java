@@ -0,0 +1,83 @@
+package com.raccoonfink.deluge.benchmarks;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoonfink.deluge.Statistics;
+import com.raccoonfink.deluge.Torrent;
+import com.raccoonfink.deluge.json.JsonStreamReader;
+
+/**
+ * Parsing and serializing a single torrent and the session statistics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TorrentBenchmark {
+	private static final String KEY = "0123456789abcdef0123456789abcdef01234567";
+
+	private String m_torrentJson;
+	private JSONObject m_torrentObject;
+	private Torrent m_torrent;
+	private String m_statsJson;
+	private Statistics m_statistics;
+
+	@Setup
+	public void setUp() throws Exception {
+		m_torrentJson = Payloads.torrent();
+		m_torrentObject = new JSONObject(m_torrentJson);
+		m_torrent = new Torrent(KEY, m_torrentObject);
+		m_statsJson = Payloads.stats();
+		m_statistics = new Statistics(new JSONObject(m_statsJson));
+	}
+
+	@Benchmark
+	public Torrent parseTorrentStream() throws Exception {
+		final JsonStreamReader reader = new JsonStreamReader(new StringReader(m_torrentJson));
+		try {
+			return new Torrent(KEY, reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public Torrent parseTorrentObject() {
+		return new Torrent(KEY, m_torrentObject);
+	}
+
+	@Benchmark
+	public Statistics parseStatisticsStream() throws Exception {
+		final JsonStreamReader reader = new JsonStreamReader(new StringReader(m_statsJson));
+		try {
+			return new Statistics(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public JSONObject torrentToJSON() throws Exception {
+		return m_torrent.toJSON();
+	}
+
+	@Benchmark
+	public JSONObject statisticsToJSON() throws Exception {
+		return m_statistics.toJSON();
+	}
+}
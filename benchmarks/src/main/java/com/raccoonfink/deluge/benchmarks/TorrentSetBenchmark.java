@@ -0,0 +1,99 @@
+package com.raccoonfink.deluge.benchmarks;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoonfink.deluge.Torrent;
+import com.raccoonfink.deluge.TorrentSet;
+import com.raccoonfink.deluge.json.JsonStreamReader;
+
+/**
+ * Compares the old name-ordered <code>TreeSet</code> against
+ * {@link TorrentSet} for building, looking up and sorting torrents.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TorrentSetBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	public int torrents;
+
+	private List<Torrent> m_torrents;
+	private Set<Torrent> m_treeSet;
+	private TorrentSet m_torrentSet;
+	private String m_key;
+
+	@Setup
+	public void setUp() throws Exception {
+		final Random random = new Random(torrents);
+		m_torrents = new ArrayList<Torrent>(torrents);
+		for (int i=0; i < torrents; i++) {
+			// plenty of duplicate names, as with re-added torrents
+			final String json = "{\"name\": \"torrent-" + random.nextInt(torrents / 2) + "\", \"state\": \"Seeding\", \"queue\": " + i
+					+ ", \"ratio\": " + random.nextDouble() + ", \"time_added\": " + (1400000000 + random.nextInt(100000000)) + "}";
+			final JsonStreamReader reader = new JsonStreamReader(new StringReader(json));
+			try {
+				m_torrents.add(new Torrent(String.format("%040x", i), reader));
+			} finally {
+				reader.close();
+			}
+		}
+		m_treeSet = new TreeSet<Torrent>(m_torrents);
+		m_torrentSet = new TorrentSet(m_torrents);
+		m_key = m_torrents.get(torrents / 2).getKey();
+	}
+
+	@Benchmark
+	public Set<Torrent> buildTreeSet() {
+		return new TreeSet<Torrent>(m_torrents);
+	}
+
+	@Benchmark
+	public TorrentSet buildTorrentSet() {
+		return new TorrentSet(m_torrents);
+	}
+
+	/**
+	 * A <code>TreeSet</code> ordered by name can only find a key by walking
+	 * it.
+	 */
+	@Benchmark
+	public Torrent lookupTreeSet() {
+		for (final Torrent torrent : m_treeSet) {
+			if (torrent.getKey().equals(m_key)) {
+				return torrent;
+			}
+		}
+		return null;
+	}
+
+	@Benchmark
+	public Torrent lookupTorrentSet() {
+		return m_torrentSet.get(m_key);
+	}
+
+	@Benchmark
+	public List<Torrent> buildAndSortByName() {
+		return new TorrentSet(m_torrents).sortedBy(TorrentSet.Order.Name);
+	}
+}
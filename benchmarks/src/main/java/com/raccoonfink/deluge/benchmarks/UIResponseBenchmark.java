@@ -0,0 +1,138 @@
+package com.raccoonfink.deluge.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.Torrent;
+import com.raccoonfink.deluge.http.InflatingInputStream;
+import com.raccoonfink.deluge.json.JsonStreamReader;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+/**
+ * The polling path: turning a <code>web.update_ui</code> response into a
+ * {@link UIResponse}, and back into JSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UIResponseBenchmark {
+	@Param({ "100", "1000", "10000", "100000" })
+	public int torrents;
+
+	private String m_json;
+	private byte[] m_bytes;
+	private byte[] m_gzipped;
+	private UIResponse m_response;
+	private final Set<Torrent.Field> m_fewFields = EnumSet.of(Torrent.Field.Name, Torrent.Field.State, Torrent.Field.Progress);
+
+	@Setup
+	public void setUp() throws Exception {
+		m_json = Payloads.updateUI(torrents);
+		m_bytes = m_json.getBytes("UTF-8");
+		m_gzipped = Payloads.gzip(m_bytes);
+		m_response = decode(new ByteArrayInputStream(m_bytes));
+	}
+
+	@Benchmark
+	public UIResponse decodeStream() throws Exception {
+		return decode(new ByteArrayInputStream(m_bytes));
+	}
+
+	/**
+	 * Decoding through the JDK's charset decoder, for comparison.
+	 */
+	@Benchmark
+	public UIResponse decodeStreamInputStreamReader() throws Exception {
+		return decode(new JsonStreamReader(new InputStreamReader(new ByteArrayInputStream(m_bytes), "UTF-8")), EnumSet.allOf(Torrent.Field.class));
+	}
+
+	@Benchmark
+	public UIResponse decodeStreamFewFields() throws Exception {
+		return decode(new JsonStreamReader(new ByteArrayInputStream(m_bytes)), m_fewFields);
+	}
+
+	@Benchmark
+	public UIResponse decodeGzippedStream() throws Exception {
+		return decode(InflatingInputStream.gzip(new ByteArrayInputStream(m_gzipped)));
+	}
+
+	/**
+	 * The old way: build the whole JSON tree, then the response from it.
+	 */
+	@Benchmark
+	public UIResponse decodeTree() throws DelugeException, JSONException {
+		return new UIResponse(200, new JSONObject(m_json));
+	}
+
+	@Benchmark
+	public long gunzip() throws IOException {
+		return drain(InflatingInputStream.gzip(new ByteArrayInputStream(m_gzipped)));
+	}
+
+	/**
+	 * Gunzipping with a new inflater every time, for comparison.
+	 */
+	@Benchmark
+	public long gunzipGZIPInputStream() throws IOException {
+		return drain(new GZIPInputStream(new ByteArrayInputStream(m_gzipped)));
+	}
+
+	@Benchmark
+	public JSONObject toResponseJSON() throws JSONException {
+		return m_response.toResponseJSON();
+	}
+
+	private static UIResponse decode(final InputStream in) throws Exception {
+		return decode(new JsonStreamReader(in), EnumSet.allOf(Torrent.Field.class));
+	}
+
+	/**
+	 * Decode, then close the reader, which hands its buffer back to the
+	 * pool and, for a gzipped stream, its inflater too.
+	 */
+	private static UIResponse decode(final JsonStreamReader reader, final Set<Torrent.Field> fields) throws Exception {
+		try {
+			return UIResponse.decode(200, reader, fields);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static long drain(final InputStream in) throws IOException {
+		final byte[] buffer = new byte[8192];
+		long total = 0;
+		try {
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				total += count;
+			}
+		} finally {
+			in.close();
+		}
+		return total;
+	}
+}
@@ -0,0 +1,167 @@
+package com.raccoonfink.deluge;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import com.raccoonfink.deluge.responses.BatchResponse;
+import com.raccoonfink.deluge.responses.CheckSessionResponse;
+import com.raccoonfink.deluge.responses.ConnectedResponse;
+import com.raccoonfink.deluge.responses.DeleteSessionResponse;
+import com.raccoonfink.deluge.responses.DelugeResponse;
+import com.raccoonfink.deluge.responses.EventsResponse;
+import com.raccoonfink.deluge.responses.HostResponse;
+import com.raccoonfink.deluge.responses.LoginResponse;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+/**
+ * Non-blocking facade over a {@link DelugeServer}.  Every call returns a
+ * {@link DelugeFuture} immediately and the request itself runs on the
+ * {@link DelugeDispatcher}, which bounds how many are in flight.
+ */
+public class AsyncDelugeServer {
+	private final DelugeServer m_server;
+	private final DelugeDispatcher m_dispatcher;
+
+	public AsyncDelugeServer(final DelugeServer server, final DelugeDispatcher dispatcher) {
+		m_server = server;
+		m_dispatcher = dispatcher;
+	}
+
+	public DelugeServer getServer() {
+		return m_server;
+	}
+
+	public DelugeDispatcher getDispatcher() {
+		return m_dispatcher;
+	}
+
+	public DelugeFuture<DelugeResponse> makeRequestAsync(final DelugeRequest request) {
+		return m_dispatcher.submit(new Callable<DelugeResponse>() {
+			public DelugeResponse call() throws DelugeException {
+				return m_server.makeRequest(request);
+			}
+		});
+	}
+
+	public DelugeFuture<DelugeResponse> makeRequestAsync(final DelugeRequest request, final DelugeCallback<? super DelugeResponse> callback) {
+		return makeRequestAsync(request).addCallback(callback);
+	}
+
+	public DelugeFuture<BatchResponse> makeBatchRequestAsync(final List<DelugeRequest> requests) {
+		return m_dispatcher.submit(new Callable<BatchResponse>() {
+			public BatchResponse call() throws DelugeException {
+				return m_server.makeBatchRequest(requests);
+			}
+		});
+	}
+
+	public DelugeFuture<CheckSessionResponse> checkSessionAsync() {
+		return m_dispatcher.submit(new Callable<CheckSessionResponse>() {
+			public CheckSessionResponse call() throws DelugeException {
+				return m_server.checkSession();
+			}
+		});
+	}
+
+	public DelugeFuture<LoginResponse> loginAsync() {
+		return m_dispatcher.submit(new Callable<LoginResponse>() {
+			public LoginResponse call() throws DelugeException {
+				return m_server.login();
+			}
+		});
+	}
+
+	public DelugeFuture<DeleteSessionResponse> deleteSessionAsync() {
+		return m_dispatcher.submit(new Callable<DeleteSessionResponse>() {
+			public DeleteSessionResponse call() throws DelugeException {
+				return m_server.deleteSession();
+			}
+		});
+	}
+
+	public DelugeFuture<Void> registerEventListenersAsync() {
+		return m_dispatcher.submit(new Callable<Void>() {
+			public Void call() throws DelugeException {
+				m_server.registerEventListeners();
+				return null;
+			}
+		});
+	}
+
+	public DelugeFuture<ConnectedResponse> isConnectedAsync() {
+		return m_dispatcher.submit(new Callable<ConnectedResponse>() {
+			public ConnectedResponse call() throws DelugeException {
+				return m_server.isConnected();
+			}
+		});
+	}
+
+	public DelugeFuture<HostResponse> getHostsAsync() {
+		return m_dispatcher.submit(new Callable<HostResponse>() {
+			public HostResponse call() throws DelugeException {
+				return m_server.getHosts();
+			}
+		});
+	}
+
+	public DelugeFuture<HostResponse> getHostStatusAsync(final String id) {
+		return m_dispatcher.submit(new Callable<HostResponse>() {
+			public HostResponse call() throws DelugeException {
+				return m_server.getHostStatus(id);
+			}
+		});
+	}
+
+	public DelugeFuture<ConnectedResponse> connectAsync(final String id) {
+		return m_dispatcher.submit(new Callable<ConnectedResponse>() {
+			public ConnectedResponse call() throws DelugeException {
+				return m_server.connect(id);
+			}
+		});
+	}
+
+	public DelugeFuture<ConnectedResponse> disconnectAsync() {
+		return m_dispatcher.submit(new Callable<ConnectedResponse>() {
+			public ConnectedResponse call() throws DelugeException {
+				return m_server.disconnect();
+			}
+		});
+	}
+
+	public DelugeFuture<EventsResponse> getEventsAsync() {
+		return m_dispatcher.submit(new Callable<EventsResponse>() {
+			public EventsResponse call() throws DelugeException {
+				return m_server.getEvents();
+			}
+		});
+	}
+
+	public DelugeFuture<UIResponse> updateUIAsync() {
+		return m_dispatcher.submit(new Callable<UIResponse>() {
+			public UIResponse call() throws DelugeException {
+				return m_server.updateUI();
+			}
+		});
+	}
+
+	public DelugeFuture<UIResponse> updateUIAsync(final DelugeCallback<? super UIResponse> callback) {
+		return updateUIAsync().addCallback(callback);
+	}
+
+	public DelugeFuture<UIResponse> updateUIAsync(final Set<Torrent.Field> fields) {
+		return m_dispatcher.submit(new Callable<UIResponse>() {
+			public UIResponse call() throws DelugeException {
+				return m_server.updateUI(fields);
+			}
+		});
+	}
+
+	public DelugeFuture<UIResponse> updateUIAsync(final Set<Torrent.Field> fields, final TorrentFilter filter) {
+		return m_dispatcher.submit(new Callable<UIResponse>() {
+			public UIResponse call() throws DelugeException {
+				return m_server.updateUI(fields, filter);
+			}
+		});
+	}
+}
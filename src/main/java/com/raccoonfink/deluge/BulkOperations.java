@@ -0,0 +1,235 @@
+package com.raccoonfink.deluge;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.raccoonfink.deluge.responses.BatchResponse;
+import com.raccoonfink.deluge.responses.DelugeResponse;
+
+/**
+ * Torrent actions on many torrents at once.  Methods which take a list of
+ * torrent ids are called with up to <code>chunkSize</code> ids at a time;
+ * those which take a single id are sent as batches of that many requests.
+ * Chunks run on a {@link DelugeDispatcher}, which bounds how many are
+ * outstanding.
+ *
+ * If the server rejects a whole chunk, for instance because one of the
+ * torrents has since been removed, its torrents are retried one by one so
+ * that the {@link BulkResult} says exactly which of them failed.  Queue
+ * moves are the exception: the server may have moved some of the chunk
+ * before it failed, and moving those again would move them twice, so the
+ * whole chunk is reported as failed instead.
+ */
+public class BulkOperations {
+	private final DelugeServer m_server;
+	private final DelugeDispatcher m_dispatcher;
+	private final boolean m_ownsDispatcher;
+	private final int m_chunkSize;
+
+	public BulkOperations(final DelugeServer server) {
+		this(server, new DelugeDispatcher(4), 500, true);
+	}
+
+	public BulkOperations(final DelugeServer server, final DelugeDispatcher dispatcher, final int chunkSize) {
+		this(server, dispatcher, chunkSize, false);
+	}
+
+	private BulkOperations(final DelugeServer server, final DelugeDispatcher dispatcher, final int chunkSize, final boolean ownsDispatcher) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be at least 1");
+		}
+		m_server = server;
+		m_dispatcher = dispatcher;
+		m_ownsDispatcher = ownsDispatcher;
+		m_chunkSize = chunkSize;
+	}
+
+	public int getChunkSize() {
+		return m_chunkSize;
+	}
+
+	public BulkResult pause(final Collection<String> keys) throws DelugeException {
+		return callChunked("core.pause_torrent", keys);
+	}
+
+	public BulkResult resume(final Collection<String> keys) throws DelugeException {
+		return callChunked("core.resume_torrent", keys);
+	}
+
+	public BulkResult forceRecheck(final Collection<String> keys) throws DelugeException {
+		return callChunked("core.force_recheck", keys);
+	}
+
+	public BulkResult moveStorage(final Collection<String> keys, final String destination) throws DelugeException {
+		return callChunked("core.move_storage", keys, destination);
+	}
+
+	/**
+	 * Set torrent options, such as <code>max_download_speed</code> or
+	 * <code>stop_at_ratio</code>, on every torrent.
+	 */
+	public BulkResult setTorrentOptions(final Collection<String> keys, final Map<String,?> options) throws DelugeException {
+		return callChunked("core.set_torrent_options", keys, new JSONObject(options));
+	}
+
+	/**
+	 * Remove the torrents.  Deluge only removes one torrent per call, so
+	 * these go out as batches of single removals.
+	 */
+	public BulkResult remove(final Collection<String> keys, final boolean removeData) throws DelugeException {
+		final BulkResult result = new BulkResult("core.remove_torrent");
+		final List<DelugeFuture<Void>> futures = new ArrayList<DelugeFuture<Void>>();
+		for (final List<String> chunk : chunk(keys)) {
+			futures.add(m_dispatcher.submit(new Callable<Void>() {
+				public Void call() {
+					final List<DelugeRequest> requests = new ArrayList<DelugeRequest>(chunk.size());
+					for (final String key : chunk) {
+						requests.add(new DelugeRequest("core.remove_torrent", key, removeData));
+					}
+					sendEach(requests, chunk, result);
+					return null;
+				}
+			}));
+		}
+		waitFor(futures);
+		return result;
+	}
+
+	public BulkResult queueTop(final Collection<String> keys) throws DelugeException {
+		return callSequentially("core.queue_top", keys);
+	}
+
+	public BulkResult queueUp(final Collection<String> keys) throws DelugeException {
+		return callSequentially("core.queue_up", keys);
+	}
+
+	public BulkResult queueDown(final Collection<String> keys) throws DelugeException {
+		return callSequentially("core.queue_down", keys);
+	}
+
+	public BulkResult queueBottom(final Collection<String> keys) throws DelugeException {
+		return callSequentially("core.queue_bottom", keys);
+	}
+
+	/**
+	 * Shut down the dispatcher if this object created it.
+	 */
+	public void shutdown() {
+		if (m_ownsDispatcher) {
+			m_dispatcher.shutdown();
+		}
+	}
+
+	private BulkResult callChunked(final String method, final Collection<String> keys, final Object... arguments) throws DelugeException {
+		final BulkResult result = new BulkResult(method);
+		final List<DelugeFuture<Void>> futures = new ArrayList<DelugeFuture<Void>>();
+		for (final List<String> chunk : chunk(keys)) {
+			futures.add(m_dispatcher.submit(new Callable<Void>() {
+				public Void call() {
+					callChunk(method, chunk, arguments, true, result);
+					return null;
+				}
+			}));
+		}
+		waitFor(futures);
+		return result;
+	}
+
+	/**
+	 * Queue moves depend on the order they are made in, so their chunks go
+	 * one after another rather than in parallel.  They are not safe to
+	 * repeat, so a failed chunk is not retried item by item.
+	 */
+	private BulkResult callSequentially(final String method, final Collection<String> keys) {
+		final BulkResult result = new BulkResult(method);
+		for (final List<String> chunk : chunk(keys)) {
+			callChunk(method, chunk, new Object[0], false, result);
+		}
+		return result;
+	}
+
+	private void callChunk(final String method, final List<String> chunk, final Object[] arguments, final boolean retryEach, final BulkResult result) {
+		try {
+			m_server.makeRequest(new DelugeRequest(method, toParams(new JSONArray(chunk), arguments)));
+			result.succeeded(chunk);
+		} catch (final DelugeException e) {
+			if (!retryEach || e.getCode() < 0 || chunk.size() == 1) {
+				// not something a single torrent could have caused, or not safe to repeat
+				result.failed(chunk, e);
+				return;
+			}
+			final List<DelugeRequest> requests = new ArrayList<DelugeRequest>(chunk.size());
+			for (final String key : chunk) {
+				requests.add(new DelugeRequest(method, toParams(new JSONArray().put(key), arguments)));
+			}
+			sendEach(requests, chunk, result);
+		}
+	}
+
+	private void sendEach(final List<DelugeRequest> requests, final List<String> keys, final BulkResult result) {
+		final BatchResponse response;
+		try {
+			response = m_server.makeBatchRequest(requests);
+		} catch (final DelugeException e) {
+			result.failed(keys, e);
+			return;
+		}
+		for (int i=0; i < keys.size(); i++) {
+			final String key = keys.get(i);
+			if (!response.isSuccess(i)) {
+				result.failed(key, response.getError(i));
+				continue;
+			}
+			try {
+				final DelugeResponse item = response.getResponse(i);
+				if (Boolean.FALSE.equals(item.getResponseData().opt("result"))) {
+					result.failed(key, new DelugeException(requests.get(i).getMethod() + " failed for " + key));
+				} else {
+					result.succeeded(Collections.singletonList(key));
+				}
+			} catch (final DelugeException e) {
+				result.failed(key, e);
+			}
+		}
+	}
+
+	private List<List<String>> chunk(final Collection<String> keys) {
+		// the same torrent twice in one call would be acted on twice
+		final List<String> unique = new ArrayList<String>(new LinkedHashSet<String>(keys));
+		final List<List<String>> chunks = new ArrayList<List<String>>();
+		for (int i=0; i < unique.size(); i += m_chunkSize) {
+			chunks.add(unique.subList(i, Math.min(unique.size(), i + m_chunkSize)));
+		}
+		return chunks;
+	}
+
+	private static Object[] toParams(final JSONArray ids, final Object[] arguments) {
+		final Object[] params = new Object[arguments.length + 1];
+		params[0] = ids;
+		System.arraycopy(arguments, 0, params, 1, arguments.length);
+		return params;
+	}
+
+	private static void waitFor(final List<DelugeFuture<Void>> futures) throws DelugeException {
+		for (final DelugeFuture<Void> future : futures) {
+			try {
+				future.get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DelugeException("Interrupted while waiting for a bulk operation", e);
+			} catch (final ExecutionException e) {
+				// chunks record their own failures, so this is unexpected
+				throw new DelugeException(e.getCause());
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.raccoonfink.deluge;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outcome of a {@link BulkOperations} call for each torrent it was
+ * given.
+ */
+public class BulkResult {
+	private final String m_method;
+	private final Set<String> m_succeeded = new LinkedHashSet<String>();
+	private final Map<String,DelugeException> m_failures = new LinkedHashMap<String,DelugeException>();
+
+	public BulkResult(final String method) {
+		m_method = method;
+	}
+
+	synchronized void succeeded(final Collection<String> keys) {
+		m_succeeded.addAll(keys);
+	}
+
+	synchronized void failed(final String key, final DelugeException e) {
+		m_failures.put(key, e);
+	}
+
+	synchronized void failed(final Collection<String> keys, final DelugeException e) {
+		for (final String key : keys) {
+			m_failures.put(key, e);
+		}
+	}
+
+	public String getMethod() {
+		return m_method;
+	}
+
+	public synchronized boolean isSuccess() {
+		return m_failures.isEmpty();
+	}
+
+	public synchronized boolean isSuccess(final String key) {
+		return m_succeeded.contains(key);
+	}
+
+	/**
+	 * Get the error for a torrent, or null if it succeeded (or was never
+	 * part of the operation).
+	 */
+	public synchronized DelugeException getError(final String key) {
+		return m_failures.get(key);
+	}
+
+	public synchronized List<String> getSucceeded() {
+		return new ArrayList<String>(m_succeeded);
+	}
+
+	public synchronized Map<String,DelugeException> getFailures() {
+		return Collections.unmodifiableMap(new LinkedHashMap<String,DelugeException>(m_failures));
+	}
+
+	public synchronized int size() {
+		return m_succeeded.size() + m_failures.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "BulkResult[method=" + m_method + ", succeeded=" + m_succeeded.size() + ", failed=" + m_failures.size() + "]";
+	}
+}
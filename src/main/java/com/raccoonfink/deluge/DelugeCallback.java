@@ -0,0 +1,7 @@
+package com.raccoonfink.deluge;
+
+public interface DelugeCallback<T> {
+	public void onSuccess(final T result);
+
+	public void onFailure(final DelugeException e);
+}
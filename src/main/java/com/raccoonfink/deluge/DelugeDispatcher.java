@@ -0,0 +1,164 @@
+package com.raccoonfink.deluge;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs requests on an executor with at most <code>maxInFlight</code> of
+ * them outstanding at once.  Requests beyond the limit are queued without
+ * occupying a thread, and are started as earlier ones complete.  One
+ * dispatcher can be shared by many servers to put a single limit on the
+ * whole process.
+ */
+public class DelugeDispatcher {
+	private final Executor m_executor;
+	private final ExecutorService m_ownedExecutor;
+	private final int m_maxInFlight;
+
+	private final Queue<Task<?>> m_pending = new LinkedList<Task<?>>();
+	private int m_inFlight = 0;
+
+	public DelugeDispatcher(final int maxInFlight) {
+		this(createExecutor(maxInFlight, "deluge-dispatcher-"), maxInFlight, true);
+	}
+
+	public DelugeDispatcher(final Executor executor, final int maxInFlight) {
+		this(executor, maxInFlight, false);
+	}
+
+	private DelugeDispatcher(final Executor executor, final int maxInFlight, final boolean owned) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight must be at least 1");
+		}
+		m_executor = executor;
+		m_ownedExecutor = owned ? (ExecutorService) executor : null;
+		m_maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Create a fixed pool of daemon threads, named with the given prefix.
+	 */
+	static ExecutorService createExecutor(final int threads, final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, name + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public int getMaxInFlight() {
+		return m_maxInFlight;
+	}
+
+	public synchronized int getInFlightCount() {
+		return m_inFlight;
+	}
+
+	public synchronized int getPendingCount() {
+		return m_pending.size();
+	}
+
+	public <T> DelugeFuture<T> submit(final Callable<T> task) {
+		final Task<T> runnable = new Task<T>(task) {
+			void finished() {
+				execute(next());
+			}
+		};
+		synchronized (this) {
+			if (m_inFlight >= m_maxInFlight) {
+				m_pending.add(runnable);
+				return runnable.m_future;
+			}
+			m_inFlight++;
+		}
+		execute(runnable);
+		return runnable.m_future;
+	}
+
+	private void execute(Task<?> task) {
+		while (task != null) {
+			try {
+				m_executor.execute(task);
+				return;
+			} catch (final RejectedExecutionException e) {
+				// hand the slot to the next task before running any callbacks, failing the rest of the queue in turn
+				final Task<?> rejected = task;
+				task = next();
+				rejected.reject(e);
+			}
+		}
+	}
+
+	/**
+	 * Take the next pending task to run in a finished task's slot, or give
+	 * the slot back if there is none.
+	 */
+	private synchronized Task<?> next() {
+		final Task<?> next = m_pending.poll();
+		if (next == null) {
+			m_inFlight--;
+		}
+		return next;
+	}
+
+	/**
+	 * A request in, or waiting for, a slot.  However it ends, it calls
+	 * {@link #finished()} to hand its slot on.
+	 */
+	abstract static class Task<T> implements Runnable {
+		private final Callable<T> m_callable;
+		final DelugeFuture<T> m_future = new DelugeFuture<T>();
+
+		Task(final Callable<T> callable) {
+			m_callable = callable;
+		}
+
+		public void run() {
+			try {
+				if (!m_future.isDone()) {
+					m_future.complete(m_callable.call());
+				}
+			} catch (final DelugeException e) {
+				m_future.fail(e);
+			} catch (final Exception e) {
+				m_future.fail(new DelugeException(e));
+			} finally {
+				finished();
+			}
+		}
+
+		/**
+		 * Fail a task which the executor would not take.  Its slot must
+		 * already have been handed on, since the future's callbacks run
+		 * here.
+		 */
+		void reject(final RejectedExecutionException e) {
+			try {
+				m_future.fail(new DelugeException("Request rejected by executor", e));
+			} catch (final RuntimeException callbackException) {
+				// a callback's own problem; it must not strand the queue
+			}
+		}
+
+		abstract void finished();
+	}
+
+	/**
+	 * Shut down the executor if this dispatcher created it.
+	 */
+	public void shutdown() {
+		if (m_ownedExecutor != null) {
+			m_ownedExecutor.shutdown();
+		}
+	}
+}
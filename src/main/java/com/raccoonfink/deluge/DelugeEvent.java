@@ -1,15 +1,102 @@
 package com.raccoonfink.deluge;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.raccoonfink.deluge.events.ConfigValueChangedEvent;
+import com.raccoonfink.deluge.events.NewVersionAvailableEvent;
+import com.raccoonfink.deluge.events.PluginDisabledEvent;
+import com.raccoonfink.deluge.events.PluginEnabledEvent;
+import com.raccoonfink.deluge.events.PreTorrentRemovedEvent;
+import com.raccoonfink.deluge.events.SessionPausedEvent;
+import com.raccoonfink.deluge.events.SessionResumedEvent;
+import com.raccoonfink.deluge.events.SessionStartedEvent;
+import com.raccoonfink.deluge.events.TorrentAddedEvent;
+import com.raccoonfink.deluge.events.TorrentFileRenamedEvent;
+import com.raccoonfink.deluge.events.TorrentFinishedEvent;
+import com.raccoonfink.deluge.events.TorrentFolderRenamedEvent;
+import com.raccoonfink.deluge.events.TorrentQueueChangedEvent;
+import com.raccoonfink.deluge.events.TorrentRemovedEvent;
+import com.raccoonfink.deluge.events.TorrentResumedEvent;
+import com.raccoonfink.deluge.events.TorrentStateChangedEvent;
+
+/**
+ * An event from <code>web.get_events</code>, which arrives as
+ * <code>[name, [args...]]</code>.  Use {@link #fromJSON(JSONArray)} to get
+ * the typed subclass for known events.
+ */
 public class DelugeEvent {
+	private final String m_name;
+	private final JSONArray m_arguments;
 
 	public DelugeEvent(final JSONArray data) {
+		this(data.optString(0), data.optJSONArray(1));
+	}
+
+	protected DelugeEvent(final String name, final JSONArray arguments) {
+		m_name = name;
+		m_arguments = arguments == null ? new JSONArray() : arguments;
+	}
+
+	public static DelugeEvent fromJSON(final JSONArray data) {
+		final String name = data.optString(0);
+		final JSONArray args = data.optJSONArray(1) == null ? new JSONArray() : data.optJSONArray(1);
+
+		if ("TorrentAddedEvent".equals(name)) {
+			return new TorrentAddedEvent(args);
+		} else if ("TorrentRemovedEvent".equals(name)) {
+			return new TorrentRemovedEvent(args);
+		} else if ("PreTorrentRemovedEvent".equals(name)) {
+			return new PreTorrentRemovedEvent(args);
+		} else if ("TorrentStateChangedEvent".equals(name)) {
+			return new TorrentStateChangedEvent(args);
+		} else if ("TorrentFinishedEvent".equals(name)) {
+			return new TorrentFinishedEvent(args);
+		} else if ("TorrentResumedEvent".equals(name)) {
+			return new TorrentResumedEvent(args);
+		} else if ("TorrentQueueChangedEvent".equals(name)) {
+			return new TorrentQueueChangedEvent(args);
+		} else if ("TorrentFileRenamedEvent".equals(name)) {
+			return new TorrentFileRenamedEvent(args);
+		} else if ("TorrentFolderRenamedEvent".equals(name)) {
+			return new TorrentFolderRenamedEvent(args);
+		} else if ("SessionStartedEvent".equals(name)) {
+			return new SessionStartedEvent(args);
+		} else if ("SessionPausedEvent".equals(name)) {
+			return new SessionPausedEvent(args);
+		} else if ("SessionResumedEvent".equals(name)) {
+			return new SessionResumedEvent(args);
+		} else if ("ConfigValueChangedEvent".equals(name)) {
+			return new ConfigValueChangedEvent(args);
+		} else if ("PluginEnabledEvent".equals(name)) {
+			return new PluginEnabledEvent(args);
+		} else if ("PluginDisabledEvent".equals(name)) {
+			return new PluginDisabledEvent(args);
+		} else if ("NewVersionAvailableEvent".equals(name)) {
+			return new NewVersionAvailableEvent(args);
+		} else {
+			return new DelugeEvent(name, args);
+		}
 	}
 
-	public JSONObject toJSON() {
-		return new JSONObject();
+	public String getName() {
+		return m_name;
 	}
 
+	public JSONArray getArguments() {
+		return m_arguments;
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		final JSONObject ret = new JSONObject();
+		ret.put("name", m_name);
+		ret.put("args", m_arguments);
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return m_name + m_arguments;
+	}
 }
@@ -1,21 +1,68 @@
 package com.raccoonfink.deluge;
 
+import org.json.JSONObject;
+
 public class DelugeException extends Exception {
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * The JSON-RPC error code Deluge uses when the session is not
+	 * authenticated.
+	 */
+	public static final int AUTHENTICATION_ERROR = 1;
+
+	private final int m_code;
+
 	public DelugeException() {
+		m_code = -1;
 	}
 
 	public DelugeException(final String message) {
 		super(message);
+		m_code = -1;
+	}
+
+	public DelugeException(final String message, final int code) {
+		super(message);
+		m_code = code;
 	}
 
 	public DelugeException(final Throwable cause) {
 		super(cause);
+		m_code = -1;
 	}
 
 	public DelugeException(final String message, final Throwable cause) {
 		super(message, cause);
+		m_code = -1;
 	}
 
+	/**
+	 * Get the error code the server returned, or -1 if this error did not
+	 * come from the server.
+	 */
+	public int getCode() {
+		return m_code;
+	}
+
+	public boolean isAuthenticationError() {
+		return m_code == AUTHENTICATION_ERROR;
+	}
+
+	/**
+	 * Create an exception from the <code>error</code> object of a JSON-RPC
+	 * response.
+	 */
+	public static DelugeException fromError(final JSONObject error) {
+		final String message = error.optString("message");
+		final int code = error.optInt("code");
+		final StringBuilder builder = new StringBuilder("Error");
+		if (code >= 0) {
+			builder.append(" ").append(code);
+		}
+		if (message != null) {
+			builder.append(": ").append(message);
+		}
+		return new DelugeException(builder.toString(), code);
+	}
 }
@@ -0,0 +1,153 @@
+package com.raccoonfink.deluge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of an asynchronous Deluge request.  Besides blocking
+ * with {@link #get()}, callers can register a {@link DelugeCallback} which
+ * is invoked as soon as the request completes.
+ */
+public class DelugeFuture<T> implements Future<T> {
+	private T m_result;
+	private DelugeException m_exception;
+	private boolean m_done = false;
+	private boolean m_cancelled = false;
+	private final List<DelugeCallback<? super T>> m_callbacks = new ArrayList<DelugeCallback<? super T>>();
+
+	public boolean complete(final T result) {
+		final List<DelugeCallback<? super T>> callbacks;
+		synchronized (this) {
+			if (m_done) {
+				return false;
+			}
+			m_result = result;
+			callbacks = finish();
+		}
+		runCallbacks(callbacks, result, null);
+		return true;
+	}
+
+	public boolean fail(final DelugeException exception) {
+		final List<DelugeCallback<? super T>> callbacks;
+		synchronized (this) {
+			if (m_done) {
+				return false;
+			}
+			m_exception = exception;
+			callbacks = finish();
+		}
+		runCallbacks(callbacks, null, exception);
+		return true;
+	}
+
+	/**
+	 * Register a callback to be run when this future completes.  If it has
+	 * already completed, the callback is run immediately on this thread.
+	 */
+	public DelugeFuture<T> addCallback(final DelugeCallback<? super T> callback) {
+		synchronized (this) {
+			if (!m_done) {
+				m_callbacks.add(callback);
+				return this;
+			}
+		}
+		runCallbacks(Collections.<DelugeCallback<? super T>>singletonList(callback), m_result, m_exception);
+		return this;
+	}
+
+	/**
+	 * Cancel the request if it has not started yet.  Requests which are
+	 * already on the wire are allowed to finish; their result is discarded.
+	 */
+	public boolean cancel(final boolean mayInterruptIfRunning) {
+		final DelugeException exception = new DelugeException("Request was cancelled");
+		final List<DelugeCallback<? super T>> callbacks;
+		synchronized (this) {
+			if (m_done) {
+				return false;
+			}
+			m_cancelled = true;
+			m_exception = exception;
+			callbacks = finish();
+		}
+		runCallbacks(callbacks, null, exception);
+		return true;
+	}
+
+	public synchronized boolean isCancelled() {
+		return m_cancelled;
+	}
+
+	public synchronized boolean isDone() {
+		return m_done;
+	}
+
+	public synchronized T get() throws InterruptedException, ExecutionException {
+		while (!m_done) {
+			wait();
+		}
+		return getResult();
+	}
+
+	public synchronized T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!m_done) {
+			final long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				throw new TimeoutException();
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return getResult();
+	}
+
+	// called holding the lock; hands back the callbacks to run outside it
+	private List<DelugeCallback<? super T>> finish() {
+		m_done = true;
+		notifyAll();
+		final List<DelugeCallback<? super T>> callbacks = new ArrayList<DelugeCallback<? super T>>(m_callbacks);
+		m_callbacks.clear();
+		return callbacks;
+	}
+
+	/**
+	 * Run every callback, even if an earlier one throws.  The first
+	 * exception is rethrown once they have all run.
+	 */
+	private void runCallbacks(final List<DelugeCallback<? super T>> callbacks, final T result, final DelugeException exception) {
+		RuntimeException failure = null;
+		for (final DelugeCallback<? super T> callback : callbacks) {
+			try {
+				if (exception == null) {
+					callback.onSuccess(result);
+				} else {
+					callback.onFailure(exception);
+				}
+			} catch (final RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private T getResult() throws ExecutionException {
+		if (m_cancelled) {
+			throw new CancellationException();
+		}
+		if (m_exception != null) {
+			throw new ExecutionException(m_exception);
+		}
+		return m_result;
+	}
+}
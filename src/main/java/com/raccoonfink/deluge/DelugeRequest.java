@@ -1,27 +1,86 @@
 package com.raccoonfink.deluge;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 public class DelugeRequest {
+	// methods whose parameters include a password
+	private static final Set<String> SENSITIVE_METHODS = new HashSet<String>(Arrays.asList(
+			"auth.login",
+			"auth.change_password",
+			"web.add_host",
+			"web.edit_host"));
+
 	private final String m_method;
 	private final List<Object> m_params;
+	private volatile RequestTemplate m_template;
 
 	public DelugeRequest(final String method, final Object... params) {
 		m_method = method;
 		m_params = Arrays.asList(params);
 	}
 
-	public String toPostData(final int id) throws JSONException {
+	public String getMethod() {
+		return m_method;
+	}
+
+	public JSONObject toJSON(final int id) throws JSONException {
 		assert(id >= 0);
 		final JSONObject json = new JSONObject();
 		json.put("id", id);
 		json.put("method", m_method);
 		json.put("params", new JSONArray(m_params));
-		return json.toString();
+		return json;
+	}
+
+	public String toPostData(final int id) throws JSONException {
+		return toJSON(id).toString();
+	}
+
+	/**
+	 * Get the request with everything but the id serialized.  It is built
+	 * the first time it is asked for, so the parameters must not be
+	 * changed after the request has been sent.
+	 */
+	public RequestTemplate toTemplate() throws JSONException {
+		RequestTemplate template = m_template;
+		if (template == null) {
+			template = new RequestTemplate(m_method, new JSONArray(m_params));
+			m_template = template;
+		}
+		return template;
+	}
+
+	public byte[] toPostBody(final int id) throws JSONException {
+		return toTemplate().toPostBody(id);
+	}
+
+	/**
+	 * Describe the request for a log, leaving out the parameters of methods
+	 * which send credentials and cutting the rest off after
+	 * <code>maxLength</code> characters.
+	 */
+	public String toLogString(final int id, final int maxLength) {
+		if (SENSITIVE_METHODS.contains(m_method)) {
+			return "{\"id\":" + id + ",\"method\":\"" + m_method + "\",\"params\":\"[redacted]\"}";
+		}
+		try {
+			return truncate(toPostData(id), maxLength);
+		} catch (final JSONException e) {
+			return m_method + " (id " + id + "): " + e.getMessage();
+		}
+	}
+
+	static String truncate(final CharSequence text, final int maxLength) {
+		if (text.length() <= maxLength) {
+			return text.toString();
+		}
+		return text.subSequence(0, maxLength) + "... (" + (text.length() - maxLength) + " more characters)";
 	}
 }
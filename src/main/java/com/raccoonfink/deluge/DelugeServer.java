@@ -1,29 +1,52 @@
 package com.raccoonfink.deluge;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
 import java.net.CookieManager;
 import java.net.HttpCookie;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.net.SSLCertificateSocketFactory;
-
+import com.raccoonfink.deluge.http.BufferPool;
+import com.raccoonfink.deluge.http.ConnectionPool;
+import com.raccoonfink.deluge.http.CountingInputStream;
+import com.raccoonfink.deluge.http.HttpResponse;
+import com.raccoonfink.deluge.http.InflatingInputStream;
+import com.raccoonfink.deluge.http.DelugeTransport;
+import com.raccoonfink.deluge.http.OkHttpTransport;
+import com.raccoonfink.deluge.http.PooledHttpClient;
+import com.raccoonfink.deluge.http.RequestBody;
+import com.raccoonfink.deluge.http.SizeLimitedInputStream;
+import com.raccoonfink.deluge.http.StreamingTransport;
+import com.raccoonfink.deluge.json.JsonStreamReader;
+import com.raccoonfink.deluge.json.Utf8Reader;
+import com.raccoonfink.deluge.logging.NullWireLogger;
+import com.raccoonfink.deluge.logging.WireLogger;
+import com.raccoonfink.deluge.metrics.DelugeMetrics;
+import com.raccoonfink.deluge.metrics.MethodMetrics;
+import com.raccoonfink.deluge.metrics.RequestTimer;
+import com.raccoonfink.deluge.responses.BatchResponse;
 import com.raccoonfink.deluge.responses.CheckSessionResponse;
 import com.raccoonfink.deluge.responses.ConnectedResponse;
 import com.raccoonfink.deluge.responses.DeleteSessionResponse;
@@ -31,136 +54,698 @@ import com.raccoonfink.deluge.responses.DelugeResponse;
 import com.raccoonfink.deluge.responses.EventsResponse;
 import com.raccoonfink.deluge.responses.HostResponse;
 import com.raccoonfink.deluge.responses.LoginResponse;
+import com.raccoonfink.deluge.responses.TorrentFilesResponse;
+import com.raccoonfink.deluge.responses.TorrentPeersResponse;
+import com.raccoonfink.deluge.responses.TorrentStatusResponse;
 import com.raccoonfink.deluge.responses.UIResponse;
+import com.raccoonfink.deluge.ssl.TlsConfiguration;
 
+/**
+ * A client for the Deluge web UI's JSON-RPC interface.  One instance may
+ * be shared by any number of threads; they share its session and its
+ * connection pool.
+ */
 public class DelugeServer {
+	private static final List<String> EVENTS = Arrays.asList("ConfigValueChangedEvent",
+			"NewVersionAvailableEvent",
+			"PluginDisabledEvent",
+			"PluginEnabledEvent",
+			"PreTorrentRemovedEvent",
+			"SessionPausedEvent",
+			"SessionResumedEvent",
+			"SessionStartedEvent",
+			"TorrentAddedEvent",
+			"TorrentFileRenamedEvent",
+			"TorrentFinishedEvent",
+			"TorrentFolderRenamedEvent",
+			"TorrentQueueChangedEvent",
+			"TorrentRemovedEvent",
+			"TorrentResumedEvent",
+			"TorrentStateChangedEvent");
+
+	// requests without parameters, serialized once for everyone
+	private static final DelugeRequest LIST_METHODS = new DelugeRequest("system.listMethods");
+	private static final DelugeRequest CHECK_SESSION = new DelugeRequest("auth.check_session");
+	private static final DelugeRequest DELETE_SESSION = new DelugeRequest("auth.delete_session");
+	private static final DelugeRequest CONNECTED = new DelugeRequest("web.connected");
+	private static final DelugeRequest GET_HOSTS = new DelugeRequest("web.get_hosts");
+	private static final DelugeRequest DISCONNECT = new DelugeRequest("web.disconnect");
+	private static final DelugeRequest GET_EVENTS = new DelugeRequest("web.get_events");
+	private static final int MAX_UPDATE_UI_REQUESTS = 32;
+
 	private final URL m_url;
 	private final String m_password;
 
-	private int m_timeout;
+	private volatile int m_timeout;
+	private volatile long m_maxResponseSize = 0;
 
 	private final CookieManager m_cookieManager = new CookieManager();
-	private int m_counter = 0;
+	private volatile String m_cookieHeader = "";
+	private final AtomicInteger m_counter = new AtomicInteger();
+
+	private final Object m_loginLock = new Object();
+	private volatile int m_sessionGeneration = 0;
+	private volatile boolean m_autoLogin = true;
+
+	private final DelugeTransport m_transport;
+	private final boolean m_ownsTransport;
+	private volatile TlsConfiguration m_tlsConfiguration;
+
+	private volatile Boolean m_batchSupported = null;
+
+	private volatile WireLogger m_wireLogger = NullWireLogger.INSTANCE;
+	private volatile int m_maxLoggedBodyLength = 2048;
+
+	private final DelugeMetrics m_metrics = new DelugeMetrics();
+
+	// unfiltered web.update_ui requests by field set, since most callers poll the same fields over and over
+	private final ConcurrentMap<Set<Torrent.Field>,DelugeRequest> m_updateUIRequests = new ConcurrentHashMap<Set<Torrent.Field>,DelugeRequest>();
 
 	public DelugeServer(final String url, final String password) throws MalformedURLException {
+		this(url, password, (ConnectionPool) null);
+	}
+
+	/**
+	 * Create a server which leases its connections from the given pool, so
+	 * that several servers can share one set of keep-alive connections.
+	 * If <code>pool</code> is null, the server gets a pool of its own.
+	 */
+	public DelugeServer(final String url, final String password, final ConnectionPool pool) throws MalformedURLException {
+		m_url = toJsonURL(url);
+		m_password = password;
+
+		m_transport = new PooledHttpClient(pool == null ? new ConnectionPool() : pool);
+		m_ownsTransport = pool == null;
+		if ("https".equalsIgnoreCase(m_url.getProtocol())) {
+			// the web UI normally has a self-signed certificate
+			try {
+				setTlsConfiguration(TlsConfiguration.relaxed());
+			} catch (final DelugeException e) {
+				throw new IllegalStateException("Unable to set up TLS for " + m_url, e);
+			}
+		}
+	}
+
+	/**
+	 * Create a server which sends its requests through the given transport,
+	 * for example an {@link OkHttpTransport} to use HTTP/2.  The transport
+	 * may be shared, and is not closed by {@link #close()}.
+	 */
+	public DelugeServer(final String url, final String password, final DelugeTransport transport) throws MalformedURLException {
+		m_url = toJsonURL(url);
+		m_password = password;
+		m_transport = transport;
+		m_ownsTransport = false;
+	}
+
+	private static URL toJsonURL(final String url) throws MalformedURLException {
 		final StringBuilder sb = new StringBuilder(url);
 		if (!url.endsWith("/")) {
 			sb.append("/");
 		}
 		sb.append("json");
-		m_url = new URL(sb.toString());
-		m_password = password;
-
-		HttpURLConnection.setFollowRedirects(true);
+		return new URL(sb.toString());
 	}
 
 	public void setTimeout(final int timeout) {
 		m_timeout = timeout;
 	}
 
+	/**
+	 * Limit how large a (decompressed) response may be before the request
+	 * fails.  0, the default, means no limit.
+	 */
+	public void setMaxResponseSize(final long maxResponseSize) {
+		m_maxResponseSize = maxResponseSize;
+	}
+
+	public DelugeTransport getTransport() {
+		return m_transport;
+	}
+
+	/**
+	 * Get the connection pool, or null if this server isn't using the
+	 * default pooled transport.
+	 */
+	public ConnectionPool getConnectionPool() {
+		if (m_transport instanceof PooledHttpClient) {
+			return ((PooledHttpClient) m_transport).getConnectionPool();
+		}
+		return null;
+	}
+
+	public void setMaxConnectionsPerHost(final int maxConnections) {
+		getPooledConnections().setMaxConnectionsPerHost(maxConnections);
+	}
+
+	public void setIdleTimeout(final long idleTimeout) {
+		getPooledConnections().setIdleTimeout(idleTimeout);
+	}
+
+	/**
+	 * Choose how HTTPS connections are trusted.  The configuration keeps
+	 * one SSL context, so new connections can resume earlier TLS sessions
+	 * rather than doing a full handshake.  Pooled connections opened under
+	 * earlier settings are never reused; they are closed as they expire.
+	 * Only the default transport can
+	 * be configured this way; for an {@link OkHttpTransport}, see
+	 * {@link OkHttpTransport#OkHttpTransport(TlsConfiguration)}.
+	 */
+	public void setTlsConfiguration(final TlsConfiguration tlsConfiguration) throws DelugeException {
+		if (!(m_transport instanceof PooledHttpClient)) {
+			throw new IllegalStateException("TLS settings only apply to the default transport; configure " + m_transport + " directly");
+		}
+		final PooledHttpClient client = (PooledHttpClient) m_transport;
+		try {
+			client.setSSLSocketFactory(tlsConfiguration.getSocketFactory());
+		} catch (final GeneralSecurityException e) {
+			throw new DelugeException("Unable to create an SSL context for " + tlsConfiguration.getTrustStrategy() + " trust", e);
+		}
+		client.setHostnameVerifier(tlsConfiguration.getHostnameVerifier());
+		m_tlsConfiguration = tlsConfiguration;
+	}
+
+	/**
+	 * Get the TLS configuration of the default transport, or null if there
+	 * is none (plain HTTP or another transport).
+	 */
+	public TlsConfiguration getTlsConfiguration() {
+		return m_tlsConfiguration;
+	}
+
+	private ConnectionPool getPooledConnections() {
+		final ConnectionPool pool = getConnectionPool();
+		if (pool == null) {
+			throw new IllegalStateException("Connection pool settings only apply to the default transport; configure " + m_transport + " directly");
+		}
+		return pool;
+	}
+
+	/**
+	 * Get the per-method timings and byte counts of this server's requests.
+	 * To publish them over JMX, see
+	 * {@link com.raccoonfink.deluge.metrics.DelugeMetricsMBean}.
+	 */
+	public DelugeMetrics getMetrics() {
+		return m_metrics;
+	}
+
+	/**
+	 * Send a description of requests and responses to the given logger.
+	 * By default nothing is logged.
+	 */
+	public void setWireLogger(final WireLogger wireLogger) {
+		m_wireLogger = wireLogger == null ? NullWireLogger.INSTANCE : wireLogger;
+	}
+
+	public WireLogger getWireLogger() {
+		return m_wireLogger;
+	}
+
+	/**
+	 * Log a warning to the wire logger, if it is taking warnings.  The
+	 * pollers and pumps built on a server report their failures here.
+	 */
+	public void warn(final String message) {
+		log(WireLogger.Level.Warning, message);
+	}
+
+	/**
+	 * Limit how much of each body is logged at the
+	 * {@link WireLogger.Level#Body} level.
+	 */
+	public void setMaxLoggedBodyLength(final int maxLoggedBodyLength) {
+		m_maxLoggedBodyLength = maxLoggedBodyLength;
+	}
+
+	/**
+	 * Whether to log in again and replay the request when the server says
+	 * the session is no longer authenticated.  On by default.
+	 */
+	public void setAutoLogin(final boolean autoLogin) {
+		m_autoLogin = autoLogin;
+	}
+
+	/**
+	 * Get a number which goes up every time this server logs in
+	 * successfully.  Anything tied to the web session, like event
+	 * registrations, has to be redone when it changes.
+	 */
+	public int getSessionGeneration() {
+		return m_sessionGeneration;
+	}
+
 	public DelugeResponse makeRequest(final DelugeRequest delugeRequest) throws DelugeException {
-		System.err.println("URL: " + m_url);
+		final int generation = m_sessionGeneration;
+		try {
+			return sendRequest(delugeRequest);
+		} catch (final DelugeException e) {
+			if (!shouldLoginAgain(delugeRequest, e)) {
+				throw e;
+			}
+			loginAgain(generation);
+			return sendRequest(delugeRequest);
+		}
+	}
 
-		Integer connectionResponseCode = null;
-		JSONObject jsonResponse = null;
-		HttpURLConnection connection;
+	/**
+	 * Send a request whose parameters, a JSON array, are written by
+	 * <code>params</code> as the request goes out instead of being built in
+	 * memory first.  This is meant for large uploads; transports which
+	 * aren't a {@link StreamingTransport} still buffer the body.
+	 */
+	public DelugeResponse makeRequest(final String method, final RequestBody params) throws DelugeException {
+		final int generation = m_sessionGeneration;
 		try {
-			connection = (HttpURLConnection) m_url.openConnection();
-		} catch (final IOException e) {
+			return sendRequest(method, params);
+		} catch (final DelugeException e) {
+			if (!shouldLoginAgain(method, e)) {
+				throw e;
+			}
+			loginAgain(generation);
+			return sendRequest(method, params);
+		}
+	}
+
+	private DelugeResponse sendRequest(final DelugeRequest delugeRequest) throws DelugeException {
+		final int id = nextId();
+		final byte[] postData;
+		try {
+			postData = delugeRequest.toPostBody(id);
+		} catch (final JSONException e) {
 			throw new DelugeException(e);
 		}
+		logRequest(delugeRequest, id);
 
+		final RequestTimer timer = m_metrics.forMethod(delugeRequest.getMethod()).start();
+		boolean success = false;
 		try {
-			if (connection instanceof HttpsURLConnection) {
-				final HttpsURLConnection sslConnection = (HttpsURLConnection)connection;
-				sslConnection.setSSLSocketFactory(SSLCertificateSocketFactory.getInsecure(1000, null));
+			final HttpResponse httpResponse = post(postData, timer);
+			final JSONObject jsonResponse = toJSONObject(readResponse(httpResponse, timer));
+			timer.mark(MethodMetrics.Phase.Parse);
+
+			checkError(jsonResponse);
+			checkId(id, jsonResponse.optInt("id", -1));
+			success = true;
+			return new DelugeResponse(httpResponse.getResponseCode(), jsonResponse);
+		} finally {
+			timer.finish(success);
+		}
+	}
+
+	private DelugeResponse sendRequest(final String method, final RequestBody params) throws DelugeException {
+		final int id = nextId();
+		final RequestBody body;
+		try {
+			body = new StreamedRequestBody(method, params, id);
+		} catch (final UnsupportedEncodingException e) {
+			throw new DelugeException(e);
+		}
+		if (m_wireLogger.isEnabled(WireLogger.Level.Request)) {
+			log(WireLogger.Level.Request, "POST " + m_url + " " + method + " (id " + id + ", " + body.getContentLength() + " bytes streamed)");
+		}
+
+		final RequestTimer timer = m_metrics.forMethod(method).start();
+		boolean success = false;
+		try {
+			final HttpResponse httpResponse = post(body, timer);
+			final JSONObject jsonResponse = toJSONObject(readResponse(httpResponse, timer));
+			timer.mark(MethodMetrics.Phase.Parse);
+
+			checkError(jsonResponse);
+			checkId(id, jsonResponse.optInt("id", -1));
+			success = true;
+			return new DelugeResponse(httpResponse.getResponseCode(), jsonResponse);
+		} finally {
+			timer.finish(success);
+		}
+	}
+
+	/**
+	 * Send several requests at once.  They go out as a single JSON-RPC batch
+	 * if the web UI accepts those; otherwise they are pipelined over one
+	 * keep-alive connection.  Responses are matched to requests by id and
+	 * returned in request order.
+	 */
+	public BatchResponse makeBatchRequest(final List<DelugeRequest> requests) throws DelugeException {
+		final int generation = m_sessionGeneration;
+		final BatchResponse response = sendBatchRequest(requests);
+
+		final List<Integer> failed = new ArrayList<Integer>();
+		for (int i=0; i < response.size(); i++) {
+			if (!response.isSuccess(i) && shouldLoginAgain(requests.get(i), response.getError(i))) {
+				failed.add(i);
 			}
-			connection.setRequestMethod("POST");
-			connection.setRequestProperty("Accept", "application/json");
-			connection.setRequestProperty("Accept-Encoding", "compress;q=0.5, gzip;q=1.0");
-			connection.setRequestProperty("Content-Type", "application/json");
-			connection.setConnectTimeout(m_timeout);
-			connection.setReadTimeout(m_timeout);
-			connection.setUseCaches(false);
-			connection.setDoInput(true);
-
-			final String cookieHeader = getCookieHeader();
-			//System.err.println("Setting cookie: " + cookieHeader);
-			connection.setRequestProperty("Cookie", cookieHeader);
-
-			final String postData = delugeRequest.toPostData(m_counter++);
-			if (postData != null) {
-				System.err.println("POST: " + postData);
-				connection.setRequestProperty("Content-Length", String.valueOf(postData.getBytes("UTF-8").length));
-				connection.setDoOutput(true);
-
-				final DataOutputStream os = new DataOutputStream(connection.getOutputStream());
-				os.writeBytes(postData);
-				os.flush();
-				os.close();
+		}
+		if (failed.isEmpty()) {
+			return response;
+		}
+
+		loginAgain(generation);
+		final List<DelugeRequest> replay = new ArrayList<DelugeRequest>(failed.size());
+		for (final Integer index : failed) {
+			replay.add(requests.get(index));
+		}
+		final BatchResponse replayed = sendBatchRequest(replay);
+		for (int i=0; i < failed.size(); i++) {
+			response.setError(failed.get(i), replayed.getError(i));
+			if (replayed.isSuccess(i)) {
+				response.setResponse(failed.get(i), replayed.getResponse(i));
 			}
+		}
+		return response;
+	}
 
-			InputStream is = null;
-			InputStreamReader isr = null;
-			BufferedReader reader = null;
+	private BatchResponse sendBatchRequest(final List<DelugeRequest> requests) throws DelugeException {
+		final int[] ids = new int[requests.size()];
+		final JSONArray batch = new JSONArray();
+		try {
+			for (int i=0; i < ids.length; i++) {
+				ids[i] = nextId();
+				batch.put(requests.get(i).toJSON(ids[i]));
+				logRequest(requests.get(i), ids[i]);
+			}
+		} catch (final JSONException e) {
+			throw new DelugeException(e);
+		}
 
-			try {
-				is = connection.getInputStream();
-				if ("gzip".equals(connection.getContentEncoding()) || "compress".equals(connection.getContentEncoding())) {
-					isr = new InputStreamReader(new GZIPInputStream(is), "UTF-8");
-				} else if ("".equals(connection.getContentEncoding()) || connection.getContentEncoding() == null) {
-					isr = new InputStreamReader(is, "UTF-8");
-				} else {
-					System.err.println("WARNING: Unknown Content-Encoding: " + connection.getContentEncoding());
-					isr = new InputStreamReader(is, "UTF-8");
+		if (ids.length == 0) {
+			return new BatchResponse(0);
+		}
+
+		final RequestTimer timer = m_metrics.forMethod(DelugeMetrics.BATCH).start();
+		boolean success = false;
+		try {
+			final BatchResponse response = sendBatch(batch, ids, timer);
+			success = true;
+			return response;
+		} finally {
+			timer.finish(success);
+		}
+	}
+
+	private BatchResponse sendBatch(final JSONArray batch, final int[] ids, final RequestTimer timer) throws DelugeException {
+		if (m_batchSupported != Boolean.FALSE) {
+			final HttpResponse httpResponse = post(toBytes(batch.toString()), timer);
+			// an HTTP error fails the request like any other; it says nothing about batching
+			final Object result = readResponse(httpResponse, timer);
+			timer.mark(MethodMetrics.Phase.Parse);
+
+			if (result instanceof JSONArray) {
+				m_batchSupported = Boolean.TRUE;
+				final Map<Integer,JSONObject> responses = new HashMap<Integer,JSONObject>();
+				final JSONArray results = (JSONArray) result;
+				for (int i=0; i < results.length(); i++) {
+					final JSONObject response = results.optJSONObject(i);
+					if (response != null && response.has("id") && !response.isNull("id")) {
+						responses.put(response.optInt("id"), response);
+					}
 				}
+				return toBatchResponse(httpResponse.getResponseCode(), ids, responses);
+			}
 
-				reader = new BufferedReader(isr);
-				String line;
+			warn(m_url + " does not accept batch requests, falling back to pipelining.");
+			m_batchSupported = Boolean.FALSE;
+			return pipeline(batch, timer, true);
+		}
+
+		return pipeline(batch, timer, false);
+	}
 
-				final StringBuilder response = new StringBuilder(is.available());
-				while ((line = reader.readLine()) != null) {
-					//System.err.println("line = " + line);
-					response.append(line).append("\n");
+	/**
+	 * Send each request of the batch on its own, pipelined.  Connect and
+	 * first-byte times are recorded once per batch, unless
+	 * <code>batchSent</code> says they were already recorded for the batch
+	 * POST the server refused.
+	 */
+	private BatchResponse pipeline(final JSONArray batch, final RequestTimer timer, final boolean batchSent) throws DelugeException {
+		boolean headersRecorded = batchSent;
+		final int[] ids = new int[batch.length()];
+		final Map<Integer,JSONObject> responses = new HashMap<Integer,JSONObject>();
+		int responseCode = 200;
+		int sent = 0;
+		try {
+			final List<byte[]> bodies = new ArrayList<byte[]>(ids.length);
+			for (int i=0; i < ids.length; i++) {
+				final JSONObject request = batch.getJSONObject(i);
+				ids[i] = request.getInt("id");
+				final byte[] body = request.toString().getBytes("UTF-8");
+				timer.addRequestBytes(body.length);
+				bodies.add(body);
+			}
+
+			while (sent < bodies.size()) {
+				final List<HttpResponse> httpResponses = m_transport.postAll(m_url, createHeaders(), bodies.subList(sent, bodies.size()), m_timeout);
+				if (httpResponses.isEmpty()) {
+					// another round trip would not get any further
+					throw new DelugeException("No responses from " + m_url + " to " + (bodies.size() - sent) + " pipelined requests");
+				}
+				if (!headersRecorded) {
+					timer.headersReceived(httpResponses.get(0).getConnectTime());
+					headersRecorded = true;
 				}
-				System.err.println("Response: " + response.toString());
-				connectionResponseCode = connection.getResponseCode();
-				jsonResponse = new JSONObject(response.toString());
+				for (final HttpResponse httpResponse : httpResponses) {
+					responseCode = httpResponse.getResponseCode();
+					final JSONObject response = toJSONObject(readResponse(httpResponse, timer));
+					timer.mark(MethodMetrics.Phase.Parse);
+					responses.put(response.optInt("id"), response);
+				}
+				sent += httpResponses.size();
+			}
+		} catch (final IOException e) {
+			throw new DelugeException(e);
+		} catch (final JSONException e) {
+			throw new DelugeException(e);
+		}
+		return toBatchResponse(responseCode, ids, responses);
+	}
 
-				final Map<String, List<String>> headerFields = connection.getHeaderFields();
-				addCookies(headerFields.get("Set-Cookie"));
-			} finally {
-				closeQuietly(reader);
-				closeQuietly(is);
+	private static BatchResponse toBatchResponse(final int responseCode, final int[] ids, final Map<Integer,JSONObject> responses) {
+		final BatchResponse batchResponse = new BatchResponse(ids.length);
+		for (int i=0; i < ids.length; i++) {
+			final JSONObject response = responses.get(ids[i]);
+			try {
+				if (response == null) {
+					throw new DelugeException("No response to request with id " + ids[i]);
+				}
+				checkError(response);
+				batchResponse.setResponse(i, new DelugeResponse(responseCode, response));
+			} catch (final DelugeException e) {
+				batchResponse.setError(i, e);
 			}
+		}
+		return batchResponse;
+	}
+
+	/**
+	 * A request rejected for want of authentication never ran, so it is
+	 * safe to send again once we have logged in.
+	 */
+	private boolean shouldLoginAgain(final DelugeRequest request, final DelugeException e) {
+		return shouldLoginAgain(request.getMethod(), e);
+	}
+
+	private boolean shouldLoginAgain(final String method, final DelugeException e) {
+		return m_autoLogin && e.isAuthenticationError() && !method.startsWith("auth.");
+	}
+
+	/**
+	 * Log in again, unless another caller already has since
+	 * <code>generation</code> was read.  Callers which hit an expired
+	 * session at the same time share a single login.
+	 */
+	private void loginAgain(final int generation) throws DelugeException {
+		synchronized (m_loginLock) {
+			if (m_sessionGeneration != generation) {
+				return;
+			}
+			if (!login().isLoggedIn()) {
+				throw new DelugeException("Unable to log in to " + m_url + " again", DelugeException.AUTHENTICATION_ERROR);
+			}
+		}
+	}
+
+	private Map<String,String> createHeaders() {
+		final Map<String,String> headers = new LinkedHashMap<String,String>();
+		headers.put("Accept", "application/json");
+		headers.put("Accept-Encoding", "gzip;q=1.0, deflate;q=0.8, compress;q=0.5");
+		headers.put("Content-Type", "application/json");
+
+		final String cookieHeader = getCookieHeader();
+		if (cookieHeader != null && cookieHeader.length() > 0) {
+			headers.put("Cookie", cookieHeader);
+		}
+		return headers;
+	}
+
+	private HttpResponse post(final byte[] body, final RequestTimer timer) throws DelugeException {
+		try {
+			timer.addRequestBytes(body.length);
+			final HttpResponse httpResponse = m_transport.post(m_url, createHeaders(), body, m_timeout);
+			timer.headersReceived(httpResponse.getConnectTime());
+			return httpResponse;
+		} catch (final IOException e) {
+			throw new DelugeException(e);
+		}
+	}
+
+	private HttpResponse post(final RequestBody body, final RequestTimer timer) throws DelugeException {
+		if (!(m_transport instanceof StreamingTransport)) {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, body.getContentLength()));
+			try {
+				body.writeTo(bytes);
+			} catch (final IOException e) {
+				throw new DelugeException(e);
+			}
+			return post(bytes.toByteArray(), timer);
+		}
+		try {
+			timer.addRequestBytes(body.getContentLength());
+			final HttpResponse httpResponse = ((StreamingTransport) m_transport).post(m_url, createHeaders(), body, m_timeout);
+			timer.headersReceived(httpResponse.getConnectTime());
+			return httpResponse;
+		} catch (final IOException e) {
+			throw new DelugeException(e);
+		}
+	}
+
+	private InputStream openResponseStream(final HttpResponse httpResponse, final RequestTimer timer) throws IOException {
+		if (httpResponse.getResponseCode() >= 300 && httpResponse.getResponseCode() < 400) {
+			// a redirected POST would lose its body, so point at the new URL instead
+			throw new IOException("Server redirected " + m_url + " to " + httpResponse.getHeader("Location") + " (HTTP " + httpResponse.getResponseCode() + "); use that URL instead");
+		}
+		if (httpResponse.getResponseCode() >= 400) {
+			throw new IOException("Server returned HTTP response code: " + httpResponse.getResponseCode() + " for URL: " + m_url);
+		}
+
+		final CountingInputStream wire = new CountingInputStream(httpResponse.getBody());
+		InputStream is = wire;
+		final String contentEncoding = httpResponse.getContentEncoding();
+		if ("gzip".equals(contentEncoding) || "compress".equals(contentEncoding)) {
+			is = InflatingInputStream.gzip(is);
+		} else if ("deflate".equals(contentEncoding)) {
+			is = InflatingInputStream.deflate(is);
+		} else if (!"".equals(contentEncoding) && contentEncoding != null) {
+			warn("Unknown Content-Encoding from " + m_url + ": " + contentEncoding);
+		}
+		if (m_maxResponseSize > 0) {
+			is = new SizeLimitedInputStream(is, m_maxResponseSize, m_url.toString());
+		}
+		return new MeteredInputStream(is, wire, timer);
+	}
+
+	/**
+	 * Read and decode a response body.  The JSON is parsed straight off the
+	 * wire, unless the body is to be logged, in which case it is read into a
+	 * string first.
+	 */
+	private Object readResponse(final HttpResponse httpResponse, final RequestTimer timer) throws DelugeException {
+		JsonStreamReader reader = null;
+
+		try {
+			final InputStream is = openResponseStream(httpResponse, timer);
+			if (m_wireLogger.isEnabled(WireLogger.Level.Body)) {
+				final Utf8Reader utf8 = new Utf8Reader(is);
+				final StringBuilder response = new StringBuilder(Math.max(16, is.available()));
+				final char[] buffer = BufferPool.getChars();
+				try {
+					int count;
+					while ((count = utf8.read(buffer, 0, buffer.length)) != -1) {
+						response.append(buffer, 0, count);
+					}
+				} finally {
+					BufferPool.release(buffer);
+					closeQuietly(utf8);
+				}
+				timer.mark(MethodMetrics.Phase.Read);
+				logResponse(httpResponse, response);
+				reader = new JsonStreamReader(new StringReader(response.toString()));
+			} else {
+				logResponse(httpResponse, null);
+				reader = new JsonStreamReader(is);
+			}
+
+			final Object value = reader.readValue();
+			addCookies(httpResponse.getHeaders("Set-Cookie"));
+			return value;
 		} catch (final IOException e) {
 			throw new DelugeException(e);
 		} catch (final JSONException e) {
 			throw new DelugeException(e);
 		} finally {
-			if (connection != null) {
-				connection.disconnect();
-			}
+			closeQuietly(reader);
+			closeQuietly(httpResponse);
+		}
+	}
+
+	private JSONObject toJSONObject(final Object value) throws DelugeException {
+		if (value instanceof JSONObject) {
+			return (JSONObject) value;
+		}
+		throw new DelugeException("Expected a JSON object from " + m_url + " but got " + value);
+	}
+
+	private JsonStreamReader openResponseReader(final HttpResponse httpResponse, final RequestTimer timer) throws DelugeException {
+		try {
+			return new JsonStreamReader(openResponseStream(httpResponse, timer));
+		} catch (final IOException e) {
+			closeQuietly(httpResponse);
+			throw new DelugeException(e);
+		}
+	}
+
+	private void log(final WireLogger.Level level, final String message) {
+		final WireLogger logger = m_wireLogger;
+		if (logger.isEnabled(level)) {
+			logger.log(level, message);
+		}
+	}
+
+	private void logRequest(final DelugeRequest request, final int id) {
+		final WireLogger logger = m_wireLogger;
+		if (logger.isEnabled(WireLogger.Level.Body)) {
+			logger.log(WireLogger.Level.Body, "POST " + m_url + " " + request.toLogString(id, m_maxLoggedBodyLength));
+		} else if (logger.isEnabled(WireLogger.Level.Request)) {
+			logger.log(WireLogger.Level.Request, "POST " + m_url + " " + request.getMethod() + " (id " + id + ")");
 		}
+	}
+
+	private void logResponse(final HttpResponse httpResponse, final CharSequence body) {
+		final WireLogger logger = m_wireLogger;
+		if (body != null && logger.isEnabled(WireLogger.Level.Body)) {
+			logger.log(WireLogger.Level.Body, "Response " + httpResponse.getResponseCode() + " from " + m_url + " " + DelugeRequest.truncate(body, m_maxLoggedBodyLength));
+		} else if (logger.isEnabled(WireLogger.Level.Request)) {
+			logger.log(WireLogger.Level.Request, "Response " + httpResponse.getResponseCode() + " from " + m_url + (body == null ? "" : " (" + body.length() + " characters)"));
+		}
+	}
 
+	private int nextId() {
+		// stay non-negative when the counter wraps
+		return m_counter.getAndIncrement() & Integer.MAX_VALUE;
+	}
+
+	private void checkId(final int expected, final int actual) throws DelugeException {
+		if (expected != actual) {
+			throw new DelugeException("Response from " + m_url + " has id " + actual + " but the request had id " + expected);
+		}
+	}
+
+	private static void checkError(final JSONObject jsonResponse) throws DelugeException {
 		try {
 			if (jsonResponse.has("error") && !jsonResponse.isNull("error")) {
-				final JSONObject error = jsonResponse.getJSONObject("error");
-				final String message = error.optString("message");
-				final int code = error.optInt("code");
-				final StringBuilder builder = new StringBuilder("Error");
-				if (code >= 0) {
-					builder.append(" ").append(code);
-				}
-				if (message != null) {
-					builder.append(": ").append(message);
-				}
-				throw new DelugeException(builder.toString());
+				throw DelugeException.fromError(jsonResponse.getJSONObject("error"));
 			}
 		} catch (final JSONException e) {
 			throw new DelugeException(e);
 		}
-		return new DelugeResponse(connectionResponseCode, jsonResponse);
+	}
+
+	private static byte[] toBytes(final String data) throws DelugeException {
+		try {
+			return data.getBytes("UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new DelugeException(e);
+		}
 	}
 
 	private static final void closeQuietly(final Closeable c) {
@@ -173,80 +758,85 @@ public class DelugeServer {
 		}
 	}
 
+	/**
+	 * Get the Cookie header for the next request.  This is a snapshot
+	 * rebuilt only when the server sends new cookies, so readers never
+	 * lock.
+	 */
 	private String getCookieHeader() {
-		final List<HttpCookie> cookies = m_cookieManager.getCookieStore().getCookies();
-		if (cookies == null) {
-			return null;
-		}
-		final StringBuilder builder = new StringBuilder();
-		String separator = "";
-		for (int i=0; i < cookies.size(); i++) {
-			builder.append(separator).append(cookies.get(i));
-			separator = ",";
-		}
-		return builder.toString();
+		return m_cookieHeader;
 	}
 
 	private void addCookies(final List<String> cookies) {
-		if (cookies == null) {
+		if (cookies == null || cookies.isEmpty()) {
 			return;
 		}
-		for (final String cookie : cookies) {
-			//System.err.println("Response contained cookie: " + cookie);
-			m_cookieManager.getCookieStore().add(null, HttpCookie.parse(cookie).get(0));
+		synchronized (m_cookieManager) {
+			for (final String cookie : cookies) {
+				m_cookieManager.getCookieStore().add(null, HttpCookie.parse(cookie).get(0));
+			}
+
+			final List<HttpCookie> stored = m_cookieManager.getCookieStore().getCookies();
+			final StringBuilder builder = new StringBuilder();
+			String separator = "";
+			for (int i=0; i < stored.size(); i++) {
+				builder.append(separator).append(stored.get(i));
+				separator = ",";
+			}
+			m_cookieHeader = builder.toString();
+		}
+	}
+
+	/**
+	 * Close any pooled connections, unless the pool or transport was passed in.
+	 */
+	public void close() {
+		if (m_ownsTransport) {
+			m_transport.close();
 		}
 	}
 
 	public DelugeResponse listMethods() throws DelugeException {
-		return makeRequest(new DelugeRequest("system.listMethods"));
+		return makeRequest(LIST_METHODS);
 	}
 
 	public CheckSessionResponse checkSession() throws DelugeException {
-		final DelugeResponse response = makeRequest(new DelugeRequest("auth.check_session"));
+		final DelugeResponse response = makeRequest(CHECK_SESSION);
 		return new CheckSessionResponse(response.getResponseCode(), response.getResponseData());
 	}
 
 	public LoginResponse login() throws DelugeException {
-		final DelugeRequest request = new DelugeRequest("auth.login", m_password);
-		final DelugeResponse response = makeRequest(request);
-		return new LoginResponse(response.getResponseCode(), response.getResponseData());
+		synchronized (m_loginLock) {
+			final DelugeRequest request = new DelugeRequest("auth.login", m_password);
+			final DelugeResponse response = makeRequest(request);
+			final LoginResponse loginResponse = new LoginResponse(response.getResponseCode(), response.getResponseData());
+			if (loginResponse.isLoggedIn()) {
+				m_sessionGeneration++;
+			}
+			return loginResponse;
+		}
 	}
 
 	public DeleteSessionResponse deleteSession() throws DelugeException {
-		final DelugeResponse response = makeRequest(new DelugeRequest("auth.delete_session"));
+		final DelugeResponse response = makeRequest(DELETE_SESSION);
 		return new DeleteSessionResponse(response.getResponseCode(), response.getResponseData());
 	}
 
 	public void registerEventListeners() throws DelugeException {
-		final List<String> events = Arrays.asList("ConfigValueChangedEvent",
-				"NewVersionAvailableEvent",
-				"PluginDisabledEvent",
-				"PluginEnabledEvent",
-				"PreTorrentRemovedEvent",
-				"SessionPausedEvent",
-				"SessionResumedEvent",
-				"SessionStartedEvent",
-				"TorrentAddedEvent",
-				"TorrentFileRenamedEvent",
-				"TorrentFinishedEvent",
-				"TorrentFolderRenamedEvent",
-				"TorrentQueueChangedEvent",
-				"TorrentRemovedEvent",
-				"TorrentResumedEvent",
-				"TorrentStateChangedEvent");
-
-		for (final String event : events) {
-			makeRequest(new DelugeRequest("web.register_event_listener", event));
+		final List<DelugeRequest> requests = new ArrayList<DelugeRequest>(EVENTS.size());
+		for (final String event : EVENTS) {
+			requests.add(new DelugeRequest("web.register_event_listener", event));
 		}
+		makeBatchRequest(requests).getResponses();
 	}
 
 	public ConnectedResponse isConnected() throws DelugeException {
-		final DelugeResponse response = makeRequest(new DelugeRequest("web.connected"));
+		final DelugeResponse response = makeRequest(CONNECTED);
 		return new ConnectedResponse(response.getResponseCode(), response.getResponseData());
 	}
 
 	public HostResponse getHosts() throws DelugeException {
-		final DelugeResponse response = makeRequest(new DelugeRequest("web.get_hosts"));
+		final DelugeResponse response = makeRequest(GET_HOSTS);
 		return new HostResponse(response.getResponseCode(), response.getResponseData(), false);
 	}
 
@@ -264,8 +854,27 @@ public class DelugeServer {
 		}
 	}
 
+	/**
+	 * Connect to a daemon and register for events in a single batch, rather
+	 * than one round trip per call.
+	 */
+	public ConnectedResponse connectAndRegisterEventListeners(final String id) throws DelugeException {
+		final List<DelugeRequest> requests = new ArrayList<DelugeRequest>(EVENTS.size() + 1);
+		requests.add(new DelugeRequest("web.connect", id));
+		for (final String event : EVENTS) {
+			requests.add(new DelugeRequest("web.register_event_listener", event));
+		}
+		final List<DelugeResponse> responses = makeBatchRequest(requests).getResponses();
+		final DelugeResponse response = responses.get(0);
+		if (response.getResponseData().isNull("result")) {
+			return new ConnectedResponse(response.getResponseCode(), response.getResponseData(), true);
+		} else {
+			return new ConnectedResponse(response.getResponseCode(), response.getResponseData());
+		}
+	}
+
 	public ConnectedResponse disconnect() throws DelugeException {
-		final DelugeResponse response = makeRequest(new DelugeRequest("web.disconnect"));
+		final DelugeResponse response = makeRequest(DISCONNECT);
 		if (response.getResponseData().isNull("result")) {
 			return new ConnectedResponse(response.getResponseCode(), response.getResponseData(), false);
 		} else {
@@ -274,36 +883,190 @@ public class DelugeServer {
 	}
 
 	public EventsResponse getEvents() throws DelugeException {
-		final DelugeResponse response = makeRequest(new DelugeRequest("web.get_events"));
+		final DelugeResponse response = makeRequest(GET_EVENTS);
 		return new EventsResponse(response.getResponseCode(), response.getResponseData());
 	}
 
+	/**
+	 * Get the files of one torrent, uncached.  See {@link TorrentDetailCache}
+	 * for repeated lookups.
+	 */
+	public TorrentFilesResponse getTorrentFiles(final String id) throws DelugeException {
+		final DelugeResponse response = makeRequest(new DelugeRequest("web.get_torrent_files", id));
+		return new TorrentFilesResponse(response.getResponseCode(), response.getResponseData());
+	}
+
+	/**
+	 * Get the connected peers of one torrent, through
+	 * <code>core.get_torrent_status</code>, uncached.
+	 */
+	public TorrentPeersResponse getTorrentPeers(final String id) throws DelugeException {
+		final DelugeResponse response = makeRequest(new DelugeRequest("core.get_torrent_status", id, new JSONArray().put("peers")));
+		return new TorrentPeersResponse(response.getResponseCode(), response.getResponseData());
+	}
+
+	/**
+	 * Get every {@link Torrent.Field} of one torrent through
+	 * <code>web.get_torrent_status</code>, uncached.
+	 */
+	public TorrentStatusResponse getTorrentStatus(final String id) throws DelugeException {
+		final JSONArray keys = new JSONArray();
+		for (final Torrent.Field field : Torrent.Field.values()) {
+			keys.put(field.getKey());
+		}
+		final DelugeResponse response = makeRequest(new DelugeRequest("web.get_torrent_status", id, keys));
+		return new TorrentStatusResponse(response.getResponseCode(), response.getResponseData(), id);
+	}
+
 	public UIResponse updateUI() throws DelugeException {
-		final DelugeResponse response = makeRequest(new DelugeRequest("web.update_ui", new JSONArray(Arrays.asList(
-				"queue",
-				"name",
-				"total_size",
-				"state",
-				"progress",
-				"num_seeds",
-				"total_seeds",
-				"num_peers",
-				"total_peers",
-				"download_payload_rate",
-				"upload_payload_rate",
-				"eta",
-				"ratio",
-				"distributed_copies",
-				"is_auto_managed",
-				"time_added",
-				"tracker_host",
-				"save_path",
-				"total_done",
-				"total_uploaded",
-				"max_download_speed",
-				"max_upload_speed",
-				"seeds_peers_ratio"
-				)), new JSONObject()));
-		return new UIResponse(response.getResponseCode(), response.getResponseData());
+		return updateUI(EnumSet.allOf(Torrent.Field.class));
+	}
+
+	/**
+	 * Poll <code>web.update_ui</code> for just the given torrent fields.  The
+	 * returned torrents throw {@link IllegalStateException} from the getters
+	 * of any field that was not requested.
+	 */
+	public UIResponse updateUI(final Set<Torrent.Field> fields) throws DelugeException {
+		return updateUI(fields, null);
+	}
+
+	public UIResponse updateUI(final TorrentFilter filter) throws DelugeException {
+		return updateUI(EnumSet.allOf(Torrent.Field.class), filter);
+	}
+
+	/**
+	 * Poll <code>web.update_ui</code> for the given fields of the torrents
+	 * matching <code>filter</code>.  Torrents which stop matching simply
+	 * drop out of the response.
+	 */
+	public UIResponse updateUI(final Set<Torrent.Field> fields, final TorrentFilter filter) throws DelugeException {
+		final int generation = m_sessionGeneration;
+		try {
+			return sendUpdateUI(fields, filter);
+		} catch (final DelugeException e) {
+			if (!m_autoLogin || !e.isAuthenticationError()) {
+				throw e;
+			}
+			loginAgain(generation);
+			return sendUpdateUI(fields, filter);
+		}
+	}
+
+	private UIResponse sendUpdateUI(final Set<Torrent.Field> fields, final TorrentFilter filter) throws DelugeException {
+		final int id = nextId();
+		final DelugeRequest request = getUpdateUIRequest(fields, filter);
+		final byte[] postData;
+		try {
+			postData = request.toPostBody(id);
+		} catch (final JSONException e) {
+			throw new DelugeException(e);
+		}
+		logRequest(request, id);
+
+		final RequestTimer timer = m_metrics.forMethod("web.update_ui").start();
+		boolean success = false;
+		try {
+			final HttpResponse httpResponse = post(postData, timer);
+			// the body is decoded as it streams in, so only the status is logged
+			logResponse(httpResponse, null);
+			final JsonStreamReader reader = openResponseReader(httpResponse, timer);
+			try {
+				final UIResponse response = UIResponse.decode(httpResponse.getResponseCode(), reader, fields);
+				// reading and decoding overlap, so it all counts as parsing
+				timer.mark(MethodMetrics.Phase.Parse);
+				checkId(id, response.getId());
+				addCookies(httpResponse.getHeaders("Set-Cookie"));
+				success = true;
+				return response;
+			} finally {
+				closeQuietly(reader);
+				closeQuietly(httpResponse);
+			}
+		} finally {
+			timer.finish(success);
+		}
+	}
+
+	private DelugeRequest getUpdateUIRequest(final Set<Torrent.Field> fields, final TorrentFilter filter) throws DelugeException {
+		// filters are mutable, so only unfiltered requests are kept
+		DelugeRequest request = filter == null ? m_updateUIRequests.get(fields) : null;
+		if (request != null) {
+			return request;
+		}
+
+		final JSONArray keys = new JSONArray();
+		for (final Torrent.Field field : Torrent.Field.values()) {
+			if (fields.contains(field)) {
+				keys.put(field.getKey());
+			}
+		}
+		try {
+			request = new DelugeRequest("web.update_ui", keys, filter == null ? new JSONObject() : filter.toJSON());
+			request.toTemplate();
+		} catch (final JSONException e) {
+			throw new DelugeException(e);
+		}
+
+		if (filter == null) {
+			if (m_updateUIRequests.size() >= MAX_UPDATE_UI_REQUESTS) {
+				m_updateUIRequests.clear();
+			}
+			m_updateUIRequests.put(fields.isEmpty() ? EnumSet.noneOf(Torrent.Field.class) : EnumSet.copyOf(fields), request);
+		}
+		return request;
+	}
+
+	/**
+	 * A JSON-RPC request around streamed parameters.
+	 */
+	private static final class StreamedRequestBody implements RequestBody {
+		private final byte[] m_prefix;
+		private final RequestBody m_params;
+		private final byte[] m_suffix;
+
+		public StreamedRequestBody(final String method, final RequestBody params, final int id) throws UnsupportedEncodingException {
+			m_prefix = ("{\"method\":" + JSONObject.quote(method) + ",\"params\":").getBytes("UTF-8");
+			m_params = params;
+			m_suffix = (",\"id\":" + id + "}").getBytes("UTF-8");
+		}
+
+		public long getContentLength() {
+			return m_prefix.length + m_params.getContentLength() + m_suffix.length;
+		}
+
+		public void writeTo(final OutputStream out) throws IOException {
+			out.write(m_prefix);
+			m_params.writeTo(out);
+			out.write(m_suffix);
+		}
+	}
+
+	/**
+	 * Reports how many bytes of a response were read, before and after
+	 * decompression, when it is closed.
+	 */
+	private static final class MeteredInputStream extends CountingInputStream {
+		private final CountingInputStream m_wire;
+		private final RequestTimer m_timer;
+		private boolean m_reported = false;
+
+		public MeteredInputStream(final InputStream in, final CountingInputStream wire, final RequestTimer timer) {
+			super(in);
+			m_wire = wire;
+			m_timer = timer;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (!m_reported) {
+					m_reported = true;
+					m_timer.addResponseBytes(m_wire.getCount(), getCount());
+				}
+			}
+		}
 	}
 }
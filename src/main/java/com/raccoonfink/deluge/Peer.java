@@ -0,0 +1,82 @@
+package com.raccoonfink.deluge;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A peer of a torrent, from the <code>peers</code> key of
+ * <code>core.get_torrent_status</code>.
+ */
+public class Peer {
+	private final String m_ip;
+	private final String m_client;
+	private final String m_country;
+	private final long m_downSpeed;
+	private final long m_upSpeed;
+	private final double m_progress;
+	private final boolean m_seed;
+
+	public Peer(final JSONObject data) {
+		m_ip = data.optString("ip");
+		m_client = data.optString("client");
+		m_country = data.optString("country");
+		m_downSpeed = data.optLong("down_speed");
+		m_upSpeed = data.optLong("up_speed");
+		m_progress = data.optDouble("progress", 0);
+		// libtorrent's seed flag comes through as a number on older servers
+		final Object seed = data.opt("seed");
+		if (seed instanceof Number) {
+			m_seed = ((Number) seed).intValue() != 0;
+		} else {
+			m_seed = data.optBoolean("seed");
+		}
+	}
+
+	/**
+	 * The peer's address, as <code>host:port</code>.
+	 */
+	public String getIp() {
+		return m_ip;
+	}
+
+	public String getClient() {
+		return m_client;
+	}
+
+	public String getCountry() {
+		return m_country;
+	}
+
+	public long getDownSpeed() {
+		return m_downSpeed;
+	}
+
+	public long getUpSpeed() {
+		return m_upSpeed;
+	}
+
+	public double getProgress() {
+		return m_progress;
+	}
+
+	public boolean isSeed() {
+		return m_seed;
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		final JSONObject ret = new JSONObject();
+		ret.put("ip", m_ip);
+		ret.put("client", m_client);
+		ret.put("country", m_country);
+		ret.put("down_speed", m_downSpeed);
+		ret.put("up_speed", m_upSpeed);
+		ret.put("progress", m_progress);
+		ret.put("seed", m_seed);
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return "Peer[" + m_ip + ", " + m_client + "]";
+	}
+}
@@ -0,0 +1,286 @@
+package com.raccoonfink.deluge;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.raccoonfink.deluge.metrics.HistogramSnapshot;
+import com.raccoonfink.deluge.metrics.LatencyHistogram;
+import com.raccoonfink.deluge.responses.DelugeResponse;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+/**
+ * Runs a server's requests by priority.  Each {@link Priority} has its own
+ * queue and its own limit on requests in flight, under an overall limit;
+ * whenever a slot frees up, the highest priority request that its class
+ * limit allows goes next.  As long as the bulk and background limits add
+ * up to less than the overall limit, some slots are always left for
+ * interactive and control requests, so a click never waits behind a
+ * large <code>web.update_ui</code> poll.
+ *
+ * How long requests wait for a slot is recorded per priority.
+ *
+ * A free slot is no use if its request then waits for a connection, so
+ * with the default transport, give the server at least as many
+ * connections per host as the scheduler has slots:
+ *
+ * <pre>
+ * server.setMaxConnectionsPerHost(scheduler.getMaxInFlight());
+ * </pre>
+ *
+ * The scheduler leaves that to the caller, since the pool may be shared.
+ */
+public class RequestScheduler {
+	public static enum Priority {
+		/** Something a user is waiting on, like pausing a torrent. */
+		Interactive,
+		/** Session and connection management. */
+		Control,
+		/** Polls for torrent status. */
+		Bulk_Poll,
+		/** Anything else which can wait. */
+		Background
+	}
+
+	private static final Set<String> INTERACTIVE_METHODS = new HashSet<String>();
+	static {
+		for (final String method : new String[] {
+				"core.add_torrent_file",
+				"core.add_torrent_magnet",
+				"core.add_torrent_url",
+				"core.force_recheck",
+				"core.force_reannounce",
+				"core.move_storage",
+				"core.pause_torrent",
+				"core.queue_bottom",
+				"core.queue_down",
+				"core.queue_top",
+				"core.queue_up",
+				"core.remove_torrent",
+				"core.rename_files",
+				"core.resume_torrent",
+				"core.set_torrent_options" }) {
+			INTERACTIVE_METHODS.add(method);
+		}
+	}
+
+	private final DelugeServer m_server;
+	private final Executor m_executor;
+	private final ExecutorService m_ownedExecutor;
+	private final int m_maxInFlight;
+
+	private final Map<Priority,Queue<Task<?>>> m_pending = new EnumMap<Priority,Queue<Task<?>>>(Priority.class);
+	private final Map<Priority,Integer> m_limits = new EnumMap<Priority,Integer>(Priority.class);
+	private final Map<Priority,Integer> m_inFlight = new EnumMap<Priority,Integer>(Priority.class);
+	private final Map<Priority,LatencyHistogram> m_queueTimes = new EnumMap<Priority,LatencyHistogram>(Priority.class);
+	private int m_totalInFlight = 0;
+
+	public RequestScheduler(final DelugeServer server) {
+		this(server, 8);
+	}
+
+	/**
+	 * Schedule requests on a thread pool of <code>maxInFlight</code>
+	 * threads.  Bulk polls and background requests are limited to a
+	 * quarter of that each.
+	 */
+	public RequestScheduler(final DelugeServer server, final int maxInFlight) {
+		this(server, DelugeDispatcher.createExecutor(maxInFlight, "deluge-scheduler-"), maxInFlight, true);
+	}
+
+	public RequestScheduler(final DelugeServer server, final Executor executor, final int maxInFlight) {
+		this(server, executor, maxInFlight, false);
+	}
+
+	private RequestScheduler(final DelugeServer server, final Executor executor, final int maxInFlight, final boolean owned) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight must be at least 1");
+		}
+		m_server = server;
+		m_executor = executor;
+		m_ownedExecutor = owned ? (ExecutorService) executor : null;
+		m_maxInFlight = maxInFlight;
+		for (final Priority priority : Priority.values()) {
+			m_pending.put(priority, new LinkedList<Task<?>>());
+			m_inFlight.put(priority, 0);
+			m_queueTimes.put(priority, new LatencyHistogram());
+		}
+		m_limits.put(Priority.Interactive, maxInFlight);
+		m_limits.put(Priority.Control, maxInFlight);
+		m_limits.put(Priority.Bulk_Poll, Math.max(1, maxInFlight / 4));
+		m_limits.put(Priority.Background, Math.max(1, maxInFlight / 4));
+	}
+
+	/**
+	 * Pick a priority for a request from its method: torrent actions are
+	 * interactive, status polls are bulk, event polls are background, and
+	 * everything else is control.
+	 */
+	public static Priority getPriority(final String method) {
+		if (INTERACTIVE_METHODS.contains(method)) {
+			return Priority.Interactive;
+		} else if ("web.update_ui".equals(method) || "core.get_torrents_status".equals(method)) {
+			return Priority.Bulk_Poll;
+		} else if ("web.get_events".equals(method)) {
+			return Priority.Background;
+		}
+		return Priority.Control;
+	}
+
+	public DelugeServer getServer() {
+		return m_server;
+	}
+
+	public int getMaxInFlight() {
+		return m_maxInFlight;
+	}
+
+	public synchronized int getLimit(final Priority priority) {
+		return m_limits.get(priority);
+	}
+
+	/**
+	 * Set how many requests of the given priority may be in flight at once.
+	 */
+	public void setLimit(final Priority priority, final int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("The limit must be at least 1");
+		}
+		synchronized (this) {
+			m_limits.put(priority, limit);
+		}
+		// a higher limit may let queued requests start
+		startPending();
+	}
+
+	public synchronized int getInFlightCount(final Priority priority) {
+		return m_inFlight.get(priority);
+	}
+
+	public synchronized int getPendingCount(final Priority priority) {
+		return m_pending.get(priority).size();
+	}
+
+	/**
+	 * Get how long requests of the given priority have waited to start, in
+	 * microseconds.
+	 */
+	public HistogramSnapshot getQueueTime(final Priority priority) {
+		return m_queueTimes.get(priority).getSnapshot();
+	}
+
+	public void resetQueueTimes() {
+		for (final LatencyHistogram histogram : m_queueTimes.values()) {
+			histogram.reset();
+		}
+	}
+
+	public <T> DelugeFuture<T> submit(final Priority priority, final Callable<T> callable) {
+		final Task<T> task = new Task<T>(priority, callable);
+		synchronized (this) {
+			m_pending.get(priority).add(task);
+		}
+		startPending();
+		return task.m_future;
+	}
+
+	public DelugeFuture<DelugeResponse> makeRequestAsync(final DelugeRequest request) {
+		return makeRequestAsync(getPriority(request.getMethod()), request);
+	}
+
+	public DelugeFuture<DelugeResponse> makeRequestAsync(final Priority priority, final DelugeRequest request) {
+		return submit(priority, new Callable<DelugeResponse>() {
+			public DelugeResponse call() throws DelugeException {
+				return m_server.makeRequest(request);
+			}
+		});
+	}
+
+	public DelugeFuture<UIResponse> updateUIAsync(final Set<Torrent.Field> fields, final TorrentFilter filter) {
+		return submit(Priority.Bulk_Poll, new Callable<UIResponse>() {
+			public UIResponse call() throws DelugeException {
+				return m_server.updateUI(fields, filter);
+			}
+		});
+	}
+
+	private void startPending() {
+		while (true) {
+			final Task<?> next;
+			synchronized (this) {
+				next = takeNext();
+				if (next == null) {
+					return;
+				}
+			}
+			m_queueTimes.get(next.m_priority).recordNanos(System.nanoTime() - next.m_submitted);
+			try {
+				m_executor.execute(next);
+			} catch (final RejectedExecutionException e) {
+				// give the slot back and carry on, failing the rest of the queue in turn
+				release(next.m_priority);
+				next.reject(e);
+			}
+		}
+	}
+
+	/**
+	 * Take the highest priority pending task which may start now, and count
+	 * it as in flight.
+	 */
+	private Task<?> takeNext() {
+		if (m_totalInFlight >= m_maxInFlight) {
+			return null;
+		}
+		for (final Priority priority : Priority.values()) {
+			final Queue<Task<?>> pending = m_pending.get(priority);
+			final int inFlight = m_inFlight.get(priority);
+			if (!pending.isEmpty() && inFlight < m_limits.get(priority)) {
+				m_inFlight.put(priority, inFlight + 1);
+				m_totalInFlight++;
+				return pending.poll();
+			}
+		}
+		return null;
+	}
+
+	private synchronized void release(final Priority priority) {
+		m_inFlight.put(priority, m_inFlight.get(priority) - 1);
+		m_totalInFlight--;
+	}
+
+	private void finished(final Priority priority) {
+		release(priority);
+		startPending();
+	}
+
+	private final class Task<T> extends DelugeDispatcher.Task<T> {
+		private final Priority m_priority;
+		private final long m_submitted = System.nanoTime();
+
+		Task(final Priority priority, final Callable<T> callable) {
+			super(callable);
+			m_priority = priority;
+		}
+
+		void finished() {
+			RequestScheduler.this.finished(m_priority);
+		}
+	}
+
+	/**
+	 * Shut down the executor if this scheduler created it.
+	 */
+	public void shutdown() {
+		if (m_ownedExecutor != null) {
+			m_ownedExecutor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.raccoonfink.deluge;
+
+import java.io.UnsupportedEncodingException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A request body serialized once, as UTF-8, with only the id left to fill
+ * in.  {@link #toPostBody(int)} then costs a single array copy instead of
+ * building and printing a JSON tree.
+ */
+public class RequestTemplate {
+	private static final byte[] SUFFIX = { '}' };
+
+	private final String m_method;
+	private final byte[] m_prefix;
+
+	public RequestTemplate(final String method, final JSONArray params) throws JSONException {
+		m_method = method;
+		try {
+			m_prefix = ("{\"method\":" + JSONObject.quote(method) + ",\"params\":" + params.toString() + ",\"id\":").getBytes("UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not supported", e);
+		}
+	}
+
+	public String getMethod() {
+		return m_method;
+	}
+
+	public byte[] toPostBody(final int id) {
+		assert(id >= 0);
+		final int digits = digits(id);
+		final byte[] body = new byte[m_prefix.length + digits + SUFFIX.length];
+		System.arraycopy(m_prefix, 0, body, 0, m_prefix.length);
+		int value = id;
+		for (int i = m_prefix.length + digits - 1; i >= m_prefix.length; i--) {
+			body[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		System.arraycopy(SUFFIX, 0, body, m_prefix.length + digits, SUFFIX.length);
+		return body;
+	}
+
+	private static int digits(final int value) {
+		int digits = 1;
+		for (int remaining = value / 10; remaining > 0; remaining /= 10) {
+			digits++;
+		}
+		return digits;
+	}
+}
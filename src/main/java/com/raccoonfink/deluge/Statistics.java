@@ -1,14 +1,18 @@
 package com.raccoonfink.deluge;
 
+import java.io.IOException;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.raccoonfink.deluge.json.JsonStreamReader;
+
 public class Statistics {
 
 	private int m_dhtNodes;
 	private int m_downloadProtocolRate;
 	private int m_downloadRate;
-	private int m_freeSpace;
+	private long m_freeSpace;
 	private boolean m_incomingConnections;
 	private double m_maxDownload;
 	private int m_maxNumConnections;
@@ -21,7 +25,7 @@ public class Statistics {
 		m_dhtNodes = stats.optInt("dht_nodes");
 		m_downloadProtocolRate = stats.optInt("download_protocol_rate");
 		m_downloadRate = stats.optInt("download_rate");
-		m_freeSpace = stats.optInt("free_space");
+		m_freeSpace = stats.optLong("free_space");
 		m_incomingConnections = stats.optBoolean("has_incoming_connections");
 		m_maxDownload = stats.optDouble("max_download");
 		m_maxNumConnections = stats.optInt("max_num_connections");
@@ -31,6 +35,42 @@ public class Statistics {
 		m_uploadRate = stats.optInt("upload_rate");
 	}
 
+	public Statistics(final JsonStreamReader reader) throws IOException, JSONException {
+		m_maxDownload = Double.NaN;
+		m_maxUpload = Double.NaN;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			if ("dht_nodes".equals(name)) {
+				m_dhtNodes = reader.optInt();
+			} else if ("download_protocol_rate".equals(name)) {
+				m_downloadProtocolRate = reader.optInt();
+			} else if ("download_rate".equals(name)) {
+				m_downloadRate = reader.optInt();
+			} else if ("free_space".equals(name)) {
+				m_freeSpace = reader.optLong();
+			} else if ("has_incoming_connections".equals(name)) {
+				m_incomingConnections = reader.optBoolean();
+			} else if ("max_download".equals(name)) {
+				m_maxDownload = reader.optDouble();
+			} else if ("max_num_connections".equals(name)) {
+				m_maxNumConnections = reader.optInt();
+			} else if ("max_upload".equals(name)) {
+				m_maxUpload = reader.optDouble();
+			} else if ("num_connections".equals(name)) {
+				m_numConnections = reader.optInt();
+			} else if ("upload_protocol_rate".equals(name)) {
+				m_uploadProtocolRate = reader.optInt();
+			} else if ("upload_rate".equals(name)) {
+				m_uploadRate = reader.optInt();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
 	public int getDHTNodes() {
 		return m_dhtNodes;
 	}
@@ -40,7 +80,7 @@ public class Statistics {
 	public int getDownloadRate() {
 		return m_downloadRate;
 	}
-	public int getFreeSpace() {
+	public long getFreeSpace() {
 		return m_freeSpace;
 	}
 	public boolean hasIncomingConnections() {
@@ -1,8 +1,17 @@
 package com.raccoonfink.deluge;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.raccoonfink.deluge.json.JsonStreamReader;
+
 public class Torrent implements Comparable<Torrent> {
 	public static enum State {
 		Queued,
@@ -12,10 +21,66 @@ public class Torrent implements Comparable<Torrent> {
 		Finished,
 		Seeding,
 		Allocating,
-		Checking_Resume_Data
+		Checking_Resume_Data,
+		Paused,
+		Error,
+		Moving
+	}
+
+	public static enum Field {
+		Queue("queue"),
+		Name("name"),
+		Total_Size("total_size"),
+		State("state"),
+		Progress("progress"),
+		Num_Seeds("num_seeds"),
+		Total_Seeds("total_seeds"),
+		Num_Peers("num_peers"),
+		Total_Peers("total_peers"),
+		Download_Payload_Rate("download_payload_rate"),
+		Upload_Payload_Rate("upload_payload_rate"),
+		Eta("eta"),
+		Ratio("ratio"),
+		Distributed_Copies("distributed_copies"),
+		Is_Auto_Managed("is_auto_managed"),
+		Time_Added("time_added"),
+		Tracker_Host("tracker_host"),
+		Save_Path("save_path"),
+		Total_Done("total_done"),
+		Total_Uploaded("total_uploaded"),
+		Max_Download_Speed("max_download_speed"),
+		Max_Upload_Speed("max_upload_speed"),
+		Seeds_Peers_Ratio("seeds_peers_ratio");
+
+		private static final Map<String,Field> s_fields = new HashMap<String,Field>();
+		static {
+			for (final Field field : values()) {
+				s_fields.put(field.getKey(), field);
+			}
+			// older servers misspell this one
+			s_fields.put("seeds_peer_ratio", Seeds_Peers_Ratio);
+		}
+
+		private final String m_key;
+
+		private Field(final String key) {
+			m_key = key;
+		}
+
+		public static Field forKey(final String key) {
+			return s_fields.get(key);
+		}
+
+		/**
+		 * The name Deluge uses for this field in <code>web.update_ui</code>.
+		 */
+		public String getKey() {
+			return m_key;
+		}
 	}
 
 	private final String m_key;
+	private final Set<Field> m_loaded;
 	private double m_distributedCopies;
 	private long m_downloadPayloadRate;
 	private long m_eta;
@@ -42,6 +107,7 @@ public class Torrent implements Comparable<Torrent> {
 
 	public Torrent(final String key, final JSONObject data) {
 		m_key = key;
+		m_loaded = EnumSet.allOf(Field.class);
 		m_distributedCopies = data.optDouble("distributed_copies");
 		m_downloadPayloadRate = data.optLong("download_payload_rate");
 		m_eta = data.optLong("eta");
@@ -55,7 +121,7 @@ public class Torrent implements Comparable<Torrent> {
 		m_queue = data.optLong("queue");
 		m_ratio = data.optDouble("ratio");
 		m_savePath = data.optString("save_path");
-		m_seedsPeerRatio = data.optDouble("seeds_peer_ratio");
+		m_seedsPeerRatio = data.optDouble(Field.Seeds_Peers_Ratio.getKey(), data.optDouble("seeds_peer_ratio"));
 		m_timeAdded = data.optDouble("time_added");
 		m_totalDone = data.optLong("total_done");
 		m_totalPeers = data.optLong("total_peers");
@@ -65,13 +131,123 @@ public class Torrent implements Comparable<Torrent> {
 		m_trackerHost = data.optString("tracker_host");
 		m_uploadPayloadRate = data.optLong("upload_payload_rate");
 
-		final String state = data.optString("state");
+		m_state = toState(data.optString("state"));
+	}
+
+	public Torrent(final String key, final JsonStreamReader reader) throws IOException, JSONException {
+		this(key, reader, EnumSet.allOf(Field.class));
+	}
+
+	/**
+	 * Read a torrent from the stream, decoding only the given fields.  The
+	 * getters for any other field will throw {@link IllegalStateException}.
+	 */
+	public Torrent(final String key, final JsonStreamReader reader, final Set<Field> fields) throws IOException, JSONException {
+		m_key = key;
+		m_loaded = fields.isEmpty() ? EnumSet.noneOf(Field.class) : EnumSet.copyOf(fields);
+		m_distributedCopies = Double.NaN;
+		m_progress = Double.NaN;
+		m_ratio = Double.NaN;
+		m_seedsPeerRatio = Double.NaN;
+		m_timeAdded = Double.NaN;
+		m_name = m_loaded.contains(Field.Name) ? "" : null;
+		m_savePath = m_loaded.contains(Field.Save_Path) ? "" : null;
+		m_trackerHost = m_loaded.contains(Field.Tracker_Host) ? "" : null;
+		String state = "";
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final Field field = Field.forKey(reader.nextName());
+			if (field == null || !m_loaded.contains(field)) {
+				reader.skipValue();
+				continue;
+			}
+			switch (field) {
+				case Queue:
+					m_queue = reader.optLong();
+					break;
+				case Name:
+					m_name = reader.optString();
+					break;
+				case Total_Size:
+					m_totalSize = reader.optLong();
+					break;
+				case State:
+					state = reader.optString();
+					break;
+				case Progress:
+					m_progress = reader.optDouble();
+					break;
+				case Num_Seeds:
+					m_numSeeds = reader.optLong();
+					break;
+				case Total_Seeds:
+					m_totalSeeds = reader.optLong();
+					break;
+				case Num_Peers:
+					m_numPeers = reader.optLong();
+					break;
+				case Total_Peers:
+					m_totalPeers = reader.optLong();
+					break;
+				case Download_Payload_Rate:
+					m_downloadPayloadRate = reader.optLong();
+					break;
+				case Upload_Payload_Rate:
+					m_uploadPayloadRate = reader.optLong();
+					break;
+				case Eta:
+					m_eta = reader.optLong();
+					break;
+				case Ratio:
+					m_ratio = reader.optDouble();
+					break;
+				case Distributed_Copies:
+					m_distributedCopies = reader.optDouble();
+					break;
+				case Is_Auto_Managed:
+					m_autoManaged = reader.optBoolean();
+					break;
+				case Time_Added:
+					m_timeAdded = reader.optDouble();
+					break;
+				case Tracker_Host:
+					m_trackerHost = reader.optString();
+					break;
+				case Save_Path:
+					m_savePath = reader.optString();
+					break;
+				case Total_Done:
+					m_totalDone = reader.optLong();
+					break;
+				case Total_Uploaded:
+					m_totalUploaded = reader.optLong();
+					break;
+				case Max_Download_Speed:
+					m_maxDownloadSpeed = reader.optLong();
+					break;
+				case Max_Upload_Speed:
+					m_maxUploadSpeed = reader.optLong();
+					break;
+				case Seeds_Peers_Ratio:
+					m_seedsPeerRatio = reader.optDouble();
+					break;
+			}
+		}
+		reader.endObject();
+
+		if (m_loaded.contains(Field.State)) {
+			m_state = toState(state);
+		}
+	}
+
+	public static State toState(final String state) {
 		if ("Downloading Metadata".equals(state)) {
-			m_state = State.Downloading_Metadata;
+			return State.Downloading_Metadata;
 		} else if ("Checking Resume Data".equals(state)) {
-			m_state = State.Checking_Resume_Data;
+			return State.Checking_Resume_Data;
 		} else {
-			m_state = State.valueOf(state);
+			return State.valueOf(state);
 		}
 	}
 
@@ -79,130 +255,296 @@ public class Torrent implements Comparable<Torrent> {
 		return m_key;
 	}
 
+	public boolean isLoaded(final Field field) {
+		return m_loaded.contains(field);
+	}
+
+	public Set<Field> getLoadedFields() {
+		return Collections.unmodifiableSet(m_loaded);
+	}
+
+	private void checkLoaded(final Field field) {
+		if (!m_loaded.contains(field)) {
+			throw new IllegalStateException("Field " + field + " was not loaded for torrent " + m_key);
+		}
+	}
+
 	public double getDistributedCopies() {
+		checkLoaded(Field.Distributed_Copies);
 		return m_distributedCopies;
 	}
 
 	public long getDownloadPayloadRate() {
+		checkLoaded(Field.Download_Payload_Rate);
 		return m_downloadPayloadRate;
 	}
 
 	public long getEta() {
+		checkLoaded(Field.Eta);
 		return m_eta;
 	}
 
 	public boolean isAutoManaged() {
+		checkLoaded(Field.Is_Auto_Managed);
 		return m_autoManaged;
 	}
 
 	public long getMaxDownloadSpeed() {
+		checkLoaded(Field.Max_Download_Speed);
 		return m_maxDownloadSpeed;
 	}
 
 	public long getMaxUploadSpeed() {
+		checkLoaded(Field.Max_Upload_Speed);
 		return m_maxUploadSpeed;
 	}
 
 	public String getName() {
+		checkLoaded(Field.Name);
 		return m_name;
 	}
 
 	public long getNumPeers() {
+		checkLoaded(Field.Num_Peers);
 		return m_numPeers;
 	}
 
 	public long getNumSeeds() {
+		checkLoaded(Field.Num_Seeds);
 		return m_numSeeds;
 	}
 
 	public double getProgress() {
+		checkLoaded(Field.Progress);
 		return m_progress;
 	}
 
 	public long getQueue() {
+		checkLoaded(Field.Queue);
 		return m_queue;
 	}
 
 	public double getRatio() {
+		checkLoaded(Field.Ratio);
 		return m_ratio;
 	}
 
 	public String getSavePath() {
+		checkLoaded(Field.Save_Path);
 		return m_savePath;
 	}
 
 	public double getSeedsPeerRatio() {
+		checkLoaded(Field.Seeds_Peers_Ratio);
 		return m_seedsPeerRatio;
 	}
 
 	public double getTimeAdded() {
+		checkLoaded(Field.Time_Added);
 		return m_timeAdded;
 	}
 
 	public long getTotalDone() {
+		checkLoaded(Field.Total_Done);
 		return m_totalDone;
 	}
 
 	public long getTotalPeers() {
+		checkLoaded(Field.Total_Peers);
 		return m_totalPeers;
 	}
 
 	public long getTotalSeeds() {
+		checkLoaded(Field.Total_Seeds);
 		return m_totalSeeds;
 	}
 
 	public long getTotalSize() {
+		checkLoaded(Field.Total_Size);
 		return m_totalSize;
 	}
 
 	public long getTotalUploaded() {
+		checkLoaded(Field.Total_Uploaded);
 		return m_totalUploaded;
 	}
 
 	public String getTrackerHost() {
+		checkLoaded(Field.Tracker_Host);
 		return m_trackerHost;
 	}
 
 	public long getUploadPayloadRate() {
+		checkLoaded(Field.Upload_Payload_Rate);
 		return m_uploadPayloadRate;
 	}
 
 	public State getState() {
+		checkLoaded(Field.State);
 		return m_state;
 	}
 
+	/**
+	 * Get the fields whose values differ between this torrent and
+	 * <code>other</code>, presumably an older copy of the same torrent.
+	 * Only fields loaded in both are compared.
+	 */
+	public Set<Field> getChangedFields(final Torrent other) {
+		final Set<Field> changed = EnumSet.noneOf(Field.class);
+		for (final Field field : m_loaded) {
+			if (other.m_loaded.contains(field) && !isSame(field, other)) {
+				changed.add(field);
+			}
+		}
+		return changed;
+	}
+
+	private boolean isSame(final Field field, final Torrent other) {
+		switch (field) {
+			case Queue:
+				return m_queue == other.m_queue;
+			case Name:
+				return equal(m_name, other.m_name);
+			case Total_Size:
+				return m_totalSize == other.m_totalSize;
+			case State:
+				return m_state == other.m_state;
+			case Progress:
+				return Double.compare(m_progress, other.m_progress) == 0;
+			case Num_Seeds:
+				return m_numSeeds == other.m_numSeeds;
+			case Total_Seeds:
+				return m_totalSeeds == other.m_totalSeeds;
+			case Num_Peers:
+				return m_numPeers == other.m_numPeers;
+			case Total_Peers:
+				return m_totalPeers == other.m_totalPeers;
+			case Download_Payload_Rate:
+				return m_downloadPayloadRate == other.m_downloadPayloadRate;
+			case Upload_Payload_Rate:
+				return m_uploadPayloadRate == other.m_uploadPayloadRate;
+			case Eta:
+				return m_eta == other.m_eta;
+			case Ratio:
+				return Double.compare(m_ratio, other.m_ratio) == 0;
+			case Distributed_Copies:
+				return Double.compare(m_distributedCopies, other.m_distributedCopies) == 0;
+			case Is_Auto_Managed:
+				return m_autoManaged == other.m_autoManaged;
+			case Time_Added:
+				return Double.compare(m_timeAdded, other.m_timeAdded) == 0;
+			case Tracker_Host:
+				return equal(m_trackerHost, other.m_trackerHost);
+			case Save_Path:
+				return equal(m_savePath, other.m_savePath);
+			case Total_Done:
+				return m_totalDone == other.m_totalDone;
+			case Total_Uploaded:
+				return m_totalUploaded == other.m_totalUploaded;
+			case Max_Download_Speed:
+				return m_maxDownloadSpeed == other.m_maxDownloadSpeed;
+			case Max_Upload_Speed:
+				return m_maxUploadSpeed == other.m_maxUploadSpeed;
+			case Seeds_Peers_Ratio:
+				return Double.compare(m_seedsPeerRatio, other.m_seedsPeerRatio) == 0;
+			default:
+				return true;
+		}
+	}
+
+	private static boolean equal(final Object a, final Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
 	public int compareTo(final Torrent torrent) {
-		return this.getName().compareTo(torrent.getName());
+		// names may not have been loaded, so fall back to the key to keep
+		// distinct torrents distinct
+		if (m_name != null && torrent.m_name != null) {
+			final int ret = m_name.compareTo(torrent.m_name);
+			if (ret != 0) {
+				return ret;
+			}
+		} else if (m_name != null) {
+			return 1;
+		} else if (torrent.m_name != null) {
+			return -1;
+		}
+		return m_key.compareTo(torrent.m_key);
 	}
 
 	public JSONObject toJSON() throws JSONException {
 		final JSONObject ret = new JSONObject();
 		ret.put("key", m_key);
-		ret.put("distributed_copies", m_distributedCopies);
-		ret.put("download_payload_rate", m_downloadPayloadRate);
-		ret.put("eta", m_eta);
-		ret.put("auto_managed", m_autoManaged);
-		ret.put("max_download_speed", m_maxDownloadSpeed);
-		ret.put("max_upload_speed", m_maxUploadSpeed);
-		ret.put("name", m_name);
-		ret.put("num_peers", m_numPeers);
-		ret.put("num_seeds", m_numSeeds);
-		ret.put("progress", m_progress);
-		ret.put("queue", m_queue);
-		ret.put("ratio", m_ratio);
-		ret.put("save_path", m_savePath);
-		ret.put("seeds_peer_ratio", m_seedsPeerRatio);
-		ret.put("time_added", m_timeAdded);
-		ret.put("total_done", m_totalDone);
-		ret.put("total_peers", m_totalPeers);
-		ret.put("total_seeds", m_totalSeeds);
-		ret.put("total_size", m_totalSize);
-		ret.put("total_uploaded", m_totalUploaded);
-		ret.put("tracker_host", m_trackerHost);
-		ret.put("upload_payload_rate", m_uploadPayloadRate);
-		ret.put("state", m_state);
+		if (m_loaded.contains(Field.Distributed_Copies)) {
+			ret.put("distributed_copies", m_distributedCopies);
+		}
+		if (m_loaded.contains(Field.Download_Payload_Rate)) {
+			ret.put("download_payload_rate", m_downloadPayloadRate);
+		}
+		if (m_loaded.contains(Field.Eta)) {
+			ret.put("eta", m_eta);
+		}
+		if (m_loaded.contains(Field.Is_Auto_Managed)) {
+			ret.put("auto_managed", m_autoManaged);
+		}
+		if (m_loaded.contains(Field.Max_Download_Speed)) {
+			ret.put("max_download_speed", m_maxDownloadSpeed);
+		}
+		if (m_loaded.contains(Field.Max_Upload_Speed)) {
+			ret.put("max_upload_speed", m_maxUploadSpeed);
+		}
+		if (m_loaded.contains(Field.Name)) {
+			ret.put("name", m_name);
+		}
+		if (m_loaded.contains(Field.Num_Peers)) {
+			ret.put("num_peers", m_numPeers);
+		}
+		if (m_loaded.contains(Field.Num_Seeds)) {
+			ret.put("num_seeds", m_numSeeds);
+		}
+		if (m_loaded.contains(Field.Progress)) {
+			ret.put("progress", m_progress);
+		}
+		if (m_loaded.contains(Field.Queue)) {
+			ret.put("queue", m_queue);
+		}
+		if (m_loaded.contains(Field.Ratio)) {
+			ret.put("ratio", m_ratio);
+		}
+		if (m_loaded.contains(Field.Save_Path)) {
+			ret.put("save_path", m_savePath);
+		}
+		if (m_loaded.contains(Field.Seeds_Peers_Ratio)) {
+			ret.put("seeds_peer_ratio", m_seedsPeerRatio);
+		}
+		if (m_loaded.contains(Field.Time_Added)) {
+			ret.put("time_added", m_timeAdded);
+		}
+		if (m_loaded.contains(Field.Total_Done)) {
+			ret.put("total_done", m_totalDone);
+		}
+		if (m_loaded.contains(Field.Total_Peers)) {
+			ret.put("total_peers", m_totalPeers);
+		}
+		if (m_loaded.contains(Field.Total_Seeds)) {
+			ret.put("total_seeds", m_totalSeeds);
+		}
+		if (m_loaded.contains(Field.Total_Size)) {
+			ret.put("total_size", m_totalSize);
+		}
+		if (m_loaded.contains(Field.Total_Uploaded)) {
+			ret.put("total_uploaded", m_totalUploaded);
+		}
+		if (m_loaded.contains(Field.Tracker_Host)) {
+			ret.put("tracker_host", m_trackerHost);
+		}
+		if (m_loaded.contains(Field.Upload_Payload_Rate)) {
+			ret.put("upload_payload_rate", m_uploadPayloadRate);
+		}
+		if (m_loaded.contains(Field.State)) {
+			ret.put("state", m_state);
+		}
 		return ret;
 	}
 
 }
-
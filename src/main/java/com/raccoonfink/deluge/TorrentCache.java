@@ -0,0 +1,93 @@
+package com.raccoonfink.deluge;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.raccoonfink.deluge.responses.UIResponse;
+
+/**
+ * A long-lived view of a server's torrents, keyed by hash.  Each
+ * <code>web.update_ui</code> snapshot is applied as a delta, so consumers
+ * only need to look at what was added, removed or changed.  When polling
+ * with a {@link TorrentFilter}, torrents which stop matching the filter
+ * are reported as removed.
+ */
+public class TorrentCache {
+	private Map<String,Torrent> m_torrents = new HashMap<String,Torrent>();
+	private Statistics m_statistics;
+	private boolean m_connected = false;
+	private long m_updates = 0;
+
+	/**
+	 * Apply a snapshot and return what changed.  A snapshot taken while the
+	 * web UI was not connected to a daemon says nothing about the torrents,
+	 * so it leaves them as they were and returns an empty delta.
+	 */
+	public synchronized TorrentDelta update(final UIResponse response) {
+		m_connected = response.isConnected();
+		m_updates++;
+		if (!m_connected) {
+			return new TorrentDelta();
+		}
+		m_statistics = response.getStatistics();
+
+		final TorrentDelta delta = new TorrentDelta();
+		final Map<String,Torrent> current = new HashMap<String,Torrent>(Math.max(16, response.getTorrents().size() * 4 / 3 + 1));
+		for (final Torrent torrent : response.getTorrents()) {
+			final Torrent old = m_torrents.remove(torrent.getKey());
+			current.put(torrent.getKey(), torrent);
+			if (old == null) {
+				delta.added(torrent);
+			} else {
+				final Set<Torrent.Field> changed = torrent.getChangedFields(old);
+				if (!changed.isEmpty()) {
+					delta.changed(new TorrentDelta.Change(old, torrent, changed));
+				}
+			}
+		}
+
+		// whatever is left over wasn't in this snapshot
+		for (final Torrent removed : m_torrents.values()) {
+			delta.removed(removed);
+		}
+		m_torrents = current;
+		return delta;
+	}
+
+	public synchronized Torrent get(final String key) {
+		return m_torrents.get(key);
+	}
+
+	public synchronized boolean contains(final String key) {
+		return m_torrents.containsKey(key);
+	}
+
+	public synchronized Collection<Torrent> getTorrents() {
+		return new ArrayList<Torrent>(m_torrents.values());
+	}
+
+	public synchronized int size() {
+		return m_torrents.size();
+	}
+
+	public synchronized Statistics getStatistics() {
+		return m_statistics;
+	}
+
+	public synchronized boolean isConnected() {
+		return m_connected;
+	}
+
+	public synchronized long getUpdateCount() {
+		return m_updates;
+	}
+
+	public synchronized void clear() {
+		m_torrents.clear();
+		m_statistics = null;
+		m_connected = false;
+	}
+}
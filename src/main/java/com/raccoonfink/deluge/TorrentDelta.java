@@ -0,0 +1,88 @@
+package com.raccoonfink.deluge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What changed between two consecutive <code>web.update_ui</code> polls,
+ * as computed by a {@link TorrentCache}.
+ */
+public class TorrentDelta {
+	public static class Change {
+		private final Torrent m_previous;
+		private final Torrent m_current;
+		private final Set<Torrent.Field> m_changedFields;
+
+		public Change(final Torrent previous, final Torrent current, final Set<Torrent.Field> changedFields) {
+			m_previous = previous;
+			m_current = current;
+			m_changedFields = Collections.unmodifiableSet(changedFields);
+		}
+
+		public String getKey() {
+			return m_current.getKey();
+		}
+
+		public Torrent getPrevious() {
+			return m_previous;
+		}
+
+		public Torrent getCurrent() {
+			return m_current;
+		}
+
+		public Set<Torrent.Field> getChangedFields() {
+			return m_changedFields;
+		}
+
+		public boolean isChanged(final Torrent.Field field) {
+			return m_changedFields.contains(field);
+		}
+	}
+
+	private final List<Torrent> m_added = new ArrayList<Torrent>();
+	private final List<Torrent> m_removed = new ArrayList<Torrent>();
+	private final List<Change> m_changed = new ArrayList<Change>();
+
+	void added(final Torrent torrent) {
+		m_added.add(torrent);
+	}
+
+	void removed(final Torrent torrent) {
+		m_removed.add(torrent);
+	}
+
+	void changed(final Change change) {
+		m_changed.add(change);
+	}
+
+	public List<Torrent> getAdded() {
+		return Collections.unmodifiableList(m_added);
+	}
+
+	/**
+	 * The last known state of each torrent which has disappeared.
+	 */
+	public List<Torrent> getRemoved() {
+		return Collections.unmodifiableList(m_removed);
+	}
+
+	public List<Change> getChanged() {
+		return Collections.unmodifiableList(m_changed);
+	}
+
+	public boolean isEmpty() {
+		return m_added.isEmpty() && m_removed.isEmpty() && m_changed.isEmpty();
+	}
+
+	public int size() {
+		return m_added.size() + m_removed.size() + m_changed.size();
+	}
+
+	@Override
+	public String toString() {
+		return "TorrentDelta[added=" + m_added.size() + ", removed=" + m_removed.size() + ", changed=" + m_changed.size() + "]";
+	}
+}
@@ -0,0 +1,359 @@
+package com.raccoonfink.deluge;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.raccoonfink.deluge.events.DelugeEventListener;
+import com.raccoonfink.deluge.events.PreTorrentRemovedEvent;
+import com.raccoonfink.deluge.events.SessionPausedEvent;
+import com.raccoonfink.deluge.events.SessionResumedEvent;
+import com.raccoonfink.deluge.events.SessionStartedEvent;
+import com.raccoonfink.deluge.events.TorrentAddedEvent;
+import com.raccoonfink.deluge.events.TorrentEvent;
+import com.raccoonfink.deluge.events.TorrentFileRenamedEvent;
+import com.raccoonfink.deluge.events.TorrentFinishedEvent;
+import com.raccoonfink.deluge.events.TorrentFolderRenamedEvent;
+import com.raccoonfink.deluge.events.TorrentQueueChangedEvent;
+import com.raccoonfink.deluge.events.TorrentRemovedEvent;
+import com.raccoonfink.deluge.events.TorrentResumedEvent;
+import com.raccoonfink.deluge.events.TorrentStateChangedEvent;
+import com.raccoonfink.deluge.polling.PollListener;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+/**
+ * Caches the per-torrent details a UI asks for when a torrent is opened:
+ * its full status, its files and its peers.  Each group has its own time
+ * to live, and the least recently used entries are evicted once their
+ * estimated size passes a limit.
+ * <p>
+ * Register the cache with an {@link com.raccoonfink.deluge.events.EventPump}
+ * and/or a {@link com.raccoonfink.deluge.polling.PollScheduler} so entries
+ * are dropped as soon as the torrent changes, rather than when they
+ * expire.
+ */
+public class TorrentDetailCache implements DelugeEventListener, PollListener {
+	public static enum Group {
+		Status,
+		Files,
+		Peers
+	}
+
+	// rough per-object overheads, in bytes, for weighing entries
+	private static final int STATUS_WEIGHT = 512;
+	private static final int FILE_WEIGHT = 96;
+	private static final int PEER_WEIGHT = 128;
+
+	private final DelugeServer m_server;
+	private final long[] m_ttls = new long[Group.values().length];
+	private long m_maxWeight = 4 * 1024 * 1024;
+	private long m_weight = 0;
+
+	private final LinkedHashMap<Key,Entry> m_entries = new LinkedHashMap<Key,Entry>(16, 0.75f, true);
+	// fetches in flight; an invalidation removes the key so a stale answer is not stored
+	private final Map<Key,Object> m_pending = new HashMap<Key,Object>();
+
+	private long m_hits = 0;
+	private long m_misses = 0;
+	private long m_evictions = 0;
+
+	public TorrentDetailCache(final DelugeServer server) {
+		m_server = server;
+		m_ttls[Group.Status.ordinal()] = 5000;
+		m_ttls[Group.Files.ordinal()] = 30000;
+		m_ttls[Group.Peers.ordinal()] = 5000;
+	}
+
+	/**
+	 * Set how long entries of the given group are kept, in milliseconds.
+	 * Zero disables caching of the group.
+	 */
+	public synchronized void setTtl(final Group group, final long ttl) {
+		m_ttls[group.ordinal()] = Math.max(0, ttl);
+	}
+
+	public synchronized long getTtl(final Group group) {
+		return m_ttls[group.ordinal()];
+	}
+
+	/**
+	 * Set the estimated size, in bytes, the cached details may take up.
+	 */
+	public synchronized void setMaxWeight(final long maxWeight) {
+		m_maxWeight = maxWeight;
+		evict();
+	}
+
+	public synchronized long getMaxWeight() {
+		return m_maxWeight;
+	}
+
+	public synchronized long getWeight() {
+		return m_weight;
+	}
+
+	/**
+	 * Get the torrent's full status, or <code>null</code> if the server
+	 * does not know it.
+	 */
+	public Torrent getStatus(final String id) throws DelugeException {
+		return (Torrent) get(id, Group.Status);
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<TorrentFile> getFiles(final String id) throws DelugeException {
+		return (List<TorrentFile>) get(id, Group.Files);
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<Peer> getPeers(final String id) throws DelugeException {
+		return (List<Peer>) get(id, Group.Peers);
+	}
+
+	public synchronized void invalidate(final String id) {
+		for (final Group group : Group.values()) {
+			invalidate(id, group);
+		}
+	}
+
+	public synchronized void invalidate(final String id, final Group group) {
+		final Key key = new Key(id, group);
+		m_pending.remove(key);
+		final Entry entry = m_entries.remove(key);
+		if (entry != null) {
+			m_weight -= entry.m_weight;
+		}
+	}
+
+	/**
+	 * Drop the given group for every torrent.
+	 */
+	public synchronized void invalidate(final Group group) {
+		for (final Iterator<Key> it = m_pending.keySet().iterator(); it.hasNext(); ) {
+			if (it.next().m_group == group) {
+				it.remove();
+			}
+		}
+		for (final Iterator<Map.Entry<Key,Entry>> it = m_entries.entrySet().iterator(); it.hasNext(); ) {
+			final Map.Entry<Key,Entry> entry = it.next();
+			if (entry.getKey().m_group == group) {
+				m_weight -= entry.getValue().m_weight;
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		m_pending.clear();
+		m_entries.clear();
+		m_weight = 0;
+	}
+
+	public synchronized int size() {
+		return m_entries.size();
+	}
+
+	public synchronized long getHitCount() {
+		return m_hits;
+	}
+
+	public synchronized long getMissCount() {
+		return m_misses;
+	}
+
+	/**
+	 * Get the number of entries evicted to stay under the maximum weight.
+	 */
+	public synchronized long getEvictionCount() {
+		return m_evictions;
+	}
+
+	public void onEvent(final DelugeEvent event) {
+		if (event instanceof SessionStartedEvent) {
+			// the daemon restarted
+			clear();
+		} else if (event instanceof SessionPausedEvent || event instanceof SessionResumedEvent) {
+			invalidate(Group.Status);
+			invalidate(Group.Peers);
+		} else if (event instanceof TorrentQueueChangedEvent) {
+			// it does not say which torrents moved
+			invalidate(Group.Status);
+		} else if (event instanceof TorrentEvent) {
+			final String id = ((TorrentEvent) event).getTorrentId();
+			if (id == null) {
+				return;
+			}
+			if (event instanceof TorrentAddedEvent || event instanceof TorrentRemovedEvent || event instanceof PreTorrentRemovedEvent) {
+				invalidate(id);
+			} else if (event instanceof TorrentFileRenamedEvent || event instanceof TorrentFolderRenamedEvent) {
+				invalidate(id, Group.Files);
+			} else if (event instanceof TorrentFinishedEvent) {
+				invalidate(id);
+			} else if (event instanceof TorrentStateChangedEvent || event instanceof TorrentResumedEvent) {
+				invalidate(id, Group.Status);
+				invalidate(id, Group.Peers);
+			} else {
+				invalidate(id, Group.Status);
+			}
+		}
+	}
+
+	/**
+	 * Drop the details of every torrent the poll saw change.  File lists
+	 * are only dropped when the torrent's layout or state changed; their
+	 * progress is left to expire with the files' time to live.
+	 */
+	public void onUpdate(final UIResponse response, final TorrentDelta delta) {
+		if (!response.isConnected()) {
+			clear();
+			return;
+		}
+		synchronized (this) {
+			for (final Torrent torrent : delta.getAdded()) {
+				invalidate(torrent.getKey());
+			}
+			for (final Torrent torrent : delta.getRemoved()) {
+				invalidate(torrent.getKey());
+			}
+			for (final TorrentDelta.Change change : delta.getChanged()) {
+				final String id = change.getKey();
+				invalidate(id, Group.Status);
+				if (change.isChanged(Torrent.Field.State) || change.isChanged(Torrent.Field.Num_Peers) || change.isChanged(Torrent.Field.Num_Seeds)) {
+					invalidate(id, Group.Peers);
+				}
+				if (change.isChanged(Torrent.Field.State) || change.isChanged(Torrent.Field.Name) || change.isChanged(Torrent.Field.Save_Path) || change.isChanged(Torrent.Field.Total_Size)) {
+					invalidate(id, Group.Files);
+				}
+			}
+		}
+	}
+
+	public void onFailure(final DelugeException e) {
+	}
+
+	private Object get(final String id, final Group group) throws DelugeException {
+		final Key key = new Key(id, group);
+		final Object token = new Object();
+		synchronized (this) {
+			final Entry entry = m_entries.get(key);
+			if (entry != null) {
+				if (entry.m_expires > System.currentTimeMillis()) {
+					m_hits++;
+					return entry.m_value;
+				}
+				m_entries.remove(key);
+				m_weight -= entry.m_weight;
+			}
+			m_misses++;
+			m_pending.put(key, token);
+		}
+
+		final Object value;
+		final long weight;
+		try {
+			if (group == Group.Files) {
+				final List<TorrentFile> files = Collections.unmodifiableList(m_server.getTorrentFiles(id).getFiles());
+				value = files;
+				weight = weighFiles(files);
+			} else if (group == Group.Peers) {
+				final List<Peer> peers = Collections.unmodifiableList(m_server.getTorrentPeers(id).getPeers());
+				value = peers;
+				weight = weighPeers(peers);
+			} else {
+				final Torrent torrent = m_server.getTorrentStatus(id).getTorrent();
+				value = torrent;
+				weight = STATUS_WEIGHT;
+			}
+		} catch (final DelugeException e) {
+			synchronized (this) {
+				if (m_pending.get(key) == token) {
+					m_pending.remove(key);
+				}
+			}
+			throw e;
+		}
+
+		synchronized (this) {
+			// only the latest fetch which was not invalidated along the way is kept
+			if (m_pending.get(key) != token) {
+				return value;
+			}
+			m_pending.remove(key);
+			final long ttl = m_ttls[group.ordinal()];
+			if (value == null || ttl <= 0 || weight > m_maxWeight) {
+				return value;
+			}
+			final Entry old = m_entries.put(key, new Entry(value, System.currentTimeMillis() + ttl, weight));
+			if (old != null) {
+				m_weight -= old.m_weight;
+			}
+			m_weight += weight;
+			evict();
+		}
+		return value;
+	}
+
+	private void evict() {
+		// access order puts the least recently used first
+		for (final Iterator<Entry> it = m_entries.values().iterator(); m_weight > m_maxWeight && it.hasNext(); ) {
+			m_weight -= it.next().m_weight;
+			it.remove();
+			m_evictions++;
+		}
+	}
+
+	private static long weighFiles(final List<TorrentFile> files) {
+		long weight = 0;
+		for (final TorrentFile file : files) {
+			weight += FILE_WEIGHT + 2 * file.getPath().length();
+		}
+		return weight;
+	}
+
+	private static long weighPeers(final List<Peer> peers) {
+		long weight = 0;
+		for (final Peer peer : peers) {
+			weight += PEER_WEIGHT + 2 * (peer.getIp().length() + peer.getClient().length() + peer.getCountry().length());
+		}
+		return weight;
+	}
+
+	private static final class Key {
+		private final String m_id;
+		private final Group m_group;
+
+		public Key(final String id, final Group group) {
+			m_id = id;
+			m_group = group;
+		}
+
+		@Override
+		public int hashCode() {
+			return m_id.hashCode() * 31 + m_group.ordinal();
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			final Key key = (Key) o;
+			return m_group == key.m_group && m_id.equals(key.m_id);
+		}
+	}
+
+	private static final class Entry {
+		private final Object m_value;
+		private final long m_expires;
+		private final long m_weight;
+
+		public Entry(final Object value, final long expires, final long weight) {
+			m_value = value;
+			m_expires = expires;
+			m_weight = weight;
+		}
+	}
+}
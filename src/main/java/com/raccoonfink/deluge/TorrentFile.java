@@ -0,0 +1,79 @@
+package com.raccoonfink.deluge;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A file in a torrent, as listed by <code>web.get_torrent_files</code>.
+ */
+public class TorrentFile implements Comparable<TorrentFile> {
+	private final int m_index;
+	private final String m_path;
+	private final long m_size;
+	private final long m_offset;
+	private final double m_progress;
+	private final int m_priority;
+
+	public TorrentFile(final JSONObject data) {
+		this(data.optInt("index", -1), data.optString("path"), data.optLong("size"), data.optLong("offset"), data.optDouble("progress", 0), data.optInt("priority", 1));
+	}
+
+	public TorrentFile(final int index, final String path, final long size, final long offset, final double progress, final int priority) {
+		m_index = index;
+		m_path = path;
+		m_size = size;
+		m_offset = offset;
+		m_progress = progress;
+		m_priority = priority;
+	}
+
+	public int getIndex() {
+		return m_index;
+	}
+
+	/**
+	 * The path within the torrent, separated by <code>/</code>.
+	 */
+	public String getPath() {
+		return m_path;
+	}
+
+	public long getSize() {
+		return m_size;
+	}
+
+	public long getOffset() {
+		return m_offset;
+	}
+
+	public double getProgress() {
+		return m_progress;
+	}
+
+	/**
+	 * The download priority, where 0 means the file is skipped.
+	 */
+	public int getPriority() {
+		return m_priority;
+	}
+
+	public int compareTo(final TorrentFile file) {
+		return m_index < file.m_index ? -1 : (m_index == file.m_index ? 0 : 1);
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		final JSONObject ret = new JSONObject();
+		ret.put("index", m_index);
+		ret.put("path", m_path);
+		ret.put("size", m_size);
+		ret.put("offset", m_offset);
+		ret.put("progress", m_progress);
+		ret.put("priority", m_priority);
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return "TorrentFile[" + m_index + ": " + m_path + "]";
+	}
+}
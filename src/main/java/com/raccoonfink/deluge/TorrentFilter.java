@@ -0,0 +1,101 @@
+package com.raccoonfink.deluge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The filter dict passed to <code>web.update_ui</code>, so the server only
+ * sends matching torrents.  Each criterion matches any of its values, and
+ * all criteria that are set must match.  An empty filter matches every
+ * torrent.
+ */
+public class TorrentFilter {
+	private List<String> m_states = Collections.emptyList();
+	private boolean m_active = false;
+	private List<String> m_trackerHosts = Collections.emptyList();
+	private List<String> m_labels = Collections.emptyList();
+	private List<String> m_owners = Collections.emptyList();
+	private List<String> m_ids = null;
+
+	public void setStates(final Torrent.State... states) {
+		final List<String> names = new ArrayList<String>(states.length);
+		for (final Torrent.State state : states) {
+			names.add(state.name().replace('_', ' '));
+		}
+		m_states = names;
+	}
+
+	/**
+	 * Only match torrents which are currently transferring data.
+	 */
+	public void setActive(final boolean active) {
+		m_active = active;
+	}
+
+	public void setTrackerHosts(final String... trackerHosts) {
+		m_trackerHosts = Arrays.asList(trackerHosts);
+	}
+
+	/**
+	 * Match on label; the server needs the Label plugin enabled.
+	 */
+	public void setLabels(final String... labels) {
+		m_labels = Arrays.asList(labels);
+	}
+
+	public void setOwners(final String... owners) {
+		m_owners = Arrays.asList(owners);
+	}
+
+	/**
+	 * Only match the torrents with the given hashes.  An empty collection
+	 * matches nothing; <code>null</code> removes the restriction.
+	 */
+	public void setIds(final Collection<String> ids) {
+		m_ids = ids == null ? null : new ArrayList<String>(ids);
+	}
+
+	public boolean isEmpty() {
+		return m_states.isEmpty() && !m_active && m_trackerHosts.isEmpty() && m_labels.isEmpty() && m_owners.isEmpty() && m_ids == null;
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		final JSONObject ret = new JSONObject();
+		final List<String> states = new ArrayList<String>(m_states);
+		if (m_active) {
+			states.add("Active");
+		}
+		put(ret, "state", states);
+		put(ret, "tracker_host", m_trackerHosts);
+		put(ret, "label", m_labels);
+		put(ret, "owner", m_owners);
+		if (m_ids != null) {
+			ret.put("id", new JSONArray(m_ids));
+		}
+		return ret;
+	}
+
+	private static void put(final JSONObject json, final String key, final List<String> values) throws JSONException {
+		if (values.size() == 1) {
+			json.put(key, values.get(0));
+		} else if (values.size() > 1) {
+			json.put(key, new JSONArray(values));
+		}
+	}
+
+	@Override
+	public String toString() {
+		try {
+			return toJSON().toString();
+		} catch (final JSONException e) {
+			return super.toString();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package com.raccoonfink.deluge;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A set of torrents indexed by hash.  Iteration follows the order the
+ * torrents were added in; sorted views are built the first time they are
+ * asked for and kept until the set changes.
+ * <p>
+ * Like the collections in <code>java.util</code>, a set is not
+ * synchronized, so it must not be modified while other threads use it.
+ * Once filled, as in a {@link com.raccoonfink.deluge.responses.UIResponse},
+ * any number of threads may read it, sorted views included.
+ */
+public class TorrentSet extends AbstractSet<Torrent> {
+	public enum Order implements Comparator<Torrent> {
+		Name {
+			public int compare(final Torrent a, final Torrent b) {
+				return a.compareTo(b);
+			}
+		},
+		Queue {
+			public int compare(final Torrent a, final Torrent b) {
+				final int ret = compareLongs(a.getQueue(), b.getQueue());
+				return ret == 0 ? a.getKey().compareTo(b.getKey()) : ret;
+			}
+		},
+		Time_Added {
+			public int compare(final Torrent a, final Torrent b) {
+				final int ret = Double.compare(a.getTimeAdded(), b.getTimeAdded());
+				return ret == 0 ? a.getKey().compareTo(b.getKey()) : ret;
+			}
+		},
+		Ratio {
+			public int compare(final Torrent a, final Torrent b) {
+				final int ret = Double.compare(a.getRatio(), b.getRatio());
+				return ret == 0 ? a.getKey().compareTo(b.getKey()) : ret;
+			}
+		};
+
+		private static int compareLongs(final long a, final long b) {
+			return a < b ? -1 : (a == b ? 0 : 1);
+		}
+	}
+
+	private final Map<String,Torrent> m_torrents;
+	// readers may race to build a view; they build the same list, so any of them will do
+	private final AtomicReferenceArray<List<Torrent>> m_views = new AtomicReferenceArray<List<Torrent>>(Order.values().length);
+
+	public TorrentSet() {
+		m_torrents = new LinkedHashMap<String,Torrent>();
+	}
+
+	public TorrentSet(final int expectedSize) {
+		m_torrents = new LinkedHashMap<String,Torrent>(Math.max(16, expectedSize * 4 / 3 + 1));
+	}
+
+	public TorrentSet(final Collection<Torrent> torrents) {
+		this(torrents.size());
+		addAll(torrents);
+	}
+
+	/**
+	 * Add a torrent, replacing any torrent with the same key.
+	 *
+	 * @return true if there was no torrent with this key before
+	 */
+	@Override
+	public boolean add(final Torrent torrent) {
+		invalidate();
+		return m_torrents.put(torrent.getKey(), torrent) == null;
+	}
+
+	public Torrent get(final String key) {
+		return m_torrents.get(key);
+	}
+
+	public boolean containsKey(final String key) {
+		return m_torrents.containsKey(key);
+	}
+
+	public Set<String> keys() {
+		return Collections.unmodifiableSet(m_torrents.keySet());
+	}
+
+	@Override
+	public boolean contains(final Object o) {
+		if (!(o instanceof Torrent)) {
+			return false;
+		}
+		final Torrent torrent = (Torrent) o;
+		return m_torrents.get(torrent.getKey()) == torrent;
+	}
+
+	@Override
+	public boolean remove(final Object o) {
+		if (!contains(o)) {
+			return false;
+		}
+		removeKey(((Torrent) o).getKey());
+		return true;
+	}
+
+	public Torrent removeKey(final String key) {
+		final Torrent ret = m_torrents.remove(key);
+		if (ret != null) {
+			invalidate();
+		}
+		return ret;
+	}
+
+	@Override
+	public void clear() {
+		invalidate();
+		m_torrents.clear();
+	}
+
+	@Override
+	public int size() {
+		return m_torrents.size();
+	}
+
+	@Override
+	public Iterator<Torrent> iterator() {
+		final Iterator<Torrent> it = m_torrents.values().iterator();
+		return new Iterator<Torrent>() {
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			public Torrent next() {
+				return it.next();
+			}
+
+			public void remove() {
+				it.remove();
+				invalidate();
+			}
+		};
+	}
+
+	/**
+	 * Get the torrents sorted in the given order.  The list is built on the
+	 * first call and shared by later calls until the set is modified.
+	 * Sorting on a field that was not loaded throws
+	 * {@link IllegalStateException}.
+	 */
+	public List<Torrent> sortedBy(final Order order) {
+		List<Torrent> view = m_views.get(order.ordinal());
+		if (view == null) {
+			final List<Torrent> sorted = new ArrayList<Torrent>(m_torrents.values());
+			Collections.sort(sorted, order);
+			view = Collections.unmodifiableList(sorted);
+			m_views.set(order.ordinal(), view);
+		}
+		return view;
+	}
+
+	private void invalidate() {
+		for (int i=0; i < m_views.length(); i++) {
+			m_views.set(i, null);
+		}
+	}
+}
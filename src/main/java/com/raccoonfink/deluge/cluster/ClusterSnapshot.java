@@ -0,0 +1,60 @@
+package com.raccoonfink.deluge.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.Torrent;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+/**
+ * The result of polling every member of a {@link DelugeCluster} once.
+ * Members which failed or timed out are listed in {@link #getFailures()}
+ * and contribute nothing else.
+ */
+public class ClusterSnapshot {
+	private final Map<String,UIResponse> m_responses = new LinkedHashMap<String,UIResponse>();
+	private final Map<String,DelugeException> m_failures = new LinkedHashMap<String,DelugeException>();
+	private final List<HostTorrent> m_torrents = new ArrayList<HostTorrent>();
+	private final ClusterStatistics m_statistics = new ClusterStatistics();
+
+	void addResponse(final String host, final UIResponse response) {
+		m_responses.put(host, response);
+		for (final Torrent torrent : response.getTorrents()) {
+			m_torrents.add(new HostTorrent(host, torrent));
+		}
+		if (response.getStatistics() != null) {
+			m_statistics.add(response.getStatistics(), response.isConnected());
+		}
+	}
+
+	void addFailure(final String host, final DelugeException e) {
+		m_failures.put(host, e);
+	}
+
+	public Map<String,UIResponse> getResponses() {
+		return Collections.unmodifiableMap(m_responses);
+	}
+
+	public Map<String,DelugeException> getFailures() {
+		return Collections.unmodifiableMap(m_failures);
+	}
+
+	public boolean isComplete() {
+		return m_failures.isEmpty();
+	}
+
+	/**
+	 * Get the torrents from every member that answered, tagged by member.
+	 */
+	public List<HostTorrent> getTorrents() {
+		return Collections.unmodifiableList(m_torrents);
+	}
+
+	public ClusterStatistics getStatistics() {
+		return m_statistics;
+	}
+}
@@ -0,0 +1,86 @@
+package com.raccoonfink.deluge.cluster;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.raccoonfink.deluge.Statistics;
+
+/**
+ * {@link Statistics} summed over every member which answered a poll.
+ */
+public class ClusterStatistics {
+	private int m_hosts;
+	private int m_connectedHosts;
+	private long m_dhtNodes;
+	private long m_downloadProtocolRate;
+	private long m_downloadRate;
+	private long m_freeSpace;
+	private long m_maxNumConnections;
+	private long m_numConnections;
+	private long m_uploadProtocolRate;
+	private long m_uploadRate;
+
+	void add(final Statistics stats, final boolean connected) {
+		m_hosts++;
+		if (connected) {
+			m_connectedHosts++;
+		}
+		m_dhtNodes += stats.getDHTNodes();
+		m_downloadProtocolRate += stats.getDownloadProtocolRate();
+		m_downloadRate += stats.getDownloadRate();
+		m_freeSpace += stats.getFreeSpace();
+		m_maxNumConnections += stats.getMaxNumConnections();
+		m_numConnections += stats.getNumConnections();
+		m_uploadProtocolRate += stats.getUploadProtocolRate();
+		m_uploadRate += stats.getUploadRate();
+	}
+
+	/**
+	 * Get the number of members whose statistics are included.
+	 */
+	public int getHostCount() {
+		return m_hosts;
+	}
+	public int getConnectedHostCount() {
+		return m_connectedHosts;
+	}
+	public long getDHTNodes() {
+		return m_dhtNodes;
+	}
+	public long getDownloadProtocolRate() {
+		return m_downloadProtocolRate;
+	}
+	public long getDownloadRate() {
+		return m_downloadRate;
+	}
+	public long getFreeSpace() {
+		return m_freeSpace;
+	}
+	public long getMaxNumConnections() {
+		return m_maxNumConnections;
+	}
+	public long getNumConnections() {
+		return m_numConnections;
+	}
+	public long getUploadProtocolRate() {
+		return m_uploadProtocolRate;
+	}
+	public long getUploadRate() {
+		return m_uploadRate;
+	}
+
+	public JSONObject toJSON() throws JSONException {
+		final JSONObject ret = new JSONObject();
+		ret.put("hosts", m_hosts);
+		ret.put("connected_hosts", m_connectedHosts);
+		ret.put("dht_nodes", m_dhtNodes);
+		ret.put("download_protocol_rate", m_downloadProtocolRate);
+		ret.put("download_rate", m_downloadRate);
+		ret.put("free_space", m_freeSpace);
+		ret.put("max_num_connections", m_maxNumConnections);
+		ret.put("num_connections", m_numConnections);
+		ret.put("upload_protocol_rate", m_uploadProtocolRate);
+		ret.put("upload_rate", m_uploadRate);
+		return ret;
+	}
+}
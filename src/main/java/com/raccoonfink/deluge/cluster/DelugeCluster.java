@@ -0,0 +1,171 @@
+package com.raccoonfink.deluge.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.raccoonfink.deluge.DelugeDispatcher;
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.DelugeFuture;
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.Torrent;
+import com.raccoonfink.deluge.TorrentFilter;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+/**
+ * Polls a group of Deluge servers in parallel through one shared
+ * {@link DelugeDispatcher}, so the dispatcher's limit applies to the whole
+ * cluster.  A member which fails or doesn't answer within the poll timeout
+ * is reported in the snapshot without holding up the others, and is
+ * skipped on later polls until its outstanding request finishes.
+ */
+public class DelugeCluster {
+	private final DelugeDispatcher m_dispatcher;
+	private final Map<String,Member> m_members = new LinkedHashMap<String,Member>();
+	private volatile long m_pollTimeout;
+
+	public DelugeCluster(final DelugeDispatcher dispatcher) {
+		this(dispatcher, 30000);
+	}
+
+	/**
+	 * @param pollTimeout how long {@link #poll()} waits for all members, in
+	 *        milliseconds
+	 */
+	public DelugeCluster(final DelugeDispatcher dispatcher, final long pollTimeout) {
+		m_dispatcher = dispatcher;
+		m_pollTimeout = pollTimeout;
+	}
+
+	public void setPollTimeout(final long pollTimeout) {
+		m_pollTimeout = pollTimeout;
+	}
+
+	public void addServer(final String name, final DelugeServer server) {
+		addServer(name, server, null);
+	}
+
+	/**
+	 * Add a member which should be connected to the daemon with the given
+	 * host id (see {@link DelugeServer#getHosts()}) before it is polled.
+	 */
+	public synchronized void addServer(final String name, final DelugeServer server, final String hostId) {
+		if (m_members.containsKey(name)) {
+			throw new IllegalArgumentException("Cluster already has a member named " + name);
+		}
+		m_members.put(name, new Member(name, server, hostId));
+	}
+
+	public synchronized DelugeServer removeServer(final String name) {
+		final Member member = m_members.remove(name);
+		return member == null ? null : member.m_server;
+	}
+
+	public synchronized DelugeServer getServer(final String name) {
+		final Member member = m_members.get(name);
+		return member == null ? null : member.m_server;
+	}
+
+	public synchronized Set<String> getServerNames() {
+		return Collections.unmodifiableSet(new LinkedHashSet<String>(m_members.keySet()));
+	}
+
+	public ClusterSnapshot poll() {
+		return poll(EnumSet.allOf(Torrent.Field.class), null);
+	}
+
+	public ClusterSnapshot poll(final Set<Torrent.Field> fields, final TorrentFilter filter) {
+		final List<Member> members;
+		synchronized (this) {
+			members = new ArrayList<Member>(m_members.values());
+		}
+
+		final ClusterSnapshot snapshot = new ClusterSnapshot();
+		final Map<Member,DelugeFuture<UIResponse>> futures = new LinkedHashMap<Member,DelugeFuture<UIResponse>>();
+		for (final Member member : members) {
+			final DelugeFuture<UIResponse> future = member.poll(m_dispatcher, fields, filter);
+			if (future == null) {
+				snapshot.addFailure(member.m_name, new DelugeException("Still waiting on the previous poll of " + member.m_name));
+			} else {
+				futures.put(member, future);
+			}
+		}
+
+		final long deadline = System.currentTimeMillis() + m_pollTimeout;
+		boolean interrupted = false;
+		for (final Map.Entry<Member,DelugeFuture<UIResponse>> entry : futures.entrySet()) {
+			final String name = entry.getKey().m_name;
+			if (interrupted) {
+				snapshot.addFailure(name, new DelugeException("Interrupted while polling " + name));
+				continue;
+			}
+			try {
+				snapshot.addResponse(name, entry.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+			} catch (final TimeoutException e) {
+				snapshot.addFailure(name, new DelugeException("Timed out polling " + name));
+			} catch (final ExecutionException e) {
+				final Throwable cause = e.getCause();
+				snapshot.addFailure(name, cause instanceof DelugeException ? (DelugeException) cause : new DelugeException(cause));
+			} catch (final CancellationException e) {
+				snapshot.addFailure(name, new DelugeException("Poll of " + name + " was cancelled"));
+			} catch (final InterruptedException e) {
+				interrupted = true;
+				snapshot.addFailure(name, new DelugeException("Interrupted while polling " + name, e));
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return snapshot;
+	}
+
+	private static final class Member {
+		private final String m_name;
+		private final DelugeServer m_server;
+		private final String m_hostId;
+		private DelugeFuture<UIResponse> m_inFlight;
+		private volatile boolean m_connected = false;
+
+		public Member(final String name, final DelugeServer server, final String hostId) {
+			m_name = name;
+			m_server = server;
+			m_hostId = hostId;
+		}
+
+		/**
+		 * Start a poll, or return null if the last one hasn't finished.
+		 */
+		public synchronized DelugeFuture<UIResponse> poll(final DelugeDispatcher dispatcher, final Set<Torrent.Field> fields, final TorrentFilter filter) {
+			if (m_inFlight != null && !m_inFlight.isDone()) {
+				return null;
+			}
+			m_inFlight = dispatcher.submit(new Callable<UIResponse>() {
+				public UIResponse call() throws DelugeException {
+					try {
+						if (m_hostId != null && !m_connected) {
+							m_server.connect(m_hostId);
+						}
+						final UIResponse response = m_server.updateUI(fields, filter);
+						m_connected = response.isConnected();
+						return response;
+					} catch (final DelugeException e) {
+						// reconnect next time in case the daemon went away
+						m_connected = false;
+						throw e;
+					}
+				}
+			});
+			return m_inFlight;
+		}
+	}
+}
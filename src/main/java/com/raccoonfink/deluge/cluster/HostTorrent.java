@@ -0,0 +1,34 @@
+package com.raccoonfink.deluge.cluster;
+
+import com.raccoonfink.deluge.Torrent;
+
+/**
+ * A torrent along with the name of the cluster member it came from.  The
+ * same hash may legitimately appear on more than one member.
+ */
+public class HostTorrent {
+	private final String m_host;
+	private final Torrent m_torrent;
+
+	public HostTorrent(final String host, final Torrent torrent) {
+		m_host = host;
+		m_torrent = torrent;
+	}
+
+	public String getHost() {
+		return m_host;
+	}
+
+	public Torrent getTorrent() {
+		return m_torrent;
+	}
+
+	public String getKey() {
+		return m_torrent.getKey();
+	}
+
+	@Override
+	public String toString() {
+		return m_host + "/" + m_torrent.getKey();
+	}
+}
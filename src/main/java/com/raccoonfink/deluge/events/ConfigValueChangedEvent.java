@@ -0,0 +1,22 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+import com.raccoonfink.deluge.DelugeEvent;
+
+public class ConfigValueChangedEvent extends DelugeEvent {
+	public ConfigValueChangedEvent(final JSONArray arguments) {
+		super("ConfigValueChangedEvent", arguments);
+	}
+
+	public String getKey() {
+		return getArguments().optString(0, null);
+	}
+
+	/**
+	 * Get the new value, as decoded by org.json.
+	 */
+	public Object getValue() {
+		return getArguments().opt(1);
+	}
+}
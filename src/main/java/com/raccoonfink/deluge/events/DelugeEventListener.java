@@ -0,0 +1,7 @@
+package com.raccoonfink.deluge.events;
+
+import com.raccoonfink.deluge.DelugeEvent;
+
+public interface DelugeEventListener {
+	public void onEvent(final DelugeEvent event);
+}
@@ -0,0 +1,208 @@
+package com.raccoonfink.deluge.events;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.raccoonfink.deluge.DelugeEvent;
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.logging.WireLogger;
+
+/**
+ * Polls <code>web.get_events</code> on a background thread and hands the
+ * decoded events to listeners on a second thread, through a bounded
+ * queue.  If listeners fall behind and the queue fills up, new events are
+ * dropped and counted rather than blocking the poller.  Failing listeners
+ * and polls are reported to the server's {@link WireLogger} as warnings.
+ */
+public class EventPump {
+	private final DelugeServer m_server;
+	private final long m_pollInterval;
+	private final BlockingQueue<DelugeEvent> m_queue;
+	private final List<DelugeEventListener> m_listeners = new CopyOnWriteArrayList<DelugeEventListener>();
+
+	private final AtomicLong m_received = new AtomicLong();
+	private final AtomicLong m_dispatched = new AtomicLong();
+	private final AtomicLong m_dropped = new AtomicLong();
+	private final AtomicLong m_failures = new AtomicLong();
+
+	private volatile boolean m_running = false;
+	private volatile long m_lastEventTime = 0;
+	private Thread m_pollThread;
+	private Thread m_dispatchThread;
+
+	public EventPump(final DelugeServer server) {
+		this(server, 1000, 1024);
+	}
+
+	/**
+	 * @param pollInterval how long to wait between polls which return no
+	 *        events, in milliseconds
+	 * @param queueSize how many events may wait for dispatch
+	 */
+	public EventPump(final DelugeServer server, final long pollInterval, final int queueSize) {
+		m_server = server;
+		m_pollInterval = pollInterval;
+		m_queue = new ArrayBlockingQueue<DelugeEvent>(queueSize);
+	}
+
+	public void addListener(final DelugeEventListener listener) {
+		m_listeners.add(listener);
+	}
+
+	public void removeListener(final DelugeEventListener listener) {
+		m_listeners.remove(listener);
+	}
+
+	public synchronized void start() {
+		if (m_running) {
+			return;
+		}
+		m_running = true;
+
+		m_pollThread = new Thread(new Runnable() {
+			public void run() {
+				poll();
+			}
+		}, "deluge-event-poll");
+		m_pollThread.setDaemon(true);
+
+		m_dispatchThread = new Thread(new Runnable() {
+			public void run() {
+				dispatch();
+			}
+		}, "deluge-event-dispatch");
+		m_dispatchThread.setDaemon(true);
+
+		m_dispatchThread.start();
+		m_pollThread.start();
+	}
+
+	/**
+	 * Stop polling, deliver whatever is already queued, and wait up to
+	 * <code>timeout</code> milliseconds for both threads to finish.
+	 */
+	public void stop(final long timeout) throws InterruptedException {
+		final Thread pollThread;
+		final Thread dispatchThread;
+		synchronized (this) {
+			if (!m_running) {
+				return;
+			}
+			m_running = false;
+			pollThread = m_pollThread;
+			dispatchThread = m_dispatchThread;
+		}
+
+		pollThread.interrupt();
+		final long deadline = System.currentTimeMillis() + timeout;
+		pollThread.join(Math.max(1, timeout));
+		dispatchThread.join(Math.max(1, deadline - System.currentTimeMillis()));
+	}
+
+	public boolean isRunning() {
+		return m_running;
+	}
+
+	public long getReceivedCount() {
+		return m_received.get();
+	}
+
+	public long getDispatchedCount() {
+		return m_dispatched.get();
+	}
+
+	/**
+	 * Get the number of events thrown away because the queue was full.
+	 */
+	public long getDroppedCount() {
+		return m_dropped.get();
+	}
+
+	public long getFailureCount() {
+		return m_failures.get();
+	}
+
+	public int getQueueSize() {
+		return m_queue.size();
+	}
+
+	/**
+	 * Get the time an event was last received, in milliseconds since the
+	 * epoch, or 0 if none has been.
+	 */
+	public long getLastEventTime() {
+		return m_lastEventTime;
+	}
+
+	private void poll() {
+		boolean registered = false;
+		int generation = m_server.getSessionGeneration();
+		while (m_running) {
+			boolean gotEvents = false;
+			try {
+				// a new login means a new web session without our registrations
+				if (!registered || generation != m_server.getSessionGeneration()) {
+					generation = m_server.getSessionGeneration();
+					m_server.registerEventListeners();
+					registered = true;
+				}
+				final List<DelugeEvent> events = m_server.getEvents().getEvents();
+				gotEvents = !events.isEmpty();
+				for (final DelugeEvent event : events) {
+					m_received.incrementAndGet();
+					if (!m_queue.offer(event)) {
+						m_dropped.incrementAndGet();
+					}
+				}
+				if (gotEvents) {
+					m_lastEventTime = System.currentTimeMillis();
+				}
+			} catch (final DelugeException e) {
+				// the session may have gone away with our registrations
+				m_failures.incrementAndGet();
+				registered = false;
+				m_server.warn("Polling for events failed: " + e.getMessage());
+			} catch (final RuntimeException e) {
+				// a bad response must not kill the poller while isRunning() says otherwise
+				m_failures.incrementAndGet();
+				m_server.warn("Polling for events failed: " + e);
+			}
+
+			// when events are flowing, go straight back for more
+			if (!gotEvents) {
+				try {
+					Thread.sleep(m_pollInterval);
+				} catch (final InterruptedException e) {
+					break;
+				}
+			}
+		}
+	}
+
+	private void dispatch() {
+		while (m_running || !m_queue.isEmpty()) {
+			final DelugeEvent event;
+			try {
+				event = m_queue.poll(100, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				break;
+			}
+			if (event == null) {
+				continue;
+			}
+			for (final DelugeEventListener listener : m_listeners) {
+				try {
+					listener.onEvent(event);
+				} catch (final RuntimeException e) {
+					m_server.warn("Event listener " + listener + " failed on " + event + ": " + e);
+				}
+			}
+			m_dispatched.incrementAndGet();
+		}
+	}
+}
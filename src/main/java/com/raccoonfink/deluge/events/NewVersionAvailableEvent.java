@@ -0,0 +1,15 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+import com.raccoonfink.deluge.DelugeEvent;
+
+public class NewVersionAvailableEvent extends DelugeEvent {
+	public NewVersionAvailableEvent(final JSONArray arguments) {
+		super("NewVersionAvailableEvent", arguments);
+	}
+
+	public String getVersion() {
+		return getArguments().optString(0, null);
+	}
+}
@@ -0,0 +1,15 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+import com.raccoonfink.deluge.DelugeEvent;
+
+public class PluginDisabledEvent extends DelugeEvent {
+	public PluginDisabledEvent(final JSONArray arguments) {
+		super("PluginDisabledEvent", arguments);
+	}
+
+	public String getPluginName() {
+		return getArguments().optString(0, null);
+	}
+}
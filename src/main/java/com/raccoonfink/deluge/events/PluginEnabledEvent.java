@@ -0,0 +1,15 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+import com.raccoonfink.deluge.DelugeEvent;
+
+public class PluginEnabledEvent extends DelugeEvent {
+	public PluginEnabledEvent(final JSONArray arguments) {
+		super("PluginEnabledEvent", arguments);
+	}
+
+	public String getPluginName() {
+		return getArguments().optString(0, null);
+	}
+}
@@ -0,0 +1,9 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+public class PreTorrentRemovedEvent extends TorrentEvent {
+	public PreTorrentRemovedEvent(final JSONArray arguments) {
+		super("PreTorrentRemovedEvent", arguments);
+	}
+}
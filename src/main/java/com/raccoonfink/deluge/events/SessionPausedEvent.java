@@ -0,0 +1,11 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+import com.raccoonfink.deluge.DelugeEvent;
+
+public class SessionPausedEvent extends DelugeEvent {
+	public SessionPausedEvent(final JSONArray arguments) {
+		super("SessionPausedEvent", arguments);
+	}
+}
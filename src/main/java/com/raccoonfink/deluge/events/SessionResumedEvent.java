@@ -0,0 +1,11 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+import com.raccoonfink.deluge.DelugeEvent;
+
+public class SessionResumedEvent extends DelugeEvent {
+	public SessionResumedEvent(final JSONArray arguments) {
+		super("SessionResumedEvent", arguments);
+	}
+}
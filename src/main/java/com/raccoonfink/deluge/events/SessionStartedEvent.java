@@ -0,0 +1,11 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+import com.raccoonfink.deluge.DelugeEvent;
+
+public class SessionStartedEvent extends DelugeEvent {
+	public SessionStartedEvent(final JSONArray arguments) {
+		super("SessionStartedEvent", arguments);
+	}
+}
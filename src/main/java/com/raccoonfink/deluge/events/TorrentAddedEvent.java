@@ -0,0 +1,20 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+public class TorrentAddedEvent extends TorrentEvent {
+	private final boolean m_fromState;
+
+	public TorrentAddedEvent(final JSONArray arguments) {
+		super("TorrentAddedEvent", arguments);
+		m_fromState = getArguments().optBoolean(1);
+	}
+
+	/**
+	 * Whether the torrent was loaded from the saved session state rather
+	 * than added by a user.
+	 */
+	public boolean isFromState() {
+		return m_fromState;
+	}
+}
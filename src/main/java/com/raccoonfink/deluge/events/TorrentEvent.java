@@ -0,0 +1,21 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+import com.raccoonfink.deluge.DelugeEvent;
+
+/**
+ * An event about a single torrent, whose hash is the first argument.
+ */
+public abstract class TorrentEvent extends DelugeEvent {
+	private final String m_torrentId;
+
+	protected TorrentEvent(final String name, final JSONArray arguments) {
+		super(name, arguments);
+		m_torrentId = getArguments().optString(0, null);
+	}
+
+	public String getTorrentId() {
+		return m_torrentId;
+	}
+}
@@ -0,0 +1,22 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+public class TorrentFileRenamedEvent extends TorrentEvent {
+	private final int m_index;
+	private final String m_fileName;
+
+	public TorrentFileRenamedEvent(final JSONArray arguments) {
+		super("TorrentFileRenamedEvent", arguments);
+		m_index = getArguments().optInt(1, -1);
+		m_fileName = getArguments().optString(2, null);
+	}
+
+	public int getIndex() {
+		return m_index;
+	}
+
+	public String getFileName() {
+		return m_fileName;
+	}
+}
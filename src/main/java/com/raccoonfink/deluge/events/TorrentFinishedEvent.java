@@ -0,0 +1,9 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+public class TorrentFinishedEvent extends TorrentEvent {
+	public TorrentFinishedEvent(final JSONArray arguments) {
+		super("TorrentFinishedEvent", arguments);
+	}
+}
@@ -0,0 +1,22 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+public class TorrentFolderRenamedEvent extends TorrentEvent {
+	private final String m_oldFolder;
+	private final String m_newFolder;
+
+	public TorrentFolderRenamedEvent(final JSONArray arguments) {
+		super("TorrentFolderRenamedEvent", arguments);
+		m_oldFolder = getArguments().optString(1, null);
+		m_newFolder = getArguments().optString(2, null);
+	}
+
+	public String getOldFolder() {
+		return m_oldFolder;
+	}
+
+	public String getNewFolder() {
+		return m_newFolder;
+	}
+}
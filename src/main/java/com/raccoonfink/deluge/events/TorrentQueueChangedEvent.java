@@ -0,0 +1,11 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+import com.raccoonfink.deluge.DelugeEvent;
+
+public class TorrentQueueChangedEvent extends DelugeEvent {
+	public TorrentQueueChangedEvent(final JSONArray arguments) {
+		super("TorrentQueueChangedEvent", arguments);
+	}
+}
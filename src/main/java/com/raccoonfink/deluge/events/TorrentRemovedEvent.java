@@ -0,0 +1,9 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+public class TorrentRemovedEvent extends TorrentEvent {
+	public TorrentRemovedEvent(final JSONArray arguments) {
+		super("TorrentRemovedEvent", arguments);
+	}
+}
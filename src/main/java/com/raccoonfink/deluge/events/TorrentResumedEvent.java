@@ -0,0 +1,9 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+public class TorrentResumedEvent extends TorrentEvent {
+	public TorrentResumedEvent(final JSONArray arguments) {
+		super("TorrentResumedEvent", arguments);
+	}
+}
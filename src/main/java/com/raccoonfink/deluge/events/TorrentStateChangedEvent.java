@@ -0,0 +1,27 @@
+package com.raccoonfink.deluge.events;
+
+import org.json.JSONArray;
+
+import com.raccoonfink.deluge.Torrent;
+
+public class TorrentStateChangedEvent extends TorrentEvent {
+	private final Torrent.State m_state;
+
+	public TorrentStateChangedEvent(final JSONArray arguments) {
+		super("TorrentStateChangedEvent", arguments);
+		Torrent.State state = null;
+		try {
+			state = Torrent.toState(getArguments().optString(1));
+		} catch (final IllegalArgumentException e) {
+			// a state we don't know about; leave it null
+		}
+		m_state = state;
+	}
+
+	/**
+	 * Get the new state, or <code>null</code> if it isn't one we recognize.
+	 */
+	public Torrent.State getState() {
+		return m_state;
+	}
+}
@@ -0,0 +1,57 @@
+package com.raccoonfink.deluge.http;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A process-wide pool of the fixed-size byte and char buffers used to read
+ * responses, so a poll doesn't allocate (and later collect) fresh ones.
+ * Buffers must be released exactly once, and not used afterwards.
+ */
+public final class BufferPool {
+	public static final int BUFFER_SIZE = 8192;
+	private static final int MAX_POOLED = 64;
+
+	private static final Queue<byte[]> s_bytes = new ConcurrentLinkedQueue<byte[]>();
+	private static final AtomicInteger s_pooledBytes = new AtomicInteger();
+	private static final Queue<char[]> s_chars = new ConcurrentLinkedQueue<char[]>();
+	private static final AtomicInteger s_pooledChars = new AtomicInteger();
+
+	private BufferPool() {
+	}
+
+	public static byte[] getBytes() {
+		final byte[] buffer = s_bytes.poll();
+		if (buffer == null) {
+			return new byte[BUFFER_SIZE];
+		}
+		s_pooledBytes.decrementAndGet();
+		return buffer;
+	}
+
+	public static void release(final byte[] buffer) {
+		if (buffer != null && buffer.length == BUFFER_SIZE && s_pooledBytes.incrementAndGet() <= MAX_POOLED) {
+			s_bytes.offer(buffer);
+		} else if (buffer != null && buffer.length == BUFFER_SIZE) {
+			s_pooledBytes.decrementAndGet();
+		}
+	}
+
+	public static char[] getChars() {
+		final char[] buffer = s_chars.poll();
+		if (buffer == null) {
+			return new char[BUFFER_SIZE];
+		}
+		s_pooledChars.decrementAndGet();
+		return buffer;
+	}
+
+	public static void release(final char[] buffer) {
+		if (buffer != null && buffer.length == BUFFER_SIZE && s_pooledChars.incrementAndGet() <= MAX_POOLED) {
+			s_chars.offer(buffer);
+		} else if (buffer != null && buffer.length == BUFFER_SIZE) {
+			s_pooledChars.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,330 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Keeps idle keep-alive connections around for reuse, bounded per route.
+ * Expired connections are evicted whenever the pool is touched, and
+ * connections which sat idle for a while are checked for staleness before
+ * they are handed out again.
+ * <p>
+ * Connections are pooled by route together with the SSL socket factory
+ * and host name verifier they were opened with, so a connection trusted
+ * under one configuration is never handed to a caller with another.  A
+ * route is forgotten once it has no idle or leased connections left.
+ */
+public class ConnectionPool {
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+	public static final long DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+
+	private final Map<PoolKey,RouteConnections> m_routes = new HashMap<PoolKey,RouteConnections>();
+
+	private int m_maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private long m_idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private long m_validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+
+	private boolean m_closed = false;
+
+	private final AtomicLong m_hits = new AtomicLong();
+	private final AtomicLong m_misses = new AtomicLong();
+	private final AtomicLong m_evictions = new AtomicLong();
+	private final AtomicLong m_staleConnections = new AtomicLong();
+
+	/**
+	 * A route and the TLS settings of its connections, compared by
+	 * identity since the factories don't define equality.
+	 */
+	private static final class PoolKey {
+		private final HttpRoute m_route;
+		private final SSLSocketFactory m_sslSocketFactory;
+		private final HostnameVerifier m_hostnameVerifier;
+
+		public PoolKey(final HttpRoute route, final SSLSocketFactory sslSocketFactory, final HostnameVerifier hostnameVerifier) {
+			m_route = route;
+			m_sslSocketFactory = sslSocketFactory;
+			m_hostnameVerifier = hostnameVerifier;
+		}
+
+		@Override
+		public int hashCode() {
+			return (m_route.hashCode() * 31 + System.identityHashCode(m_sslSocketFactory)) * 31 + System.identityHashCode(m_hostnameVerifier);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof PoolKey)) {
+				return false;
+			}
+			final PoolKey other = (PoolKey) obj;
+			return m_sslSocketFactory == other.m_sslSocketFactory && m_hostnameVerifier == other.m_hostnameVerifier && m_route.equals(other.m_route);
+		}
+	}
+
+	private static final class RouteConnections {
+		final LinkedList<HttpConnection> m_idle = new LinkedList<HttpConnection>();
+		int m_leased = 0;
+	}
+
+	public synchronized void setMaxConnectionsPerHost(final int maxConnectionsPerHost) {
+		if (maxConnectionsPerHost < 1) {
+			throw new IllegalArgumentException("maxConnectionsPerHost must be at least 1");
+		}
+		m_maxConnectionsPerHost = maxConnectionsPerHost;
+		notifyAll();
+	}
+
+	public synchronized int getMaxConnectionsPerHost() {
+		return m_maxConnectionsPerHost;
+	}
+
+	public synchronized void setIdleTimeout(final long idleTimeout) {
+		m_idleTimeout = idleTimeout;
+	}
+
+	public synchronized long getIdleTimeout() {
+		return m_idleTimeout;
+	}
+
+	public synchronized void setValidateAfterInactivity(final long validateAfterInactivity) {
+		m_validateAfterInactivity = validateAfterInactivity;
+	}
+
+	public long getHitCount() {
+		return m_hits.get();
+	}
+
+	public long getMissCount() {
+		return m_misses.get();
+	}
+
+	public long getEvictionCount() {
+		return m_evictions.get();
+	}
+
+	public long getStaleConnectionCount() {
+		return m_staleConnections.get();
+	}
+
+	public synchronized int getIdleConnectionCount() {
+		int count = 0;
+		for (final RouteConnections connections : m_routes.values()) {
+			count += connections.m_idle.size();
+		}
+		return count;
+	}
+
+	public synchronized int getLeasedConnectionCount() {
+		int count = 0;
+		for (final RouteConnections connections : m_routes.values()) {
+			count += connections.m_leased;
+		}
+		return count;
+	}
+
+	/**
+	 * Get how many routes have idle or leased connections.
+	 */
+	public synchronized int getRouteCount() {
+		return m_routes.size();
+	}
+
+	/**
+	 * Lease a connection to the given route, reusing an idle one if a healthy
+	 * one exists.  Blocks for up to <code>timeout</code> milliseconds (0 means
+	 * forever) if the route is already at its connection limit.  Fails once
+	 * the pool has been closed.
+	 */
+	public HttpConnection acquire(final HttpRoute route, final SSLSocketFactory sslSocketFactory, final int timeout) throws IOException {
+		return acquire(route, sslSocketFactory, null, timeout);
+	}
+
+	/**
+	 * Lease a connection as above, checking the host name of any new secure
+	 * connection with <code>hostnameVerifier</code>.
+	 */
+	public HttpConnection acquire(final HttpRoute route, final SSLSocketFactory sslSocketFactory, final HostnameVerifier hostnameVerifier, final int timeout) throws IOException {
+		final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+		final PoolKey key = new PoolKey(route, sslSocketFactory, hostnameVerifier);
+		while (true) {
+			HttpConnection connection = null;
+			final long validateAfter;
+			synchronized (this) {
+				checkOpen();
+				evictExpired();
+				RouteConnections connections = getRouteConnections(key);
+				while (connections.m_idle.isEmpty() && connections.m_leased >= m_maxConnectionsPerHost) {
+					final long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						throw new SocketTimeoutException("Timed out waiting for a connection to " + route);
+					}
+					try {
+						wait(remaining);
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted waiting for a connection to " + route);
+					}
+					checkOpen();
+					evictExpired();
+					// the route may have been forgotten while we waited
+					connections = getRouteConnections(key);
+				}
+				connections.m_leased++;
+				if (!connections.m_idle.isEmpty()) {
+					connection = connections.m_idle.removeFirst();
+				}
+				validateAfter = m_validateAfterInactivity;
+			}
+
+			if (connection == null) {
+				m_misses.incrementAndGet();
+				try {
+					final HttpConnection opened = HttpConnection.open(route, sslSocketFactory, hostnameVerifier, timeout);
+					opened.setPoolKey(key);
+					return opened;
+				} catch (final IOException e) {
+					release(key);
+					throw e;
+				}
+			}
+
+			final boolean needsValidation = System.currentTimeMillis() - connection.getLastUsed() >= validateAfter;
+			if (!connection.isOpen() || (needsValidation && connection.isStale())) {
+				m_staleConnections.incrementAndGet();
+				connection.close();
+				release(key);
+				continue;
+			}
+			m_hits.incrementAndGet();
+			return connection;
+		}
+	}
+
+	/**
+	 * Return a leased connection.  Connections which can't carry another
+	 * request are closed instead of being pooled.
+	 */
+	public void release(final HttpConnection connection, final boolean reusable) {
+		final PoolKey key = (PoolKey) connection.getPoolKey();
+		if (!reusable || !connection.isOpen()) {
+			connection.close();
+			release(key);
+			return;
+		}
+		connection.markUsed();
+		synchronized (this) {
+			final RouteConnections connections = getRouteConnections(key);
+			connections.m_leased--;
+			notifyAll();
+			if (!m_closed) {
+				connections.m_idle.addFirst(connection);
+				return;
+			}
+			removeIfUnused(key, connections);
+		}
+		connection.close();
+	}
+
+	private synchronized void release(final PoolKey key) {
+		final RouteConnections connections = getRouteConnections(key);
+		connections.m_leased--;
+		removeIfUnused(key, connections);
+		notifyAll();
+	}
+
+	/**
+	 * Close any idle connections which have outlived the idle timeout.
+	 */
+	public int evictIdleConnections() {
+		synchronized (this) {
+			return evictExpired();
+		}
+	}
+
+	private int evictExpired() {
+		final long oldest = System.currentTimeMillis() - m_idleTimeout;
+		int evicted = 0;
+		final Iterator<RouteConnections> routes = m_routes.values().iterator();
+		while (routes.hasNext()) {
+			final RouteConnections connections = routes.next();
+			final Iterator<HttpConnection> it = connections.m_idle.iterator();
+			while (it.hasNext()) {
+				final HttpConnection connection = it.next();
+				if (connection.getLastUsed() < oldest || !connection.isOpen()) {
+					it.remove();
+					connection.close();
+					evicted++;
+				}
+			}
+			if (connections.m_leased == 0 && connections.m_idle.isEmpty()) {
+				routes.remove();
+			}
+		}
+		if (evicted > 0) {
+			m_evictions.addAndGet(evicted);
+			notifyAll();
+		}
+		return evicted;
+	}
+
+	private RouteConnections getRouteConnections(final PoolKey key) {
+		RouteConnections connections = m_routes.get(key);
+		if (connections == null) {
+			connections = new RouteConnections();
+			m_routes.put(key, connections);
+		}
+		return connections;
+	}
+
+	private void removeIfUnused(final PoolKey key, final RouteConnections connections) {
+		if (connections.m_leased == 0 && connections.m_idle.isEmpty()) {
+			m_routes.remove(key);
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (m_closed) {
+			throw new IOException("Connection pool is closed");
+		}
+	}
+
+	/**
+	 * Close all idle connections.  Leased connections are closed as they
+	 * are released, and no more can be acquired.
+	 */
+	public void close() {
+		final List<HttpConnection> idle = new ArrayList<HttpConnection>();
+		synchronized (this) {
+			m_closed = true;
+			final Iterator<RouteConnections> routes = m_routes.values().iterator();
+			while (routes.hasNext()) {
+				final RouteConnections connections = routes.next();
+				idle.addAll(connections.m_idle);
+				connections.m_idle.clear();
+				if (connections.m_leased == 0) {
+					routes.remove();
+				}
+			}
+			notifyAll();
+		}
+		for (final HttpConnection connection : idle) {
+			connection.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ConnectionPool[hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + ", idle=" + getIdleConnectionCount() + "]";
+	}
+}
@@ -0,0 +1,50 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read through it.
+ */
+public class CountingInputStream extends FilterInputStream {
+	private long m_count = 0;
+
+	public CountingInputStream(final InputStream in) {
+		super(in);
+	}
+
+	public long getCount() {
+		return m_count;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = super.read();
+		if (b != -1) {
+			m_count++;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		final int count = super.read(b, off, len);
+		if (count > 0) {
+			m_count += count;
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		final long skipped = super.skip(n);
+		m_count += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+}
@@ -0,0 +1,28 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The HTTP layer underneath a <code>DelugeServer</code>.  Implementations
+ * must be safe for concurrent use.
+ */
+public interface DelugeTransport {
+	/**
+	 * POST a body and return the response, whose body the caller must
+	 * close.  <code>timeout</code> is in milliseconds; 0 means none.
+	 */
+	public HttpResponse post(final URL url, final Map<String,String> headers, final byte[] body, final int timeout) throws IOException;
+
+	/**
+	 * POST several bodies at once, by whatever means the transport has for
+	 * overlapping them, and return the responses fully read, in order.  If
+	 * the list is shorter than <code>bodies</code>, the remaining requests
+	 * were never processed and may be sent again.
+	 */
+	public List<HttpResponse> postAll(final URL url, final Map<String,String> headers, final List<byte[]> bodies, final int timeout) throws IOException;
+
+	public void close();
+}
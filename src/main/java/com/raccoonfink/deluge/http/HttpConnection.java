@@ -0,0 +1,266 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A single HTTP/1.1 connection to a route, which may carry many requests
+ * one after the other when the server allows keep-alive.
+ */
+public class HttpConnection implements Closeable {
+	private final HttpRoute m_route;
+	private final Socket m_socket;
+	private final InputStream m_input;
+	private final OutputStream m_output;
+
+	private long m_lastUsed;
+	private int m_useCount = 0;
+	private Object m_poolKey;
+
+	HttpConnection(final HttpRoute route, final Socket socket) throws IOException {
+		m_route = route;
+		m_socket = socket;
+		m_input = new BufferedInputStream(socket.getInputStream(), 8192);
+		m_output = new BufferedOutputStream(socket.getOutputStream(), 8192);
+		m_lastUsed = System.currentTimeMillis();
+	}
+
+	static HttpConnection open(final HttpRoute route, final SSLSocketFactory sslSocketFactory, final HostnameVerifier hostnameVerifier, final int connectTimeout) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			socket.connect(new InetSocketAddress(route.getHost(), route.getPort()), connectTimeout);
+			if (route.isSecure()) {
+				final SSLSocketFactory factory = sslSocketFactory == null ? (SSLSocketFactory) SSLSocketFactory.getDefault() : sslSocketFactory;
+				final SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, route.getHost(), route.getPort(), true);
+				socket = sslSocket;
+				// a server which accepts the connection but never finishes the handshake mustn't hang us
+				sslSocket.setSoTimeout(connectTimeout);
+				sslSocket.startHandshake();
+				if (hostnameVerifier != null && !hostnameVerifier.verify(route.getHost(), sslSocket.getSession())) {
+					throw new SSLPeerUnverifiedException("The certificate presented by " + route + " does not match its host name");
+				}
+				// each request sets its own
+				sslSocket.setSoTimeout(0);
+			}
+			return new HttpConnection(route, socket);
+		} catch (final IOException e) {
+			try {
+				socket.close();
+			} catch (final IOException closeException) {
+			}
+			throw e;
+		}
+	}
+
+	public HttpRoute getRoute() {
+		return m_route;
+	}
+
+	public long getLastUsed() {
+		return m_lastUsed;
+	}
+
+	public int getUseCount() {
+		return m_useCount;
+	}
+
+	Object getPoolKey() {
+		return m_poolKey;
+	}
+
+	void setPoolKey(final Object poolKey) {
+		m_poolKey = poolKey;
+	}
+
+	void markUsed() {
+		m_lastUsed = System.currentTimeMillis();
+	}
+
+	public boolean isOpen() {
+		return !m_socket.isClosed() && !m_socket.isInputShutdown() && !m_socket.isOutputShutdown();
+	}
+
+	/**
+	 * Check whether the server has closed (or written garbage to) an idle
+	 * connection.  This blocks for at most a millisecond.
+	 */
+	public boolean isStale() {
+		if (!isOpen()) {
+			return true;
+		}
+		try {
+			if (m_input.available() > 0) {
+				// nothing should be waiting on an idle connection
+				return true;
+			}
+			final int oldTimeout = m_socket.getSoTimeout();
+			try {
+				m_socket.setSoTimeout(1);
+				// either end-of-stream or unsolicited data means we can't reuse it
+				m_input.read();
+				return true;
+			} catch (final SocketTimeoutException e) {
+				return false;
+			} finally {
+				m_socket.setSoTimeout(oldTimeout);
+			}
+		} catch (final IOException e) {
+			return true;
+		}
+	}
+
+	void setReadTimeout(final int timeout) throws IOException {
+		m_socket.setSoTimeout(timeout);
+	}
+
+	void writeRequest(final String method, final String path, final Map<String,String> headers, final byte[] body) throws IOException {
+		writeRequest(method, path, headers, body, true);
+	}
+
+	void writeRequest(final String method, final String path, final Map<String,String> headers, final byte[] body, final boolean flush) throws IOException {
+		writeHeaders(method, path, headers, body == null ? 0 : body.length);
+		if (body != null) {
+			m_output.write(body);
+		}
+		if (flush) {
+			m_output.flush();
+		}
+	}
+
+	void writeRequest(final String method, final String path, final Map<String,String> headers, final RequestBody body) throws IOException {
+		writeHeaders(method, path, headers, body.getContentLength());
+		final CountingOutputStream out = new CountingOutputStream(m_output);
+		body.writeTo(out);
+		if (out.getCount() != body.getContentLength()) {
+			// the server is now waiting for more, or has read part of the next request
+			close();
+			throw new IOException("Request body was " + out.getCount() + " bytes, but its length was given as " + body.getContentLength());
+		}
+		m_output.flush();
+	}
+
+	private void writeHeaders(final String method, final String path, final Map<String,String> headers, final long contentLength) throws IOException {
+		m_useCount++;
+		final StringBuilder sb = new StringBuilder(256);
+		sb.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+		sb.append("Host: ").append(m_route.getHostHeader()).append("\r\n");
+		sb.append("Connection: keep-alive\r\n");
+		if (headers != null) {
+			for (final Map.Entry<String,String> entry : headers.entrySet()) {
+				if (entry.getValue() != null) {
+					sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\r\n");
+				}
+			}
+		}
+		sb.append("Content-Length: ").append(contentLength).append("\r\n\r\n");
+		m_output.write(sb.toString().getBytes("ISO-8859-1"));
+	}
+
+	void flush() throws IOException {
+		m_output.flush();
+	}
+
+	/**
+	 * Read the status line of a response.  A connection closed or reset
+	 * before the first byte arrives, which is how a keep-alive connection
+	 * dropped by the server looks, raises {@link StaleConnectionException};
+	 * a timeout does not, since the server may still be working on the
+	 * request.
+	 */
+	String readStatusLine() throws IOException {
+		final int first;
+		try {
+			first = m_input.read();
+		} catch (final SocketException e) {
+			throw new StaleConnectionException("Connection to " + m_route + " was reset before a response was received", e);
+		}
+		if (first == -1) {
+			throw new StaleConnectionException("Connection to " + m_route + " closed before a response was received");
+		}
+		return readLine(first);
+	}
+
+	String readLine() throws IOException {
+		return readLine(m_input.read());
+	}
+
+	private String readLine(final int first) throws IOException {
+		final StringBuilder sb = new StringBuilder(64);
+		for (int b = first; b != -1; b = m_input.read()) {
+			if (b == '\n') {
+				final int length = sb.length();
+				if (length > 0 && sb.charAt(length - 1) == '\r') {
+					sb.setLength(length - 1);
+				}
+				return sb.toString();
+			}
+			sb.append((char) b);
+		}
+		if (sb.length() == 0) {
+			return null;
+		}
+		return sb.toString();
+	}
+
+	InputStream getInputStream() {
+		return m_input;
+	}
+
+	public void close() {
+		try {
+			m_socket.close();
+		} catch (final IOException e) {
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "HttpConnection[" + m_route + ", uses=" + m_useCount + "]";
+	}
+
+	private static final class CountingOutputStream extends FilterOutputStream {
+		private long m_count = 0;
+
+		public CountingOutputStream(final OutputStream out) {
+			super(out);
+		}
+
+		public long getCount() {
+			return m_count;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			m_count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			out.write(b, off, len);
+			m_count += len;
+		}
+
+		@Override
+		public void close() {
+			// the connection outlives the body
+		}
+	}
+}
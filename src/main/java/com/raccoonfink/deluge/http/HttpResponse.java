@@ -0,0 +1,101 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class HttpResponse implements Closeable {
+	private final int m_responseCode;
+	private final String m_responseMessage;
+	private final Map<String,List<String>> m_headers;
+	private final InputStream m_body;
+	private long m_connectTime = 0;
+
+	public HttpResponse(final int responseCode, final String responseMessage, final Map<String,List<String>> headers, final InputStream body) {
+		m_responseCode = responseCode;
+		m_responseMessage = responseMessage;
+		m_headers = headers;
+		m_body = body;
+	}
+
+	public int getResponseCode() {
+		return m_responseCode;
+	}
+
+	public String getResponseMessage() {
+		return m_responseMessage;
+	}
+
+	public String getHeader(final String name) {
+		final List<String> values = m_headers.get(name.toLowerCase(Locale.ENGLISH));
+		if (values == null || values.isEmpty()) {
+			return null;
+		}
+		return values.get(0);
+	}
+
+	public List<String> getHeaders(final String name) {
+		final List<String> values = m_headers.get(name.toLowerCase(Locale.ENGLISH));
+		if (values == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(values);
+	}
+
+	Map<String,List<String>> getHeaderMap() {
+		return m_headers;
+	}
+
+	/**
+	 * Get how long the transport spent getting a connection for this
+	 * request, in nanoseconds, or 0 if it doesn't say.
+	 */
+	public long getConnectTime() {
+		return m_connectTime;
+	}
+
+	void setConnectTime(final long connectTime) {
+		m_connectTime = connectTime;
+	}
+
+	public String getContentEncoding() {
+		return getHeader("Content-Encoding");
+	}
+
+	public InputStream getBody() {
+		return m_body;
+	}
+
+	public void close() throws IOException {
+		m_body.close();
+	}
+
+	static Map<String,List<String>> parseHeaders(final HttpConnection connection) throws IOException {
+		final Map<String,List<String>> headers = new HashMap<String,List<String>>();
+		String line;
+		while ((line = connection.readLine()) != null && line.length() > 0) {
+			final int colon = line.indexOf(':');
+			if (colon <= 0) {
+				continue;
+			}
+			final String name = line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+			final String value = line.substring(colon + 1).trim();
+			List<String> values = headers.get(name);
+			if (values == null) {
+				values = new ArrayList<String>(1);
+				headers.put(name, values);
+			}
+			values.add(value);
+		}
+		if (line == null) {
+			throw new IOException("Unexpected end of stream reading headers from " + connection.getRoute());
+		}
+		return headers;
+	}
+}
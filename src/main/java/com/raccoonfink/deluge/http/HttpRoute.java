@@ -0,0 +1,67 @@
+package com.raccoonfink.deluge.http;
+
+import java.net.URL;
+import java.util.Locale;
+
+public final class HttpRoute {
+	private final String m_scheme;
+	private final String m_host;
+	private final int m_port;
+
+	public HttpRoute(final String scheme, final String host, final int port) {
+		m_scheme = scheme.toLowerCase(Locale.ENGLISH);
+		m_host = host.toLowerCase(Locale.ENGLISH);
+		m_port = port;
+	}
+
+	public static HttpRoute forURL(final URL url) {
+		final int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		return new HttpRoute(url.getProtocol(), url.getHost(), port);
+	}
+
+	public String getScheme() {
+		return m_scheme;
+	}
+
+	public String getHost() {
+		return m_host;
+	}
+
+	public int getPort() {
+		return m_port;
+	}
+
+	public boolean isSecure() {
+		return "https".equals(m_scheme);
+	}
+
+	public String getHostHeader() {
+		final int defaultPort = isSecure() ? 443 : 80;
+		if (m_port == defaultPort) {
+			return m_host;
+		}
+		return m_host + ":" + m_port;
+	}
+
+	@Override
+	public int hashCode() {
+		return (m_scheme.hashCode() * 31 + m_host.hashCode()) * 31 + m_port;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof HttpRoute)) {
+			return false;
+		}
+		final HttpRoute other = (HttpRoute) obj;
+		return m_port == other.m_port && m_scheme.equals(other.m_scheme) && m_host.equals(other.m_host);
+	}
+
+	@Override
+	public String toString() {
+		return m_scheme + "://" + m_host + ":" + m_port;
+	}
+}
@@ -0,0 +1,259 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a <code>gzip</code> or <code>deflate</code> response body.
+ * Unlike {@link java.util.zip.GZIPInputStream}, which creates an
+ * {@link Inflater} (and its native state) per stream, the inflaters and
+ * input buffers here are pooled and returned on {@link #close()}.
+ */
+public class InflatingInputStream extends FilterInputStream {
+	private static final int MAX_POOLED = 16;
+	private static final Queue<Inflater> s_raw = new ConcurrentLinkedQueue<Inflater>();
+	private static final AtomicInteger s_pooledRaw = new AtomicInteger();
+	private static final Queue<Inflater> s_zlib = new ConcurrentLinkedQueue<Inflater>();
+	private static final AtomicInteger s_pooledZlib = new AtomicInteger();
+
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	private final boolean m_raw;
+	private final boolean m_gzip;
+	private final CRC32 m_crc;
+	private Inflater m_inflater;
+	private byte[] m_buffer;
+	private int m_length = 0;
+	private final byte[] m_single = new byte[1];
+	private boolean m_eof = false;
+
+	private InflatingInputStream(final InputStream in, final boolean raw, final boolean gzip) {
+		super(in);
+		m_raw = raw;
+		m_gzip = gzip;
+		m_crc = gzip ? new CRC32() : null;
+		m_inflater = getInflater(raw);
+		m_buffer = BufferPool.getBytes();
+	}
+
+	/**
+	 * Decode a gzip stream (RFC 1952).
+	 */
+	public static InflatingInputStream gzip(final InputStream in) throws IOException {
+		readGzipHeader(in);
+		return new InflatingInputStream(in, true, true);
+	}
+
+	/**
+	 * Decode an HTTP <code>deflate</code> stream, which should be zlib
+	 * wrapped (RFC 1950) but is sent raw by some servers; both are accepted.
+	 */
+	public static InflatingInputStream deflate(final InputStream in) throws IOException {
+		final int cmf = in.read();
+		final int flg = in.read();
+		if (cmf == -1 || flg == -1) {
+			throw new EOFException("Unexpected end of deflate stream");
+		}
+		final boolean zlib = (cmf & 0x0f) == 8 && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+		final InflatingInputStream stream = new InflatingInputStream(in, !zlib, false);
+		stream.m_buffer[0] = (byte) cmf;
+		stream.m_buffer[1] = (byte) flg;
+		stream.m_length = 2;
+		stream.m_inflater.setInput(stream.m_buffer, 0, 2);
+		return stream;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return read(m_single, 0, 1) == -1 ? -1 : m_single[0] & 0xff;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		if (m_inflater == null) {
+			throw new IOException("Stream closed");
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (m_eof) {
+			return -1;
+		}
+		try {
+			while (true) {
+				final int count = m_inflater.inflate(b, off, len);
+				if (count > 0) {
+					if (m_crc != null) {
+						m_crc.update(b, off, count);
+					}
+					return count;
+				}
+				if (m_inflater.finished()) {
+					m_eof = true;
+					if (m_gzip) {
+						readGzipTrailer();
+					}
+					return -1;
+				}
+				if (m_inflater.needsDictionary()) {
+					throw new ZipException("Compressed stream needs a preset dictionary");
+				}
+				if (m_inflater.needsInput()) {
+					m_length = in.read(m_buffer, 0, m_buffer.length);
+					if (m_length == -1) {
+						// a raw stream needs one byte past the end; see Inflater(boolean)
+						if (m_raw && !m_gzip) {
+							m_buffer[0] = 0;
+							m_length = 1;
+						} else {
+							throw new EOFException("Unexpected end of compressed stream");
+						}
+					}
+					m_inflater.setInput(m_buffer, 0, m_length);
+				}
+			}
+		} catch (final DataFormatException e) {
+			throw new ZipException(e.getMessage() == null ? "Invalid compressed data" : e.getMessage());
+		}
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		final byte[] skipped = new byte[(int) Math.min(n, 512)];
+		long total = 0;
+		while (total < n) {
+			final int count = read(skipped, 0, (int) Math.min(n - total, skipped.length));
+			if (count == -1) {
+				break;
+			}
+			total += count;
+		}
+		return total;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return m_eof || m_inflater == null ? 0 : 1;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (m_inflater != null) {
+			releaseInflater(m_inflater, m_raw);
+			m_inflater = null;
+			BufferPool.release(m_buffer);
+			m_buffer = null;
+		}
+		super.close();
+	}
+
+	private void readGzipTrailer() throws IOException {
+		// the trailer is whatever the inflater didn't use, then the stream
+		int offset = m_length - m_inflater.getRemaining();
+		final long crc = readTrailerInt(offset);
+		offset += 4;
+		final long size = readTrailerInt(offset);
+		if (crc != m_crc.getValue()) {
+			throw new ZipException("Corrupt gzip stream (bad CRC)");
+		}
+		if (size != (m_inflater.getTotalOut() & 0xffffffffL)) {
+			throw new ZipException("Corrupt gzip stream (bad length)");
+		}
+	}
+
+	private long readTrailerInt(final int offset) throws IOException {
+		long value = 0;
+		for (int i=0; i < 4; i++) {
+			final int b;
+			if (offset + i < m_length) {
+				b = m_buffer[offset + i] & 0xff;
+			} else {
+				b = in.read();
+				if (b == -1) {
+					throw new EOFException("Unexpected end of gzip trailer");
+				}
+			}
+			value |= ((long) b) << (8 * i);
+		}
+		return value;
+	}
+
+	private static void readGzipHeader(final InputStream in) throws IOException {
+		if (readByte(in) != 0x1f || readByte(in) != 0x8b) {
+			throw new ZipException("Not in gzip format");
+		}
+		if (readByte(in) != 8) {
+			throw new ZipException("Unsupported gzip compression method");
+		}
+		final int flags = readByte(in);
+		// modification time, extra flags, operating system
+		for (int i=0; i < 6; i++) {
+			readByte(in);
+		}
+		if ((flags & FEXTRA) != 0) {
+			final int length = readByte(in) | (readByte(in) << 8);
+			for (int i=0; i < length; i++) {
+				readByte(in);
+			}
+		}
+		if ((flags & FNAME) != 0) {
+			while (readByte(in) != 0) {
+				// skip the file name
+			}
+		}
+		if ((flags & FCOMMENT) != 0) {
+			while (readByte(in) != 0) {
+				// skip the comment
+			}
+		}
+		if ((flags & FHCRC) != 0) {
+			readByte(in);
+			readByte(in);
+		}
+	}
+
+	private static int readByte(final InputStream in) throws IOException {
+		final int b = in.read();
+		if (b == -1) {
+			throw new EOFException("Unexpected end of gzip header");
+		}
+		return b;
+	}
+
+	private static Inflater getInflater(final boolean raw) {
+		final Inflater inflater = (raw ? s_raw : s_zlib).poll();
+		if (inflater == null) {
+			return new Inflater(raw);
+		}
+		(raw ? s_pooledRaw : s_pooledZlib).decrementAndGet();
+		return inflater;
+	}
+
+	private static void releaseInflater(final Inflater inflater, final boolean raw) {
+		final AtomicInteger pooled = raw ? s_pooledRaw : s_pooledZlib;
+		if (pooled.incrementAndGet() <= MAX_POOLED) {
+			inflater.reset();
+			(raw ? s_raw : s_zlib).offer(inflater);
+		} else {
+			pooled.decrementAndGet();
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+
+import com.raccoonfink.deluge.ssl.TlsConfiguration;
+
+/**
+ * A transport built on OkHttp, which negotiates HTTP/2 with servers that
+ * support it (over TLS via ALPN, or cleartext if the client is configured
+ * for prior knowledge).  On HTTP/2, concurrent requests and
+ * {@link #postAll(URL, Map, List, int)} are multiplexed over a single
+ * connection.  OkHttp is an optional dependency; it only needs to be
+ * present when this class is used.
+ */
+public class OkHttpTransport implements StreamingTransport {
+	private static final MediaType JSON = MediaType.parse("application/json");
+
+	private final OkHttpClient m_client;
+	private final boolean m_ownsClient;
+	private volatile TimedClient m_timedClient;
+
+	public OkHttpTransport() {
+		this(new OkHttpClient(), true);
+	}
+
+	/**
+	 * Use the trust strategy and cached SSL context of the given
+	 * configuration.
+	 */
+	public OkHttpTransport(final TlsConfiguration tlsConfiguration) throws GeneralSecurityException {
+		this(new OkHttpClient.Builder()
+			.sslSocketFactory(tlsConfiguration.getSocketFactory(), tlsConfiguration.getTrustManager())
+			.hostnameVerifier(tlsConfiguration.getHostnameVerifier())
+			.build(), true);
+	}
+
+	/**
+	 * Use a client configured by the caller, for instance with its own TLS
+	 * settings or a shared connection pool.  The caller remains responsible
+	 * for shutting it down.
+	 */
+	public OkHttpTransport(final OkHttpClient client) {
+		this(client, false);
+	}
+
+	private OkHttpTransport(final OkHttpClient client, final boolean ownsClient) {
+		m_client = client;
+		m_ownsClient = ownsClient;
+	}
+
+	public OkHttpClient getClient() {
+		return m_client;
+	}
+
+	public HttpResponse post(final URL url, final Map<String,String> headers, final byte[] body, final int timeout) throws IOException {
+		return toHttpResponse(getClient(timeout).newCall(createRequest(url, headers, RequestBody.create(JSON, body))).execute(), false);
+	}
+
+	public HttpResponse post(final URL url, final Map<String,String> headers, final com.raccoonfink.deluge.http.RequestBody body, final int timeout) throws IOException {
+		final RequestBody streamed = new RequestBody() {
+			@Override
+			public MediaType contentType() {
+				return JSON;
+			}
+
+			@Override
+			public long contentLength() {
+				return body.getContentLength();
+			}
+
+			@Override
+			public void writeTo(final BufferedSink sink) throws IOException {
+				body.writeTo(sink.outputStream());
+			}
+		};
+		return toHttpResponse(getClient(timeout).newCall(createRequest(url, headers, streamed)).execute(), false);
+	}
+
+	/**
+	 * Send every request asynchronously and wait for all of them, for at
+	 * most <code>timeout</code> milliseconds in all.  Unlike pipelining,
+	 * the responses may be produced in any order.
+	 */
+	public List<HttpResponse> postAll(final URL url, final Map<String,String> headers, final List<byte[]> bodies, final int timeout) throws IOException {
+		final OkHttpClient client = getClient(timeout);
+		final HttpResponse[] responses = new HttpResponse[bodies.size()];
+		final IOException[] errors = new IOException[bodies.size()];
+		final CountDownLatch latch = new CountDownLatch(bodies.size());
+		final List<Call> calls = new ArrayList<Call>(bodies.size());
+
+		for (int i=0; i < bodies.size(); i++) {
+			final int index = i;
+			final Call call = client.newCall(createRequest(url, headers, RequestBody.create(JSON, bodies.get(i))));
+			calls.add(call);
+			call.enqueue(new Callback() {
+				public void onResponse(final Call call, final Response response) {
+					try {
+						// read it here so the connection is free for the next one
+						responses[index] = toHttpResponse(response, true);
+					} catch (final IOException e) {
+						errors[index] = e;
+					} finally {
+						latch.countDown();
+					}
+				}
+
+				public void onFailure(final Call call, final IOException e) {
+					errors[index] = e;
+					latch.countDown();
+				}
+			});
+		}
+
+		try {
+			if (timeout <= 0) {
+				latch.await();
+			} else if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
+				cancelAll(calls);
+				throw new SocketTimeoutException("Timed out after " + timeout + "ms waiting for " + latch.getCount() + " of " + bodies.size() + " responses from " + url);
+			}
+		} catch (final InterruptedException e) {
+			cancelAll(calls);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for responses from " + url);
+		}
+
+		final List<HttpResponse> ret = new ArrayList<HttpResponse>(responses.length);
+		for (int i=0; i < responses.length; i++) {
+			if (errors[i] != null) {
+				throw errors[i];
+			}
+			ret.add(responses[i]);
+		}
+		return ret;
+	}
+
+	/**
+	 * Shut down the client if this transport created it.  A client passed
+	 * in by the caller, and its connection pool, are left alone.
+	 */
+	public void close() {
+		if (m_ownsClient) {
+			m_client.connectionPool().evictAll();
+			m_client.dispatcher().executorService().shutdown();
+		}
+	}
+
+	private static void cancelAll(final List<Call> calls) {
+		for (final Call call : calls) {
+			call.cancel();
+		}
+	}
+
+	private OkHttpClient getClient(final int timeout) {
+		if (timeout <= 0) {
+			return m_client;
+		}
+		// derived clients share the connection pool and dispatcher
+		TimedClient timedClient = m_timedClient;
+		if (timedClient == null || timedClient.m_timeout != timeout) {
+			timedClient = new TimedClient(timeout, m_client.newBuilder()
+				.connectTimeout(timeout, TimeUnit.MILLISECONDS)
+				.readTimeout(timeout, TimeUnit.MILLISECONDS)
+				.writeTimeout(timeout, TimeUnit.MILLISECONDS)
+				.build());
+			m_timedClient = timedClient;
+		}
+		return timedClient.m_client;
+	}
+
+	private static Request createRequest(final URL url, final Map<String,String> headers, final RequestBody body) {
+		final Request.Builder builder = new Request.Builder().url(url);
+		for (final Map.Entry<String,String> header : headers.entrySet()) {
+			builder.header(header.getKey(), header.getValue());
+		}
+		return builder.post(body).build();
+	}
+
+	private static HttpResponse toHttpResponse(final Response response, final boolean buffer) throws IOException {
+		// OkHttp already lower-cases the names in the multimap
+		final Map<String,List<String>> headers = response.headers().toMultimap();
+		if (buffer) {
+			final byte[] body;
+			try {
+				body = response.body().bytes();
+			} finally {
+				response.close();
+			}
+			return new HttpResponse(response.code(), response.message(), headers, new ByteArrayInputStream(body));
+		}
+		return new HttpResponse(response.code(), response.message(), headers, response.body().byteStream());
+	}
+
+	private static final class TimedClient {
+		private final int m_timeout;
+		private final OkHttpClient m_client;
+
+		public TimedClient(final int timeout, final OkHttpClient client) {
+			m_timeout = timeout;
+			m_client = client;
+		}
+	}
+}
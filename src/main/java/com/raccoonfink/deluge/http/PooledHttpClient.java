@@ -0,0 +1,234 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A minimal HTTP/1.1 client which sends requests over keep-alive
+ * connections leased from a {@link ConnectionPool}.  This is the default
+ * transport.
+ * <p>
+ * It always connects directly and does not follow redirects.  Use an
+ * {@link OkHttpTransport} to go through the system's proxy settings.
+ */
+public class PooledHttpClient implements StreamingTransport {
+	private final ConnectionPool m_pool;
+	private volatile SSLSocketFactory m_sslSocketFactory;
+	private volatile HostnameVerifier m_hostnameVerifier;
+
+	public PooledHttpClient(final ConnectionPool pool) {
+		m_pool = pool;
+	}
+
+	public ConnectionPool getConnectionPool() {
+		return m_pool;
+	}
+
+	public void setSSLSocketFactory(final SSLSocketFactory sslSocketFactory) {
+		m_sslSocketFactory = sslSocketFactory;
+	}
+
+	/**
+	 * Check the host name of new secure connections; null, the default,
+	 * skips the check.
+	 */
+	public void setHostnameVerifier(final HostnameVerifier hostnameVerifier) {
+		m_hostnameVerifier = hostnameVerifier;
+	}
+
+	public HttpResponse post(final URL url, final Map<String,String> headers, final byte[] body, final int timeout) throws IOException {
+		return post(url, headers, body, null, timeout);
+	}
+
+	public HttpResponse post(final URL url, final Map<String,String> headers, final RequestBody body, final int timeout) throws IOException {
+		return post(url, headers, null, body, timeout);
+	}
+
+	private HttpResponse post(final URL url, final Map<String,String> headers, final byte[] body, final RequestBody streamedBody, final int timeout) throws IOException {
+		final HttpRoute route = HttpRoute.forURL(url);
+		final String path = url.getFile().length() == 0 ? "/" : url.getFile();
+
+		for (int attempt = 0; ; attempt++) {
+			final long start = System.nanoTime();
+			final HttpConnection connection = m_pool.acquire(route, m_sslSocketFactory, m_hostnameVerifier, timeout);
+			final long connectTime = System.nanoTime() - start;
+			final boolean reused = connection.getUseCount() > 0;
+			final String statusLine;
+			try {
+				connection.setReadTimeout(timeout);
+				try {
+					if (streamedBody == null) {
+						connection.writeRequest("POST", path, headers, body);
+					} else {
+						connection.writeRequest("POST", path, headers, streamedBody);
+					}
+				} catch (final SocketException e) {
+					throw new StaleConnectionException("Connection to " + route + " was reset while sending the request", e);
+				}
+				statusLine = connection.readStatusLine();
+			} catch (final IOException e) {
+				m_pool.release(connection, false);
+				// the server may have closed a pooled connection just as we
+				// reused it; anything else, a timeout in particular, may mean
+				// the request was processed, so it must not be sent twice
+				if (reused && attempt == 0 && e instanceof StaleConnectionException) {
+					continue;
+				}
+				throw e;
+			}
+
+			try {
+				final HttpResponse response = readResponse(connection, statusLine, m_pool);
+				response.setConnectTime(connectTime);
+				return response;
+			} catch (final IOException e) {
+				m_pool.release(connection, false);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Pipelines the requests; see {@link #pipeline(URL, Map, List, int)}.
+	 */
+	public List<HttpResponse> postAll(final URL url, final Map<String,String> headers, final List<byte[]> bodies, final int timeout) throws IOException {
+		return pipeline(url, headers, bodies, timeout);
+	}
+
+	/**
+	 * Write all of the given requests to one connection before reading any
+	 * response (HTTP/1.1 pipelining), and read the responses fully into
+	 * memory in order.  If the server closes the connection part-way, the
+	 * returned list is shorter than <code>bodies</code>; requests without a
+	 * response were never processed.
+	 */
+	public List<HttpResponse> pipeline(final URL url, final Map<String,String> headers, final List<byte[]> bodies, final int timeout) throws IOException {
+		final HttpRoute route = HttpRoute.forURL(url);
+		final String path = url.getFile().length() == 0 ? "/" : url.getFile();
+
+		for (int attempt = 0; ; attempt++) {
+			final long start = System.nanoTime();
+			final HttpConnection connection = m_pool.acquire(route, m_sslSocketFactory, m_hostnameVerifier, timeout);
+			final long connectTime = System.nanoTime() - start;
+			final boolean reused = connection.getUseCount() > 0;
+			final List<HttpResponse> responses = new ArrayList<HttpResponse>(bodies.size());
+			boolean reusable = false;
+			try {
+				String statusLine;
+				IOException writeFailure = null;
+				try {
+					connection.setReadTimeout(timeout);
+					try {
+						for (final byte[] body : bodies) {
+							connection.writeRequest("POST", path, headers, body, false);
+						}
+						connection.flush();
+					} catch (final SocketException e) {
+						// the server may have answered some requests before the reset
+						writeFailure = e;
+					}
+					statusLine = connection.readStatusLine();
+				} catch (final StaleConnectionException e) {
+					// nothing was answered, so nothing was processed
+					if (reused && attempt == 0) {
+						continue;
+					}
+					throw writeFailure == null ? e : writeFailure;
+				}
+
+				while (true) {
+					final HttpResponse response = readResponse(connection, statusLine, null);
+					final ResponseBodyInputStream body = (ResponseBodyInputStream) response.getBody();
+					final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					final byte[] buffer = new byte[4096];
+					int count;
+					while ((count = body.read(buffer)) != -1) {
+						bytes.write(buffer, 0, count);
+					}
+					final HttpResponse buffered = new HttpResponse(response.getResponseCode(), response.getResponseMessage(), response.getHeaderMap(), new ByteArrayInputStream(bytes.toByteArray()));
+					// only the first response waited for the connection
+					buffered.setConnectTime(responses.isEmpty() ? connectTime : 0);
+					responses.add(buffered);
+					reusable = body.isReusable();
+					if (!reusable || responses.size() == bodies.size()) {
+						break;
+					}
+					try {
+						statusLine = connection.readStatusLine();
+					} catch (final StaleConnectionException e) {
+						// the rest were never processed; never replay a partly answered pipeline
+						break;
+					}
+				}
+				return responses;
+			} finally {
+				m_pool.release(connection, reusable && responses.size() == bodies.size());
+			}
+		}
+	}
+
+	private HttpResponse readResponse(final HttpConnection connection, final String statusLine, final ConnectionPool pool) throws IOException {
+		// HTTP/1.1 200 OK
+		final String[] status = statusLine.split(" ", 3);
+		if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+			throw new IOException("Invalid status line from " + connection.getRoute() + ": " + statusLine);
+		}
+		final int responseCode;
+		try {
+			responseCode = Integer.parseInt(status[1]);
+		} catch (final NumberFormatException e) {
+			throw new IOException("Invalid status line from " + connection.getRoute() + ": " + statusLine);
+		}
+		final String responseMessage = status.length > 2 ? status[2] : "";
+		final Map<String,List<String>> headers = HttpResponse.parseHeaders(connection);
+
+		final boolean http10 = "HTTP/1.0".equals(status[0]);
+		final String connectionHeader = first(headers, "connection");
+		final boolean keepAlive;
+		if (connectionHeader != null && connectionHeader.toLowerCase(Locale.ENGLISH).contains("close")) {
+			keepAlive = false;
+		} else if (http10) {
+			keepAlive = connectionHeader != null && connectionHeader.toLowerCase(Locale.ENGLISH).contains("keep-alive");
+		} else {
+			keepAlive = true;
+		}
+
+		final long length;
+		final String transferEncoding = first(headers, "transfer-encoding");
+		final String contentLength = first(headers, "content-length");
+		if (responseCode == 204 || responseCode == 304) {
+			length = 0;
+		} else if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ENGLISH).contains("chunked")) {
+			length = ResponseBodyInputStream.CHUNKED;
+		} else if (contentLength != null) {
+			try {
+				length = Long.parseLong(contentLength.trim());
+			} catch (final NumberFormatException e) {
+				throw new IOException("Invalid Content-Length from " + connection.getRoute() + ": " + contentLength);
+			}
+		} else {
+			length = ResponseBodyInputStream.UNTIL_EOF;
+		}
+
+		return new HttpResponse(responseCode, responseMessage, headers, new ResponseBodyInputStream(connection, pool, length, keepAlive));
+	}
+
+	private static String first(final Map<String,List<String>> headers, final String name) {
+		final List<String> values = headers.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	public void close() {
+		m_pool.close();
+	}
+}
@@ -0,0 +1,16 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A request body which is written straight to the connection rather than
+ * held in memory.  It may be written more than once, if a request has to
+ * be retried, and must write exactly {@link #getContentLength()} bytes
+ * each time, without closing the stream.
+ */
+public interface RequestBody {
+	public long getContentLength();
+
+	public void writeTo(final OutputStream out) throws IOException;
+}
@@ -0,0 +1,185 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads exactly one response body off a pooled connection (fixed length,
+ * chunked, or until end-of-stream) and hands the connection back to the
+ * pool once the body has been consumed.  Without a pool, the connection
+ * is left to the caller.
+ */
+class ResponseBodyInputStream extends InputStream {
+	private static final int MAX_DRAIN = 64 * 1024;
+
+	static final long UNTIL_EOF = -1;
+	static final long CHUNKED = -2;
+
+	private final HttpConnection m_connection;
+	private final ConnectionPool m_pool;
+	private final InputStream m_in;
+	private final boolean m_chunked;
+	private final boolean m_keepAlive;
+
+	private long m_remaining;
+	private boolean m_eof = false;
+	private boolean m_released = false;
+	private boolean m_reusable = false;
+
+	ResponseBodyInputStream(final HttpConnection connection, final ConnectionPool pool, final long length, final boolean keepAlive) throws IOException {
+		m_connection = connection;
+		m_pool = pool;
+		m_in = connection.getInputStream();
+		m_chunked = length == CHUNKED;
+		m_keepAlive = keepAlive && length != UNTIL_EOF;
+		m_remaining = m_chunked ? 0 : length;
+		if (length == 0) {
+			finish();
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		final byte[] b = new byte[1];
+		final int count = read(b, 0, 1);
+		return count == -1 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		if (m_eof) {
+			return -1;
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (m_chunked && m_remaining == 0) {
+			m_remaining = readChunkSize();
+			if (m_remaining == 0) {
+				readTrailers();
+				finish();
+				return -1;
+			}
+		}
+
+		int toRead = len;
+		if (m_remaining != UNTIL_EOF && m_remaining < toRead) {
+			toRead = (int) m_remaining;
+		}
+		final int count = m_in.read(b, off, toRead);
+		if (count == -1) {
+			if (m_remaining == UNTIL_EOF) {
+				finish();
+				return -1;
+			}
+			abort();
+			throw new IOException("Unexpected end of stream reading response body from " + m_connection.getRoute());
+		}
+		if (m_remaining != UNTIL_EOF) {
+			m_remaining -= count;
+			if (m_remaining == 0) {
+				if (m_chunked) {
+					readChunkTerminator();
+				} else {
+					finish();
+				}
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (m_eof) {
+			return 0;
+		}
+		final int available = m_in.available();
+		if (m_remaining > 0 && m_remaining < available) {
+			return (int) m_remaining;
+		}
+		return m_chunked && m_remaining == 0 ? 0 : available;
+	}
+
+	private long readChunkSize() throws IOException {
+		final String line = m_connection.readLine();
+		if (line == null) {
+			abort();
+			throw new IOException("Unexpected end of stream reading chunk header from " + m_connection.getRoute());
+		}
+		final int semicolon = line.indexOf(';');
+		final String size = (semicolon == -1 ? line : line.substring(0, semicolon)).trim();
+		try {
+			return Long.parseLong(size, 16);
+		} catch (final NumberFormatException e) {
+			abort();
+			throw new IOException("Invalid chunk size '" + size + "' from " + m_connection.getRoute());
+		}
+	}
+
+	private void readChunkTerminator() throws IOException {
+		final String line = m_connection.readLine();
+		if (line == null || line.length() > 0) {
+			abort();
+			throw new IOException("Malformed chunk terminator from " + m_connection.getRoute());
+		}
+	}
+
+	private void readTrailers() throws IOException {
+		String line;
+		while ((line = m_connection.readLine()) != null && line.length() > 0) {
+			// trailers are ignored
+		}
+	}
+
+	private void finish() {
+		m_eof = true;
+		release(m_keepAlive);
+	}
+
+	private void abort() {
+		m_eof = true;
+		release(false);
+	}
+
+	private void release(final boolean reusable) {
+		if (!m_released) {
+			m_released = true;
+			m_reusable = reusable;
+			if (m_pool != null) {
+				m_pool.release(m_connection, reusable);
+			}
+		}
+	}
+
+	/**
+	 * Whether the connection can carry another request once this body has
+	 * been read.  Only meaningful after the stream reaches its end.
+	 */
+	boolean isReusable() {
+		return m_reusable;
+	}
+
+	/**
+	 * Closing before the end of the body drains a small remainder so the
+	 * connection can still be reused; anything larger is not worth reading.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (m_released) {
+			return;
+		}
+		if (m_keepAlive) {
+			try {
+				final byte[] buffer = new byte[4096];
+				int drained = 0;
+				int count;
+				while (drained < MAX_DRAIN && (count = read(buffer, 0, buffer.length)) != -1) {
+					drained += count;
+				}
+			} catch (final IOException e) {
+				// fall through and discard the connection
+			}
+		}
+		abort();
+	}
+}
@@ -0,0 +1,63 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails the read once more than <code>limit</code> bytes have come
+ * through, so a runaway (or maliciously compressed) response can't exhaust
+ * the heap.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+	private final long m_limit;
+	private final String m_source;
+	private long m_count = 0;
+
+	public SizeLimitedInputStream(final InputStream in, final long limit, final String source) {
+		super(in);
+		m_limit = limit;
+		m_source = source;
+	}
+
+	public long getCount() {
+		return m_count;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = super.read();
+		if (b != -1) {
+			count(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		final int count = super.read(b, off, len);
+		if (count > 0) {
+			count(count);
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		final long skipped = super.skip(n);
+		count(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void count(final long bytes) throws IOException {
+		m_count += bytes;
+		if (m_count > m_limit) {
+			throw new IOException("Response from " + m_source + " exceeded the maximum size of " + m_limit + " bytes");
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.IOException;
+
+/**
+ * A pooled connection was closed or reset by the server before any of the
+ * response arrived, so the request was never processed and may be sent
+ * again on a fresh connection.
+ */
+class StaleConnectionException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public StaleConnectionException(final String message) {
+		super(message);
+	}
+
+	public StaleConnectionException(final String message, final IOException cause) {
+		super(message);
+		initCause(cause);
+	}
+}
@@ -0,0 +1,13 @@
+package com.raccoonfink.deluge.http;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * A transport which can send a {@link RequestBody} without buffering it.
+ * Bodies for other transports are read into memory first.
+ */
+public interface StreamingTransport extends DelugeTransport {
+	public HttpResponse post(final URL url, final Map<String,String> headers, final RequestBody body, final int timeout) throws IOException;
+}
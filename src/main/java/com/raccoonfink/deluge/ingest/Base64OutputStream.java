@@ -0,0 +1,104 @@
+package com.raccoonfink.deluge.ingest;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes everything written to it as standard base64, without line
+ * breaks.  {@link #finish()} writes the padding; closing this stream does
+ * not close the one underneath.
+ */
+class Base64OutputStream extends FilterOutputStream {
+	private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+
+	private final byte[] m_encoded = new byte[4096];
+	private int m_encodedLength = 0;
+	private int m_pending = 0;
+	private int m_pendingCount = 0;
+
+	public Base64OutputStream(final OutputStream out) {
+		super(out);
+	}
+
+	/**
+	 * Get how long <code>length</code> bytes are once encoded.
+	 */
+	public static long encodedLength(final long length) {
+		return (length + 2) / 3 * 4;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		m_pending = (m_pending << 8) | (b & 0xff);
+		if (++m_pendingCount == 3) {
+			encode(m_pending);
+			m_pending = 0;
+			m_pendingCount = 0;
+		}
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		int i = off;
+		final int end = off + len;
+		while (m_pendingCount != 0 && i < end) {
+			write(b[i++]);
+		}
+		for (; i + 3 <= end; i += 3) {
+			encode(((b[i] & 0xff) << 16) | ((b[i + 1] & 0xff) << 8) | (b[i + 2] & 0xff));
+		}
+		while (i < end) {
+			write(b[i++]);
+		}
+	}
+
+	/**
+	 * Encode and pad whatever is left over.
+	 */
+	public void finish() throws IOException {
+		if (m_pendingCount > 0) {
+			final int group = m_pending << (8 * (3 - m_pendingCount));
+			reserve();
+			m_encoded[m_encodedLength++] = ALPHABET[(group >> 18) & 0x3f];
+			m_encoded[m_encodedLength++] = ALPHABET[(group >> 12) & 0x3f];
+			m_encoded[m_encodedLength++] = m_pendingCount == 2 ? ALPHABET[(group >> 6) & 0x3f] : (byte) '=';
+			m_encoded[m_encodedLength++] = '=';
+			m_pending = 0;
+			m_pendingCount = 0;
+		}
+		flushEncoded();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushEncoded();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+
+	private void encode(final int group) throws IOException {
+		reserve();
+		m_encoded[m_encodedLength++] = ALPHABET[(group >> 18) & 0x3f];
+		m_encoded[m_encodedLength++] = ALPHABET[(group >> 12) & 0x3f];
+		m_encoded[m_encodedLength++] = ALPHABET[(group >> 6) & 0x3f];
+		m_encoded[m_encodedLength++] = ALPHABET[group & 0x3f];
+	}
+
+	private void reserve() throws IOException {
+		if (m_encodedLength + 4 > m_encoded.length) {
+			flushEncoded();
+		}
+	}
+
+	private void flushEncoded() throws IOException {
+		if (m_encodedLength > 0) {
+			out.write(m_encoded, 0, m_encodedLength);
+			m_encodedLength = 0;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package com.raccoonfink.deluge.ingest;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * Works out the info hash a torrent will have in Deluge, which is also
+ * its torrent id.  Torrent files are scanned as a stream, so only the
+ * SHA-1 of the <code>info</code> dictionary is kept, never the file.
+ */
+public final class InfoHash {
+	private static final int MAX_DEPTH = 256;
+	private static final String BASE32 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+	private static final byte[] INFO = { 'i', 'n', 'f', 'o' };
+
+	private InfoHash() {
+	}
+
+	/**
+	 * Get the info hash of a bencoded torrent file, in lower case hex.
+	 */
+	public static String fromTorrent(final InputStream in) throws IOException {
+		final Parser parser = new Parser(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 8192));
+		if (parser.read() != 'd') {
+			throw new IOException("Not a torrent file: it does not start with a dictionary");
+		}
+		while (parser.peek() != 'e') {
+			final boolean info = parser.readKeyEquals(INFO);
+			if (info) {
+				parser.startDigest();
+				parser.skipValue(0);
+				return toHex(parser.finishDigest());
+			}
+			parser.skipValue(0);
+		}
+		throw new IOException("Not a torrent file: it has no info dictionary");
+	}
+
+	/**
+	 * Get the info hash from the <code>xt=urn:btih:</code> parameter of a
+	 * magnet URI, which may be in hex or base32, in lower case hex.
+	 */
+	public static String fromMagnet(final String uri) {
+		final String lower = uri.toLowerCase(Locale.ENGLISH);
+		final int start = lower.indexOf("xt=urn:btih:");
+		if (!lower.startsWith("magnet:") || start < 0) {
+			throw new IllegalArgumentException("Not a BitTorrent magnet URI: " + uri);
+		}
+		final int end = lower.indexOf('&', start);
+		final String hash = uri.substring(start + 12, end < 0 ? uri.length() : end);
+		if (hash.length() == 40 && hash.matches("[0-9a-fA-F]+")) {
+			return hash.toLowerCase(Locale.ENGLISH);
+		} else if (hash.length() == 32) {
+			return toHex(decodeBase32(hash.toUpperCase(Locale.ENGLISH), uri));
+		}
+		throw new IllegalArgumentException("Invalid info hash in magnet URI: " + uri);
+	}
+
+	private static byte[] decodeBase32(final String value, final String uri) {
+		final byte[] bytes = new byte[value.length() * 5 / 8];
+		long buffer = 0;
+		int bits = 0;
+		int index = 0;
+		for (int i=0; i < value.length(); i++) {
+			final int digit = BASE32.indexOf(value.charAt(i));
+			if (digit < 0) {
+				throw new IllegalArgumentException("Invalid info hash in magnet URI: " + uri);
+			}
+			buffer = (buffer << 5) | digit;
+			bits += 5;
+			if (bits >= 8) {
+				bits -= 8;
+				bytes[index++] = (byte) (buffer >> bits);
+			}
+		}
+		return bytes;
+	}
+
+	static String toHex(final byte[] bytes) {
+		final StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return builder.toString();
+	}
+
+	private static final class Parser {
+		private final InputStream m_in;
+		private final byte[] m_skipBuffer = new byte[4096];
+		private int m_peeked = -1;
+		private MessageDigest m_digest;
+
+		public Parser(final InputStream in) {
+			m_in = in;
+		}
+
+		public int peek() throws IOException {
+			if (m_peeked == -1) {
+				m_peeked = m_in.read();
+				if (m_peeked == -1) {
+					throw new EOFException("Unexpected end of torrent file");
+				}
+			}
+			return m_peeked;
+		}
+
+		public int read() throws IOException {
+			final int c = peek();
+			m_peeked = -1;
+			if (m_digest != null) {
+				m_digest.update((byte) c);
+			}
+			return c;
+		}
+
+		public void startDigest() throws IOException {
+			try {
+				m_digest = MessageDigest.getInstance("SHA-1");
+			} catch (final NoSuchAlgorithmException e) {
+				throw new IOException("SHA-1 is not available: " + e.getMessage());
+			}
+		}
+
+		public byte[] finishDigest() {
+			final byte[] digest = m_digest.digest();
+			m_digest = null;
+			return digest;
+		}
+
+		/**
+		 * Read a dictionary key and compare it with <code>expected</code>.
+		 */
+		public boolean readKeyEquals(final byte[] expected) throws IOException {
+			final long length = readLength();
+			if (length != expected.length) {
+				skip(length);
+				return false;
+			}
+			boolean equal = true;
+			for (int i=0; i < length; i++) {
+				equal &= read() == expected[i];
+			}
+			return equal;
+		}
+
+		public void skipValue(final int depth) throws IOException {
+			if (depth > MAX_DEPTH) {
+				throw new IOException("Torrent file is nested too deeply");
+			}
+			final int c = peek();
+			if (c == 'i') {
+				while (read() != 'e') {
+					// skip the digits
+				}
+			} else if (c == 'l' || c == 'd') {
+				read();
+				while (peek() != 'e') {
+					skipValue(depth + 1);
+				}
+				read();
+			} else if (c >= '0' && c <= '9') {
+				skip(readLength());
+			} else {
+				throw new IOException("Invalid bencoding: unexpected '" + (char) c + "'");
+			}
+		}
+
+		private long readLength() throws IOException {
+			long length = 0;
+			int c;
+			while ((c = read()) != ':') {
+				if (c < '0' || c > '9' || length > Integer.MAX_VALUE) {
+					throw new IOException("Invalid bencoding: bad string length");
+				}
+				length = length * 10 + (c - '0');
+			}
+			return length;
+		}
+
+		private void skip(final long length) throws IOException {
+			long remaining = length;
+			if (remaining > 0 && m_peeked != -1) {
+				read();
+				remaining--;
+			}
+			while (remaining > 0) {
+				final int count = m_in.read(m_skipBuffer, 0, (int) Math.min(m_skipBuffer.length, remaining));
+				if (count == -1) {
+					throw new EOFException("Unexpected end of torrent file");
+				}
+				if (m_digest != null) {
+					m_digest.update(m_skipBuffer, 0, count);
+				}
+				remaining -= count;
+			}
+		}
+	}
+}
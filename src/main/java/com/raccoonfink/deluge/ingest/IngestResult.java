@@ -0,0 +1,55 @@
+package com.raccoonfink.deluge.ingest;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.raccoonfink.deluge.DelugeException;
+
+/**
+ * Counts of what a {@link TorrentIngester} run did, and the error for
+ * each source which could not be added.
+ */
+public class IngestResult {
+	private final AtomicInteger m_added = new AtomicInteger();
+	private final AtomicInteger m_duplicates = new AtomicInteger();
+	private final Map<String,DelugeException> m_failures = new LinkedHashMap<String,DelugeException>();
+
+	void added() {
+		m_added.incrementAndGet();
+	}
+
+	void duplicate() {
+		m_duplicates.incrementAndGet();
+	}
+
+	synchronized void failed(final TorrentSource source, final DelugeException e) {
+		m_failures.put(source.getName(), e);
+	}
+
+	public int getAddedCount() {
+		return m_added.get();
+	}
+
+	/**
+	 * Get how many sources were skipped because their torrent was already
+	 * loaded, or came up earlier in the same run.
+	 */
+	public int getDuplicateCount() {
+		return m_duplicates.get();
+	}
+
+	public synchronized int getFailedCount() {
+		return m_failures.size();
+	}
+
+	public synchronized Map<String,DelugeException> getFailures() {
+		return Collections.unmodifiableMap(new LinkedHashMap<String,DelugeException>(m_failures));
+	}
+
+	@Override
+	public String toString() {
+		return "IngestResult[added=" + getAddedCount() + ", duplicates=" + getDuplicateCount() + ", failed=" + getFailedCount() + "]";
+	}
+}
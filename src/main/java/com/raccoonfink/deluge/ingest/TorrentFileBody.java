@@ -0,0 +1,58 @@
+package com.raccoonfink.deluge.ingest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.json.JSONObject;
+
+import com.raccoonfink.deluge.http.BufferPool;
+import com.raccoonfink.deluge.http.RequestBody;
+
+/**
+ * The parameters of <code>core.add_torrent_file</code> (file name, base64
+ * file contents, options), with the file encoded as it is sent rather
+ * than read into memory.
+ */
+class TorrentFileBody implements RequestBody {
+	private final File m_file;
+	private final long m_fileLength;
+	private final byte[] m_prefix;
+	private final byte[] m_suffix;
+
+	public TorrentFileBody(final File file, final JSONObject options) {
+		m_file = file;
+		m_fileLength = file.length();
+		try {
+			m_prefix = ("[" + JSONObject.quote(file.getName()) + ",\"").getBytes("UTF-8");
+			m_suffix = ("\"," + (options == null ? "{}" : options.toString()) + "]").getBytes("UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not supported", e);
+		}
+	}
+
+	public long getContentLength() {
+		return m_prefix.length + Base64OutputStream.encodedLength(m_fileLength) + m_suffix.length;
+	}
+
+	public void writeTo(final OutputStream out) throws IOException {
+		out.write(m_prefix);
+		final InputStream in = new FileInputStream(m_file);
+		final byte[] buffer = BufferPool.getBytes();
+		try {
+			final Base64OutputStream encoder = new Base64OutputStream(out);
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				encoder.write(buffer, 0, count);
+			}
+			encoder.finish();
+		} finally {
+			BufferPool.release(buffer);
+			in.close();
+		}
+		out.write(m_suffix);
+	}
+}
@@ -0,0 +1,164 @@
+package com.raccoonfink.deluge.ingest;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.raccoonfink.deluge.DelugeDispatcher;
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.DelugeRequest;
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.responses.DelugeResponse;
+
+/**
+ * Adds torrent files and magnet URIs in bulk.  At most
+ * <code>concurrency</code> uploads run at once and sources are only taken
+ * from the iterator as slots free up, so memory use doesn't grow with the
+ * number of torrents; each .torrent file is base64-encoded into the
+ * request as it is sent.
+ *
+ * Torrents are matched by info hash against those already loaded (and
+ * against each other), and duplicates are skipped without being sent.
+ */
+public class TorrentIngester {
+	private static final FileFilter TORRENT_FILES = new FileFilter() {
+		public boolean accept(final File file) {
+			return file.isFile() && file.getName().toLowerCase(Locale.ENGLISH).endsWith(".torrent");
+		}
+	};
+
+	private final DelugeServer m_server;
+	private final int m_concurrency;
+	private volatile JSONObject m_options = new JSONObject();
+
+	public TorrentIngester(final DelugeServer server) {
+		this(server, 4);
+	}
+
+	public TorrentIngester(final DelugeServer server, final int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be at least 1");
+		}
+		m_server = server;
+		m_concurrency = concurrency;
+	}
+
+	/**
+	 * Set the torrent options to add every torrent with, such as
+	 * <code>add_paused</code> or <code>download_location</code>.
+	 */
+	public void setOptions(final Map<String,?> options) {
+		m_options = new JSONObject(options);
+	}
+
+	/**
+	 * Add every .torrent file in a directory.
+	 */
+	public IngestResult ingest(final File directory) throws DelugeException {
+		final File[] files = directory.listFiles(TORRENT_FILES);
+		if (files == null) {
+			throw new DelugeException("Unable to list " + directory);
+		}
+		Arrays.sort(files);
+		return ingest(new Iterator<TorrentSource>() {
+			private int m_index = 0;
+
+			public boolean hasNext() {
+				return m_index < files.length;
+			}
+
+			public TorrentSource next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return TorrentSource.fromFile(files[m_index++]);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		});
+	}
+
+	public IngestResult ingest(final Iterator<TorrentSource> sources) throws DelugeException {
+		final Set<String> known = Collections.synchronizedSet(getLoadedInfoHashes());
+		final IngestResult result = new IngestResult();
+		final JSONObject options = m_options;
+		final Semaphore slots = new Semaphore(m_concurrency);
+		final DelugeDispatcher dispatcher = new DelugeDispatcher(m_concurrency);
+
+		try {
+			while (sources.hasNext()) {
+				final TorrentSource source = sources.next();
+				slots.acquire();
+				dispatcher.submit(new Callable<Void>() {
+					public Void call() {
+						try {
+							ingest(source, options, known, result);
+						} finally {
+							slots.release();
+						}
+						return null;
+					}
+				});
+			}
+			// wait for the stragglers
+			slots.acquire(m_concurrency);
+			slots.release(m_concurrency);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DelugeException("Interrupted while adding torrents", e);
+		} finally {
+			dispatcher.shutdown();
+		}
+		return result;
+	}
+
+	private void ingest(final TorrentSource source, final JSONObject options, final Set<String> known, final IngestResult result) {
+		final String infoHash;
+		try {
+			infoHash = source.getInfoHash();
+		} catch (final IOException e) {
+			result.failed(source, new DelugeException("Unable to read " + source.getName(), e));
+			return;
+		}
+		if (!known.add(infoHash)) {
+			result.duplicate();
+			return;
+		}
+
+		try {
+			final DelugeResponse response = source.add(m_server, options);
+			if (response.getResponseData().isNull("result")) {
+				throw new DelugeException("Deluge did not add " + source.getName());
+			}
+			result.added();
+		} catch (final DelugeException e) {
+			// let a later copy of the same torrent try again
+			known.remove(infoHash);
+			result.failed(source, e);
+		}
+	}
+
+	private Set<String> getLoadedInfoHashes() throws DelugeException {
+		final JSONArray ids = m_server.makeRequest(new DelugeRequest("core.get_session_state")).getResponseData().optJSONArray("result");
+		final Set<String> hashes = new HashSet<String>();
+		for (int i=0; ids != null && i < ids.length(); i++) {
+			hashes.add(ids.optString(i).toLowerCase(Locale.ENGLISH));
+		}
+		return hashes;
+	}
+}
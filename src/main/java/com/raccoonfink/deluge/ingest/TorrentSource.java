@@ -0,0 +1,98 @@
+package com.raccoonfink.deluge.ingest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.json.JSONObject;
+
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.DelugeRequest;
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.responses.DelugeResponse;
+
+/**
+ * A torrent to add: a .torrent file or a magnet URI.
+ */
+public abstract class TorrentSource {
+	public static TorrentSource fromFile(final File file) {
+		return new FileSource(file);
+	}
+
+	public static TorrentSource fromMagnet(final String uri) {
+		return new MagnetSource(uri);
+	}
+
+	/**
+	 * Get the file path or URI, for reporting.
+	 */
+	public abstract String getName();
+
+	/**
+	 * Get the info hash, which will be the torrent's id in Deluge.
+	 */
+	public abstract String getInfoHash() throws IOException;
+
+	abstract DelugeResponse add(final DelugeServer server, final JSONObject options) throws DelugeException;
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+	private static final class FileSource extends TorrentSource {
+		private final File m_file;
+
+		public FileSource(final File file) {
+			m_file = file;
+		}
+
+		@Override
+		public String getName() {
+			return m_file.getPath();
+		}
+
+		@Override
+		public String getInfoHash() throws IOException {
+			final InputStream in = new FileInputStream(m_file);
+			try {
+				return InfoHash.fromTorrent(in);
+			} finally {
+				in.close();
+			}
+		}
+
+		@Override
+		DelugeResponse add(final DelugeServer server, final JSONObject options) throws DelugeException {
+			return server.makeRequest("core.add_torrent_file", new TorrentFileBody(m_file, options));
+		}
+	}
+
+	private static final class MagnetSource extends TorrentSource {
+		private final String m_uri;
+
+		public MagnetSource(final String uri) {
+			m_uri = uri;
+		}
+
+		@Override
+		public String getName() {
+			return m_uri;
+		}
+
+		@Override
+		public String getInfoHash() throws IOException {
+			try {
+				return InfoHash.fromMagnet(m_uri);
+			} catch (final IllegalArgumentException e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+
+		@Override
+		DelugeResponse add(final DelugeServer server, final JSONObject options) throws DelugeException {
+			return server.makeRequest(new DelugeRequest("core.add_torrent_magnet", m_uri, options));
+		}
+	}
+}
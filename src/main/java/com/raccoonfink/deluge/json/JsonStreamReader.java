@@ -0,0 +1,526 @@
+package com.raccoonfink.deluge.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.raccoonfink.deluge.http.BufferPool;
+
+/**
+ * A pull parser which reads JSON one token at a time, so large responses
+ * can be decoded straight into model objects without building a
+ * {@link JSONObject} tree first.
+ *
+ * The <code>opt*</code> methods consume a value of any type and coerce it
+ * the same way the equivalent {@link JSONObject} methods do.
+ */
+public class JsonStreamReader implements Closeable {
+	private static final int EMPTY_ARRAY = 1;
+	private static final int NONEMPTY_ARRAY = 2;
+	private static final int EMPTY_OBJECT = 3;
+	private static final int DANGLING_NAME = 4;
+	private static final int NONEMPTY_OBJECT = 5;
+	private static final int EMPTY_DOCUMENT = 6;
+	private static final int NONEMPTY_DOCUMENT = 7;
+
+	private final Reader m_in;
+	private char[] m_buffer = BufferPool.getChars();
+	private int m_pos = 0;
+	private int m_limit = 0;
+	private long m_consumed = 0;
+
+	private int[] m_stack = new int[32];
+	private int m_stackSize = 0;
+
+	private JsonToken m_peeked = null;
+	private String m_peekedLiteral = null;
+	private boolean m_peekedBoolean = false;
+
+	private final StringBuilder m_string = new StringBuilder(64);
+
+	public JsonStreamReader(final Reader in) {
+		m_in = in;
+		push(EMPTY_DOCUMENT);
+	}
+
+	/**
+	 * Read UTF-8 encoded JSON from a stream.
+	 */
+	public JsonStreamReader(final InputStream in) {
+		this(new Utf8Reader(in));
+	}
+
+	public JsonToken peek() throws IOException, JSONException {
+		if (m_peeked == null) {
+			m_peeked = doPeek();
+		}
+		return m_peeked;
+	}
+
+	public boolean hasNext() throws IOException, JSONException {
+		final JsonToken token = peek();
+		return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+	}
+
+	public void beginArray() throws IOException, JSONException {
+		expect(JsonToken.BEGIN_ARRAY);
+		push(EMPTY_ARRAY);
+	}
+
+	public void endArray() throws IOException, JSONException {
+		expect(JsonToken.END_ARRAY);
+		m_stackSize--;
+	}
+
+	public void beginObject() throws IOException, JSONException {
+		expect(JsonToken.BEGIN_OBJECT);
+		push(EMPTY_OBJECT);
+	}
+
+	public void endObject() throws IOException, JSONException {
+		expect(JsonToken.END_OBJECT);
+		m_stackSize--;
+	}
+
+	public String nextName() throws IOException, JSONException {
+		expect(JsonToken.NAME);
+		return readString();
+	}
+
+	public String nextString() throws IOException, JSONException {
+		final JsonToken token = peek();
+		if (token == JsonToken.STRING) {
+			m_peeked = null;
+			return readString();
+		} else if (token == JsonToken.NUMBER) {
+			m_peeked = null;
+			return m_peekedLiteral;
+		}
+		throw syntaxError("Expected a string but was " + token);
+	}
+
+	public boolean nextBoolean() throws IOException, JSONException {
+		expect(JsonToken.BOOLEAN);
+		return m_peekedBoolean;
+	}
+
+	public void nextNull() throws IOException, JSONException {
+		expect(JsonToken.NULL);
+	}
+
+	public long nextLong() throws IOException, JSONException {
+		final String value = nextString();
+		try {
+			return Long.parseLong(value);
+		} catch (final NumberFormatException e) {
+			try {
+				return (long) Double.parseDouble(value);
+			} catch (final NumberFormatException e2) {
+				throw syntaxError("Expected a long but was '" + value + "'");
+			}
+		}
+	}
+
+	public double nextDouble() throws IOException, JSONException {
+		final String value = nextString();
+		try {
+			return Double.parseDouble(value);
+		} catch (final NumberFormatException e) {
+			throw syntaxError("Expected a double but was '" + value + "'");
+		}
+	}
+
+	public int optInt() throws IOException, JSONException {
+		return (int) optLong();
+	}
+
+	public long optLong() throws IOException, JSONException {
+		final JsonToken token = peek();
+		if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+			final String value = nextString();
+			try {
+				return Long.parseLong(value);
+			} catch (final NumberFormatException e) {
+				try {
+					return (long) Double.parseDouble(value);
+				} catch (final NumberFormatException e2) {
+					return 0;
+				}
+			}
+		}
+		skipValue();
+		return 0;
+	}
+
+	public double optDouble() throws IOException, JSONException {
+		final JsonToken token = peek();
+		if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+			try {
+				return Double.parseDouble(nextString());
+			} catch (final NumberFormatException e) {
+				return Double.NaN;
+			}
+		}
+		skipValue();
+		return Double.NaN;
+	}
+
+	public boolean optBoolean() throws IOException, JSONException {
+		final JsonToken token = peek();
+		if (token == JsonToken.BOOLEAN) {
+			return nextBoolean();
+		} else if (token == JsonToken.STRING) {
+			return "true".equalsIgnoreCase(nextString());
+		}
+		skipValue();
+		return false;
+	}
+
+	public String optString() throws IOException, JSONException {
+		final JsonToken token = peek();
+		switch (token) {
+			case STRING:
+			case NUMBER:
+				return nextString();
+			case BOOLEAN:
+				return String.valueOf(nextBoolean());
+			case NULL:
+				nextNull();
+				return "null";
+			default:
+				return readValue().toString();
+		}
+	}
+
+	/**
+	 * Read the next value as an org.json object, for the parts of a
+	 * response that aren't worth decoding by hand.
+	 */
+	public Object readValue() throws IOException, JSONException {
+		final JsonToken token = peek();
+		switch (token) {
+			case BEGIN_OBJECT:
+				final JSONObject object = new JSONObject();
+				beginObject();
+				while (hasNext()) {
+					final String name = nextName();
+					object.put(name, readValue());
+				}
+				endObject();
+				return object;
+			case BEGIN_ARRAY:
+				final JSONArray array = new JSONArray();
+				beginArray();
+				while (hasNext()) {
+					array.put(readValue());
+				}
+				endArray();
+				return array;
+			case STRING:
+				return nextString();
+			case NUMBER:
+				return toNumber(nextString());
+			case BOOLEAN:
+				return Boolean.valueOf(nextBoolean());
+			case NULL:
+				nextNull();
+				return JSONObject.NULL;
+			default:
+				throw syntaxError("Expected a value but was " + token);
+		}
+	}
+
+	public void skipValue() throws IOException, JSONException {
+		int depth = 0;
+		do {
+			final JsonToken token = peek();
+			switch (token) {
+				case BEGIN_ARRAY:
+					beginArray();
+					depth++;
+					break;
+				case BEGIN_OBJECT:
+					beginObject();
+					depth++;
+					break;
+				case END_ARRAY:
+					endArray();
+					depth--;
+					break;
+				case END_OBJECT:
+					endObject();
+					depth--;
+					break;
+				case NAME:
+				case STRING:
+					m_peeked = null;
+					skipString();
+					break;
+				case END_DOCUMENT:
+					throw syntaxError("Unexpected end of document");
+				default:
+					m_peeked = null;
+					break;
+			}
+		} while (depth > 0);
+	}
+
+	public void close() throws IOException {
+		m_peeked = null;
+		m_stackSize = 0;
+		if (m_buffer != null) {
+			BufferPool.release(m_buffer);
+			m_buffer = null;
+			m_pos = 0;
+			m_limit = 0;
+		}
+		m_in.close();
+	}
+
+	private static Object toNumber(final String value) {
+		if (value.indexOf('.') == -1 && value.indexOf('e') == -1 && value.indexOf('E') == -1) {
+			try {
+				final long l = Long.parseLong(value);
+				if (l == (int) l) {
+					return Integer.valueOf((int) l);
+				}
+				return Long.valueOf(l);
+			} catch (final NumberFormatException e) {
+			}
+		}
+		return Double.valueOf(value);
+	}
+
+	private void expect(final JsonToken expected) throws IOException, JSONException {
+		final JsonToken token = peek();
+		if (token != expected) {
+			throw syntaxError("Expected " + expected + " but was " + token);
+		}
+		m_peeked = null;
+	}
+
+	private void push(final int scope) {
+		if (m_stackSize == m_stack.length) {
+			final int[] stack = new int[m_stackSize * 2];
+			System.arraycopy(m_stack, 0, stack, 0, m_stackSize);
+			m_stack = stack;
+		}
+		m_stack[m_stackSize++] = scope;
+	}
+
+	private JsonToken doPeek() throws IOException, JSONException {
+		final int top = m_stack[m_stackSize - 1];
+		if (top == EMPTY_ARRAY) {
+			m_stack[m_stackSize - 1] = NONEMPTY_ARRAY;
+			if (nextNonWhitespace() == ']') {
+				return JsonToken.END_ARRAY;
+			}
+			m_pos--;
+		} else if (top == NONEMPTY_ARRAY) {
+			final int c = nextNonWhitespace();
+			if (c == ']') {
+				return JsonToken.END_ARRAY;
+			} else if (c != ',') {
+				throw syntaxError("Unterminated array");
+			}
+		} else if (top == EMPTY_OBJECT || top == NONEMPTY_OBJECT) {
+			m_stack[m_stackSize - 1] = DANGLING_NAME;
+			if (top == NONEMPTY_OBJECT) {
+				final int c = nextNonWhitespace();
+				if (c == '}') {
+					return JsonToken.END_OBJECT;
+				} else if (c != ',') {
+					throw syntaxError("Unterminated object");
+				}
+			}
+			final int c = nextNonWhitespace();
+			if (c == '"') {
+				return JsonToken.NAME;
+			} else if (c == '}' && top == EMPTY_OBJECT) {
+				return JsonToken.END_OBJECT;
+			}
+			throw syntaxError("Expected a name");
+		} else if (top == DANGLING_NAME) {
+			m_stack[m_stackSize - 1] = NONEMPTY_OBJECT;
+			if (nextNonWhitespace() != ':') {
+				throw syntaxError("Expected ':'");
+			}
+		} else if (top == EMPTY_DOCUMENT) {
+			m_stack[m_stackSize - 1] = NONEMPTY_DOCUMENT;
+		} else if (top == NONEMPTY_DOCUMENT) {
+			if (nextNonWhitespaceOrEOF() == -1) {
+				return JsonToken.END_DOCUMENT;
+			}
+			throw syntaxError("Unexpected data after the end of the document");
+		}
+
+		final int c = nextNonWhitespace();
+		switch (c) {
+			case '{':
+				return JsonToken.BEGIN_OBJECT;
+			case '[':
+				return JsonToken.BEGIN_ARRAY;
+			case '"':
+				return JsonToken.STRING;
+			case 't':
+				readKeyword("rue");
+				m_peekedBoolean = true;
+				return JsonToken.BOOLEAN;
+			case 'f':
+				readKeyword("alse");
+				m_peekedBoolean = false;
+				return JsonToken.BOOLEAN;
+			case 'n':
+				readKeyword("ull");
+				return JsonToken.NULL;
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) {
+					m_pos--;
+					m_peekedLiteral = readNumber();
+					return JsonToken.NUMBER;
+				}
+				throw syntaxError("Unexpected character '" + (char) c + "'");
+		}
+	}
+
+	private boolean fill() throws IOException {
+		if (m_buffer == null) {
+			throw new IOException("Stream closed");
+		}
+		m_consumed += m_limit;
+		m_pos = 0;
+		m_limit = 0;
+		final int count = m_in.read(m_buffer, 0, m_buffer.length);
+		if (count <= 0) {
+			return false;
+		}
+		m_limit = count;
+		return true;
+	}
+
+	private int nextNonWhitespaceOrEOF() throws IOException {
+		while (true) {
+			if (m_pos == m_limit && !fill()) {
+				return -1;
+			}
+			final char c = m_buffer[m_pos++];
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+		}
+	}
+
+	private int nextNonWhitespace() throws IOException, JSONException {
+		final int c = nextNonWhitespaceOrEOF();
+		if (c == -1) {
+			throw syntaxError("Unexpected end of input");
+		}
+		return c;
+	}
+
+	private char nextChar() throws IOException, JSONException {
+		if (m_pos == m_limit && !fill()) {
+			throw syntaxError("Unexpected end of input");
+		}
+		return m_buffer[m_pos++];
+	}
+
+	private void readKeyword(final String rest) throws IOException, JSONException {
+		for (int i=0; i < rest.length(); i++) {
+			if (nextChar() != rest.charAt(i)) {
+				throw syntaxError("Invalid literal");
+			}
+		}
+	}
+
+	private String readNumber() throws IOException, JSONException {
+		m_string.setLength(0);
+		while (true) {
+			if (m_pos == m_limit && !fill()) {
+				break;
+			}
+			final char c = m_buffer[m_pos];
+			if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+				m_string.append(c);
+				m_pos++;
+			} else {
+				break;
+			}
+		}
+		return m_string.toString();
+	}
+
+	private String readString() throws IOException, JSONException {
+		m_string.setLength(0);
+		while (true) {
+			int start = m_pos;
+			while (m_pos < m_limit) {
+				final char c = m_buffer[m_pos++];
+				if (c == '"') {
+					if (m_string.length() == 0) {
+						return new String(m_buffer, start, m_pos - start - 1);
+					}
+					m_string.append(m_buffer, start, m_pos - start - 1);
+					return m_string.toString();
+				} else if (c == '\\') {
+					m_string.append(m_buffer, start, m_pos - start - 1);
+					m_string.append(readEscape());
+					start = m_pos;
+				}
+			}
+			m_string.append(m_buffer, start, m_pos - start);
+			if (!fill()) {
+				throw syntaxError("Unterminated string");
+			}
+		}
+	}
+
+	private void skipString() throws IOException, JSONException {
+		while (true) {
+			final char c = nextChar();
+			if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				readEscape();
+			}
+		}
+	}
+
+	private char readEscape() throws IOException, JSONException {
+		final char c = nextChar();
+		switch (c) {
+			case 'b':
+				return '\b';
+			case 'f':
+				return '\f';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 't':
+				return '\t';
+			case 'u':
+				int value = 0;
+				for (int i=0; i < 4; i++) {
+					final int digit = Character.digit(nextChar(), 16);
+					if (digit == -1) {
+						throw syntaxError("Invalid unicode escape");
+					}
+					value = (value << 4) | digit;
+				}
+				return (char) value;
+			default:
+				// \" \\ \/ and anything else unnecessarily escaped
+				return c;
+		}
+	}
+
+	private JSONException syntaxError(final String message) {
+		return new JSONException(message + " at character " + (m_consumed + m_pos));
+	}
+}
@@ -0,0 +1,14 @@
+package com.raccoonfink.deluge.json;
+
+public enum JsonToken {
+	BEGIN_ARRAY,
+	END_ARRAY,
+	BEGIN_OBJECT,
+	END_OBJECT,
+	NAME,
+	STRING,
+	NUMBER,
+	BOOLEAN,
+	NULL,
+	END_DOCUMENT
+}
@@ -0,0 +1,157 @@
+package com.raccoonfink.deluge.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import com.raccoonfink.deluge.http.BufferPool;
+
+/**
+ * Decodes UTF-8 straight from a pooled byte buffer.  It does what
+ * {@link java.io.InputStreamReader} does for UTF-8, including replacing
+ * malformed input with U+FFFD, without a charset decoder and its buffers
+ * per stream.
+ */
+public class Utf8Reader extends Reader {
+	private static final char REPLACEMENT = '\uFFFD';
+
+	private final InputStream m_in;
+	private byte[] m_buffer;
+	private int m_pos = 0;
+	private int m_limit = 0;
+	private int m_pendingLowSurrogate = -1;
+
+	public Utf8Reader(final InputStream in) {
+		m_in = in;
+		m_buffer = BufferPool.getBytes();
+	}
+
+	@Override
+	public int read(final char[] cbuf, final int off, final int len) throws IOException {
+		final byte[] buffer = m_buffer;
+		if (buffer == null) {
+			throw new IOException("Stream closed");
+		}
+		if (len == 0) {
+			return 0;
+		}
+
+		int n = 0;
+		if (m_pendingLowSurrogate != -1) {
+			cbuf[off + n++] = (char) m_pendingLowSurrogate;
+			m_pendingLowSurrogate = -1;
+		}
+
+		while (n < len) {
+			if (m_pos == m_limit) {
+				// don't block for more once we have something to return
+				if (n > 0 || !fill(0)) {
+					break;
+				}
+			}
+
+			// the common case: a run of ASCII
+			int pos = m_pos;
+			final int limit = Math.min(m_limit, pos + (len - n));
+			while (pos < limit && buffer[pos] >= 0) {
+				cbuf[off + n++] = (char) buffer[pos++];
+			}
+			m_pos = pos;
+			if (n == len || m_pos == m_limit) {
+				continue;
+			}
+
+			final int b = buffer[m_pos] & 0xff;
+			final int needed = b >= 0xf8 ? 0 : b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : b >= 0xc0 ? 2 : 0;
+			if (needed == 0) {
+				cbuf[off + n++] = REPLACEMENT;
+				m_pos++;
+				continue;
+			}
+			if (m_limit - m_pos < needed) {
+				if (n > 0) {
+					break;
+				}
+				if (!fill(m_limit - m_pos)) {
+					// truncated at the end of the stream
+					cbuf[off + n++] = REPLACEMENT;
+					m_pos = m_limit;
+					continue;
+				}
+				if (m_limit - m_pos < needed) {
+					continue;
+				}
+			}
+
+			int codePoint = b & (0xff >> (needed + 1));
+			int length = 1;
+			while (length < needed && (buffer[m_pos + length] & 0xc0) == 0x80) {
+				codePoint = (codePoint << 6) | (buffer[m_pos + length] & 0x3f);
+				length++;
+			}
+			if (length < needed || isInvalid(codePoint, needed)) {
+				// skip the bad lead byte and however many continuation bytes followed it
+				cbuf[off + n++] = REPLACEMENT;
+				m_pos += length;
+				continue;
+			}
+			m_pos += needed;
+
+			if (codePoint >= 0x10000) {
+				cbuf[off + n++] = (char) (0xd800 + ((codePoint - 0x10000) >>> 10));
+				final char low = (char) (0xdc00 + (codePoint & 0x3ff));
+				if (n < len) {
+					cbuf[off + n++] = low;
+				} else {
+					m_pendingLowSurrogate = low;
+				}
+			} else {
+				cbuf[off + n++] = (char) codePoint;
+			}
+		}
+		return n == 0 ? -1 : n;
+	}
+
+	@Override
+	public boolean ready() throws IOException {
+		return m_pos < m_limit || m_pendingLowSurrogate != -1 || (m_buffer != null && m_in.available() > 0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (m_buffer != null) {
+			BufferPool.release(m_buffer);
+			m_buffer = null;
+		}
+		m_in.close();
+	}
+
+	private static boolean isInvalid(final int codePoint, final int length) {
+		switch (length) {
+			case 2:
+				return codePoint < 0x80;
+			case 3:
+				return codePoint < 0x800 || (codePoint >= 0xd800 && codePoint <= 0xdfff);
+			default:
+				return codePoint < 0x10000 || codePoint > 0x10ffff;
+		}
+	}
+
+	/**
+	 * Move the <code>keep</code> unread bytes to the front and read more
+	 * after them.  Returns false at the end of the stream.
+	 */
+	private boolean fill(final int keep) throws IOException {
+		if (keep > 0) {
+			System.arraycopy(m_buffer, m_pos, m_buffer, 0, keep);
+		}
+		m_pos = 0;
+		m_limit = keep;
+		final int count = m_in.read(m_buffer, keep, m_buffer.length - keep);
+		if (count <= 0) {
+			return false;
+		}
+		m_limit += count;
+		return true;
+	}
+}
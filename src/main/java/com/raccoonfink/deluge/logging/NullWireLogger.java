@@ -0,0 +1,18 @@
+package com.raccoonfink.deluge.logging;
+
+/**
+ * The default logger, which logs nothing.
+ */
+public final class NullWireLogger implements WireLogger {
+	public static final NullWireLogger INSTANCE = new NullWireLogger();
+
+	private NullWireLogger() {
+	}
+
+	public boolean isEnabled(final Level level) {
+		return false;
+	}
+
+	public void log(final Level level, final String message) {
+	}
+}
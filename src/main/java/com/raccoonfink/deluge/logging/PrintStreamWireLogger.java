@@ -0,0 +1,28 @@
+package com.raccoonfink.deluge.logging;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Writes messages up to a given level to a stream, such as
+ * <code>System.err</code>.
+ */
+public class PrintStreamWireLogger implements WireLogger {
+	private final PrintStream m_out;
+	private final Level m_level;
+
+	public PrintStreamWireLogger(final PrintStream out, final Level level) {
+		m_out = out;
+		m_level = level;
+	}
+
+	public boolean isEnabled(final Level level) {
+		return level.compareTo(m_level) <= 0;
+	}
+
+	public void log(final Level level, final String message) {
+		if (isEnabled(level)) {
+			m_out.println(level.name().toUpperCase(Locale.ENGLISH) + ": " + message);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package com.raccoonfink.deluge.logging;
+
+/**
+ * Receives a description of the traffic between a
+ * {@link com.raccoonfink.deluge.DelugeServer} and the web UI.  Messages are
+ * only built for levels the logger says are enabled, so a logger which
+ * enables nothing costs nothing.
+ */
+public interface WireLogger {
+	public static enum Level {
+		/** Problems worth knowing about, like a fallback to a slower protocol. */
+		Warning,
+		/** One line per request and response: method, id, status and size. */
+		Request,
+		/** Request and response bodies, truncated, with credentials removed. */
+		Body
+	}
+
+	public boolean isEnabled(Level level);
+
+	public void log(Level level, String message);
+}
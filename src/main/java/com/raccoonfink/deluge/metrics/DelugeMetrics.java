@@ -0,0 +1,49 @@
+package com.raccoonfink.deluge.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-method request metrics for one server.  Recording is a handful of
+ * atomic increments per request, so it is always on.
+ */
+public class DelugeMetrics {
+	/**
+	 * The name used for JSON-RPC batches, which carry several methods in one
+	 * HTTP request.
+	 */
+	public static final String BATCH = "(batch)";
+
+	private final ConcurrentMap<String,MethodMetrics> m_methods = new ConcurrentHashMap<String,MethodMetrics>();
+
+	public MethodMetrics forMethod(final String method) {
+		MethodMetrics metrics = m_methods.get(method);
+		if (metrics == null) {
+			final MethodMetrics created = new MethodMetrics(method);
+			metrics = m_methods.putIfAbsent(method, created);
+			if (metrics == null) {
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Get a snapshot of every method seen so far, sorted by name.
+	 */
+	public Map<String,MethodMetricsSnapshot> getSnapshot() {
+		final Map<String,MethodMetricsSnapshot> snapshot = new TreeMap<String,MethodMetricsSnapshot>();
+		for (final MethodMetrics metrics : m_methods.values()) {
+			snapshot.put(metrics.getMethod(), metrics.getSnapshot());
+		}
+		return snapshot;
+	}
+
+	public void reset() {
+		for (final MethodMetrics metrics : m_methods.values()) {
+			metrics.reset();
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.raccoonfink.deluge.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import com.raccoonfink.deluge.metrics.MethodMetrics.Phase;
+
+/**
+ * Publishes {@link DelugeMetrics} over JMX.  Methods appear as they are
+ * first called, so the attributes are generated on the fly, named
+ * <code>&lt;method&gt;.&lt;metric&gt;</code>, for example
+ * <code>web.update_ui.total.p99</code>.  Times are in microseconds.  This is
+ * kept apart from the metrics themselves because Android has no JMX.
+ */
+public class DelugeMetricsMBean implements DynamicMBean {
+	private static final String[] COUNTERS = { "requests", "errors", "inFlight", "requestBytes", "responseWireBytes", "responseBytes" };
+	private static final String[] STATISTICS = { "count", "mean", "p50", "p90", "p99", "p999", "max" };
+
+	private final DelugeMetrics m_metrics;
+
+	public DelugeMetricsMBean(final DelugeMetrics metrics) {
+		m_metrics = metrics;
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server as
+	 * <code>com.raccoonfink.deluge:type=Metrics,server=&lt;name&gt;</code>.
+	 */
+	public static ObjectName register(final DelugeMetrics metrics, final String name) throws JMException {
+		final ObjectName objectName = new ObjectName("com.raccoonfink.deluge:type=Metrics,server=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new DelugeMetricsMBean(metrics), objectName);
+		return objectName;
+	}
+
+	public static void unregister(final ObjectName objectName) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+	}
+
+	public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+		return getAttribute(m_metrics.getSnapshot(), attribute);
+	}
+
+	public AttributeList getAttributes(final String[] attributes) {
+		final Map<String,MethodMetricsSnapshot> snapshot = m_metrics.getSnapshot();
+		final AttributeList list = new AttributeList();
+		for (final String attribute : attributes) {
+			try {
+				list.add(new Attribute(attribute, getAttribute(snapshot, attribute)));
+			} catch (final AttributeNotFoundException e) {
+				// JMX leaves unknown attributes out of the list
+			}
+		}
+		return list;
+	}
+
+	public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+	}
+
+	public AttributeList setAttributes(final AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	public Object invoke(final String actionName, final Object[] params, final String[] signature) throws MBeanException, ReflectionException {
+		if ("reset".equals(actionName)) {
+			m_metrics.reset();
+			return null;
+		}
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	public MBeanInfo getMBeanInfo() {
+		final List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		for (final String method : m_metrics.getSnapshot().keySet()) {
+			for (final String counter : COUNTERS) {
+				final String type = "inFlight".equals(counter) ? Integer.class.getName() : Long.class.getName();
+				attributes.add(new MBeanAttributeInfo(method + "." + counter, type, counter + " for " + method, true, false, false));
+			}
+			for (final Phase phase : Phase.values()) {
+				for (final String statistic : STATISTICS) {
+					final String type = "mean".equals(statistic) ? Double.class.getName() : Long.class.getName();
+					attributes.add(new MBeanAttributeInfo(method + "." + toName(phase) + "." + statistic, type, statistic + " of " + toName(phase) + " time for " + method, true, false, false));
+				}
+			}
+		}
+		final MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Clear all metrics", new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+		return new MBeanInfo(getClass().getName(), "Deluge client request metrics", attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[] { reset }, null);
+	}
+
+	private static Object getAttribute(final Map<String,MethodMetricsSnapshot> snapshot, final String attribute) throws AttributeNotFoundException {
+		// method names contain dots themselves, so match on the known names
+		for (final Map.Entry<String,MethodMetricsSnapshot> entry : snapshot.entrySet()) {
+			final String prefix = entry.getKey() + ".";
+			if (!attribute.startsWith(prefix)) {
+				continue;
+			}
+			final Object value = getValue(entry.getValue(), attribute.substring(prefix.length()));
+			if (value != null) {
+				return value;
+			}
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	private static Object getValue(final MethodMetricsSnapshot metrics, final String name) {
+		if ("requests".equals(name)) {
+			return metrics.getRequestCount();
+		} else if ("errors".equals(name)) {
+			return metrics.getErrorCount();
+		} else if ("inFlight".equals(name)) {
+			return metrics.getInFlight();
+		} else if ("requestBytes".equals(name)) {
+			return metrics.getRequestBytes();
+		} else if ("responseWireBytes".equals(name)) {
+			return metrics.getResponseWireBytes();
+		} else if ("responseBytes".equals(name)) {
+			return metrics.getResponseBytes();
+		}
+
+		final int dot = name.lastIndexOf('.');
+		if (dot < 0) {
+			return null;
+		}
+		final String phaseName = name.substring(0, dot);
+		final String statistic = name.substring(dot + 1);
+		for (final Phase phase : Phase.values()) {
+			if (toName(phase).equals(phaseName)) {
+				return getStatistic(metrics.getHistogram(phase), statistic);
+			}
+		}
+		return null;
+	}
+
+	private static Object getStatistic(final HistogramSnapshot histogram, final String statistic) {
+		if ("count".equals(statistic)) {
+			return histogram.getCount();
+		} else if ("mean".equals(statistic)) {
+			return histogram.getMean();
+		} else if ("p50".equals(statistic)) {
+			return histogram.getMedian();
+		} else if ("p90".equals(statistic)) {
+			return histogram.get90thPercentile();
+		} else if ("p99".equals(statistic)) {
+			return histogram.get99thPercentile();
+		} else if ("p999".equals(statistic)) {
+			return histogram.get999thPercentile();
+		} else if ("max".equals(statistic)) {
+			return histogram.getMax();
+		}
+		return null;
+	}
+
+	private static String toName(final Phase phase) {
+		// First_Byte -> firstByte
+		final String[] words = phase.name().split("_");
+		final StringBuilder sb = new StringBuilder(words[0].toLowerCase(Locale.ENGLISH));
+		for (int i=1; i < words.length; i++) {
+			sb.append(words[i]);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,79 @@
+package com.raccoonfink.deluge.metrics;
+
+/**
+ * The state of a {@link LatencyHistogram} at one moment.  All values are
+ * in microseconds.
+ */
+public class HistogramSnapshot {
+	private final long[] m_counts;
+	private final long m_count;
+	private final long m_total;
+	private final long m_max;
+
+	HistogramSnapshot(final long[] counts, final long total, final long max) {
+		m_counts = counts;
+		long count = 0;
+		for (final long c : counts) {
+			count += c;
+		}
+		m_count = count;
+		m_total = total;
+		m_max = max;
+	}
+
+	public long getCount() {
+		return m_count;
+	}
+
+	public long getTotal() {
+		return m_total;
+	}
+
+	public long getMax() {
+		return m_max;
+	}
+
+	public double getMean() {
+		return m_count == 0 ? 0 : (double) m_total / m_count;
+	}
+
+	/**
+	 * Get the value below which the given percentage of recorded values
+	 * fall, rounded up to the top of its bucket.
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		if (m_count == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(m_count * Math.min(percentile, 100.0) / 100.0));
+		long seen = 0;
+		for (int i=0; i < m_counts.length; i++) {
+			seen += m_counts[i];
+			if (seen >= rank) {
+				return Math.min(LatencyHistogram.highestValueAt(i), m_max);
+			}
+		}
+		return m_max;
+	}
+
+	public long getMedian() {
+		return getValueAtPercentile(50);
+	}
+
+	public long get90thPercentile() {
+		return getValueAtPercentile(90);
+	}
+
+	public long get99thPercentile() {
+		return getValueAtPercentile(99);
+	}
+
+	public long get999thPercentile() {
+		return getValueAtPercentile(99.9);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + m_count + ", mean=" + Math.round(getMean()) + "us, p50=" + getMedian() + "us, p99=" + get99thPercentile() + "us, max=" + m_max + "us";
+	}
+}
@@ -0,0 +1,89 @@
+package com.raccoonfink.deluge.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in microseconds, bucketed the way
+ * HdrHistogram does it: each power of two is split into 16 linear
+ * sub-buckets, so any recorded value is known to within about 6%, from
+ * one microsecond up to several hours, in a fixed 4KB of counters.
+ */
+public class LatencyHistogram {
+	static final int SUB_BUCKET_BITS = 4;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	static final long MAX_VALUE = (1L << 36) - 1;
+	static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+	private final AtomicLongArray m_counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong m_count = new AtomicLong();
+	private final AtomicLong m_total = new AtomicLong();
+	private final AtomicLong m_max = new AtomicLong();
+
+	/**
+	 * Record a duration given in nanoseconds.
+	 */
+	public void recordNanos(final long nanos) {
+		record(nanos / 1000);
+	}
+
+	/**
+	 * Record a duration given in microseconds.
+	 */
+	public void record(final long micros) {
+		final long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+		m_counts.incrementAndGet(indexOf(value));
+		m_count.incrementAndGet();
+		m_total.addAndGet(value);
+		long max;
+		while (value > (max = m_max.get()) && !m_max.compareAndSet(max, value)) {
+			// another thread raised it first; try again
+		}
+	}
+
+	public long getCount() {
+		return m_count.get();
+	}
+
+	/**
+	 * Copy the counters.  Values recorded while the copy is made may or may
+	 * not be included, but each is counted at most once.
+	 */
+	public HistogramSnapshot getSnapshot() {
+		final long[] counts = new long[BUCKETS];
+		for (int i=0; i < BUCKETS; i++) {
+			counts[i] = m_counts.get(i);
+		}
+		return new HistogramSnapshot(counts, m_total.get(), m_max.get());
+	}
+
+	public void reset() {
+		for (int i=0; i < BUCKETS; i++) {
+			m_counts.set(i, 0);
+		}
+		m_count.set(0);
+		m_total.set(0);
+		m_max.set(0);
+	}
+
+	static int indexOf(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * Get the largest value which falls in the given bucket.
+	 */
+	static long highestValueAt(final int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		final long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
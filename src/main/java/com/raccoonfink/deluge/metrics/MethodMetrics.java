@@ -0,0 +1,98 @@
+package com.raccoonfink.deluge.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and counters for one JSON-RPC method.
+ */
+public class MethodMetrics {
+	public static enum Phase {
+		/** Leasing a connection, including opening one and the TLS handshake. */
+		Connect,
+		/** Sending the request and waiting for the response headers. */
+		First_Byte,
+		/**
+		 * Reading (and decompressing) the response body.  Only recorded when
+		 * the body is buffered to be logged; otherwise it is decoded as it
+		 * is read, and that all counts as parsing.
+		 */
+		Read,
+		/** Decoding the JSON. */
+		Parse,
+		/** The whole request, start to finish. */
+		Total
+	}
+
+	private final String m_method;
+	private final Map<Phase,LatencyHistogram> m_histograms = new EnumMap<Phase,LatencyHistogram>(Phase.class);
+	private final AtomicLong m_requests = new AtomicLong();
+	private final AtomicLong m_errors = new AtomicLong();
+	private final AtomicInteger m_inFlight = new AtomicInteger();
+	private final AtomicLong m_requestBytes = new AtomicLong();
+	private final AtomicLong m_responseWireBytes = new AtomicLong();
+	private final AtomicLong m_responseBytes = new AtomicLong();
+
+	MethodMetrics(final String method) {
+		m_method = method;
+		for (final Phase phase : Phase.values()) {
+			m_histograms.put(phase, new LatencyHistogram());
+		}
+	}
+
+	public String getMethod() {
+		return m_method;
+	}
+
+	/**
+	 * Start timing a request.  The returned timer must be finished, even if
+	 * the request fails.
+	 */
+	public RequestTimer start() {
+		m_requests.incrementAndGet();
+		m_inFlight.incrementAndGet();
+		return new RequestTimer(this);
+	}
+
+	public int getInFlight() {
+		return m_inFlight.get();
+	}
+
+	LatencyHistogram getHistogram(final Phase phase) {
+		return m_histograms.get(phase);
+	}
+
+	void finish(final RequestTimer timer, final boolean success) {
+		m_inFlight.decrementAndGet();
+		if (!success) {
+			m_errors.incrementAndGet();
+		}
+		m_requestBytes.addAndGet(timer.getRequestBytes());
+		m_responseWireBytes.addAndGet(timer.getResponseWireBytes());
+		m_responseBytes.addAndGet(timer.getResponseBytes());
+	}
+
+	public MethodMetricsSnapshot getSnapshot() {
+		final Map<Phase,HistogramSnapshot> histograms = new EnumMap<Phase,HistogramSnapshot>(Phase.class);
+		for (final Map.Entry<Phase,LatencyHistogram> entry : m_histograms.entrySet()) {
+			histograms.put(entry.getKey(), entry.getValue().getSnapshot());
+		}
+		return new MethodMetricsSnapshot(m_method, histograms, m_requests.get(), m_errors.get(), m_inFlight.get(), m_requestBytes.get(), m_responseWireBytes.get(), m_responseBytes.get());
+	}
+
+	/**
+	 * Clear the timings and counters; the in-flight count is left alone.
+	 */
+	public void reset() {
+		for (final LatencyHistogram histogram : m_histograms.values()) {
+			histogram.reset();
+		}
+		m_requests.set(0);
+		m_errors.set(0);
+		m_requestBytes.set(0);
+		m_responseWireBytes.set(0);
+		m_responseBytes.set(0);
+	}
+}
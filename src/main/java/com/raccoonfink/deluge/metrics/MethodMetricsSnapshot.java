@@ -0,0 +1,78 @@
+package com.raccoonfink.deluge.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.raccoonfink.deluge.metrics.MethodMetrics.Phase;
+
+public class MethodMetricsSnapshot {
+	private final String m_method;
+	private final Map<Phase,HistogramSnapshot> m_histograms;
+	private final long m_requests;
+	private final long m_errors;
+	private final int m_inFlight;
+	private final long m_requestBytes;
+	private final long m_responseWireBytes;
+	private final long m_responseBytes;
+
+	MethodMetricsSnapshot(final String method, final Map<Phase,HistogramSnapshot> histograms, final long requests, final long errors, final int inFlight, final long requestBytes, final long responseWireBytes, final long responseBytes) {
+		m_method = method;
+		m_histograms = Collections.unmodifiableMap(histograms);
+		m_requests = requests;
+		m_errors = errors;
+		m_inFlight = inFlight;
+		m_requestBytes = requestBytes;
+		m_responseWireBytes = responseWireBytes;
+		m_responseBytes = responseBytes;
+	}
+
+	public String getMethod() {
+		return m_method;
+	}
+
+	public HistogramSnapshot getHistogram(final Phase phase) {
+		return m_histograms.get(phase);
+	}
+
+	public long getRequestCount() {
+		return m_requests;
+	}
+
+	public long getErrorCount() {
+		return m_errors;
+	}
+
+	public int getInFlight() {
+		return m_inFlight;
+	}
+
+	/**
+	 * Get the number of request body bytes sent.  Requests are not
+	 * compressed, so this is also what went over the wire.
+	 */
+	public long getRequestBytes() {
+		return m_requestBytes;
+	}
+
+	/**
+	 * Get the number of response body bytes received, before
+	 * decompression.
+	 */
+	public long getResponseWireBytes() {
+		return m_responseWireBytes;
+	}
+
+	/**
+	 * Get the number of response body bytes after decompression.
+	 */
+	public long getResponseBytes() {
+		return m_responseBytes;
+	}
+
+	@Override
+	public String toString() {
+		return m_method + ": requests=" + m_requests + ", errors=" + m_errors + ", inFlight=" + m_inFlight
+			+ ", requestBytes=" + m_requestBytes + ", responseBytes=" + m_responseWireBytes + "/" + m_responseBytes
+			+ ", total=[" + m_histograms.get(Phase.Total) + "]";
+	}
+}
@@ -0,0 +1,77 @@
+package com.raccoonfink.deluge.metrics;
+
+import com.raccoonfink.deluge.metrics.MethodMetrics.Phase;
+
+/**
+ * Times the phases of one request as it goes.  Each call to
+ * {@link #mark(Phase)} records the time since the previous mark.  A timer
+ * belongs to the thread making the request.
+ */
+public class RequestTimer {
+	private final MethodMetrics m_metrics;
+	private final long m_start;
+	private long m_last;
+	private long m_requestBytes = 0;
+	private long m_responseWireBytes = 0;
+	private long m_responseBytes = 0;
+	private boolean m_finished = false;
+
+	RequestTimer(final MethodMetrics metrics) {
+		m_metrics = metrics;
+		m_start = System.nanoTime();
+		m_last = m_start;
+	}
+
+	/**
+	 * Record the response headers arriving.  Of the time since the start,
+	 * <code>connectNanos</code> went on getting a connection and the rest is
+	 * counted as waiting for the first byte.
+	 */
+	public void headersReceived(final long connectNanos) {
+		final long now = System.nanoTime();
+		final long elapsed = now - m_last;
+		final long connect = Math.min(Math.max(connectNanos, 0), elapsed);
+		m_metrics.getHistogram(Phase.Connect).recordNanos(connect);
+		m_metrics.getHistogram(Phase.First_Byte).recordNanos(elapsed - connect);
+		m_last = now;
+	}
+
+	public void mark(final Phase phase) {
+		final long now = System.nanoTime();
+		m_metrics.getHistogram(phase).recordNanos(now - m_last);
+		m_last = now;
+	}
+
+	public void addRequestBytes(final long bytes) {
+		m_requestBytes += bytes;
+	}
+
+	public void addResponseBytes(final long wireBytes, final long bytes) {
+		m_responseWireBytes += wireBytes;
+		m_responseBytes += bytes;
+	}
+
+	long getRequestBytes() {
+		return m_requestBytes;
+	}
+
+	long getResponseWireBytes() {
+		return m_responseWireBytes;
+	}
+
+	long getResponseBytes() {
+		return m_responseBytes;
+	}
+
+	/**
+	 * Record the total time and the outcome.  Only the first call counts.
+	 */
+	public void finish(final boolean success) {
+		if (m_finished) {
+			return;
+		}
+		m_finished = true;
+		m_metrics.getHistogram(Phase.Total).recordNanos(System.nanoTime() - m_start);
+		m_metrics.finish(this, success);
+	}
+}
@@ -0,0 +1,11 @@
+package com.raccoonfink.deluge.polling;
+
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.TorrentDelta;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+public interface PollListener {
+	public void onUpdate(final UIResponse response, final TorrentDelta delta);
+
+	public void onFailure(final DelugeException e);
+}
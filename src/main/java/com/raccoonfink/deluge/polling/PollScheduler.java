@@ -0,0 +1,309 @@
+package com.raccoonfink.deluge.polling;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.raccoonfink.deluge.DelugeEvent;
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.Torrent;
+import com.raccoonfink.deluge.TorrentCache;
+import com.raccoonfink.deluge.TorrentDelta;
+import com.raccoonfink.deluge.TorrentFilter;
+import com.raccoonfink.deluge.events.DelugeEventListener;
+import com.raccoonfink.deluge.events.EventPump;
+import com.raccoonfink.deluge.events.TorrentEvent;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+/**
+ * Polls <code>web.update_ui</code> on a background thread at an interval
+ * which follows how busy the server is.  Each poll which finds torrents
+ * added, removed or changed (or follows events from an attached
+ * {@link EventPump}) halves the interval, down to the minimum; each quiet
+ * poll stretches it by half, up to the maximum.  Failures back off
+ * exponentially instead.  Every delay is jittered so that many clients
+ * started together drift apart rather than polling in lockstep.
+ */
+public class PollScheduler {
+	private final DelugeServer m_server;
+	private final long m_minInterval;
+	private final long m_maxInterval;
+	private final TorrentCache m_cache = new TorrentCache();
+	private final List<PollListener> m_listeners = new CopyOnWriteArrayList<PollListener>();
+	private final Random m_random = new Random();
+
+	private volatile Set<Torrent.Field> m_fields = EnumSet.allOf(Torrent.Field.class);
+	private volatile TorrentFilter m_filter = null;
+	private volatile long m_maxBackoff = 5 * 60 * 1000;
+	private volatile double m_jitter = 0.2;
+
+	private EventPump m_eventPump;
+	private long m_lastEventTime = 0;
+	private final DelugeEventListener m_eventListener = new DelugeEventListener() {
+		public void onEvent(final DelugeEvent event) {
+			if (event instanceof TorrentEvent) {
+				pollNow();
+			}
+		}
+	};
+
+	private long m_interval;
+	private int m_consecutiveFailures = 0;
+	private final AtomicLong m_polls = new AtomicLong();
+	private final AtomicLong m_failures = new AtomicLong();
+
+	private volatile boolean m_running = false;
+	private boolean m_wakeUp = false;
+	private Thread m_thread;
+
+	public PollScheduler(final DelugeServer server) {
+		this(server, 1000, 30000);
+	}
+
+	/**
+	 * @param minInterval the shortest time between polls, in milliseconds
+	 * @param maxInterval the longest time between successful polls, in
+	 *        milliseconds
+	 */
+	public PollScheduler(final DelugeServer server, final long minInterval, final long maxInterval) {
+		if (minInterval <= 0 || maxInterval < minInterval) {
+			throw new IllegalArgumentException("Invalid poll interval range " + minInterval + "-" + maxInterval);
+		}
+		m_server = server;
+		m_minInterval = minInterval;
+		m_maxInterval = maxInterval;
+		m_interval = minInterval;
+	}
+
+	public void addListener(final PollListener listener) {
+		m_listeners.add(listener);
+	}
+
+	public void removeListener(final PollListener listener) {
+		m_listeners.remove(listener);
+	}
+
+	/**
+	 * The cache every poll is applied to.
+	 */
+	public TorrentCache getCache() {
+		return m_cache;
+	}
+
+	public void setFields(final Set<Torrent.Field> fields) {
+		m_fields = EnumSet.copyOf(fields);
+	}
+
+	public void setFilter(final TorrentFilter filter) {
+		m_filter = filter;
+	}
+
+	/**
+	 * Set the longest wait after repeated failures, in milliseconds.
+	 */
+	public void setMaxBackoff(final long maxBackoff) {
+		m_maxBackoff = maxBackoff;
+	}
+
+	/**
+	 * Set how much each delay may vary at random, as a fraction of it: 0.2
+	 * means anywhere from 80% to 120%.
+	 */
+	public void setJitter(final double jitter) {
+		if (jitter < 0 || jitter >= 1) {
+			throw new IllegalArgumentException("Jitter must be at least 0 and less than 1");
+		}
+		m_jitter = jitter;
+	}
+
+	/**
+	 * Take event activity into account: torrent events make the next poll
+	 * happen straight away (but no sooner than the minimum interval), and
+	 * any events since the last poll count as activity.  The pump should be
+	 * started separately.
+	 */
+	public synchronized void setEventPump(final EventPump eventPump) {
+		if (m_eventPump != null) {
+			m_eventPump.removeListener(m_eventListener);
+		}
+		m_eventPump = eventPump;
+		if (eventPump != null) {
+			m_lastEventTime = eventPump.getLastEventTime();
+			eventPump.addListener(m_eventListener);
+		}
+	}
+
+	public synchronized void start() {
+		if (m_running) {
+			return;
+		}
+		m_running = true;
+		m_thread = new Thread(new Runnable() {
+			public void run() {
+				poll();
+			}
+		}, "deluge-poll");
+		m_thread.setDaemon(true);
+		m_thread.start();
+	}
+
+	/**
+	 * Stop polling and wait up to <code>timeout</code> milliseconds for an
+	 * outstanding poll to finish.
+	 */
+	public void stop(final long timeout) throws InterruptedException {
+		final Thread thread;
+		synchronized (this) {
+			if (!m_running) {
+				return;
+			}
+			m_running = false;
+			thread = m_thread;
+			notifyAll();
+		}
+		thread.join(Math.max(1, timeout));
+	}
+
+	public boolean isRunning() {
+		return m_running;
+	}
+
+	/**
+	 * Cut the current wait short.  Polls are still spaced by at least the
+	 * minimum interval.
+	 */
+	public synchronized void pollNow() {
+		m_wakeUp = true;
+		notifyAll();
+	}
+
+	/**
+	 * Get the interval the scheduler has settled on, before jitter and
+	 * ignoring any failure backoff.
+	 */
+	public synchronized long getInterval() {
+		return m_interval;
+	}
+
+	public synchronized int getConsecutiveFailures() {
+		return m_consecutiveFailures;
+	}
+
+	public long getPollCount() {
+		return m_polls.get();
+	}
+
+	public long getFailureCount() {
+		return m_failures.get();
+	}
+
+	private void poll() {
+		while (m_running) {
+			final long started = System.currentTimeMillis();
+			synchronized (this) {
+				// a wake-up from here on is for news this poll may miss
+				m_wakeUp = false;
+			}
+			long delay;
+			try {
+				final UIResponse response = m_server.updateUI(m_fields, m_filter);
+				final TorrentDelta delta = m_cache.update(response);
+				m_polls.incrementAndGet();
+				delay = succeeded(!delta.isEmpty() || hasNewEvents());
+				for (final PollListener listener : m_listeners) {
+					try {
+						listener.onUpdate(response, delta);
+					} catch (final RuntimeException e) {
+						m_server.warn("Poll listener " + listener + " failed: " + e);
+					}
+				}
+			} catch (final DelugeException e) {
+				m_polls.incrementAndGet();
+				m_failures.incrementAndGet();
+				delay = failed();
+				for (final PollListener listener : m_listeners) {
+					try {
+						listener.onFailure(e);
+					} catch (final RuntimeException re) {
+						m_server.warn("Poll listener " + listener + " failed: " + re);
+					}
+				}
+			} catch (final RuntimeException e) {
+				// back off rather than let the thread die while isRunning() says otherwise
+				m_polls.incrementAndGet();
+				m_failures.incrementAndGet();
+				delay = failed();
+				m_server.warn("Polling web.update_ui failed: " + e);
+			}
+
+			try {
+				waitFor(started, delay);
+			} catch (final InterruptedException e) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Wait until <code>delay</code> milliseconds after
+	 * <code>started</code>, or until woken up, but at least the minimum
+	 * interval either way.
+	 */
+	private synchronized void waitFor(final long started, final long delay) throws InterruptedException {
+		final long earliest = started + m_minInterval;
+		final long deadline = started + delay;
+		while (m_running) {
+			final long now = System.currentTimeMillis();
+			final long until = m_wakeUp ? earliest : deadline;
+			if (now >= until) {
+				return;
+			}
+			wait(until - now);
+		}
+	}
+
+	private synchronized boolean hasNewEvents() {
+		if (m_eventPump == null) {
+			return false;
+		}
+		final long lastEventTime = m_eventPump.getLastEventTime();
+		final boolean newEvents = lastEventTime != m_lastEventTime;
+		m_lastEventTime = lastEventTime;
+		return newEvents;
+	}
+
+	/**
+	 * Record a successful poll, and get the delay before the next one.
+	 */
+	synchronized long succeeded(final boolean activity) {
+		m_consecutiveFailures = 0;
+		if (activity) {
+			m_interval = Math.max(m_minInterval, m_interval / 2);
+		} else {
+			m_interval = Math.min(m_maxInterval, m_interval + m_interval / 2);
+		}
+		return jitter(m_interval);
+	}
+
+	/**
+	 * Record a failed poll, and get the delay before the next try.
+	 */
+	synchronized long failed() {
+		m_consecutiveFailures++;
+		final int doublings = Math.min(m_consecutiveFailures - 1, 30);
+		final long backoff = Math.min(m_maxBackoff, m_minInterval << doublings);
+		return jitter(Math.max(m_minInterval, backoff));
+	}
+
+	private long jitter(final long delay) {
+		final double jitter = m_jitter;
+		if (jitter == 0) {
+			return delay;
+		}
+		return Math.max(m_minInterval, (long) (delay * (1 - jitter + 2 * jitter * m_random.nextDouble())));
+	}
+}
@@ -0,0 +1,63 @@
+package com.raccoonfink.deluge.responses;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.raccoonfink.deluge.DelugeException;
+
+/**
+ * The results of a batch of requests, in the order the requests were
+ * given.  Each entry is either a response or the error the server
+ * returned for that request.
+ */
+public class BatchResponse {
+	private final List<DelugeResponse> m_responses;
+	private final List<DelugeException> m_errors;
+
+	public BatchResponse(final int size) {
+		m_responses = new ArrayList<DelugeResponse>(Collections.<DelugeResponse>nCopies(size, null));
+		m_errors = new ArrayList<DelugeException>(Collections.<DelugeException>nCopies(size, null));
+	}
+
+	public void setResponse(final int index, final DelugeResponse response) {
+		m_responses.set(index, response);
+	}
+
+	public void setError(final int index, final DelugeException error) {
+		m_errors.set(index, error);
+	}
+
+	public int size() {
+		return m_responses.size();
+	}
+
+	public boolean isSuccess(final int index) {
+		return m_errors.get(index) == null;
+	}
+
+	public DelugeException getError(final int index) {
+		return m_errors.get(index);
+	}
+
+	public DelugeResponse getResponse(final int index) throws DelugeException {
+		final DelugeException error = m_errors.get(index);
+		if (error != null) {
+			throw error;
+		}
+		return m_responses.get(index);
+	}
+
+	/**
+	 * Get all of the responses, or throw the first error if any request
+	 * failed.
+	 */
+	public List<DelugeResponse> getResponses() throws DelugeException {
+		for (final DelugeException error : m_errors) {
+			if (error != null) {
+				throw error;
+			}
+		}
+		return Collections.unmodifiableList(m_responses);
+	}
+}
@@ -23,6 +23,14 @@ public class DelugeResponse {
 		m_result = response;
 	}
 
+	protected DelugeResponse(final Integer httpResponseCode, final int id, final JSONObject response) {
+		assert(httpResponseCode != null);
+
+		m_id = id;
+		m_responseCode = httpResponseCode.intValue();
+		m_result = response;
+	}
+
 	public int getId() {
 		return m_id;
 	}
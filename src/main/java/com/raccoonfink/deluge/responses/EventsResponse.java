@@ -21,7 +21,7 @@ public class EventsResponse extends DelugeResponse {
 			try {
 				final JSONArray res = result.getJSONArray("result");
 				for (int i=0; i < res.length(); i++) {
-					m_events.add(new DelugeEvent(res.getJSONArray(i)));
+					m_events.add(DelugeEvent.fromJSON(res.getJSONArray(i)));
 				}
 			} catch (final JSONException e) {
 				throw new DelugeException(e);
@@ -0,0 +1,65 @@
+package com.raccoonfink.deluge.responses;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.TorrentFile;
+
+/**
+ * The files of a torrent.  <code>web.get_torrent_files</code> returns them
+ * as a tree of directories; they are flattened here in index order.
+ */
+public class TorrentFilesResponse extends DelugeResponse {
+	private final List<TorrentFile> m_files = new ArrayList<TorrentFile>();
+
+	public TorrentFilesResponse(final Integer httpResponseCode, final JSONObject response) throws DelugeException {
+		super(httpResponseCode, response);
+
+		if (!response.isNull("result")) {
+			try {
+				addFiles(response.getJSONObject("result"));
+			} catch (final JSONException e) {
+				throw new DelugeException(e);
+			}
+			Collections.sort(m_files);
+		}
+	}
+
+	public List<TorrentFile> getFiles() {
+		return Collections.unmodifiableList(m_files);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void addFiles(final JSONObject node) throws JSONException {
+		if (!"dir".equals(node.optString("type"))) {
+			m_files.add(new TorrentFile(node));
+			return;
+		}
+		final JSONObject contents = node.optJSONObject("contents");
+		if (contents == null) {
+			return;
+		}
+		final Iterator it = contents.keys();
+		while (it.hasNext()) {
+			addFiles(contents.getJSONObject((String) it.next()));
+		}
+	}
+
+	@Override
+	public JSONObject toResponseJSON() throws JSONException {
+		final JSONObject ret = super.toResponseJSON();
+		final JSONArray result = new JSONArray();
+		for (final TorrentFile file : m_files) {
+			result.put(file.toJSON());
+		}
+		ret.put("result", result);
+		return ret;
+	}
+}
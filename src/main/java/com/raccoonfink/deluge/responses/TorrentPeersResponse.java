@@ -0,0 +1,48 @@
+package com.raccoonfink.deluge.responses;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.Peer;
+
+public class TorrentPeersResponse extends DelugeResponse {
+	private final List<Peer> m_peers = new ArrayList<Peer>();
+
+	public TorrentPeersResponse(final Integer httpResponseCode, final JSONObject response) throws DelugeException {
+		super(httpResponseCode, response);
+
+		// an unknown torrent has an empty status rather than no peers
+		final JSONObject result = response.optJSONObject("result");
+		final JSONArray peers = result == null ? null : result.optJSONArray("peers");
+		if (peers != null) {
+			try {
+				for (int i=0; i < peers.length(); i++) {
+					m_peers.add(new Peer(peers.getJSONObject(i)));
+				}
+			} catch (final JSONException e) {
+				throw new DelugeException(e);
+			}
+		}
+	}
+
+	public List<Peer> getPeers() {
+		return Collections.unmodifiableList(m_peers);
+	}
+
+	@Override
+	public JSONObject toResponseJSON() throws JSONException {
+		final JSONObject ret = super.toResponseJSON();
+		final JSONArray result = new JSONArray();
+		for (final Peer peer : m_peers) {
+			result.put(peer.toJSON());
+		}
+		ret.put("result", result);
+		return ret;
+	}
+}
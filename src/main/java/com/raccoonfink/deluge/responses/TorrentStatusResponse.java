@@ -0,0 +1,36 @@
+package com.raccoonfink.deluge.responses;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.Torrent;
+
+public class TorrentStatusResponse extends DelugeResponse {
+	private final Torrent m_torrent;
+
+	public TorrentStatusResponse(final Integer httpResponseCode, final JSONObject response, final String id) throws DelugeException {
+		super(httpResponseCode, response);
+
+		// Deluge answers an unknown torrent with an empty status
+		final JSONObject result = response.optJSONObject("result");
+		m_torrent = result == null || result.length() == 0 ? null : new Torrent(id, result);
+	}
+
+	/**
+	 * Get the torrent's status, or <code>null</code> if the server does not
+	 * know the torrent.
+	 */
+	public Torrent getTorrent() {
+		return m_torrent;
+	}
+
+	@Override
+	public JSONObject toResponseJSON() throws JSONException {
+		final JSONObject ret = super.toResponseJSON();
+		if (m_torrent != null) {
+			ret.put("result", m_torrent.toJSON());
+		}
+		return ret;
+	}
+}
@@ -1,8 +1,9 @@
 package com.raccoonfink.deluge.responses;
 
+import java.io.IOException;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.TreeSet;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -10,11 +11,14 @@ import org.json.JSONObject;
 import com.raccoonfink.deluge.DelugeException;
 import com.raccoonfink.deluge.Statistics;
 import com.raccoonfink.deluge.Torrent;
+import com.raccoonfink.deluge.TorrentSet;
+import com.raccoonfink.deluge.json.JsonStreamReader;
+import com.raccoonfink.deluge.json.JsonToken;
 
 public class UIResponse extends DelugeResponse {
 	private boolean m_connected = false;
 	private Statistics m_statistics;
-	private Set<Torrent> m_torrents = new TreeSet<Torrent>();
+	private TorrentSet m_torrents = new TorrentSet();
 
 	@SuppressWarnings("rawtypes")
 	public UIResponse(final Integer httpResponseCode, final JSONObject response) throws DelugeException {
@@ -32,6 +36,7 @@ public class UIResponse extends DelugeResponse {
 
 			final JSONObject torrents = result.optJSONObject("torrents");
 			if (torrents != null) {
+				m_torrents = new TorrentSet(torrents.length());
 				final Iterator it = torrents.keys();
 				while (it.hasNext()) {
 					final String key = (String) it.next();
@@ -44,6 +49,86 @@ public class UIResponse extends DelugeResponse {
 		}
 	}
 
+	private UIResponse(final Integer httpResponseCode, final int id, final boolean connected, final Statistics statistics, final TorrentSet torrents) throws JSONException {
+		super(httpResponseCode, id, new JSONObject().put("id", id));
+		m_connected = connected;
+		m_statistics = statistics;
+		m_torrents = torrents;
+	}
+
+	/**
+	 * Decode a <code>web.update_ui</code> response directly from the stream,
+	 * without building a JSON tree first.  The resulting response's
+	 * {@link #getResponseData()} only carries the request id.
+	 */
+	public static UIResponse decode(final Integer httpResponseCode, final JsonStreamReader reader) throws DelugeException {
+		return decode(httpResponseCode, reader, EnumSet.allOf(Torrent.Field.class));
+	}
+
+	/**
+	 * Decode a response, keeping only the given torrent fields.
+	 */
+	public static UIResponse decode(final Integer httpResponseCode, final JsonStreamReader reader, final Set<Torrent.Field> fields) throws DelugeException {
+		try {
+			Integer id = null;
+			JSONObject error = null;
+			boolean connected = false;
+			Statistics statistics = null;
+			final TorrentSet torrents = new TorrentSet();
+
+			reader.beginObject();
+			while (reader.hasNext()) {
+				final String name = reader.nextName();
+				if ("id".equals(name) && reader.peek() == JsonToken.NUMBER) {
+					id = reader.optInt();
+				} else if ("error".equals(name)) {
+					final Object value = reader.readValue();
+					if (value instanceof JSONObject) {
+						error = (JSONObject) value;
+					}
+				} else if ("result".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+					reader.beginObject();
+					while (reader.hasNext()) {
+						final String field = reader.nextName();
+						if ("connected".equals(field)) {
+							connected = reader.optBoolean();
+						} else if ("stats".equals(field) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+							statistics = new Statistics(reader);
+						} else if ("torrents".equals(field) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+							reader.beginObject();
+							while (reader.hasNext()) {
+								final String key = reader.nextName();
+								torrents.add(new Torrent(key, reader, fields));
+							}
+							reader.endObject();
+						} else {
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+
+			if (error != null) {
+				throw DelugeException.fromError(error);
+			}
+			if (id == null) {
+				throw new DelugeException("Invalid 'id' field in JSON response");
+			}
+			if (statistics == null) {
+				throw new DelugeException("No 'stats' in web.update_ui result");
+			}
+			return new UIResponse(httpResponseCode, id, connected, statistics, torrents);
+		} catch (final IOException e) {
+			throw new DelugeException(e);
+		} catch (final JSONException e) {
+			throw new DelugeException(e);
+		}
+	}
+
 	public boolean isConnected() {
 		return m_connected;
 	}
@@ -52,7 +137,11 @@ public class UIResponse extends DelugeResponse {
 		return m_statistics;
 	}
 	
-	public Set<Torrent> getTorrents() {
+	/**
+	 * Get the torrents in the order the server sent them.  Use
+	 * {@link TorrentSet#sortedBy(TorrentSet.Order)} for a sorted view.
+	 */
+	public TorrentSet getTorrents() {
 		return m_torrents;
 	}
 
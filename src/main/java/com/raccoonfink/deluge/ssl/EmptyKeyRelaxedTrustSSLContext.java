@@ -18,6 +18,23 @@ import javax.net.ssl.X509TrustManager;
 public final class EmptyKeyRelaxedTrustSSLContext extends SSLContextSpi {
 	public static final String ALGORITHM = "EmptyKeyRelaxedTrust";
 
+	/**
+	 * The trust manager behind this context, which accepts any certificate.
+	 */
+	public static final X509TrustManager TRUST_MANAGER = new X509TrustManager() {
+		public void checkClientTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+			// Perform no checks
+		}
+
+		public void checkServerTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+			// Perform no checks
+		}
+
+		public X509Certificate[] getAcceptedIssuers() {
+			return new X509Certificate[0];
+		}
+	};
+
 	private final SSLContext m_delegate;
 
 	public EmptyKeyRelaxedTrustSSLContext() throws NoSuchAlgorithmException, KeyManagementException {
@@ -25,21 +42,7 @@ public final class EmptyKeyRelaxedTrustSSLContext extends SSLContextSpi {
 
 		// Use a blank list of key managers so no SSL keys will be available
 		KeyManager[] keyManager = null;
-		TrustManager[] trustManagers = {
-				new X509TrustManager() {
-					public void checkClientTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
-						// Perform no checks
-					}
-
-					public void checkServerTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
-						// Perform no checks
-					}
-
-					public X509Certificate[] getAcceptedIssuers() {
-						return null;
-					}
-				}
-		};
+		TrustManager[] trustManagers = { TRUST_MANAGER };
 		customContext = SSLContext.getInstance("SSL");
 		customContext.init(keyManager, trustManagers, new java.security.SecureRandom());
 
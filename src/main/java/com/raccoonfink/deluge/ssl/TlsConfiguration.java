@@ -0,0 +1,289 @@
+package com.raccoonfink.deluge.ssl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * How a server's HTTPS connections are secured.  The SSL context and
+ * socket factory are built once and reused, so every connection shares
+ * one client session cache and later handshakes can resume earlier
+ * sessions instead of negotiating from scratch.
+ */
+public class TlsConfiguration {
+	public static enum TrustStrategy {
+		/** Verify the certificate chain and host name against the platform's trusted CAs. */
+		Strict,
+		/** Accept only certificates with one of the given SHA-256 fingerprints. */
+		Pinned,
+		/** Accept any certificate, as the web UI's self-signed one usually is. */
+		Relaxed
+	}
+
+	private static final HostnameVerifier ACCEPT_ANY_HOSTNAME = new HostnameVerifier() {
+		public boolean verify(final String hostname, final SSLSession session) {
+			return true;
+		}
+	};
+
+	private static final int SEEN_SESSIONS = 1000;
+
+	private final TrustStrategy m_trustStrategy;
+	private final Set<String> m_pins;
+
+	private SSLContext m_context;
+	private X509TrustManager m_trustManager;
+	private SSLSocketFactory m_socketFactory;
+
+	private final AtomicLong m_handshakes = new AtomicLong();
+	private final AtomicLong m_resumedHandshakes = new AtomicLong();
+	private final Map<String,Boolean> m_seenSessions = new LinkedHashMap<String,Boolean>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String,Boolean> eldest) {
+			return size() > SEEN_SESSIONS;
+		}
+	};
+
+	private TlsConfiguration(final TrustStrategy trustStrategy, final Set<String> pins) {
+		m_trustStrategy = trustStrategy;
+		m_pins = pins;
+	}
+
+	public static TlsConfiguration strict() {
+		return new TlsConfiguration(TrustStrategy.Strict, Collections.<String>emptySet());
+	}
+
+	public static TlsConfiguration relaxed() {
+		return new TlsConfiguration(TrustStrategy.Relaxed, Collections.<String>emptySet());
+	}
+
+	/**
+	 * Trust a certificate chain only if it contains a certificate with one
+	 * of the given SHA-256 fingerprints, in hex with or without colons.
+	 */
+	public static TlsConfiguration pinned(final String... sha256Fingerprints) {
+		final Set<String> pins = new HashSet<String>();
+		for (final String fingerprint : sha256Fingerprints) {
+			pins.add(fingerprint.replace(":", "").toLowerCase(Locale.ENGLISH));
+		}
+		if (pins.isEmpty()) {
+			throw new IllegalArgumentException("At least one certificate fingerprint is required");
+		}
+		return new TlsConfiguration(TrustStrategy.Pinned, Collections.unmodifiableSet(pins));
+	}
+
+	public TrustStrategy getTrustStrategy() {
+		return m_trustStrategy;
+	}
+
+	public synchronized SSLContext getSSLContext() throws GeneralSecurityException {
+		if (m_context == null) {
+			if (m_trustStrategy == TrustStrategy.Relaxed) {
+				m_trustManager = EmptyKeyRelaxedTrustSSLContext.TRUST_MANAGER;
+				m_context = SSLContext.getInstance(EmptyKeyRelaxedTrustSSLContext.ALGORITHM, new EmptyKeyRelaxedTrustProvider());
+			} else {
+				final X509TrustManager platform = getPlatformTrustManager();
+				m_trustManager = m_trustStrategy == TrustStrategy.Pinned ? new PinningTrustManager(platform, m_pins) : platform;
+				m_context = SSLContext.getInstance("TLS");
+				m_context.init(null, new TrustManager[] { m_trustManager }, null);
+			}
+		}
+		return m_context;
+	}
+
+	public synchronized X509TrustManager getTrustManager() throws GeneralSecurityException {
+		getSSLContext();
+		return m_trustManager;
+	}
+
+	/**
+	 * Get the socket factory for this configuration.  The same factory is
+	 * returned every time, and it counts the handshakes done through it.
+	 */
+	public synchronized SSLSocketFactory getSocketFactory() throws GeneralSecurityException {
+		if (m_socketFactory == null) {
+			m_socketFactory = new CountingSocketFactory(getSSLContext().getSocketFactory());
+		}
+		return m_socketFactory;
+	}
+
+	/**
+	 * Get the host name check to go with the trust strategy.  Only strict
+	 * trust checks host names; a pinned certificate already identifies the
+	 * server, and relaxed trust checks nothing.
+	 */
+	public HostnameVerifier getHostnameVerifier() {
+		return m_trustStrategy == TrustStrategy.Strict ? HttpsURLConnection.getDefaultHostnameVerifier() : ACCEPT_ANY_HOSTNAME;
+	}
+
+	/**
+	 * Get the number of handshakes completed on sockets from
+	 * {@link #getSocketFactory()}.
+	 */
+	public long getHandshakeCount() {
+		return m_handshakes.get();
+	}
+
+	/**
+	 * Get how many of those handshakes resumed a session seen before, going
+	 * by session id.
+	 */
+	public long getResumedHandshakeCount() {
+		return m_resumedHandshakes.get();
+	}
+
+	private void handshakeCompleted(final SSLSession session) {
+		m_handshakes.incrementAndGet();
+		final String id = toHex(session.getId());
+		if (id.length() == 0) {
+			return;
+		}
+		synchronized (m_seenSessions) {
+			if (m_seenSessions.put(id, Boolean.TRUE) != null) {
+				m_resumedHandshakes.incrementAndGet();
+			}
+		}
+	}
+
+	private static X509TrustManager getPlatformTrustManager() throws GeneralSecurityException {
+		final TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		factory.init((KeyStore) null);
+		for (final TrustManager trustManager : factory.getTrustManagers()) {
+			if (trustManager instanceof X509TrustManager) {
+				return (X509TrustManager) trustManager;
+			}
+		}
+		throw new GeneralSecurityException("No X509TrustManager in " + Arrays.toString(factory.getTrustManagers()));
+	}
+
+	private static String toHex(final byte[] bytes) {
+		final StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return builder.toString();
+	}
+
+	private static final class PinningTrustManager implements X509TrustManager {
+		private final X509TrustManager m_delegate;
+		private final Set<String> m_pins;
+
+		public PinningTrustManager(final X509TrustManager delegate, final Set<String> pins) {
+			m_delegate = delegate;
+			m_pins = pins;
+		}
+
+		public void checkClientTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+			m_delegate.checkClientTrusted(chain, authType);
+		}
+
+		public void checkServerTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+			if (chain == null || chain.length == 0) {
+				throw new CertificateException("The server sent no certificates");
+			}
+			final MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (final GeneralSecurityException e) {
+				throw new CertificateException(e);
+			}
+			for (final X509Certificate certificate : chain) {
+				if (m_pins.contains(toHex(digest.digest(certificate.getEncoded())))) {
+					return;
+				}
+			}
+			throw new CertificateException("No certificate in the chain for " + chain[0].getSubjectX500Principal() + " matches a pinned fingerprint");
+		}
+
+		public X509Certificate[] getAcceptedIssuers() {
+			return m_delegate.getAcceptedIssuers();
+		}
+	}
+
+	private final class CountingSocketFactory extends SSLSocketFactory {
+		private final SSLSocketFactory m_delegate;
+		private final HandshakeCompletedListener m_listener = new HandshakeCompletedListener() {
+			public void handshakeCompleted(final HandshakeCompletedEvent event) {
+				TlsConfiguration.this.handshakeCompleted(event.getSession());
+			}
+		};
+
+		public CountingSocketFactory(final SSLSocketFactory delegate) {
+			m_delegate = delegate;
+		}
+
+		private Socket listen(final Socket socket) {
+			if (socket instanceof SSLSocket) {
+				((SSLSocket) socket).addHandshakeCompletedListener(m_listener);
+			}
+			return socket;
+		}
+
+		@Override
+		public String[] getDefaultCipherSuites() {
+			return m_delegate.getDefaultCipherSuites();
+		}
+
+		@Override
+		public String[] getSupportedCipherSuites() {
+			return m_delegate.getSupportedCipherSuites();
+		}
+
+		@Override
+		public Socket createSocket() throws IOException {
+			return listen(m_delegate.createSocket());
+		}
+
+		@Override
+		public Socket createSocket(final Socket socket, final String host, final int port, final boolean autoClose) throws IOException {
+			return listen(m_delegate.createSocket(socket, host, port, autoClose));
+		}
+
+		@Override
+		public Socket createSocket(final String host, final int port) throws IOException {
+			return listen(m_delegate.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException {
+			return listen(m_delegate.createSocket(host, port, localHost, localPort));
+		}
+
+		@Override
+		public Socket createSocket(final InetAddress host, final int port) throws IOException {
+			return listen(m_delegate.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort) throws IOException {
+			return listen(m_delegate.createSocket(address, port, localAddress, localPort));
+		}
+	}
+}
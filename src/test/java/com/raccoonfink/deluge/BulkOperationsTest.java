@@ -0,0 +1,96 @@
+package com.raccoonfink.deluge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.raccoonfink.deluge.fake.FakeDelugeServer;
+
+public class BulkOperationsTest {
+	private static final String MISSING = "0000000000000000000000000000000000000000";
+
+	private FakeDelugeServer m_fake;
+	private DelugeServer m_server;
+	private BulkOperations m_bulk;
+
+	@Before
+	public void setUp() throws Exception {
+		m_fake = new FakeDelugeServer("deluge").start();
+		m_fake.populate(100);
+		m_server = m_fake.connectedClient();
+		m_bulk = new BulkOperations(m_server, new DelugeDispatcher(4), 30);
+	}
+
+	@After
+	public void tearDown() {
+		m_bulk.shutdown();
+		m_server.close();
+		m_fake.close();
+	}
+
+	@Test
+	public void testChunking() throws Exception {
+		final List<String> ids = m_fake.getTorrentIds();
+		final int before = m_fake.getRequestCount("core.pause_torrent");
+		final BulkResult result = m_bulk.pause(ids);
+		assertTrue(result.isSuccess());
+		assertEquals(100, result.getSucceeded().size());
+		// 30 + 30 + 30 + 10
+		assertEquals(4, m_fake.getRequestCount("core.pause_torrent") - before);
+		for (final Torrent torrent : m_server.updateUI().getTorrents()) {
+			assertEquals(Torrent.State.Paused, torrent.getState());
+		}
+	}
+
+	@Test
+	public void testPerItemFailures() throws Exception {
+		final List<String> ids = new ArrayList<String>(m_fake.getTorrentIds().subList(0, 10));
+		ids.add(5, MISSING);
+		final BulkResult result = m_bulk.moveStorage(ids, "/srv/elsewhere");
+		assertFalse(result.isSuccess());
+		assertEquals(10, result.getSucceeded().size());
+		assertEquals(Collections.singleton(MISSING), result.getFailures().keySet());
+		assertNotNull(result.getError(MISSING));
+		assertEquals(FakeDelugeServer.CALL_ERROR, result.getError(MISSING).getCode());
+	}
+
+	@Test
+	public void testFailedQueueMoveIsNotRepeated() throws Exception {
+		final List<String> ids = new ArrayList<String>(m_fake.getTorrentIds().subList(0, 10));
+		ids.add(5, MISSING);
+		final int before = m_fake.getRequestCount("core.queue_up");
+		final BulkResult result = m_bulk.queueUp(ids);
+		assertFalse(result.isSuccess());
+		assertEquals(0, result.getSucceeded().size());
+		assertEquals(11, result.getFailures().size());
+		assertEquals(FakeDelugeServer.CALL_ERROR, result.getError(MISSING).getCode());
+		// the whole chunk fails, and nothing is moved one at a time
+		assertEquals(1, m_fake.getRequestCount("core.queue_up") - before);
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		final List<String> ids = new ArrayList<String>(m_fake.getTorrentIds().subList(0, 40));
+		ids.add(MISSING);
+		final BulkResult result = m_bulk.remove(ids, false);
+		assertEquals(40, result.getSucceeded().size());
+		assertFalse(result.isSuccess(MISSING));
+		assertEquals(60, m_fake.getTorrentIds().size());
+	}
+
+	@Test
+	public void testSetTorrentOptions() throws Exception {
+		final BulkResult result = m_bulk.setTorrentOptions(m_fake.getTorrentIds(), Collections.singletonMap("max_download_speed", 100.0));
+		assertTrue(result.isSuccess());
+		assertEquals(100, result.size());
+	}
+}
@@ -0,0 +1,169 @@
+package com.raccoonfink.deluge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DelugeDispatcherTest {
+	private DelugeDispatcher m_dispatcher;
+
+	@After
+	public void tearDown() {
+		if (m_dispatcher != null) {
+			m_dispatcher.shutdown();
+		}
+	}
+
+	@Test
+	public void testLimitsRequestsInFlight() throws Exception {
+		m_dispatcher = new DelugeDispatcher(2);
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final List<DelugeFuture<Integer>> futures = new ArrayList<DelugeFuture<Integer>>();
+		for (int i=0; i < 6; i++) {
+			final int value = i;
+			futures.add(m_dispatcher.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					final int now = running.incrementAndGet();
+					synchronized (maxRunning) {
+						maxRunning.set(Math.max(maxRunning.get(), now));
+					}
+					started.countDown();
+					release.await();
+					running.decrementAndGet();
+					return value;
+				}
+			}));
+		}
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals(2, m_dispatcher.getInFlightCount());
+		assertEquals(4, m_dispatcher.getPendingCount());
+
+		release.countDown();
+		for (int i=0; i < futures.size(); i++) {
+			assertEquals(Integer.valueOf(i), futures.get(i).get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(2, maxRunning.get());
+		// the last slot is given back just after its future completes
+		waitForIdle();
+		assertEquals(0, m_dispatcher.getInFlightCount());
+		assertEquals(0, m_dispatcher.getPendingCount());
+	}
+
+	@Test
+	public void testFailuresAreWrapped() throws Exception {
+		m_dispatcher = new DelugeDispatcher(1);
+		final DelugeFuture<String> future = m_dispatcher.submit(new Callable<String>() {
+			public String call() throws Exception {
+				throw new IllegalStateException("broken");
+			}
+		});
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("expected an ExecutionException");
+		} catch (final ExecutionException e) {
+			assertTrue(e.getCause() instanceof DelugeException);
+			assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void testQueueFailsAfterShutdown() throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		m_dispatcher = new DelugeDispatcher(executor, 1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final DelugeFuture<String> running = m_dispatcher.submit(new Callable<String>() {
+			public String call() throws Exception {
+				release.await();
+				return "done";
+			}
+		});
+		final List<DelugeFuture<String>> queued = new ArrayList<DelugeFuture<String>>();
+		for (int i=0; i < 20000; i++) {
+			queued.add(m_dispatcher.submit(new Callable<String>() {
+				public String call() {
+					return "ran";
+				}
+			}));
+		}
+		executor.shutdown();
+		release.countDown();
+
+		assertEquals("done", running.get(5, TimeUnit.SECONDS));
+		for (final DelugeFuture<String> future : queued) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("expected the executor to reject it");
+			} catch (final ExecutionException e) {
+				assertEquals("Request rejected by executor", e.getCause().getMessage());
+			}
+		}
+		waitForIdle();
+		assertEquals(0, m_dispatcher.getInFlightCount());
+	}
+
+	@Test
+	public void testThrowingCallbackDoesNotStrandTheQueue() throws Exception {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		m_dispatcher = new DelugeDispatcher(executor, 1);
+		final CountDownLatch release = new CountDownLatch(1);
+		m_dispatcher.submit(new Callable<String>() {
+			public String call() throws Exception {
+				release.await();
+				return "done";
+			}
+		});
+		final List<DelugeFuture<String>> queued = new ArrayList<DelugeFuture<String>>();
+		for (int i=0; i < 3; i++) {
+			final DelugeFuture<String> future = m_dispatcher.submit(new Callable<String>() {
+				public String call() {
+					return "ran";
+				}
+			});
+			future.addCallback(new DelugeCallback<String>() {
+				public void onSuccess(final String result) {
+				}
+
+				public void onFailure(final DelugeException e) {
+					throw new IllegalStateException("callback bug");
+				}
+			});
+			queued.add(future);
+		}
+		executor.shutdown();
+		release.countDown();
+
+		for (final DelugeFuture<String> future : queued) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("expected the executor to reject it");
+			} catch (final ExecutionException e) {
+			}
+		}
+		waitForIdle();
+		assertEquals(0, m_dispatcher.getInFlightCount());
+		assertEquals(0, m_dispatcher.getPendingCount());
+	}
+
+	private void waitForIdle() throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (m_dispatcher.getInFlightCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.raccoonfink.deluge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+public class DelugeFutureTest {
+	@Test
+	public void testCompleteRunsCallbacks() throws Exception {
+		final DelugeFuture<String> future = new DelugeFuture<String>();
+		final List<String> results = new ArrayList<String>();
+		future.addCallback(new Recorder(results));
+		assertTrue(future.complete("done"));
+		assertFalse(future.complete("again"));
+		assertFalse(future.fail(new DelugeException("too late")));
+		assertEquals("done", future.get());
+
+		// registered after completion, so run right away
+		future.addCallback(new Recorder(results));
+		assertEquals(2, results.size());
+		assertEquals("done", results.get(1));
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		final DelugeFuture<String> future = new DelugeFuture<String>();
+		final List<String> results = new ArrayList<String>();
+		future.addCallback(new Recorder(results));
+		final DelugeException exception = new DelugeException("broken");
+		assertTrue(future.fail(exception));
+		try {
+			future.get();
+			fail("expected an ExecutionException");
+		} catch (final ExecutionException e) {
+			assertEquals(exception, e.getCause());
+		}
+		assertEquals("failed: broken", results.get(0));
+	}
+
+	@Test
+	public void testGetTimesOut() throws Exception {
+		final DelugeFuture<String> future = new DelugeFuture<String>();
+		try {
+			future.get(10, TimeUnit.MILLISECONDS);
+			fail("expected a TimeoutException");
+		} catch (final TimeoutException e) {
+			assertFalse(future.isDone());
+		}
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		final DelugeFuture<String> future = new DelugeFuture<String>();
+		final List<String> results = new ArrayList<String>();
+		future.addCallback(new Recorder(results));
+		assertTrue(future.cancel(false));
+		assertFalse(future.complete("finished anyway"));
+		assertTrue(future.isCancelled());
+		assertTrue(future.isDone());
+		assertEquals("failed: Request was cancelled", results.get(0));
+		try {
+			future.get();
+			fail("expected a CancellationException");
+		} catch (final CancellationException e) {
+		}
+		assertFalse(future.cancel(false));
+	}
+
+	@Test
+	public void testCancelRacingComplete() throws Exception {
+		for (int i=0; i < 1000; i++) {
+			final DelugeFuture<String> future = new DelugeFuture<String>();
+			final CountDownLatch start = new CountDownLatch(1);
+			final Thread completer = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					} catch (final InterruptedException e) {
+						return;
+					}
+					future.complete("done");
+				}
+			});
+			completer.start();
+			start.countDown();
+			final boolean cancelled = future.cancel(false);
+			completer.join();
+
+			assertEquals(cancelled, future.isCancelled());
+			try {
+				assertEquals("done", future.get());
+				assertFalse(cancelled);
+			} catch (final CancellationException e) {
+				assertTrue(cancelled);
+			}
+		}
+	}
+
+	@Test
+	public void testThrowingCallbackDoesNotStopTheOthers() throws Exception {
+		final DelugeFuture<String> future = new DelugeFuture<String>();
+		final List<String> results = new ArrayList<String>();
+		future.addCallback(new DelugeCallback<String>() {
+			public void onSuccess(final String result) {
+				throw new IllegalStateException("callback bug");
+			}
+
+			public void onFailure(final DelugeException e) {
+			}
+		});
+		future.addCallback(new Recorder(results));
+		try {
+			future.complete("done");
+			fail("expected the callback's exception");
+		} catch (final IllegalStateException e) {
+			assertEquals("callback bug", e.getMessage());
+		}
+		assertEquals(1, results.size());
+		assertEquals("done", future.get());
+	}
+
+	private static final class Recorder implements DelugeCallback<String> {
+		private final List<String> m_results;
+
+		public Recorder(final List<String> results) {
+			m_results = results;
+		}
+
+		public void onSuccess(final String result) {
+			m_results.add(result);
+		}
+
+		public void onFailure(final DelugeException e) {
+			m_results.add("failed: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.raccoonfink.deluge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.raccoonfink.deluge.fake.FakeDelugeServer;
+import com.raccoonfink.deluge.http.OkHttpTransport;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+/**
+ * Hammers one {@link DelugeServer} from many threads against a
+ * {@link FakeDelugeServer}.
+ */
+public class DelugeServerConcurrencyTest {
+	private static final int THREADS = 16;
+	private static final int REQUESTS_PER_THREAD = 100;
+	private static final int TORRENTS = 50;
+
+	private FakeDelugeServer m_fake;
+
+	@Before
+	public void setUp() throws Exception {
+		m_fake = new FakeDelugeServer("deluge").start();
+		m_fake.populate(TORRENTS);
+	}
+
+	@After
+	public void tearDown() {
+		m_fake.close();
+	}
+
+	@Test
+	public void testConcurrentRequests() throws Exception {
+		runConcurrently(m_fake.connectedClient());
+	}
+
+	@Test
+	public void testConcurrentRequestsWithOkHttp() throws Exception {
+		final OkHttpTransport transport = new OkHttpTransport();
+		try {
+			runConcurrently(m_fake.connectedClient(transport));
+		} finally {
+			transport.close();
+		}
+	}
+
+	private void runConcurrently(final DelugeServer server) throws Exception {
+		server.setTimeout(10000);
+		final List<String> ids = m_fake.getTorrentIds();
+		final Map<String,String> names = new HashMap<String,String>();
+		for (final Torrent torrent : server.updateUI().getTorrents()) {
+			names.put(torrent.getKey(), torrent.getName());
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for (int t=0; t < THREADS; t++) {
+				final int thread = t;
+				futures.add(executor.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						int mismatches = 0;
+						for (int i=0; i < REQUESTS_PER_THREAD; i++) {
+							if (thread == 0 && i == REQUESTS_PER_THREAD / 2) {
+								// expire the session under everyone's feet
+								m_fake.expireSessions();
+							}
+							// each request asks for a different torrent, so a caller handed
+							// someone else's answer notices
+							final String id = ids.get((thread * REQUESTS_PER_THREAD + i) % ids.size());
+							if (i % 10 == 0) {
+								final TorrentFilter filter = new TorrentFilter();
+								filter.setIds(Collections.singletonList(id));
+								final UIResponse response = server.updateUI(filter);
+								if (response.getTorrents().size() != 1 || !response.getTorrents().containsKey(id)) {
+									mismatches++;
+								}
+							} else if (!names.get(id).equals(server.getTorrentStatus(id).getTorrent().getName())) {
+								mismatches++;
+							}
+						}
+						return mismatches;
+					}
+				}));
+			}
+
+			for (final Future<Integer> future : futures) {
+				assertEquals(Integer.valueOf(0), future.get());
+			}
+		} finally {
+			executor.shutdown();
+			server.close();
+		}
+
+		assertEquals(0, m_fake.getDuplicateIdCount());
+		// the initial login, plus exactly one more after the session expired
+		assertEquals(2, m_fake.getLoginCount());
+		assertTrue(m_fake.getRequestCount() >= THREADS * REQUESTS_PER_THREAD);
+	}
+}
@@ -5,9 +5,13 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.raccoonfink.deluge.fake.FakeDelugeServer;
+
 import com.raccoonfink.deluge.responses.CheckSessionResponse;
 import com.raccoonfink.deluge.responses.ConnectedResponse;
 import com.raccoonfink.deluge.responses.DeleteSessionResponse;
@@ -16,10 +20,37 @@ import com.raccoonfink.deluge.responses.HostResponse;
 import com.raccoonfink.deluge.responses.LoginResponse;
 import com.raccoonfink.deluge.responses.UIResponse;
 
+/**
+ * Runs against an in-process {@link FakeDelugeServer}, unless a real web UI
+ * is given with <code>-DdelugeJsonUrl=...</code> (along with
+ * <code>delugePassword</code> and <code>delugeHostHash</code>).
+ */
 public class DelugeServerTest {
-	private static final String DELUGE_JSON_URL = System.getProperty("delugeJsonUrl", "http://defiance.dyndns.org:8112/");
-	private static final String DELUGE_PASSWORD = System.getProperty("delugePassword");
-	private static final String DELUGE_HOST_HASH = System.getProperty("delugeHostHash", "1cc7ee2e2259ad6c29430b2f5ae75919009ec4da");
+	private static final String LIVE_JSON_URL = System.getProperty("delugeJsonUrl");
+	private static final String DELUGE_PASSWORD = System.getProperty("delugePassword", LIVE_JSON_URL == null ? "deluge" : null);
+	private static final String DELUGE_HOST_HASH = System.getProperty("delugeHostHash", FakeDelugeServer.HOST_ID);
+
+	private static FakeDelugeServer s_fakeServer;
+	private static String DELUGE_JSON_URL;
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		if (LIVE_JSON_URL == null) {
+			s_fakeServer = new FakeDelugeServer(DELUGE_PASSWORD).start();
+			s_fakeServer.populate(50);
+			DELUGE_JSON_URL = s_fakeServer.getURL();
+		} else {
+			DELUGE_JSON_URL = LIVE_JSON_URL;
+		}
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		if (s_fakeServer != null) {
+			s_fakeServer.close();
+			s_fakeServer = null;
+		}
+	}
 
 	/* Attempt to reset the connection/environment state before any tests run. */
 	@Before
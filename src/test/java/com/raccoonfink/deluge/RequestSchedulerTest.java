@@ -0,0 +1,178 @@
+package com.raccoonfink.deluge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.raccoonfink.deluge.RequestScheduler.Priority;
+import com.raccoonfink.deluge.http.ConnectionPool;
+
+public class RequestSchedulerTest {
+	private RequestScheduler m_scheduler;
+	private final CountDownLatch m_release = new CountDownLatch(1);
+	private final List<String> m_started = Collections.synchronizedList(new ArrayList<String>());
+
+	@Before
+	public void setUp() throws Exception {
+		m_scheduler = new RequestScheduler(new DelugeServer("http://localhost/", "deluge"), 4);
+	}
+
+	@After
+	public void tearDown() {
+		m_release.countDown();
+		m_scheduler.shutdown();
+	}
+
+	@Test
+	public void testInteractiveIsNotBlockedByPolls() throws Exception {
+		final List<DelugeFuture<String>> polls = new ArrayList<DelugeFuture<String>>();
+		for (int i=0; i < 5; i++) {
+			polls.add(m_scheduler.submit(Priority.Bulk_Poll, blocking("poll" + i)));
+		}
+		assertEquals(1, m_scheduler.getInFlightCount(Priority.Bulk_Poll));
+		assertEquals(4, m_scheduler.getPendingCount(Priority.Bulk_Poll));
+
+		// the poll holds its only slot, but there are three more
+		final DelugeFuture<String> click = m_scheduler.submit(Priority.Interactive, immediate("pause"));
+		assertEquals("pause", click.get(5, TimeUnit.SECONDS));
+		assertEquals(4, m_scheduler.getPendingCount(Priority.Bulk_Poll));
+
+		m_release.countDown();
+		for (final DelugeFuture<String> poll : polls) {
+			poll.get(5, TimeUnit.SECONDS);
+		}
+		assertEquals(6, m_scheduler.getQueueTime(Priority.Bulk_Poll).getCount() + m_scheduler.getQueueTime(Priority.Interactive).getCount());
+	}
+
+	@Test
+	public void testHighestPriorityGoesFirst() throws Exception {
+		// one slot, so the order they start in is the order they run in
+		final RequestScheduler scheduler = new RequestScheduler(m_scheduler.getServer(), 1);
+		try {
+			final List<DelugeFuture<String>> futures = new ArrayList<DelugeFuture<String>>();
+			futures.add(scheduler.submit(Priority.Control, blocking("control")));
+			futures.add(scheduler.submit(Priority.Background, immediate("background")));
+			futures.add(scheduler.submit(Priority.Bulk_Poll, immediate("poll")));
+			futures.add(scheduler.submit(Priority.Interactive, immediate("click")));
+			assertEquals(1, scheduler.getPendingCount(Priority.Interactive));
+
+			m_release.countDown();
+			for (final DelugeFuture<String> future : futures) {
+				future.get(5, TimeUnit.SECONDS);
+			}
+			assertEquals(Arrays.asList("control", "click", "poll", "background"), m_started);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testPoolIsSizedByTheCaller() throws Exception {
+		final DelugeServer server = new DelugeServer("http://localhost/", "deluge");
+		final RequestScheduler scheduler = new RequestScheduler(server, 8);
+		try {
+			// the pool may be shared, so the scheduler leaves it alone
+			assertEquals(ConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST, server.getConnectionPool().getMaxConnectionsPerHost());
+			server.setMaxConnectionsPerHost(scheduler.getMaxInFlight());
+			assertEquals(8, server.getConnectionPool().getMaxConnectionsPerHost());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testQueueFailsAfterShutdown() throws Exception {
+		final RequestScheduler scheduler = new RequestScheduler(m_scheduler.getServer(), 1);
+		final DelugeFuture<String> running = scheduler.submit(Priority.Control, blocking("running"));
+		final List<DelugeFuture<String>> queued = new ArrayList<DelugeFuture<String>>();
+		for (int i=0; i < 20000; i++) {
+			queued.add(scheduler.submit(Priority.Control, immediate("queued" + i)));
+		}
+		scheduler.shutdown();
+
+		// every queued request is rejected once the running one lets go
+		m_release.countDown();
+		assertEquals("running", running.get(5, TimeUnit.SECONDS));
+		for (final DelugeFuture<String> future : queued) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("expected the request to be rejected");
+			} catch (final ExecutionException e) {
+				assertTrue(e.getCause() instanceof DelugeException);
+			}
+		}
+		assertEquals(0, scheduler.getInFlightCount(Priority.Control));
+	}
+
+	@Test
+	public void testThrowingCallbackDoesNotStrandTheQueue() throws Exception {
+		final RequestScheduler scheduler = new RequestScheduler(m_scheduler.getServer(), 1);
+		final DelugeFuture<String> running = scheduler.submit(Priority.Control, blocking("running"));
+		final List<DelugeFuture<String>> queued = new ArrayList<DelugeFuture<String>>();
+		for (int i=0; i < 3; i++) {
+			final DelugeFuture<String> future = scheduler.submit(Priority.Control, immediate("queued" + i));
+			future.addCallback(new DelugeCallback<String>() {
+				public void onSuccess(final String result) {
+				}
+
+				public void onFailure(final DelugeException e) {
+					throw new IllegalStateException("callback bug");
+				}
+			});
+			queued.add(future);
+		}
+		scheduler.shutdown();
+
+		m_release.countDown();
+		assertEquals("running", running.get(5, TimeUnit.SECONDS));
+		for (final DelugeFuture<String> future : queued) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("expected the request to be rejected");
+			} catch (final ExecutionException e) {
+			}
+		}
+		assertEquals(0, scheduler.getInFlightCount(Priority.Control));
+		assertEquals(0, scheduler.getPendingCount(Priority.Control));
+	}
+
+	@Test
+	public void testGetPriority() {
+		assertEquals(Priority.Interactive, RequestScheduler.getPriority("core.pause_torrent"));
+		assertEquals(Priority.Bulk_Poll, RequestScheduler.getPriority("web.update_ui"));
+		assertEquals(Priority.Background, RequestScheduler.getPriority("web.get_events"));
+		assertEquals(Priority.Control, RequestScheduler.getPriority("auth.check_session"));
+	}
+
+	private Callable<String> blocking(final String name) {
+		return new Callable<String>() {
+			public String call() throws Exception {
+				m_started.add(name);
+				m_release.await();
+				return name;
+			}
+		};
+	}
+
+	private Callable<String> immediate(final String name) {
+		return new Callable<String>() {
+			public String call() {
+				m_started.add(name);
+				return name;
+			}
+		};
+	}
+}
@@ -0,0 +1,28 @@
+package com.raccoonfink.deluge;
+
+import static org.junit.Assert.assertEquals;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class RequestTemplateTest {
+	@Test
+	public void testMatchesJSON() throws Exception {
+		final DelugeRequest request = new DelugeRequest("web.update_ui", new JSONArray().put("name").put("state"), new JSONObject().put("label", "linux"));
+		for (final int id : new int[] { 0, 7, 10, 99, 12345, Integer.MAX_VALUE }) {
+			final JSONObject expected = request.toJSON(id);
+			final JSONObject actual = new JSONObject(new String(request.toPostBody(id), "UTF-8"));
+			assertEquals(id, actual.getInt("id"));
+			assertEquals(expected.getString("method"), actual.getString("method"));
+			assertEquals(expected.getJSONArray("params").toString(), actual.getJSONArray("params").toString());
+		}
+	}
+
+	@Test
+	public void testUnicode() throws Exception {
+		final String name = "caf\u00e9 \u65e5\u672c \ud83c\udf7a";
+		final byte[] body = new DelugeRequest("core.rename_files", name).toPostBody(3);
+		assertEquals("{\"method\":\"core.rename_files\",\"params\":[\"" + name + "\"],\"id\":3}", new String(body, "UTF-8"));
+	}
+}
@@ -0,0 +1,60 @@
+package com.raccoonfink.deluge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.raccoonfink.deluge.fake.FakeDelugeServer;
+
+public class TorrentCacheTest {
+	private FakeDelugeServer m_fake;
+	private DelugeServer m_server;
+
+	@Before
+	public void setUp() throws Exception {
+		m_fake = new FakeDelugeServer("deluge").start();
+		m_fake.populate(5);
+		m_server = m_fake.connectedClient();
+	}
+
+	@After
+	public void tearDown() {
+		m_server.close();
+		m_fake.close();
+	}
+
+	@Test
+	public void testDeltas() throws Exception {
+		final TorrentCache cache = new TorrentCache();
+		assertEquals(5, cache.update(m_server.updateUI()).getAdded().size());
+		assertTrue(cache.update(m_server.updateUI()).isEmpty());
+
+		final String id = m_fake.getTorrentIds().get(0);
+		m_fake.setTorrentField(id, "eta", 42);
+		final TorrentDelta delta = cache.update(m_server.updateUI());
+		assertEquals(1, delta.getChanged().size());
+		assertEquals(id, delta.getChanged().get(0).getKey());
+		assertTrue(delta.getChanged().get(0).isChanged(Torrent.Field.Eta));
+	}
+
+	@Test
+	public void testDisconnectedSnapshotKeepsTorrents() throws Exception {
+		final TorrentCache cache = new TorrentCache();
+		cache.update(m_server.updateUI());
+		assertTrue(cache.isConnected());
+
+		m_server.disconnect();
+		final TorrentDelta delta = cache.update(m_server.updateUI());
+		assertTrue(delta.isEmpty());
+		assertFalse(cache.isConnected());
+		assertEquals(5, cache.size());
+
+		m_server.connect(FakeDelugeServer.HOST_ID);
+		assertTrue(cache.update(m_server.updateUI()).isEmpty());
+		assertTrue(cache.isConnected());
+	}
+}
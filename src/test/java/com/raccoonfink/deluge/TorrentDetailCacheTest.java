@@ -0,0 +1,178 @@
+package com.raccoonfink.deluge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.raccoonfink.deluge.fake.FakeDelugeServer;
+import com.raccoonfink.deluge.responses.TorrentFilesResponse;
+import com.raccoonfink.deluge.responses.TorrentPeersResponse;
+import com.raccoonfink.deluge.responses.TorrentStatusResponse;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+public class TorrentDetailCacheTest {
+	private FakeDelugeServer m_fake;
+	private DelugeServer m_server;
+	private String m_id;
+
+	@Before
+	public void setUp() throws Exception {
+		m_fake = new FakeDelugeServer("deluge").start();
+		m_fake.populate(10);
+		m_server = m_fake.connectedClient();
+		m_id = m_fake.getTorrentIds().get(0);
+		m_fake.setTorrentState(m_id, "Downloading");
+		m_fake.setTorrentField(m_id, "num_peers", 3);
+	}
+
+	@After
+	public void tearDown() {
+		m_server.close();
+		m_fake.close();
+	}
+
+	@Test
+	public void testTypedDetails() throws Exception {
+		final Torrent torrent = m_server.getTorrentStatus(m_id).getTorrent();
+		assertEquals(m_id, torrent.getKey());
+		assertEquals(Torrent.State.Downloading, torrent.getState());
+
+		final List<TorrentFile> files = m_server.getTorrentFiles(m_id).getFiles();
+		assertEquals(3, files.size());
+		long offset = 0;
+		for (int i=0; i < files.size(); i++) {
+			assertEquals(i, files.get(i).getIndex());
+			assertEquals(offset, files.get(i).getOffset());
+			assertTrue(files.get(i).getPath().startsWith(torrent.getName() + "/"));
+			offset += files.get(i).getSize();
+		}
+		assertEquals(torrent.getTotalSize(), offset);
+
+		final List<Peer> peers = m_server.getTorrentPeers(m_id).getPeers();
+		assertEquals(3, peers.size());
+		assertTrue(peers.get(0).getIp().startsWith("10.0.0.1:"));
+
+		assertNull(m_server.getTorrentStatus("nonexistent").getTorrent());
+		assertEquals(0, m_server.getTorrentFiles("nonexistent").getFiles().size());
+	}
+
+	@Test
+	public void testResponsesRoundTrip() throws Exception {
+		final TorrentFilesResponse filesResponse = m_server.getTorrentFiles(m_id);
+		final JSONArray files = filesResponse.toResponseJSON().getJSONArray("result");
+		assertEquals(filesResponse.getFiles().size(), files.length());
+		for (int i=0; i < files.length(); i++) {
+			final TorrentFile file = new TorrentFile(files.getJSONObject(i));
+			assertEquals(filesResponse.getFiles().get(i).getPath(), file.getPath());
+			assertEquals(filesResponse.getFiles().get(i).getSize(), file.getSize());
+			assertEquals(i, file.getIndex());
+		}
+
+		final TorrentPeersResponse peersResponse = m_server.getTorrentPeers(m_id);
+		final JSONArray peers = peersResponse.toResponseJSON().getJSONArray("result");
+		assertEquals(3, peers.length());
+		for (int i=0; i < peers.length(); i++) {
+			final Peer peer = new Peer(peers.getJSONObject(i));
+			assertEquals(peersResponse.getPeers().get(i).getIp(), peer.getIp());
+			assertEquals(peersResponse.getPeers().get(i).isSeed(), peer.isSeed());
+			assertEquals(peersResponse.getPeers().get(i).getDownSpeed(), peer.getDownSpeed());
+		}
+
+		final TorrentStatusResponse statusResponse = m_server.getTorrentStatus(m_id);
+		assertEquals(statusResponse.getTorrent().getName(), statusResponse.toResponseJSON().getJSONObject("result").getString("name"));
+	}
+
+	@Test
+	public void testRepeatedViewsHitCache() throws Exception {
+		final TorrentDetailCache cache = new TorrentDetailCache(m_server);
+		for (int i=0; i < 5; i++) {
+			assertEquals(m_id, cache.getStatus(m_id).getKey());
+			assertEquals(3, cache.getFiles(m_id).size());
+			assertEquals(3, cache.getPeers(m_id).size());
+		}
+		assertEquals(1, m_fake.getRequestCount("web.get_torrent_status"));
+		assertEquals(1, m_fake.getRequestCount("web.get_torrent_files"));
+		assertEquals(1, m_fake.getRequestCount("core.get_torrent_status"));
+		assertEquals(3, cache.getMissCount());
+		assertEquals(12, cache.getHitCount());
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testEventsInvalidate() throws Exception {
+		final TorrentDetailCache cache = new TorrentDetailCache(m_server);
+		final List<TorrentFile> files = cache.getFiles(m_id);
+		cache.getStatus(m_id);
+		cache.getPeers(m_id);
+
+		m_fake.setTorrentState(m_id, "Paused");
+		cache.onEvent(DelugeEvent.fromJSON(new JSONArray().put("TorrentStateChangedEvent").put(new JSONArray().put(m_id).put("Paused"))));
+		assertEquals(Torrent.State.Paused, cache.getStatus(m_id).getState());
+		// a paused torrent has no peers
+		assertEquals(0, cache.getPeers(m_id).size());
+		assertSame(files, cache.getFiles(m_id));
+
+		cache.onEvent(DelugeEvent.fromJSON(new JSONArray().put("TorrentFileRenamedEvent").put(new JSONArray().put(m_id).put(0).put("renamed.mkv"))));
+		cache.getFiles(m_id);
+		assertEquals(2, m_fake.getRequestCount("web.get_torrent_files"));
+
+		cache.onEvent(DelugeEvent.fromJSON(new JSONArray().put("TorrentRemovedEvent").put(new JSONArray().put(m_id))));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testPollDeltaInvalidates() throws Exception {
+		final TorrentDetailCache cache = new TorrentDetailCache(m_server);
+		final TorrentCache torrents = new TorrentCache();
+		torrents.update(m_server.updateUI());
+		final List<TorrentFile> files = cache.getFiles(m_id);
+		final List<Peer> peers = cache.getPeers(m_id);
+		cache.getStatus(m_id);
+
+		m_fake.setTorrentField(m_id, "eta", 12345);
+		UIResponse response = m_server.updateUI();
+		cache.onUpdate(response, torrents.update(response));
+		assertEquals(12345, cache.getStatus(m_id).getEta());
+		assertSame(files, cache.getFiles(m_id));
+		assertSame(peers, cache.getPeers(m_id));
+		assertEquals(2, m_fake.getRequestCount("web.get_torrent_status"));
+
+		m_fake.setTorrentField(m_id, "name", "renamed");
+		response = m_server.updateUI();
+		cache.onUpdate(response, torrents.update(response));
+		assertTrue(cache.getFiles(m_id).get(0).getPath().startsWith("renamed/"));
+	}
+
+	@Test
+	public void testTtlAndEviction() throws Exception {
+		final TorrentDetailCache cache = new TorrentDetailCache(m_server);
+		cache.setTtl(TorrentDetailCache.Group.Status, 0);
+		cache.getStatus(m_id);
+		cache.getStatus(m_id);
+		assertEquals(2, m_fake.getRequestCount("web.get_torrent_status"));
+		assertEquals(0, cache.size());
+
+		// room for the files of about two torrents
+		cache.setMaxWeight(cache.getWeight() + 1000);
+		for (final String id : m_fake.getTorrentIds()) {
+			cache.getFiles(id);
+			assertTrue(cache.getWeight() <= cache.getMaxWeight());
+		}
+		assertTrue(cache.getEvictionCount() > 0);
+		assertTrue(cache.size() < m_fake.getTorrentIds().size());
+
+		// the most recently used is still there
+		final List<String> ids = m_fake.getTorrentIds();
+		final int requests = m_fake.getRequestCount("web.get_torrent_files");
+		cache.getFiles(ids.get(ids.size() - 1));
+		assertEquals(requests, m_fake.getRequestCount("web.get_torrent_files"));
+	}
+}
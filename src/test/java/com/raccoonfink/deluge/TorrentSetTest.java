@@ -0,0 +1,46 @@
+package com.raccoonfink.deluge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TorrentSetTest {
+	@Test
+	public void testSortedViewsAreKeptUntilTheSetChanges() throws Exception {
+		final TorrentSet set = new TorrentSet();
+		set.add(torrent("c", "charlie", 1));
+		set.add(torrent("a", "alpha", 3));
+		set.add(torrent("b", "bravo", 2));
+
+		final List<Torrent> byName = set.sortedBy(TorrentSet.Order.Name);
+		assertEquals("a", byName.get(0).getKey());
+		assertSame(byName, set.sortedBy(TorrentSet.Order.Name));
+		assertEquals("c", set.sortedBy(TorrentSet.Order.Queue).get(0).getKey());
+
+		// replacing a torrent with the same key is a change too
+		assertFalse(set.add(torrent("a", "zulu", 3)));
+		assertEquals(3, set.size());
+		final List<Torrent> resorted = set.sortedBy(TorrentSet.Order.Name);
+		assertNotSame(byName, resorted);
+		assertEquals("a", resorted.get(2).getKey());
+
+		final Iterator<Torrent> it = set.iterator();
+		it.next();
+		it.remove();
+		assertEquals(2, set.sortedBy(TorrentSet.Order.Name).size());
+		assertFalse(set.containsKey("c"));
+		assertTrue(set.containsKey("a"));
+	}
+
+	private static Torrent torrent(final String key, final String name, final int queue) throws Exception {
+		return new Torrent(key, new JSONObject().put("name", name).put("state", "Seeding").put("queue", queue));
+	}
+}
@@ -0,0 +1,97 @@
+package com.raccoonfink.deluge.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.raccoonfink.deluge.DelugeDispatcher;
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.fake.FakeDelugeServer;
+
+public class DelugeClusterTest {
+	private final List<FakeDelugeServer> m_fakes = new ArrayList<FakeDelugeServer>();
+	private DelugeDispatcher m_dispatcher;
+	private DelugeCluster m_cluster;
+
+	@Before
+	public void setUp() {
+		m_dispatcher = new DelugeDispatcher(4);
+		m_cluster = new DelugeCluster(m_dispatcher, 5000);
+	}
+
+	@After
+	public void tearDown() {
+		m_dispatcher.shutdown();
+		for (final String name : m_cluster.getServerNames()) {
+			m_cluster.getServer(name).close();
+		}
+		for (final FakeDelugeServer fake : m_fakes) {
+			fake.close();
+		}
+	}
+
+	@Test
+	public void testPollMergesMembers() throws Exception {
+		addMember("a", 5);
+		addMember("b", 3);
+
+		final ClusterSnapshot snapshot = m_cluster.poll();
+		assertTrue(snapshot.isComplete());
+		assertEquals(2, snapshot.getResponses().size());
+		assertEquals(8, snapshot.getTorrents().size());
+		assertEquals(2, snapshot.getStatistics().getHostCount());
+		assertEquals(2, snapshot.getStatistics().getConnectedHostCount());
+
+		// members are only connected to their daemon once
+		m_cluster.poll();
+		for (final FakeDelugeServer fake : m_fakes) {
+			assertEquals(1, fake.getRequestCount("web.connect"));
+			assertEquals(2, fake.getRequestCount("web.update_ui"));
+		}
+	}
+
+	@Test
+	public void testFailingMemberDoesNotHoldUpTheOthers() throws Exception {
+		addMember("up", 5);
+		addMember("down", 5).close();
+
+		final ClusterSnapshot snapshot = m_cluster.poll();
+		assertFalse(snapshot.isComplete());
+		assertEquals(5, snapshot.getTorrents().size());
+		assertTrue(snapshot.getFailures().containsKey("down"));
+		assertEquals("up", snapshot.getTorrents().get(0).getHost());
+	}
+
+	@Test
+	public void testSlowMemberTimesOutAndIsSkipped() throws Exception {
+		addMember("fast", 5);
+		addMember("slow", 5).setLatency(1000);
+		m_cluster.setPollTimeout(300);
+
+		ClusterSnapshot snapshot = m_cluster.poll();
+		assertEquals(1, snapshot.getResponses().size());
+		assertTrue(snapshot.getFailures().get("slow").getMessage().contains("Timed out"));
+
+		// its first poll is still outstanding
+		snapshot = m_cluster.poll();
+		assertEquals(1, snapshot.getResponses().size());
+		assertTrue(snapshot.getFailures().get("slow").getMessage().contains("Still waiting"));
+	}
+
+	private FakeDelugeServer addMember(final String name, final int torrents) throws Exception {
+		final FakeDelugeServer fake = new FakeDelugeServer("deluge").start();
+		fake.populate(torrents);
+		m_fakes.add(fake);
+		final DelugeServer server = new DelugeServer(fake.getURL(), "deluge");
+		server.login();
+		m_cluster.addServer(name, server, FakeDelugeServer.HOST_ID);
+		return fake;
+	}
+}
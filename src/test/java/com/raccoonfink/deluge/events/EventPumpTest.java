@@ -0,0 +1,148 @@
+package com.raccoonfink.deluge.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.raccoonfink.deluge.DelugeEvent;
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.fake.FakeDelugeServer;
+import com.raccoonfink.deluge.logging.WireLogger;
+import com.raccoonfink.deluge.responses.EventsResponse;
+
+public class EventPumpTest {
+	private FakeDelugeServer m_fake;
+	private DelugeServer m_server;
+	private EventPump m_pump;
+	private final AtomicInteger m_brokenPolls = new AtomicInteger();
+	private final List<String> m_warnings = Collections.synchronizedList(new ArrayList<String>());
+
+	@Before
+	public void setUp() throws Exception {
+		m_fake = new FakeDelugeServer("deluge").start();
+		m_fake.populate(1);
+		// so the only warnings are the pump's own
+		m_fake.setBatchSupported(true);
+		m_server = new DelugeServer(m_fake.getURL(), "deluge") {
+			@Override
+			public EventsResponse getEvents() throws DelugeException {
+				if (m_brokenPolls.getAndDecrement() > 0) {
+					throw new IllegalStateException("garbled response");
+				}
+				return super.getEvents();
+			}
+		};
+		m_server.setWireLogger(new WireLogger() {
+			public boolean isEnabled(final Level level) {
+				return level == Level.Warning;
+			}
+
+			public void log(final Level level, final String message) {
+				m_warnings.add(message);
+			}
+		});
+		m_server.login();
+		m_server.connect(FakeDelugeServer.HOST_ID);
+		m_pump = new EventPump(m_server, 20, 16);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		m_pump.stop(1000);
+		m_server.close();
+		m_fake.close();
+	}
+
+	@Test
+	public void testDeliversEvents() throws Exception {
+		final CountDownLatch received = new CountDownLatch(1);
+		m_pump.addListener(new DelugeEventListener() {
+			public void onEvent(final DelugeEvent event) {
+				if (event instanceof TorrentAddedEvent) {
+					received.countDown();
+				}
+			}
+		});
+		startAndQueueEvent();
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		assertEquals(0, m_pump.getFailureCount());
+	}
+
+	@Test
+	public void testPollerSurvivesRuntimeException() throws Exception {
+		m_brokenPolls.set(2);
+		final CountDownLatch received = new CountDownLatch(1);
+		m_pump.addListener(new DelugeEventListener() {
+			public void onEvent(final DelugeEvent event) {
+				received.countDown();
+			}
+		});
+		startAndQueueEvent();
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		assertTrue(m_pump.isRunning());
+		assertEquals(2, m_pump.getFailureCount());
+		assertEquals(2, m_warnings.size());
+		assertTrue(m_warnings.get(0).contains("garbled response"));
+	}
+
+	@Test
+	public void testFailedPollIsReported() throws Exception {
+		m_fake.injectError("web.get_events", 1, FakeDelugeServer.CALL_ERROR, "daemon went away");
+		final CountDownLatch received = new CountDownLatch(1);
+		m_pump.addListener(new DelugeEventListener() {
+			public void onEvent(final DelugeEvent event) {
+				received.countDown();
+			}
+		});
+		m_pump.start();
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (m_fake.getRequestCount("web.get_events") < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		m_fake.queueEvent("TorrentAddedEvent", m_fake.getTorrentIds().get(0), false);
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		assertEquals(1, m_pump.getFailureCount());
+		assertEquals(1, m_warnings.size());
+		assertTrue(m_warnings.get(0).contains("daemon went away"));
+	}
+
+	@Test
+	public void testFailingListenerIsReported() throws Exception {
+		final CountDownLatch received = new CountDownLatch(1);
+		m_pump.addListener(new DelugeEventListener() {
+			public void onEvent(final DelugeEvent event) {
+				throw new IllegalArgumentException("listener bug");
+			}
+		});
+		m_pump.addListener(new DelugeEventListener() {
+			public void onEvent(final DelugeEvent event) {
+				received.countDown();
+			}
+		});
+		startAndQueueEvent();
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		assertEquals(1, m_warnings.size());
+		assertTrue(m_warnings.get(0).contains("listener bug"));
+	}
+
+	private void startAndQueueEvent() throws InterruptedException {
+		m_pump.start();
+		// events are only queued for sessions which have registered for them
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (m_fake.getRequestCount("web.get_events") == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		m_fake.queueEvent("TorrentAddedEvent", m_fake.getTorrentIds().get(0), false);
+	}
+}
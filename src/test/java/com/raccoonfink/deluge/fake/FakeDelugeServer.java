@@ -0,0 +1,927 @@
+package com.raccoonfink.deluge.fake;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.http.DelugeTransport;
+import com.raccoonfink.deluge.ingest.InfoHash;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process stand-in for the Deluge web UI's JSON-RPC interface, so
+ * the client can be tested and measured without a real daemon.  It
+ * implements the <code>auth.*</code> and <code>web.*</code> calls the
+ * client makes and the common <code>core.*</code> torrent calls, over a
+ * synthetic torrent population.  Responses can be gzipped, delayed, or
+ * replaced with injected failures.
+ */
+public class FakeDelugeServer implements Closeable {
+	/** The id of the single daemon this server offers. */
+	public static final String HOST_ID = "1cc7ee2e2259ad6c29430b2f5ae75919009ec4da";
+	public static final String VERSION = "1.3.15";
+
+	public static final int AUTHENTICATION_ERROR = 1;
+	public static final int UNKNOWN_METHOD_ERROR = 2;
+	public static final int CALL_ERROR = 3;
+	public static final int INVALID_REQUEST_ERROR = 5;
+
+	private static final String SESSION_COOKIE = "_session_id";
+	private static final int MAX_QUEUED_EVENTS = 10000;
+
+	private static final String[] STATES = { "Seeding", "Downloading", "Paused", "Queued", "Checking", "Error" };
+	private static final String[] TRACKERS = { "tracker.example.org", "announce.example.net", "open.example.com", "" };
+	private static final String[] LABELS = { "", "linux", "music", "video" };
+	private static final String[] WORDS = { "ubuntu", "debian", "fedora", "live", "desktop", "server", "amd64", "i386", "iso", "1080p", "flac", "archive" };
+
+	static {
+		// otherwise Nagle holds back each response body behind its headers
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final String m_password;
+	private HttpServer m_httpServer;
+	private ExecutorService m_executor;
+
+	private final Map<String,Session> m_sessions = new HashMap<String,Session>();
+	private final Map<String,JSONObject> m_torrents = new LinkedHashMap<String,JSONObject>();
+	private boolean m_connected = false;
+	private int m_nextSession = 0;
+
+	private volatile boolean m_gzip = false;
+	private volatile boolean m_batchSupported = false;
+	private volatile long m_latency = 0;
+	private final Map<String,List<JSONObject>> m_injectedErrors = new HashMap<String,List<JSONObject>>();
+	private final List<Integer> m_injectedHttpErrors = new LinkedList<Integer>();
+
+	private final AtomicInteger m_requests = new AtomicInteger();
+	private final AtomicInteger m_logins = new AtomicInteger();
+	private final Set<Object> m_seenIds = new HashSet<Object>();
+	private final AtomicInteger m_duplicateIds = new AtomicInteger();
+	private final Map<String,AtomicInteger> m_methodCounts = new HashMap<String,AtomicInteger>();
+
+	public FakeDelugeServer(final String password) {
+		m_password = password;
+	}
+
+	/**
+	 * Start listening on an ephemeral port on the loopback interface.
+	 */
+	public synchronized FakeDelugeServer start() throws IOException {
+		m_httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		m_executor = Executors.newCachedThreadPool();
+		m_httpServer.setExecutor(m_executor);
+		m_httpServer.createContext("/json", new HttpHandler() {
+			public void handle(final HttpExchange exchange) throws IOException {
+				try {
+					respond(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		m_httpServer.start();
+		return this;
+	}
+
+	public synchronized void close() {
+		if (m_httpServer != null) {
+			m_httpServer.stop(0);
+			m_executor.shutdownNow();
+			m_httpServer = null;
+		}
+	}
+
+	/**
+	 * Get the base URL to hand to {@link com.raccoonfink.deluge.DelugeServer}.
+	 */
+	public synchronized String getURL() {
+		return "http://127.0.0.1:" + m_httpServer.getAddress().getPort() + "/";
+	}
+
+	/**
+	 * Create a client for this server which has logged in and connected to
+	 * its daemon.
+	 */
+	public DelugeServer connectedClient() throws DelugeException, MalformedURLException {
+		return connect(new DelugeServer(getURL(), m_password));
+	}
+
+	public DelugeServer connectedClient(final DelugeTransport transport) throws DelugeException, MalformedURLException {
+		return connect(new DelugeServer(getURL(), m_password, transport));
+	}
+
+	private static DelugeServer connect(final DelugeServer server) throws DelugeException {
+		server.login();
+		server.connect(HOST_ID);
+		return server;
+	}
+
+	/**
+	 * Replace the torrents with <code>count</code> synthetic ones.  The same
+	 * count always gives the same torrents.
+	 */
+	public synchronized void populate(final int count) {
+		m_torrents.clear();
+		final Random random = new Random(count);
+		for (int i=0; i < count; i++) {
+			final String id = String.format("%016x%016x%08x", random.nextLong(), random.nextLong(), random.nextInt());
+			m_torrents.put(id, createTorrent(random, nameFor(random), i));
+		}
+	}
+
+	public void setGzip(final boolean gzip) {
+		m_gzip = gzip;
+	}
+
+	/**
+	 * Whether to accept JSON-RPC batches.  Deluge itself doesn't, so they
+	 * are refused by default.
+	 */
+	public void setBatchSupported(final boolean batchSupported) {
+		m_batchSupported = batchSupported;
+	}
+
+	/**
+	 * Wait this many milliseconds before answering each request.
+	 */
+	public void setLatency(final long latency) {
+		m_latency = latency;
+	}
+
+	/**
+	 * Fail the next <code>times</code> calls to <code>method</code> with the
+	 * given JSON-RPC error.
+	 */
+	public synchronized void injectError(final String method, final int times, final int code, final String message) {
+		List<JSONObject> errors = m_injectedErrors.get(method);
+		if (errors == null) {
+			errors = new LinkedList<JSONObject>();
+			m_injectedErrors.put(method, errors);
+		}
+		for (int i=0; i < times; i++) {
+			errors.add(error(code, message));
+		}
+	}
+
+	/**
+	 * Answer the next <code>times</code> HTTP requests with the given status
+	 * and no body.
+	 */
+	public synchronized void injectHttpError(final int times, final int status) {
+		for (int i=0; i < times; i++) {
+			m_injectedHttpErrors.add(status);
+		}
+	}
+
+	/**
+	 * Forget every web session, as a restart of the web UI would.
+	 */
+	public synchronized void expireSessions() {
+		m_sessions.clear();
+	}
+
+	public synchronized boolean isConnected() {
+		return m_connected;
+	}
+
+	public synchronized List<String> getTorrentIds() {
+		return new ArrayList<String>(m_torrents.keySet());
+	}
+
+	/**
+	 * Change a torrent's state, announcing it to event listeners.
+	 */
+	public synchronized void setTorrentState(final String id, final String state) throws JSONException {
+		final JSONObject torrent = getTorrent(id);
+		if (!state.equals(torrent.optString("state"))) {
+			torrent.put("state", state);
+			queueEvent("TorrentStateChangedEvent", id, state);
+		}
+	}
+
+	/**
+	 * Change any status field of a torrent, without an event.
+	 */
+	public synchronized void setTorrentField(final String id, final String key, final Object value) throws JSONException {
+		getTorrent(id).put(key, value);
+	}
+
+	/**
+	 * Hand an event to every session which registered for it.
+	 */
+	public synchronized void queueEvent(final String name, final Object... args) {
+		final JSONArray event = new JSONArray().put(name).put(new JSONArray(Arrays.asList(args)));
+		for (final Session session : m_sessions.values()) {
+			if (session.m_listeners.contains(name) && session.m_events.size() < MAX_QUEUED_EVENTS) {
+				session.m_events.add(event);
+			}
+		}
+	}
+
+	public int getRequestCount() {
+		return m_requests.get();
+	}
+
+	public synchronized int getRequestCount(final String method) {
+		final AtomicInteger count = m_methodCounts.get(method);
+		return count == null ? 0 : count.get();
+	}
+
+	public int getLoginCount() {
+		return m_logins.get();
+	}
+
+	/**
+	 * Get how many calls reused the id of an earlier call.  Only a single
+	 * client's ids are expected to be unique.
+	 */
+	public int getDuplicateIdCount() {
+		return m_duplicateIds.get();
+	}
+
+	private void respond(final HttpExchange exchange) throws IOException {
+		final byte[] requestBody = readFully(exchange.getRequestBody());
+		m_requests.incrementAndGet();
+
+		if (m_latency > 0) {
+			try {
+				Thread.sleep(m_latency);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+
+		final Integer httpError;
+		synchronized (this) {
+			httpError = m_injectedHttpErrors.isEmpty() ? null : m_injectedHttpErrors.remove(0);
+		}
+		if (httpError != null) {
+			exchange.sendResponseHeaders(httpError, -1);
+			return;
+		}
+
+		final Object response;
+		try {
+			final Object request = new JSONTokener(new String(requestBody, "UTF-8")).nextValue();
+			final Call call = new Call(exchange);
+			if (request instanceof JSONObject) {
+				response = call.invoke((JSONObject) request);
+			} else if (request instanceof JSONArray && m_batchSupported) {
+				final JSONArray requests = (JSONArray) request;
+				final JSONArray responses = new JSONArray();
+				for (int i=0; i < requests.length(); i++) {
+					responses.put(call.invoke(requests.getJSONObject(i)));
+				}
+				response = responses;
+			} else {
+				// as the web UI does, which only takes a single request object
+				response = new JSONObject().put("id", JSONObject.NULL).put("result", JSONObject.NULL).put("error", new JSONObject().put("message", "Invalid JSON request").put("code", INVALID_REQUEST_ERROR));
+			}
+		} catch (final JSONException e) {
+			send(exchange, 400, "Invalid JSON: " + e.getMessage());
+			return;
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		send(exchange, 200, response.toString());
+	}
+
+	private void send(final HttpExchange exchange, final int status, final String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (m_gzip && status == 200 && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+			final ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+			final GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+			gzip.write(bytes);
+			gzip.close();
+			bytes = compressed.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.sendResponseHeaders(status, bytes.length);
+		final OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	/**
+	 * One HTTP request's worth of calls, which share a session.
+	 */
+	private final class Call {
+		private final HttpExchange m_exchange;
+		private Session m_session;
+
+		public Call(final HttpExchange exchange) {
+			m_exchange = exchange;
+			m_session = findSession(exchange);
+		}
+
+		public JSONObject invoke(final JSONObject request) throws JSONException {
+			final Object id = request.opt("id");
+			final String method = request.optString("method");
+			final JSONArray params = request.optJSONArray("params") == null ? new JSONArray() : request.optJSONArray("params");
+			count(method);
+			if (id != null) {
+				synchronized (m_seenIds) {
+					if (!m_seenIds.add(id)) {
+						m_duplicateIds.incrementAndGet();
+					}
+				}
+			}
+
+			final JSONObject response = new JSONObject();
+			response.put("id", id == null ? JSONObject.NULL : id);
+			try {
+				response.put("result", dispatch(method, params));
+				response.put("error", JSONObject.NULL);
+			} catch (final RpcException e) {
+				response.put("result", JSONObject.NULL);
+				response.put("error", e.m_error);
+			}
+			return response;
+		}
+
+		private Object dispatch(final String method, final JSONArray params) throws JSONException, RpcException {
+			synchronized (FakeDelugeServer.this) {
+				final List<JSONObject> errors = m_injectedErrors.get(method);
+				if (errors != null && !errors.isEmpty()) {
+					throw new RpcException(errors.remove(0));
+				}
+
+				if ("auth.login".equals(method)) {
+					return login(params.optString(0, null));
+				} else if ("auth.check_session".equals(method)) {
+					return m_session != null;
+				} else if ("system.listMethods".equals(method)) {
+					return new JSONArray(Arrays.asList(METHODS));
+				}
+
+				if (m_session == null) {
+					throw new RpcException(error(AUTHENTICATION_ERROR, "Not authenticated"));
+				}
+
+				if ("auth.delete_session".equals(method)) {
+					m_sessions.remove(m_session.m_id);
+					m_session = null;
+					return true;
+				} else if ("web.connected".equals(method)) {
+					return m_connected;
+				} else if ("web.get_hosts".equals(method)) {
+					return new JSONArray().put(new JSONArray().put(HOST_ID).put("localhost").put(58846).put(m_connected ? "Connected" : "Online"));
+				} else if ("web.get_host_status".equals(method)) {
+					if (!HOST_ID.equals(params.optString(0))) {
+						throw new RpcException(error(CALL_ERROR, "Unknown host " + params.optString(0)));
+					}
+					return new JSONArray().put(HOST_ID).put("localhost").put(58846).put(m_connected ? "Connected" : "Online").put(VERSION);
+				} else if ("web.connect".equals(method)) {
+					if (!HOST_ID.equals(params.optString(0))) {
+						throw new RpcException(error(CALL_ERROR, "Unknown host " + params.optString(0)));
+					}
+					m_connected = true;
+					return JSONObject.NULL;
+				} else if ("web.disconnect".equals(method)) {
+					m_connected = false;
+					return JSONObject.NULL;
+				} else if ("web.register_event_listener".equals(method)) {
+					m_session.m_listeners.add(params.getString(0));
+					return JSONObject.NULL;
+				} else if ("web.deregister_event_listener".equals(method)) {
+					m_session.m_listeners.remove(params.getString(0));
+					return JSONObject.NULL;
+				} else if ("web.get_events".equals(method)) {
+					if (m_session.m_listeners.isEmpty()) {
+						return JSONObject.NULL;
+					}
+					final JSONArray events = new JSONArray(m_session.m_events);
+					m_session.m_events.clear();
+					return events;
+				} else if ("web.get_torrent_files".equals(method)) {
+					if (!m_connected) {
+						throw new RpcException(error(CALL_ERROR, "Not connected to a daemon"));
+					}
+					return getTorrentFiles(params.optString(0));
+				} else if ("web.get_torrent_status".equals(method)) {
+					if (!m_connected) {
+						throw new RpcException(error(CALL_ERROR, "Not connected to a daemon"));
+					}
+					return getTorrentStatus(params.optString(0), params.optJSONArray(1));
+				} else if ("web.update_ui".equals(method)) {
+					return updateUI(params.optJSONArray(0), params.optJSONObject(1));
+				} else if (method.startsWith("core.")) {
+					if (!m_connected) {
+						throw new RpcException(error(CALL_ERROR, "Not connected to a daemon"));
+					}
+					return core(method, params);
+				}
+				throw new RpcException(error(UNKNOWN_METHOD_ERROR, "Unknown method"));
+			}
+		}
+
+		private boolean login(final String password) {
+			if (m_password == null ? password != null : !m_password.equals(password)) {
+				return false;
+			}
+			m_logins.incrementAndGet();
+			final Session session = new Session("session" + (++m_nextSession));
+			m_sessions.put(session.m_id, session);
+			m_session = session;
+			m_exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=" + session.m_id + "; Path=/json");
+			return true;
+		}
+	}
+
+	private static final String[] METHODS = {
+		"auth.check_session", "auth.delete_session", "auth.login",
+		"core.add_torrent_file", "core.add_torrent_magnet", "core.force_recheck", "core.get_free_space",
+		"core.get_session_state", "core.get_torrent_status", "core.get_torrents_status", "core.move_storage",
+		"core.pause_torrent", "core.queue_bottom", "core.queue_down", "core.queue_top", "core.queue_up",
+		"core.remove_torrent", "core.resume_torrent", "core.set_torrent_options",
+		"system.listMethods",
+		"web.connect", "web.connected", "web.deregister_event_listener", "web.disconnect", "web.get_events",
+		"web.get_host_status", "web.get_hosts", "web.get_torrent_files", "web.get_torrent_status",
+		"web.register_event_listener", "web.update_ui"
+	};
+
+	private JSONObject updateUI(final JSONArray keys, final JSONObject filter) throws JSONException {
+		final JSONObject torrents = new JSONObject();
+		if (m_connected) {
+			for (final Map.Entry<String,JSONObject> entry : m_torrents.entrySet()) {
+				if (matches(entry.getKey(), entry.getValue(), filter)) {
+					torrents.put(entry.getKey(), project(entry.getValue(), keys));
+				}
+			}
+		}
+		final JSONObject result = new JSONObject();
+		result.put("connected", m_connected);
+		result.put("torrents", torrents);
+		result.put("stats", getStats());
+		result.put("filters", new JSONObject().put("state", new JSONArray().put(new JSONArray().put("All").put(m_torrents.size()))));
+		return result;
+	}
+
+	private JSONObject getTorrentStatus(final String id, final JSONArray keys) throws JSONException {
+		final JSONObject torrent = m_torrents.get(id);
+		if (torrent == null) {
+			return new JSONObject();
+		}
+		final JSONObject ret = project(torrent, keys);
+		for (int i=0; keys != null && i < keys.length(); i++) {
+			if ("peers".equals(keys.getString(i))) {
+				ret.put("peers", getPeers(id, torrent));
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * A made-up layout of a video, a sample and an info file, in the tree
+	 * form the web UI uses.
+	 */
+	private JSONObject getTorrentFiles(final String id) throws JSONException {
+		final JSONObject root = new JSONObject().put("type", "dir").put("contents", new JSONObject());
+		final JSONObject torrent = m_torrents.get(id);
+		if (torrent == null) {
+			return root;
+		}
+		final String name = torrent.getString("name");
+		final long size = torrent.getLong("total_size");
+		final double progress = torrent.getDouble("progress");
+		final long[] sizes = { size - size / 20 - 1024, size / 20, 1024 };
+		final String[] paths = { name + "/" + name + ".mkv", name + "/sample/sample.mkv", name + "/" + name + ".nfo" };
+
+		final JSONObject top = new JSONObject().put("type", "dir").put("contents", new JSONObject());
+		final JSONObject sample = new JSONObject().put("type", "dir").put("contents", new JSONObject());
+		top.getJSONObject("contents").put("sample", sample);
+		root.getJSONObject("contents").put(name, top);
+		long offset = 0;
+		for (int i=0; i < paths.length; i++) {
+			final JSONObject file = new JSONObject()
+				.put("type", "file")
+				.put("index", i)
+				.put("path", paths[i])
+				.put("size", sizes[i])
+				.put("offset", offset)
+				.put("progress", progress)
+				.put("priority", 1);
+			(i == 1 ? sample : top).getJSONObject("contents").put(paths[i].substring(paths[i].lastIndexOf('/') + 1), file);
+			offset += sizes[i];
+		}
+		return root;
+	}
+
+	private static JSONArray getPeers(final String id, final JSONObject torrent) throws JSONException {
+		final JSONArray peers = new JSONArray();
+		final boolean active = "Seeding".equals(torrent.optString("state")) || "Downloading".equals(torrent.optString("state"));
+		final Random random = new Random(id.hashCode());
+		for (int i=0; active && i < Math.min(5, torrent.optInt("num_peers")); i++) {
+			peers.put(new JSONObject()
+				.put("ip", "10.0.0." + (i + 1) + ":" + (6881 + random.nextInt(1000)))
+				.put("client", "libtorrent 1.0." + random.nextInt(10))
+				.put("country", "US")
+				.put("down_speed", random.nextInt(100000))
+				.put("up_speed", random.nextInt(100000))
+				.put("progress", random.nextDouble())
+				// libtorrent's flag for a seed
+				.put("seed", random.nextBoolean() ? 1024 : 0));
+		}
+		return peers;
+	}
+
+	private Object core(final String method, final JSONArray params) throws JSONException, RpcException {
+		if ("core.get_session_state".equals(method)) {
+			return new JSONArray(m_torrents.keySet());
+		} else if ("core.get_free_space".equals(method)) {
+			return getStats().getLong("free_space");
+		} else if ("core.get_torrent_status".equals(method)) {
+			return getTorrentStatus(params.optString(0), params.optJSONArray(1));
+		} else if ("core.get_torrents_status".equals(method)) {
+			final JSONObject result = new JSONObject();
+			for (final Map.Entry<String,JSONObject> entry : m_torrents.entrySet()) {
+				if (matches(entry.getKey(), entry.getValue(), params.optJSONObject(0))) {
+					result.put(entry.getKey(), project(entry.getValue(), params.optJSONArray(1)));
+				}
+			}
+			return result;
+		} else if ("core.pause_torrent".equals(method)) {
+			for (final String id : getIds(params.opt(0))) {
+				setTorrentState(id, "Paused");
+			}
+			return JSONObject.NULL;
+		} else if ("core.resume_torrent".equals(method)) {
+			for (final String id : getIds(params.opt(0))) {
+				final JSONObject torrent = getTorrent(id);
+				if ("Paused".equals(torrent.optString("state"))) {
+					setTorrentState(id, torrent.optDouble("progress") >= 100.0 ? "Seeding" : "Downloading");
+					queueEvent("TorrentResumedEvent", id);
+				}
+			}
+			return JSONObject.NULL;
+		} else if ("core.force_recheck".equals(method)) {
+			for (final String id : getIds(params.opt(0))) {
+				setTorrentState(id, "Checking");
+			}
+			return JSONObject.NULL;
+		} else if ("core.remove_torrent".equals(method)) {
+			final String id = params.getString(0);
+			if (!m_torrents.containsKey(id)) {
+				throw new RpcException(error(CALL_ERROR, "InvalidTorrentError: torrent_id not in session"));
+			}
+			queueEvent("PreTorrentRemovedEvent", id);
+			m_torrents.remove(id);
+			queueEvent("TorrentRemovedEvent", id);
+			return true;
+		} else if ("core.add_torrent_magnet".equals(method)) {
+			final String uri = params.getString(0);
+			final int btih = uri.toLowerCase(Locale.ENGLISH).indexOf("xt=urn:btih:");
+			if (btih < 0) {
+				throw new RpcException(error(CALL_ERROR, "Invalid magnet URI"));
+			}
+			final int end = uri.indexOf('&', btih);
+			final String id = uri.substring(btih + 12, end < 0 ? uri.length() : end).toLowerCase(Locale.ENGLISH);
+			return addTorrent(id, "magnet-" + id.substring(0, Math.min(8, id.length())), params.optJSONObject(1));
+		} else if ("core.add_torrent_file".equals(method)) {
+			final String id;
+			try {
+				id = InfoHash.fromTorrent(new ByteArrayInputStream(decodeBase64(params.getString(1))));
+			} catch (final IOException e) {
+				throw new RpcException(error(CALL_ERROR, "Unable to add torrent, decoding filedump failed: " + e.getMessage()));
+			}
+			return addTorrent(id, params.getString(0).replaceAll("\\.torrent$", ""), params.optJSONObject(2));
+		} else if ("core.set_torrent_options".equals(method)) {
+			final JSONObject options = params.getJSONObject(1);
+			for (final String id : getIds(params.opt(0))) {
+				final JSONObject torrent = getTorrent(id);
+				for (final Iterator<?> keys = options.keys(); keys.hasNext(); ) {
+					final String key = (String) keys.next();
+					torrent.put(key, options.get(key));
+				}
+			}
+			return JSONObject.NULL;
+		} else if ("core.move_storage".equals(method)) {
+			for (final String id : getIds(params.opt(0))) {
+				getTorrent(id).put("save_path", params.getString(1));
+			}
+			return JSONObject.NULL;
+		} else if (method.startsWith("core.queue_")) {
+			return queue(method.substring("core.queue_".length()), getIds(params.opt(0)));
+		}
+		throw new RpcException(error(UNKNOWN_METHOD_ERROR, "Unknown method"));
+	}
+
+	private Object addTorrent(final String id, final String name, final JSONObject options) throws JSONException, RpcException {
+		if (m_torrents.containsKey(id)) {
+			throw new RpcException(error(CALL_ERROR, "AddTorrentError: Torrent already in session (" + id + ")."));
+		}
+		final JSONObject torrent = createTorrent(new Random(id.hashCode()), name, m_torrents.size());
+		torrent.put("progress", 0.0).put("total_done", 0).put("state", "Downloading");
+		if (options != null && options.optBoolean("add_paused")) {
+			torrent.put("state", "Paused");
+		}
+		if (options != null && options.has("download_location")) {
+			torrent.put("save_path", options.getString("download_location"));
+		}
+		m_torrents.put(id, torrent);
+		queueEvent("TorrentAddedEvent", id, false);
+		return id;
+	}
+
+	private Object queue(final String direction, final List<String> ids) throws JSONException, RpcException {
+		final List<String> order = new ArrayList<String>(m_torrents.keySet());
+		Collections.sort(order, new java.util.Comparator<String>() {
+			public int compare(final String a, final String b) {
+				return m_torrents.get(a).optInt("queue") - m_torrents.get(b).optInt("queue");
+			}
+		});
+		for (final String id : ids) {
+			getTorrent(id);
+			final int index = order.indexOf(id);
+			order.remove(index);
+			if ("top".equals(direction)) {
+				order.add(0, id);
+			} else if ("bottom".equals(direction)) {
+				order.add(id);
+			} else if ("up".equals(direction)) {
+				order.add(Math.max(0, index - 1), id);
+			} else if ("down".equals(direction)) {
+				order.add(Math.min(order.size(), index + 1), id);
+			} else {
+				throw new RpcException(error(UNKNOWN_METHOD_ERROR, "Unknown method"));
+			}
+		}
+		for (int i=0; i < order.size(); i++) {
+			m_torrents.get(order.get(i)).put("queue", i);
+		}
+		queueEvent("TorrentQueueChangedEvent");
+		return JSONObject.NULL;
+	}
+
+	private JSONObject getTorrent(final String id) throws JSONException {
+		final JSONObject torrent = m_torrents.get(id);
+		if (torrent == null) {
+			throw new RpcException(error(CALL_ERROR, "InvalidTorrentError: torrent_id " + id + " not in session"));
+		}
+		return torrent;
+	}
+
+	private static List<String> getIds(final Object ids) {
+		final List<String> ret = new ArrayList<String>();
+		if (ids instanceof JSONArray) {
+			final JSONArray array = (JSONArray) ids;
+			for (int i=0; i < array.length(); i++) {
+				ret.add(array.optString(i));
+			}
+		} else if (ids != null && ids != JSONObject.NULL) {
+			ret.add(ids.toString());
+		}
+		return ret;
+	}
+
+	private static boolean matches(final String id, final JSONObject torrent, final JSONObject filter) {
+		if (filter == null) {
+			return true;
+		}
+		final Set<String> states = values(filter, "state");
+		if (!states.isEmpty()) {
+			final boolean active = torrent.optLong("download_payload_rate") > 0 || torrent.optLong("upload_payload_rate") > 0;
+			if (!states.contains(torrent.optString("state")) && !(states.contains("Active") && active)) {
+				return false;
+			}
+		}
+		return matches(filter, "tracker_host", torrent.optString("tracker_host"))
+			&& matches(filter, "label", torrent.optString("label"))
+			&& matches(filter, "owner", torrent.optString("owner"))
+			&& matches(filter, "id", id);
+	}
+
+	private static boolean matches(final JSONObject filter, final String key, final String value) {
+		if (!filter.has(key)) {
+			return true;
+		}
+		return values(filter, key).contains(value);
+	}
+
+	/**
+	 * Filter values may be a single string or a list.
+	 */
+	private static Set<String> values(final JSONObject filter, final String key) {
+		final Set<String> values = new HashSet<String>();
+		final Object value = filter.opt(key);
+		if (value instanceof JSONArray) {
+			final JSONArray array = (JSONArray) value;
+			for (int i=0; i < array.length(); i++) {
+				values.add(array.optString(i));
+			}
+		} else if (value != null && value != JSONObject.NULL) {
+			values.add(value.toString());
+		}
+		return values;
+	}
+
+	private static JSONObject project(final JSONObject torrent, final JSONArray keys) throws JSONException {
+		if (keys == null || keys.length() == 0) {
+			return new JSONObject(torrent, JSONObject.getNames(torrent));
+		}
+		final JSONObject ret = new JSONObject();
+		for (int i=0; i < keys.length(); i++) {
+			final String key = keys.getString(i);
+			if (torrent.has(key)) {
+				ret.put(key, torrent.get(key));
+			}
+		}
+		return ret;
+	}
+
+	private JSONObject getStats() throws JSONException {
+		long download = 0;
+		long upload = 0;
+		for (final JSONObject torrent : m_torrents.values()) {
+			download += torrent.optLong("download_payload_rate");
+			upload += torrent.optLong("upload_payload_rate");
+		}
+		return new JSONObject()
+			.put("dht_nodes", 312)
+			.put("download_protocol_rate", download / 20)
+			.put("download_rate", download)
+			.put("free_space", 1837210095616L)
+			.put("has_incoming_connections", true)
+			.put("max_download", -1.0)
+			.put("max_num_connections", 200)
+			.put("max_upload", -1.0)
+			.put("num_connections", Math.min(200, m_torrents.size() * 3))
+			.put("upload_protocol_rate", upload / 20)
+			.put("upload_rate", upload);
+	}
+
+	private static JSONObject createTorrent(final Random random, final String name, final int queue) {
+		final long size = 1000000L + (long) (random.nextDouble() * 8000000000L);
+		final String state = STATES[random.nextInt(STATES.length)];
+		final double progress = "Seeding".equals(state) ? 100.0 : random.nextDouble() * 100;
+		final boolean moving = "Seeding".equals(state) || "Downloading".equals(state);
+		try {
+			return new JSONObject()
+				.put("distributed_copies", random.nextDouble() * 20)
+				.put("download_payload_rate", moving && progress < 100 ? random.nextInt(100000) : 0)
+				.put("eta", random.nextInt(86400))
+				.put("is_auto_managed", random.nextBoolean())
+				.put("label", LABELS[random.nextInt(LABELS.length)])
+				.put("max_download_speed", -1)
+				.put("max_upload_speed", -1)
+				.put("name", name)
+				.put("num_peers", random.nextInt(50))
+				.put("num_seeds", random.nextInt(50))
+				.put("owner", "localclient")
+				.put("progress", progress)
+				.put("queue", queue)
+				.put("ratio", random.nextDouble() * 5)
+				.put("save_path", "/srv/downloads/" + WORDS[random.nextInt(WORDS.length)])
+				.put("seeds_peers_ratio", random.nextDouble() * 10)
+				.put("state", state)
+				.put("time_added", 1400000000 + random.nextInt(100000000) + random.nextInt(1000) / 1000.0)
+				.put("total_done", (long) (size * progress / 100))
+				.put("total_peers", random.nextInt(500))
+				.put("total_seeds", random.nextInt(5000))
+				.put("total_size", size)
+				.put("total_uploaded", (long) (size * random.nextDouble() * 5))
+				.put("tracker_host", TRACKERS[random.nextInt(TRACKERS.length)])
+				.put("upload_payload_rate", moving ? random.nextInt(100000) : 0);
+		} catch (final JSONException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String nameFor(final Random random) {
+		final StringBuilder sb = new StringBuilder();
+		final int words = 2 + random.nextInt(5);
+		for (int i=0; i < words; i++) {
+			if (i > 0) {
+				sb.append(random.nextBoolean() ? '.' : '-');
+			}
+			sb.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return sb.append('-').append(random.nextInt(10000)).toString();
+	}
+
+	private static byte[] decodeBase64(final String data) throws IOException {
+		final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length() * 3 / 4);
+		int buffer = 0;
+		int bits = 0;
+		for (int i=0; i < data.length(); i++) {
+			final char c = data.charAt(i);
+			if (c == '=') {
+				break;
+			}
+			final int digit = alphabet.indexOf(c);
+			if (digit < 0) {
+				throw new IOException("Invalid base64 character '" + c + "'");
+			}
+			buffer = (buffer << 6) | digit;
+			bits += 6;
+			if (bits >= 8) {
+				bits -= 8;
+				bytes.write(buffer >> bits);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static JSONObject error(final int code, final String message) {
+		try {
+			return new JSONObject().put("message", message).put("code", code);
+		} catch (final JSONException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private Session findSession(final HttpExchange exchange) {
+		final List<String> cookies = exchange.getRequestHeaders().get("Cookie");
+		if (cookies == null) {
+			return null;
+		}
+		synchronized (this) {
+			for (final String header : cookies) {
+				for (final String cookie : header.split(";")) {
+					final String[] pair = cookie.trim().split("=", 2);
+					if (pair.length == 2 && SESSION_COOKIE.equals(pair[0])) {
+						final Session session = m_sessions.get(pair[1]);
+						if (session != null) {
+							return session;
+						}
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private synchronized void count(final String method) {
+		AtomicInteger count = m_methodCounts.get(method);
+		if (count == null) {
+			count = new AtomicInteger();
+			m_methodCounts.put(method, count);
+		}
+		count.incrementAndGet();
+	}
+
+	private static byte[] readFully(final InputStream in) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, count);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static final class Session {
+		private final String m_id;
+		private final Set<String> m_listeners = new HashSet<String>();
+		private final List<JSONArray> m_events = new ArrayList<JSONArray>();
+
+		public Session(final String id) {
+			m_id = id;
+		}
+	}
+
+	private static final class RpcException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private final JSONObject m_error;
+
+		public RpcException(final JSONObject error) {
+			super(error.optString("message"));
+			m_error = error;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package com.raccoonfink.deluge.fake;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.raccoonfink.deluge.DelugeEvent;
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.DelugeRequest;
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.Torrent;
+import com.raccoonfink.deluge.TorrentFilter;
+import com.raccoonfink.deluge.TorrentSet;
+import com.raccoonfink.deluge.events.TorrentStateChangedEvent;
+import com.raccoonfink.deluge.http.ConnectionPool;
+import com.raccoonfink.deluge.http.DelugeTransport;
+import com.raccoonfink.deluge.http.HttpResponse;
+import com.raccoonfink.deluge.http.PooledHttpClient;
+import com.raccoonfink.deluge.metrics.DelugeMetrics;
+import com.raccoonfink.deluge.metrics.MethodMetrics;
+import com.raccoonfink.deluge.metrics.MethodMetricsSnapshot;
+import com.raccoonfink.deluge.responses.BatchResponse;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+public class FakeDelugeServerTest {
+	private FakeDelugeServer m_fake;
+	private DelugeServer m_server;
+
+	@Before
+	public void setUp() throws Exception {
+		m_fake = new FakeDelugeServer("deluge").start();
+		m_fake.populate(200);
+		m_server = m_fake.connectedClient();
+	}
+
+	@After
+	public void tearDown() {
+		m_server.close();
+		m_fake.close();
+	}
+
+	@Test
+	public void testUpdateUI() throws Exception {
+		final UIResponse response = m_server.updateUI();
+		assertTrue(response.isConnected());
+		assertEquals(200, response.getTorrents().size());
+		assertEquals(m_fake.getTorrentIds().get(0), response.getTorrents().sortedBy(TorrentSet.Order.Queue).get(0).getKey());
+	}
+
+	@Test
+	public void testSelectedFields() throws Exception {
+		final UIResponse response = m_server.updateUI(EnumSet.of(Torrent.Field.Name, Torrent.Field.State));
+		assertEquals(200, response.getTorrents().size());
+		final Torrent torrent = response.getTorrents().iterator().next();
+		assertEquals(EnumSet.of(Torrent.Field.Name, Torrent.Field.State), torrent.getLoadedFields());
+		assertTrue(torrent.getName().length() > 0);
+		try {
+			torrent.getRatio();
+			fail("expected the ratio to be missing");
+		} catch (final IllegalStateException e) {
+		}
+	}
+
+	@Test
+	public void testFilter() throws Exception {
+		final TorrentFilter filter = new TorrentFilter();
+		filter.setStates(Torrent.State.Paused);
+		for (final Torrent torrent : m_server.updateUI(filter).getTorrents()) {
+			assertEquals(Torrent.State.Paused, torrent.getState());
+		}
+
+		final List<String> ids = m_fake.getTorrentIds().subList(0, 3);
+		filter.setStates();
+		filter.setIds(ids);
+		assertEquals(3, m_server.updateUI(filter).getTorrents().size());
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		m_fake.setGzip(true);
+		assertEquals(200, m_server.updateUI().getTorrents().size());
+		final MethodMetricsSnapshot metrics = m_server.getMetrics().getSnapshot().get("web.update_ui");
+		assertTrue(metrics.getResponseWireBytes() * 3 < metrics.getResponseBytes());
+	}
+
+	@Test
+	public void testInjectedErrors() throws Exception {
+		m_fake.injectError("web.get_events", 1, FakeDelugeServer.CALL_ERROR, "Boom");
+		try {
+			m_server.getEvents();
+			fail("expected the injected error");
+		} catch (final DelugeException e) {
+			assertEquals(FakeDelugeServer.CALL_ERROR, e.getCode());
+		}
+		m_server.getEvents();
+
+		m_fake.injectHttpError(1, 503);
+		try {
+			m_server.updateUI();
+			fail("expected the injected HTTP error");
+		} catch (final DelugeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("503"));
+		}
+		m_server.updateUI();
+
+		m_fake.injectHttpError(1, 307);
+		try {
+			m_server.updateUI();
+			fail("expected the redirect to be refused");
+		} catch (final DelugeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("redirected"));
+		}
+	}
+
+	@Test
+	public void testHttpErrorDoesNotDisableBatching() throws Exception {
+		m_fake.setBatchSupported(true);
+		final List<DelugeRequest> requests = Arrays.asList(new DelugeRequest("web.get_events"), new DelugeRequest("web.connected"));
+		m_fake.injectHttpError(1, 503);
+		try {
+			m_server.makeBatchRequest(requests);
+			fail("expected the injected HTTP error");
+		} catch (final DelugeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("503"));
+		}
+
+		final int before = m_fake.getRequestCount();
+		final BatchResponse response = m_server.makeBatchRequest(requests);
+		assertTrue(response.isSuccess(0));
+		assertTrue(response.isSuccess(1));
+		// still sent as one batch
+		assertEquals(before + 1, m_fake.getRequestCount());
+	}
+
+	@Test
+	public void testUnsupportedBatchFallsBackToPipelining() throws Exception {
+		final List<DelugeRequest> requests = Arrays.asList(new DelugeRequest("web.get_events"), new DelugeRequest("web.connected"));
+		int before = m_fake.getRequestCount();
+		BatchResponse response = m_server.makeBatchRequest(requests);
+		assertTrue(response.isSuccess(0));
+		assertTrue(response.isSuccess(1));
+		assertEquals(before + 3, m_fake.getRequestCount());
+
+		before = m_fake.getRequestCount();
+		response = m_server.makeBatchRequest(requests);
+		assertTrue(response.isSuccess(1));
+		assertEquals(before + 2, m_fake.getRequestCount());
+
+		// one connect and first byte time per batch, however it was sent
+		final MethodMetricsSnapshot metrics = m_server.getMetrics().getSnapshot().get(DelugeMetrics.BATCH);
+		assertEquals(2, metrics.getRequestCount());
+		assertEquals(2, metrics.getHistogram(MethodMetrics.Phase.Connect).getCount());
+		assertEquals(2, metrics.getHistogram(MethodMetrics.Phase.First_Byte).getCount());
+	}
+
+	@Test(timeout=10000)
+	public void testPipelineWithoutProgressFails() throws Exception {
+		final PooledHttpClient client = new PooledHttpClient(new ConnectionPool());
+		final DelugeServer server = m_fake.connectedClient(new DelugeTransport() {
+			public HttpResponse post(final URL url, final Map<String,String> headers, final byte[] body, final int timeout) throws IOException {
+				return client.post(url, headers, body, timeout);
+			}
+
+			public List<HttpResponse> postAll(final URL url, final Map<String,String> headers, final List<byte[]> bodies, final int timeout) {
+				return Collections.emptyList();
+			}
+
+			public void close() {
+				client.close();
+			}
+		});
+		try {
+			server.makeBatchRequest(Arrays.asList(new DelugeRequest("web.get_events"), new DelugeRequest("web.connected")));
+			fail("expected the pipeline to give up");
+		} catch (final DelugeException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("No responses"));
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void testExpiredSessionLogsInAgain() throws Exception {
+		m_fake.expireSessions();
+		m_server.updateUI();
+		assertEquals(2, m_fake.getLoginCount());
+	}
+
+	@Test
+	public void testEvents() throws Exception {
+		final String id = m_fake.getTorrentIds().get(0);
+		m_fake.setTorrentState(id, "Downloading");
+		m_server.registerEventListeners();
+		m_server.makeRequest(new DelugeRequest("core.pause_torrent", new JSONArray(Arrays.asList(id))));
+		m_server.makeRequest(new DelugeRequest("core.resume_torrent", new JSONArray(Arrays.asList(id))));
+
+		final List<DelugeEvent> events = m_server.getEvents().getEvents();
+		assertFalse(events.isEmpty());
+		boolean paused = false;
+		for (final DelugeEvent event : events) {
+			if (event instanceof TorrentStateChangedEvent && ((TorrentStateChangedEvent) event).getState() == Torrent.State.Paused) {
+				assertEquals(id, ((TorrentStateChangedEvent) event).getTorrentId());
+				paused = true;
+			}
+		}
+		assertTrue(paused);
+		assertTrue(m_server.getEvents().getEvents().isEmpty());
+	}
+}
@@ -0,0 +1,145 @@
+package com.raccoonfink.deluge.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionPoolTest {
+	private ServerSocket m_serverSocket;
+	private final List<Socket> m_accepted = new ArrayList<Socket>();
+	private HttpRoute m_route;
+	private ConnectionPool m_pool;
+
+	@Before
+	public void setUp() throws IOException {
+		m_serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		final Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = m_serverSocket.accept();
+						synchronized (m_accepted) {
+							m_accepted.add(socket);
+						}
+					}
+				} catch (final IOException e) {
+					// closed by tearDown
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		m_route = new HttpRoute("http", "127.0.0.1", m_serverSocket.getLocalPort());
+		m_pool = new ConnectionPool();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		m_pool.close();
+		m_serverSocket.close();
+		synchronized (m_accepted) {
+			for (final Socket socket : m_accepted) {
+				socket.close();
+			}
+		}
+	}
+
+	@Test
+	public void testIdleConnectionIsReused() throws Exception {
+		final HttpConnection first = m_pool.acquire(m_route, null, 1000);
+		m_pool.release(first, true);
+		assertEquals(1, m_pool.getIdleConnectionCount());
+
+		final HttpConnection second = m_pool.acquire(m_route, null, 1000);
+		assertSame(first, second);
+		assertEquals(1, m_pool.getHitCount());
+		assertEquals(1, m_pool.getLeasedConnectionCount());
+		m_pool.release(second, false);
+		assertEquals(0, m_pool.getLeasedConnectionCount());
+	}
+
+	@Test
+	public void testEmptyRoutesAreForgotten() throws Exception {
+		m_pool.release(m_pool.acquire(m_route, null, 1000), false);
+		assertEquals(0, m_pool.getRouteCount());
+
+		m_pool.release(m_pool.acquire(m_route, null, 1000), true);
+		assertEquals(1, m_pool.getRouteCount());
+		m_pool.setIdleTimeout(0);
+		Thread.sleep(10);
+		assertEquals(1, m_pool.evictIdleConnections());
+		assertEquals(0, m_pool.getRouteCount());
+	}
+
+	@Test
+	public void testAcquireFailsAfterClose() throws Exception {
+		final HttpConnection leased = m_pool.acquire(m_route, null, 1000);
+		m_pool.close();
+		try {
+			m_pool.acquire(m_route, null, 1000);
+			fail("expected the closed pool to refuse");
+		} catch (final IOException e) {
+		}
+		// a connection leased before the close is closed on release
+		m_pool.release(leased, true);
+		assertFalse(leased.isOpen());
+		assertEquals(0, m_pool.getIdleConnectionCount());
+		assertEquals(0, m_pool.getRouteCount());
+	}
+
+	@Test
+	public void testStalledHandshakeTimesOut() throws Exception {
+		// the server accepts the connection but never answers the hello
+		final HttpRoute route = new HttpRoute("https", "127.0.0.1", m_serverSocket.getLocalPort());
+		final long start = System.currentTimeMillis();
+		try {
+			m_pool.acquire(route, null, 300);
+			fail("expected the handshake to time out");
+		} catch (final SocketTimeoutException e) {
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(0, m_pool.getLeasedConnectionCount());
+	}
+
+	@Test
+	public void testConnectionsAreNotSharedAcrossTlsSettings() throws Exception {
+		final SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+		final HostnameVerifier verifier = new HostnameVerifier() {
+			public boolean verify(final String hostname, final SSLSession session) {
+				return true;
+			}
+		};
+
+		final HttpConnection untrusted = m_pool.acquire(m_route, null, 1000);
+		m_pool.release(untrusted, true);
+
+		final HttpConnection other = m_pool.acquire(m_route, factory, verifier, 1000);
+		assertNotSame(untrusted, other);
+		m_pool.release(other, true);
+		assertEquals(2, m_pool.getIdleConnectionCount());
+
+		assertSame(other, m_pool.acquire(m_route, factory, verifier, 1000));
+		assertSame(untrusted, m_pool.acquire(m_route, null, 1000));
+		assertEquals(2, m_pool.getMissCount());
+		assertEquals(2, m_pool.getHitCount());
+	}
+}
@@ -0,0 +1,82 @@
+package com.raccoonfink.deluge.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+public class InflatingInputStreamTest {
+	private static final byte[] DATA = createData();
+
+	@Test
+	public void testGzip() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final GZIPOutputStream out = new GZIPOutputStream(bytes);
+		out.write(DATA);
+		out.close();
+
+		// more than once, so pooled inflaters get reused
+		for (int i=0; i < 3; i++) {
+			assertArrayEquals(DATA, readAll(InflatingInputStream.gzip(new ByteArrayInputStream(bytes.toByteArray()))));
+		}
+	}
+
+	@Test
+	public void testCorruptGzip() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final GZIPOutputStream out = new GZIPOutputStream(bytes);
+		out.write(DATA);
+		out.close();
+		final byte[] corrupt = bytes.toByteArray();
+		corrupt[corrupt.length - 6]++;
+
+		try {
+			readAll(InflatingInputStream.gzip(new ByteArrayInputStream(corrupt)));
+			fail("A bad CRC should be detected");
+		} catch (final ZipException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testZlibAndRawDeflate() throws IOException {
+		for (final boolean raw : new boolean[] { false, true }) {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DeflaterOutputStream out = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+			out.write(DATA);
+			out.close();
+			assertArrayEquals(DATA, readAll(InflatingInputStream.deflate(new ByteArrayInputStream(bytes.toByteArray()))));
+		}
+	}
+
+	private static byte[] readAll(final InputStream in) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1000];
+		try {
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, count);
+			}
+		} finally {
+			in.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] createData() {
+		final StringBuilder builder = new StringBuilder();
+		for (int i=0; i < 5000; i++) {
+			builder.append("{\"torrent\":").append(i).append(",\"progress\":").append(i % 100).append("}");
+		}
+		return builder.toString().getBytes();
+	}
+}
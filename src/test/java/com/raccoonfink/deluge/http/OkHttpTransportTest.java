@@ -0,0 +1,82 @@
+package com.raccoonfink.deluge.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.raccoonfink.deluge.fake.FakeDelugeServer;
+
+public class OkHttpTransportTest {
+	private static final Map<String,String> HEADERS = Collections.singletonMap("Content-Type", "application/json");
+	private static final byte[] BODY = "{\"method\":\"auth.check_session\",\"params\":[],\"id\":1}".getBytes();
+
+	private FakeDelugeServer m_fake;
+	private URL m_url;
+	private OkHttpClient m_client;
+
+	@Before
+	public void setUp() throws Exception {
+		m_fake = new FakeDelugeServer("deluge").start();
+		m_url = new URL(m_fake.getURL() + "json");
+		final Dispatcher dispatcher = new Dispatcher();
+		dispatcher.setMaxRequestsPerHost(1);
+		m_client = new OkHttpClient.Builder().dispatcher(dispatcher).build();
+	}
+
+	@After
+	public void tearDown() {
+		m_client.connectionPool().evictAll();
+		m_client.dispatcher().executorService().shutdown();
+		m_fake.close();
+	}
+
+	@Test
+	public void testPostAllIsBoundedByTheTimeout() throws Exception {
+		final OkHttpTransport transport = new OkHttpTransport(m_client);
+		// each answer comes within the timeout, but not all three together
+		m_fake.setLatency(200);
+		final long start = System.currentTimeMillis();
+		try {
+			transport.postAll(m_url, HEADERS, Arrays.asList(BODY, BODY, BODY), 300);
+			fail("expected a timeout");
+		} catch (final SocketTimeoutException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("of 3 responses"));
+		}
+		assertTrue(System.currentTimeMillis() - start < 550);
+
+		// the calls still outstanding were cancelled rather than sent
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (m_client.dispatcher().runningCallsCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, m_client.dispatcher().queuedCallsCount());
+		assertTrue(m_fake.getRequestCount() < 3);
+	}
+
+	@Test
+	public void testCloseLeavesCallerClientAlone() throws Exception {
+		final OkHttpTransport transport = new OkHttpTransport(m_client);
+		final List<HttpResponse> responses = transport.postAll(m_url, HEADERS, Arrays.asList(BODY, BODY), 5000);
+		assertEquals(2, responses.size());
+		assertEquals(200, responses.get(0).getResponseCode());
+		assertEquals(1, m_client.connectionPool().idleConnectionCount());
+
+		transport.close();
+		assertEquals(1, m_client.connectionPool().idleConnectionCount());
+		assertTrue(!m_client.dispatcher().executorService().isShutdown());
+	}
+}
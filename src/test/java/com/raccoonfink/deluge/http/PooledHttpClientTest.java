@@ -0,0 +1,191 @@
+package com.raccoonfink.deluge.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Runs the client against a scripted server which answers, hangs up on or
+ * ignores each request in turn.
+ */
+public class PooledHttpClientTest {
+	private static final Map<String,String> HEADERS = Collections.singletonMap("Content-Type", "application/json");
+	private static final byte[] BODY = "{}".getBytes();
+
+	private static enum Action {
+		Respond,
+		Close,
+		Hang
+	}
+
+	private ServerSocket m_serverSocket;
+	private List<Action> m_script;
+	private final AtomicInteger m_requests = new AtomicInteger();
+	private final AtomicInteger m_connections = new AtomicInteger();
+	private PooledHttpClient m_client;
+
+	@After
+	public void tearDown() throws IOException {
+		if (m_client != null) {
+			m_client.close();
+		}
+		if (m_serverSocket != null) {
+			m_serverSocket.close();
+		}
+	}
+
+	@Test
+	public void testReusedConnectionClosedBeforeResponseIsRetried() throws Exception {
+		final URL url = start(Action.Respond, Action.Close, Action.Respond);
+		assertEquals(200, post(url, 5000));
+		assertEquals(200, post(url, 5000));
+		assertEquals(3, m_requests.get());
+		assertEquals(2, m_connections.get());
+	}
+
+	@Test
+	public void testTimeoutIsNotRetried() throws Exception {
+		final URL url = start(Action.Respond, Action.Hang, Action.Respond);
+		assertEquals(200, post(url, 5000));
+		try {
+			post(url, 300);
+			fail("expected a timeout");
+		} catch (final SocketTimeoutException e) {
+			// the server may still be working on it
+		}
+		Thread.sleep(200);
+		assertEquals(2, m_requests.get());
+		assertEquals(1, m_connections.get());
+	}
+
+	@Test
+	public void testPartlyAnsweredPipelineIsNotReplayed() throws Exception {
+		final URL url = start(Action.Respond, Action.Respond, Action.Close, Action.Respond);
+		assertEquals(200, post(url, 5000));
+		final List<HttpResponse> responses = m_client.pipeline(url, HEADERS, Arrays.asList(BODY, BODY, BODY), 5000);
+		assertEquals(1, responses.size());
+		Thread.sleep(200);
+		assertEquals(3, m_requests.get());
+		assertEquals(1, m_connections.get());
+	}
+
+	private URL start(final Action... script) throws IOException {
+		m_script = Arrays.asList(script);
+		m_serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		final Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = m_serverSocket.accept();
+						m_connections.incrementAndGet();
+						final Thread connection = new Thread(new Runnable() {
+							public void run() {
+								serve(socket);
+							}
+						});
+						connection.setDaemon(true);
+						connection.start();
+					}
+				} catch (final IOException e) {
+					// closed by tearDown
+				}
+			}
+		}, "scripted-http-server");
+		thread.setDaemon(true);
+		thread.start();
+
+		m_client = new PooledHttpClient(new ConnectionPool());
+		return new URL("http://127.0.0.1:" + m_serverSocket.getLocalPort() + "/json");
+	}
+
+	private int post(final URL url, final int timeout) throws IOException {
+		final HttpResponse response = m_client.post(url, HEADERS, BODY, timeout);
+		try {
+			final InputStream in = response.getBody();
+			while (in.read() != -1) {
+			}
+			return response.getResponseCode();
+		} finally {
+			response.close();
+		}
+	}
+
+	private void serve(final Socket socket) {
+		try {
+			final InputStream in = new BufferedInputStream(socket.getInputStream());
+			final OutputStream out = socket.getOutputStream();
+			while (readRequest(in)) {
+				final int index = m_requests.getAndIncrement();
+				final Action action = index < m_script.size() ? m_script.get(index) : Action.Close;
+				if (action == Action.Close) {
+					// a clean close, so nothing already sent is lost to a reset
+					socket.shutdownOutput();
+				}
+				if (action != Action.Respond) {
+					// until the client gives up and hangs up
+					while (in.read() != -1) {
+					}
+					break;
+				}
+				out.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes("ISO-8859-1"));
+				out.flush();
+			}
+		} catch (final IOException e) {
+			// the client went away
+		} finally {
+			try {
+				socket.close();
+			} catch (final IOException e) {
+			}
+		}
+	}
+
+	private static boolean readRequest(final InputStream in) throws IOException {
+		int length = 0;
+		String line = readLine(in);
+		if (line == null) {
+			return false;
+		}
+		while ((line = readLine(in)) != null && line.length() > 0) {
+			if (line.toLowerCase(Locale.ENGLISH).startsWith("content-length:")) {
+				length = Integer.parseInt(line.substring("content-length:".length()).trim());
+			}
+		}
+		for (int i=0; i < length; i++) {
+			if (in.read() == -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String readLine(final InputStream in) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != -1 && b != '\n') {
+			if (b != '\r') {
+				bytes.write(b);
+			}
+		}
+		return b == -1 && bytes.size() == 0 ? null : bytes.toString("ISO-8859-1");
+	}
+}
@@ -0,0 +1,168 @@
+package com.raccoonfink.deluge.ingest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.fake.FakeDelugeServer;
+import com.raccoonfink.deluge.http.OkHttpTransport;
+import com.raccoonfink.deluge.responses.DelugeResponse;
+
+public class TorrentIngesterTest {
+	@Rule
+	public TemporaryFolder m_folder = new TemporaryFolder();
+
+	private FakeDelugeServer m_fake;
+	private DelugeServer m_server;
+
+	@Before
+	public void setUp() throws Exception {
+		m_fake = new FakeDelugeServer("deluge").start();
+		m_fake.populate(10);
+		m_server = m_fake.connectedClient();
+	}
+
+	@After
+	public void tearDown() {
+		m_server.close();
+		m_fake.close();
+	}
+
+	@Test
+	public void testInfoHash() throws Exception {
+		final Random random = new Random(1);
+		for (int i=0; i < 5; i++) {
+			final byte[] info = createInfo("file" + i, random, 1 + random.nextInt(5000));
+			final byte[] torrent = createTorrent(info);
+			assertEquals(sha1(info), InfoHash.fromTorrent(new ByteArrayInputStream(torrent)));
+		}
+
+		assertEquals("c12fe1c06bba254a9dc9f519b335aa7c1367a88a", InfoHash.fromMagnet("magnet:?xt=urn:btih:C12FE1C06BBA254A9DC9F519B335AA7C1367A88A&dn=test"));
+		assertEquals("c12fe1c06bba254a9dc9f519b335aa7c1367a88a", InfoHash.fromMagnet("magnet:?dn=test&xt=urn:btih:YEX6DQDLXISUVHOJ6UM3GNNKPQJWPKEK"));
+	}
+
+	@Test
+	public void testIngestDirectory() throws Exception {
+		final File directory = m_folder.newFolder("torrents");
+		final Random random = new Random(2);
+		final List<String> hashes = new ArrayList<String>();
+		for (int i=0; i < 30; i++) {
+			// piece counts vary so the base64 padding does too
+			final byte[] info = createInfo("file" + i, random, 1 + random.nextInt(3000));
+			write(new File(directory, "file" + i + ".torrent"), createTorrent(info));
+			hashes.add(sha1(info));
+		}
+		write(new File(directory, "broken.torrent"), "not a torrent".getBytes("UTF-8"));
+		write(new File(directory, "notes.txt"), "ignored".getBytes("UTF-8"));
+
+		final TorrentIngester ingester = new TorrentIngester(m_server, 3);
+		final IngestResult first = ingester.ingest(directory);
+		assertEquals(30, first.getAddedCount());
+		assertEquals(0, first.getDuplicateCount());
+		assertEquals(1, first.getFailedCount());
+		assertTrue(m_fake.getTorrentIds().containsAll(hashes));
+		assertEquals(40, m_fake.getTorrentIds().size());
+
+		// everything is already loaded the second time around
+		final int uploads = m_fake.getRequestCount("core.add_torrent_file");
+		final IngestResult second = ingester.ingest(directory);
+		assertEquals(0, second.getAddedCount());
+		assertEquals(30, second.getDuplicateCount());
+		assertEquals(uploads, m_fake.getRequestCount("core.add_torrent_file"));
+	}
+
+	@Test
+	public void testUploadAfterSessionExpiredLogsInAgain() throws Exception {
+		final byte[] info = createInfo("expired", new Random(4), 10);
+		final File file = new File(m_folder.getRoot(), "expired.torrent");
+		write(file, createTorrent(info));
+
+		m_fake.expireSessions();
+		final DelugeResponse response = m_server.makeRequest("core.add_torrent_file", new TorrentFileBody(file, null));
+		assertEquals(sha1(info), response.getResponseData().getString("result"));
+		assertEquals(2, m_fake.getLoginCount());
+		assertEquals(2, m_fake.getRequestCount("core.add_torrent_file"));
+	}
+
+	@Test
+	public void testIngestWithOkHttp() throws Exception {
+		final OkHttpTransport transport = new OkHttpTransport();
+		final DelugeServer server = new DelugeServer(m_fake.getURL(), "deluge", transport);
+		try {
+			server.login();
+			final File file = m_folder.newFile("big.torrent");
+			final byte[] info = createInfo("big", new Random(3), 20000);
+			write(file, createTorrent(info));
+
+			final IngestResult result = new TorrentIngester(server).ingest(Arrays.asList(TorrentSource.fromFile(file)).iterator());
+			assertEquals(1, result.getAddedCount());
+			assertTrue(m_fake.getTorrentIds().contains(sha1(info)));
+		} finally {
+			server.close();
+			transport.close();
+		}
+	}
+
+	@Test
+	public void testMagnets() throws Exception {
+		final String existing = m_fake.getTorrentIds().get(0);
+		final String fresh = "magnet:?xt=urn:btih:c12fe1c06bba254a9dc9f519b335aa7c1367a88a";
+		final IngestResult result = new TorrentIngester(m_server).ingest(Arrays.asList(
+				TorrentSource.fromMagnet("magnet:?xt=urn:btih:" + existing.toUpperCase()),
+				TorrentSource.fromMagnet(fresh),
+				TorrentSource.fromMagnet(fresh + "&dn=again"),
+				TorrentSource.fromMagnet("http://example.com/not-a-magnet")).iterator());
+		assertEquals(1, result.getAddedCount());
+		assertEquals(2, result.getDuplicateCount());
+		assertEquals(1, result.getFailedCount());
+	}
+
+	private static byte[] createInfo(final String name, final Random random, final int pieces) throws IOException {
+		final ByteArrayOutputStream info = new ByteArrayOutputStream();
+		final byte[] hashes = new byte[pieces * 20];
+		random.nextBytes(hashes);
+		info.write(("d6:lengthi" + (pieces * 16384L) + "e4:name" + name.length() + ":" + name + "12:piece lengthi16384e6:pieces" + hashes.length + ":").getBytes("UTF-8"));
+		info.write(hashes);
+		info.write('e');
+		return info.toByteArray();
+	}
+
+	private static byte[] createTorrent(final byte[] info) throws IOException {
+		final ByteArrayOutputStream torrent = new ByteArrayOutputStream();
+		final String announce = "http://tracker.example/announce";
+		torrent.write(("d8:announce" + announce.length() + ":" + announce + "4:info").getBytes("UTF-8"));
+		torrent.write(info);
+		torrent.write("7:comment4:teste".getBytes("UTF-8"));
+		return torrent.toByteArray();
+	}
+
+	private static void write(final File file, final byte[] data) throws IOException {
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String sha1(final byte[] data) throws Exception {
+		return InfoHash.toHex(MessageDigest.getInstance("SHA-1").digest(data));
+	}
+}
@@ -0,0 +1,124 @@
+package com.raccoonfink.deluge.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class JsonStreamReaderTest {
+	@Test
+	public void testTokens() throws Exception {
+		final JsonStreamReader reader = reader("{\"name\": \"a\\\"b\\n\\u00e9\", \"size\": 12345678901, \"ratio\": -1.5e2, \"done\": true, \"tracker\": null, \"files\": []}");
+		reader.beginObject();
+		assertEquals("name", reader.nextName());
+		assertEquals("a\"b\n\u00e9", reader.nextString());
+		assertEquals("size", reader.nextName());
+		assertEquals(12345678901L, reader.nextLong());
+		assertEquals("ratio", reader.nextName());
+		assertEquals(-150.0, reader.nextDouble(), 0.0);
+		assertEquals("done", reader.nextName());
+		assertTrue(reader.nextBoolean());
+		assertEquals("tracker", reader.nextName());
+		assertEquals(JsonToken.NULL, reader.peek());
+		reader.nextNull();
+		assertEquals("files", reader.nextName());
+		reader.beginArray();
+		assertFalse(reader.hasNext());
+		reader.endArray();
+		reader.endObject();
+		assertEquals(JsonToken.END_DOCUMENT, reader.peek());
+	}
+
+	@Test
+	public void testOptionalValuesAreLenient() throws Exception {
+		final JsonStreamReader reader = reader("[\"42\", null, \"x\", \"TRUE\", 7.9, {\"a\": [1]}]");
+		reader.beginArray();
+		assertEquals(42, reader.optInt());
+		assertEquals(0, reader.optLong());
+		assertTrue(Double.isNaN(reader.optDouble()));
+		assertTrue(reader.optBoolean());
+		assertEquals(7, reader.optLong());
+		assertEquals("{\"a\":[1]}", reader.optString());
+		reader.endArray();
+	}
+
+	@Test
+	public void testSkipValue() throws Exception {
+		final JsonStreamReader reader = reader("{\"skipped\": {\"a\": [1, \"]\", {\"b\": null}], \"c\": \"}\"}, \"kept\": 1}");
+		reader.beginObject();
+		assertEquals("skipped", reader.nextName());
+		reader.skipValue();
+		assertEquals("kept", reader.nextName());
+		assertEquals(1, reader.nextLong());
+		reader.endObject();
+	}
+
+	@Test
+	public void testReadValueMatchesOrgJson() throws Exception {
+		final String json = "{\"id\": 1, \"error\": null, \"result\": {\"torrents\": {\"abc\": {\"name\": \"caf\\u00e9 \\ud83c\\udf7a\", \"progress\": 99.5, \"tracker_host\": \"\", \"files\": [1, 2.5, false]}}, \"connected\": true}}";
+		final JSONObject expected = new JSONObject(json);
+		final JSONObject actual = (JSONObject) reader(json).readValue();
+		assertEquals(expected.toString(), actual.toString());
+
+		// a character at a time, so every token is split between reads
+		final JSONObject trickled = (JSONObject) new JsonStreamReader(new FilterReader(new StringReader(json)) {
+			@Override
+			public int read(final char[] buffer, final int offset, final int length) throws IOException {
+				return super.read(buffer, offset, Math.min(length, 1));
+			}
+		}).readValue();
+		assertEquals(expected.toString(), trickled.toString());
+	}
+
+	@Test
+	public void testLongStringsCrossBuffers() throws Exception {
+		final StringBuilder value = new StringBuilder();
+		for (int i=0; i < 50000; i++) {
+			value.append((char) ('a' + i % 26));
+			if (i % 1000 == 0) {
+				value.append('\u00e9');
+			}
+		}
+		final JSONArray array = (JSONArray) new JsonStreamReader(new ByteArrayInputStream(new JSONArray().put(value.toString()).put(1).toString().getBytes("UTF-8"))).readValue();
+		assertEquals(value.toString(), array.getString(0));
+		assertEquals(1, array.getInt(1));
+	}
+
+	@Test
+	public void testSyntaxErrors() throws Exception {
+		assertSyntaxError("{\"a\" 1}");
+		assertSyntaxError("[1, 2");
+		assertSyntaxError("\"unterminated");
+		assertSyntaxError("{\"a\": tru}");
+
+		final JsonStreamReader reader = reader("[\"text\"]");
+		reader.beginArray();
+		try {
+			reader.nextBoolean();
+			fail("expected a JSONException");
+		} catch (final JSONException e) {
+		}
+	}
+
+	private static JsonStreamReader reader(final String json) {
+		return new JsonStreamReader(new StringReader(json));
+	}
+
+	private static void assertSyntaxError(final String json) throws Exception {
+		try {
+			reader(json).readValue();
+			fail("expected a JSONException for " + json);
+		} catch (final JSONException e) {
+		}
+	}
+}
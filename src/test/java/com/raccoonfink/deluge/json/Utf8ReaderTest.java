@@ -0,0 +1,91 @@
+package com.raccoonfink.deluge.json;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class Utf8ReaderTest {
+	@Test
+	public void testMatchesStringDecoding() throws Exception {
+		final Random random = new Random(42);
+		final StringBuilder builder = new StringBuilder();
+		for (int i=0; i < 20000; i++) {
+			switch (random.nextInt(4)) {
+				case 0:
+					builder.append((char) ('a' + random.nextInt(26)));
+					break;
+				case 1:
+					builder.append((char) (0x80 + random.nextInt(0x780)));
+					break;
+				case 2:
+					builder.append((char) (0x4e00 + random.nextInt(0x5000)));
+					break;
+				default:
+					builder.appendCodePoint(0x1f300 + random.nextInt(0x300));
+					break;
+			}
+		}
+		final String expected = builder.toString();
+		final byte[] bytes = expected.getBytes("UTF-8");
+
+		// a few bytes at a time, so sequences are split between reads
+		assertEquals(expected, readAll(new Utf8Reader(new TrickleInputStream(new ByteArrayInputStream(bytes), 3)), 5));
+		assertEquals(expected, readAll(new Utf8Reader(new ByteArrayInputStream(bytes)), 8192));
+	}
+
+	@Test
+	public void testMalformedInput() throws Exception {
+		final byte[] bytes = new byte[] { 'a', (byte) 0xff, 'b', (byte) 0xc3, 'c', (byte) 0xe2, (byte) 0x82 };
+		assertEquals(new String(bytes, "UTF-8"), readAll(new Utf8Reader(new ByteArrayInputStream(bytes)), 16));
+	}
+
+	@Test
+	public void testJsonFromStream() throws Exception {
+		final String json = "{\"name\":\"caf\u00e9 \ud83c\udf7a\",\"size\":1234567890123,\"ratio\":1.5,\"ok\":true}";
+		final JsonStreamReader reader = new JsonStreamReader(new ByteArrayInputStream(json.getBytes("UTF-8")));
+		try {
+			final JSONObject object = (JSONObject) reader.readValue();
+			assertEquals("caf\u00e9 \ud83c\udf7a", object.getString("name"));
+			assertEquals(1234567890123L, object.getLong("size"));
+			assertEquals(1.5, object.getDouble("ratio"), 0.0);
+			assertEquals(true, object.getBoolean("ok"));
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static String readAll(final Utf8Reader reader, final int chunk) throws IOException {
+		final StringBuilder builder = new StringBuilder();
+		final char[] buffer = new char[chunk];
+		try {
+			int count;
+			while ((count = reader.read(buffer, 0, buffer.length)) != -1) {
+				builder.append(buffer, 0, count);
+			}
+		} finally {
+			reader.close();
+		}
+		return builder.toString();
+	}
+
+	private static final class TrickleInputStream extends FilterInputStream {
+		private final int m_max;
+
+		public TrickleInputStream(final InputStream in, final int max) {
+			super(in);
+			m_max = max;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			return super.read(b, off, Math.min(len, m_max));
+		}
+	}
+}
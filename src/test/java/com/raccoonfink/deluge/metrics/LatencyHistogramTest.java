@@ -0,0 +1,51 @@
+package com.raccoonfink.deluge.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+	@Test
+	public void testBucketsCoverEveryValue() {
+		long previousHigh = -1;
+		for (int i=0; i < LatencyHistogram.BUCKETS; i++) {
+			final long high = LatencyHistogram.highestValueAt(i);
+			assertTrue("bucket " + i + " is empty", high > previousHigh);
+			assertEquals(i, LatencyHistogram.indexOf(previousHigh + 1));
+			assertEquals(i, LatencyHistogram.indexOf(high));
+			previousHigh = high;
+		}
+		assertEquals(LatencyHistogram.MAX_VALUE, previousHigh);
+	}
+
+	@Test
+	public void testPercentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i=1; i <= 1000; i++) {
+			histogram.record(i * 1000);
+		}
+		final HistogramSnapshot snapshot = histogram.getSnapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(1000000, snapshot.getMax());
+		assertEquals(500500.0, snapshot.getMean(), 0.001);
+		assertWithinPrecision(500000, snapshot.getMedian());
+		assertWithinPrecision(990000, snapshot.get99thPercentile());
+		assertEquals(1000000, snapshot.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testOutOfRangeValuesAreClamped() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		final HistogramSnapshot snapshot = histogram.getSnapshot();
+		assertEquals(2, snapshot.getCount());
+		assertEquals(0, snapshot.getValueAtPercentile(50));
+		assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax());
+	}
+
+	private static void assertWithinPrecision(final long expected, final long actual) {
+		assertTrue(actual + " is not within 1/16 of " + expected, Math.abs(actual - expected) <= expected / LatencyHistogram.SUB_BUCKETS);
+	}
+}
@@ -0,0 +1,157 @@
+package com.raccoonfink.deluge.polling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.raccoonfink.deluge.DelugeException;
+import com.raccoonfink.deluge.DelugeServer;
+import com.raccoonfink.deluge.Torrent;
+import com.raccoonfink.deluge.TorrentDelta;
+import com.raccoonfink.deluge.TorrentFilter;
+import com.raccoonfink.deluge.fake.FakeDelugeServer;
+import com.raccoonfink.deluge.responses.UIResponse;
+
+public class PollSchedulerTest {
+	@Test
+	public void testIntervalAdapts() throws Exception {
+		final PollScheduler scheduler = new PollScheduler(new DelugeServer("http://localhost/", "deluge"), 1000, 8000);
+		scheduler.setJitter(0);
+
+		assertEquals(1500, scheduler.succeeded(false));
+		assertEquals(2250, scheduler.succeeded(false));
+		long delay = 0;
+		for (int i=0; i < 10; i++) {
+			delay = scheduler.succeeded(false);
+		}
+		assertEquals(8000, delay);
+
+		assertEquals(4000, scheduler.succeeded(true));
+		assertEquals(2000, scheduler.succeeded(true));
+		assertEquals(1000, scheduler.succeeded(true));
+		assertEquals(1000, scheduler.succeeded(true));
+	}
+
+	@Test
+	public void testBackoff() throws Exception {
+		final PollScheduler scheduler = new PollScheduler(new DelugeServer("http://localhost/", "deluge"), 1000, 8000);
+		scheduler.setJitter(0);
+		scheduler.setMaxBackoff(10000);
+
+		assertEquals(1000, scheduler.failed());
+		assertEquals(2000, scheduler.failed());
+		assertEquals(4000, scheduler.failed());
+		assertEquals(8000, scheduler.failed());
+		assertEquals(10000, scheduler.failed());
+		assertEquals(5, scheduler.getConsecutiveFailures());
+
+		scheduler.succeeded(false);
+		assertEquals(0, scheduler.getConsecutiveFailures());
+	}
+
+	@Test
+	public void testJitter() throws Exception {
+		final PollScheduler scheduler = new PollScheduler(new DelugeServer("http://localhost/", "deluge"), 1000, 100000);
+		scheduler.setJitter(0.2);
+		boolean varied = false;
+		long previous = -1;
+		for (int i=0; i < 50; i++) {
+			final long delay = scheduler.failed();
+			final long backoff = Math.min(5 * 60 * 1000, 1000L << Math.min(i, 30));
+			assertTrue(delay >= Math.max(1000, backoff * 0.8 - 1) && delay <= backoff * 1.2 + 1);
+			varied |= previous != -1 && delay != previous;
+			previous = delay;
+		}
+		assertTrue(varied);
+	}
+
+	@Test
+	public void testPolling() throws Exception {
+		final FakeDelugeServer fake = new FakeDelugeServer("deluge").start();
+		fake.populate(20);
+		final DelugeServer server = fake.connectedClient();
+		try {
+			final PollScheduler scheduler = new PollScheduler(server, 10, 50);
+			final CountDownLatch added = new CountDownLatch(1);
+			final CountDownLatch changed = new CountDownLatch(1);
+			scheduler.addListener(new PollListener() {
+				public void onUpdate(final UIResponse response, final TorrentDelta delta) {
+					if (delta.getAdded().size() == 20) {
+						added.countDown();
+					}
+					if (delta.getChanged().size() == 1) {
+						changed.countDown();
+					}
+				}
+
+				public void onFailure(final DelugeException e) {
+				}
+			});
+			scheduler.start();
+			try {
+				assertTrue(added.await(5, TimeUnit.SECONDS));
+				fake.setTorrentField(fake.getTorrentIds().get(0), "name", "renamed");
+				assertTrue(changed.await(5, TimeUnit.SECONDS));
+				assertEquals(20, scheduler.getCache().size());
+				assertEquals("renamed", scheduler.getCache().get(fake.getTorrentIds().get(0)).getName());
+			} finally {
+				scheduler.stop(5000);
+			}
+		} finally {
+			server.close();
+			fake.close();
+		}
+	}
+
+	@Test
+	public void testPollNowDuringPollIsNotLost() throws Exception {
+		final FakeDelugeServer fake = new FakeDelugeServer("deluge").start();
+		final CountDownLatch inFlight = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final DelugeServer server = new DelugeServer(fake.getURL(), "deluge") {
+			@Override
+			public UIResponse updateUI(final Set<Torrent.Field> fields, final TorrentFilter filter) throws DelugeException {
+				inFlight.countDown();
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.updateUI(fields, filter);
+			}
+		};
+		try {
+			server.login();
+			server.connect(FakeDelugeServer.HOST_ID);
+
+			final PollScheduler scheduler = new PollScheduler(server, 10, 60000);
+			scheduler.setJitter(0);
+			for (int i=0; i < 30; i++) {
+				scheduler.succeeded(false);
+			}
+			scheduler.start();
+			try {
+				// an event arrives while the first poll is on the wire
+				assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+				scheduler.pollNow();
+				release.countDown();
+
+				final long deadline = System.currentTimeMillis() + 5000;
+				while (scheduler.getPollCount() < 2 && System.currentTimeMillis() < deadline) {
+					Thread.sleep(10);
+				}
+				assertTrue(scheduler.getPollCount() >= 2);
+			} finally {
+				scheduler.stop(5000);
+			}
+		} finally {
+			server.close();
+			fake.close();
+		}
+	}
+}